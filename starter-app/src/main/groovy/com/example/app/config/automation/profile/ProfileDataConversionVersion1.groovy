@@ -31,6 +31,215 @@ class ProfileDataConversionVersion1
 {
     private static final String IDENTIFIER = "starter-app-profile"
 
+    /**
+     * Backfill User login keys from the email addresses and usernames of existing Users,
+     * so logins resolve as soon as the application starts.
+     * 2026.10.19 at 02:00 UTC
+     * @return Bean.
+     */
+    @TaskQualifier(TaskQualifier.Type.data_conversion)
+    @Bean
+    DataConversion dataConversion_202610190200()
+    {
+        def ddl = [
+            $/insert into app.userlogin (userlogin_id, user_id, login) 
+select nextval('app.userlogin_id_seq'), logins.user_id, logins.login from (
+select u.user_id, lower(trim(ea.email)) as login from app.User u 
+inner join role p on p.id = u.principal_id 
+inner join contact_emailaddress cea on cea.id = p.contact_id 
+inner join emailaddress ea on ea.id = cea.emailaddress_id 
+union 
+select u.user_id, lower(trim(cred.username)) as login from app.User u 
+inner join credentials cred on cred.role_fk = u.principal_id
+) logins where logins.login is not null and logins.login <> '' 
+on conflict on constraint userlogin_key do nothing/$,
+        ]
+        new SQLDataConversion(IDENTIFIER, 'Backfill User login keys', 202610190200, false, null, ddl, null, null)
+    }
+
+    /**
+     * Scope shared file content to the directory it was saved to.
+     * Content saved before this has no directory and is no longer shared.
+     * 2026.10.19 at 01:00 UTC
+     * @return Bean.
+     */
+    @TaskQualifier(TaskQualifier.Type.data_conversion)
+    @Bean
+    DataConversion dataConversion_202610190100()
+    {
+        def ddl = [
+            $/alter table app.filecontent add column directory_id int8/$,
+            $/alter table app.filecontent add constraint FK_filecontent_directory foreign key (directory_id) 
+references FileSystemEntity on delete cascade/$,
+            $/create index filecontent_directory_hash_idx on app.filecontent (directory_id, hash)/$,
+        ]
+        new SQLDataConversion(IDENTIFIER, 'Scope file content by directory', 202610190100, false, null, ddl, null, null)
+    }
+
+    /**
+     * Add User login keys for case-insensitive login lookup.
+     * 2026.10.19 at 00:00 UTC
+     * @return Bean.
+     */
+    @TaskQualifier(TaskQualifier.Type.data_conversion)
+    @Bean
+    DataConversion dataConversion_202610190000()
+    {
+        def ddl = [
+            $/create table app.userlogin (userlogin_id int4 not null, user_id int4 not null, login varchar(255) not null, 
+primary key (userlogin_id))/$,
+            $/create sequence app.userlogin_id_seq/$,
+            $/alter table app.userlogin add constraint userlogin_key unique (login, user_id)/$,
+            $/alter table app.userlogin add constraint FK_userlogin_user foreign key (user_id) 
+references app.User on delete cascade/$,
+            $/create index userlogin_user_idx on app.userlogin (user_id)/$,
+        ]
+        new SQLDataConversion(IDENTIFIER, 'Add User login keys', 202610190000, false, null, ddl, null, null)
+    }
+
+    /**
+     * Add User search index, populated by UserSearchIndex when the application starts
+     * 2026.10.18 at 23:00 UTC
+     * @return Bean.
+     */
+    @TaskQualifier(TaskQualifier.Type.data_conversion)
+    @Bean
+    DataConversion dataConversion_202610182300()
+    {
+        def ddl = [
+            $/create extension if not exists pg_trgm/$,
+            $/create table app.usersearch (usersearch_id int4 not null, user_id int4 not null, document varchar(4000) not null, 
+sortName varchar(255) not null, primary key (usersearch_id))/$,
+            $/create sequence app.usersearch_id_seq/$,
+            $/alter table app.usersearch add constraint UK_usersearch_user unique (user_id)/$,
+            $/alter table app.usersearch add constraint FK_usersearch_user foreign key (user_id) 
+references app.User on delete cascade/$,
+            $/create index usersearch_document_trgm_idx on app.usersearch using gin (document gin_trgm_ops)/$,
+            $/create index usersearch_sortname_idx on app.usersearch (sortName)/$,
+        ]
+        new SQLDataConversion(IDENTIFIER, 'Add User search index', 202610182300, false, null, ddl, null, null)
+    }
+
+    /**
+     * Add index for paging Repository resources by create time
+     * 2026.10.18 at 22:00 UTC
+     * @return Bean.
+     */
+    @TaskQualifier(TaskQualifier.Type.data_conversion)
+    @Bean
+    DataConversion dataConversion_202610182200()
+    {
+        def ddl = [
+            $/create index repositoryitemrelation_repository_createtime_idx on app.repositoryItemRelation 
+(repository_id, createtime, repositoryitemrelation_id)/$,
+        ]
+        new SQLDataConversion(IDENTIFIER, 'Add index for paging Repository resources', 202610182200, false, null, ddl,
+            null, null)
+    }
+
+    /**
+     * Add image renditions, the scaled copies of Profile images served by views
+     * 2026.10.18 at 21:00 UTC
+     * @return Bean.
+     */
+    @TaskQualifier(TaskQualifier.Type.data_conversion)
+    @Bean
+    DataConversion dataConversion_202610182100()
+    {
+        def ddl = [
+            $/create table app.imagerendition (imagerendition_id int4 not null, source_id int8 not null, file_id int8, 
+width int4 not null, height int4 not null, format varchar(16) not null, hash varchar(64), 
+primary key (imagerendition_id))/$,
+            $/create sequence app.imagerendition_id_seq/$,
+            $/alter table app.imagerendition add constraint imagerendition_key unique (source_id, width, height, format)/$,
+            $/create index imagerendition_hash_idx on app.imagerendition (hash)/$,
+            $/alter table app.imagerendition add constraint FK_imagerendition_source foreign key (source_id) 
+references FileSystemEntity on delete cascade/$,
+            $/alter table app.imagerendition add constraint FK_imagerendition_file foreign key (file_id) 
+references FileSystemEntity on delete set null/$,
+        ]
+        new SQLDataConversion(IDENTIFIER, 'Add image renditions', 202610182100, false, null, ddl, null, null)
+    }
+
+    /**
+     * Add file content hashes, used to share identical Profile images between entities
+     * 2026.10.18 at 20:00 UTC
+     * @return Bean.
+     */
+    @TaskQualifier(TaskQualifier.Type.data_conversion)
+    @Bean
+    DataConversion dataConversion_202610182000()
+    {
+        def ddl = [
+            $/create table app.filecontent (filecontent_id int4 not null, file_id int8 not null, hash varchar(64) not null, 
+contentLength int8 not null, refcount int4 not null, primary key (filecontent_id))/$,
+            $/create sequence app.filecontent_id_seq/$,
+            $/create index filecontent_hash_idx on app.filecontent (hash)/$,
+            $/alter table app.filecontent add constraint UK_filecontent_file unique (file_id)/$,
+            $/alter table app.filecontent add constraint FK_filecontent_file foreign key (file_id) 
+references FileSystemEntity on delete cascade/$,
+        ]
+        new SQLDataConversion(IDENTIFIER, 'Add file content hashes', 202610182000, false, null, ddl, null, null)
+    }
+
+    /**
+     * Add Profile hierarchy closure table, maintained by trigger and backfilled from Profile.parent
+     * 2026.10.18 at 15:00 UTC
+     * @return Bean.
+     */
+    @TaskQualifier(TaskQualifier.Type.data_conversion)
+    @Bean
+    DataConversion dataConversion_202610181500()
+    {
+        def ddl = [
+            $/create table app.profilehierarchy (ancestor_id int4 not null, descendant_id int4 not null, 
+depth int4 not null, primary key (ancestor_id, descendant_id))/$,
+            $/create index profilehierarchy_descendant_idx on app.profilehierarchy (descendant_id, depth)/$,
+            $/alter table app.profilehierarchy add constraint FK_profilehierarchy_ancestor foreign key (ancestor_id) 
+references app.Profile on delete cascade/$,
+            $/alter table app.profilehierarchy add constraint FK_profilehierarchy_descendant foreign key (descendant_id) 
+references app.Profile on delete cascade/$,
+            // Moving a Profile under its own subtree would create a cycle, so the update is rejected.
+            '''create or replace function app.profilehierarchy_maintain() returns trigger as $$
+begin
+    if TG_OP = 'INSERT' then
+        insert into app.profilehierarchy (ancestor_id, descendant_id, depth) values (new.profile_id, new.profile_id, 0);
+    elsif new.parent is not distinct from old.parent then
+        return null;
+    end if;
+    if new.parent is not null and exists (select 1 from app.profilehierarchy
+        where ancestor_id = new.profile_id and descendant_id = new.parent) then
+        raise exception 'Profile % cannot be moved under its own subtree', new.profile_id;
+    end if;
+    if TG_OP = 'UPDATE' then
+        delete from app.profilehierarchy
+        where descendant_id in (select descendant_id from app.profilehierarchy where ancestor_id = new.profile_id)
+        and ancestor_id not in (select descendant_id from app.profilehierarchy where ancestor_id = new.profile_id);
+    end if;
+    if new.parent is not null then
+        insert into app.profilehierarchy (ancestor_id, descendant_id, depth)
+        select a.ancestor_id, d.descendant_id, a.depth + d.depth + 1
+        from app.profilehierarchy a cross join app.profilehierarchy d
+        where a.descendant_id = new.parent and d.ancestor_id = new.profile_id;
+    end if;
+    return null;
+end
+$$ language plpgsql''',
+            $/create trigger profilehierarchy_trg after insert or update of parent on app.Profile 
+for each row execute procedure app.profilehierarchy_maintain()/$,
+            // The path stops the walk at a cycle in existing data.
+            $/with recursive tree (ancestor_id, descendant_id, depth, path) as (
+select profile_id, profile_id, 0, array[profile_id] from app.Profile
+union all
+select p.parent, tree.descendant_id, tree.depth + 1, tree.path || p.parent 
+from tree inner join app.Profile p on p.profile_id = tree.ancestor_id 
+where p.parent is not null and p.parent <> all(tree.path))
+insert into app.profilehierarchy (ancestor_id, descendant_id, depth) 
+select ancestor_id, descendant_id, min(depth) from tree group by ancestor_id, descendant_id/$,
+        ]
+        new SQLDataConversion(IDENTIFIER, 'Add Profile hierarchy closure table', 202610181500, false, null, ddl, null, null)
+    }
+
     /**
      * Add Company to Client
      * 2017.01.11 at 22:27 UTC
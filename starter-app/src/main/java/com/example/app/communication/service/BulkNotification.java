@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import com.example.app.profile.model.user.User;
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import net.proteusframework.email.EmailTemplate;
+import net.proteusframework.email.EmailTemplateContext;
+
+/**
+ * A notification sent to many users by {@link NotificationService#sendToAll(java.util.stream.Stream, BulkNotification)}.
+ * <br><br>
+ * Users who prefer text messages and have an SMS phone receive the SMS content, if any.  Everyone else with an email
+ * address receives the email template, if any.  The email template is rendered once for the shared context, and only
+ * the template variables are evaluated for each user.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class BulkNotification
+{
+    /** Default number of users sent to at a time */
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private EmailTemplate _emailTemplate;
+    private EmailTemplateContext _emailTemplateContext;
+    private Supplier<String> _defaultFromNameSupplier;
+    private Function<User, Map<String, String>> _emailVariables = user -> Collections.emptyMap();
+    private Function<User, String> _smsContent;
+    private int _chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Send an email template.
+     *
+     * @param emailTemplate the email template
+     * @param context the context shared by every user.  It must not be modified while sending.
+     *
+     * @return this.
+     */
+    @Nonnull
+    public BulkNotification withEmail(@Nonnull EmailTemplate emailTemplate, @Nonnull EmailTemplateContext context)
+    {
+        _emailTemplate = emailTemplate;
+        _emailTemplateContext = context;
+        return this;
+    }
+
+    /**
+     * Set the supplier for the name of the default sender.
+     *
+     * @param defaultFromNameSupplier the supplier
+     *
+     * @return this.
+     */
+    @Nonnull
+    public BulkNotification withDefaultFromNameSupplier(@Nullable Supplier<String> defaultFromNameSupplier)
+    {
+        _defaultFromNameSupplier = defaultFromNameSupplier;
+        return this;
+    }
+
+    /**
+     * Set the function providing the values of the email template variables for each user.
+     *
+     * @param emailVariables the function
+     *
+     * @return this.
+     */
+    @Nonnull
+    public BulkNotification withEmailVariables(@Nonnull Function<User, Map<String, String>> emailVariables)
+    {
+        _emailVariables = emailVariables;
+        return this;
+    }
+
+    /**
+     * Send an SMS message to users who prefer it.
+     *
+     * @param smsContent the function providing the content of the message for each user
+     *
+     * @return this.
+     */
+    @Nonnull
+    public BulkNotification withSms(@Nullable Function<User, String> smsContent)
+    {
+        _smsContent = smsContent;
+        return this;
+    }
+
+    /**
+     * Set the number of users sent to at a time.  Outcomes are reported a chunk at a time.
+     *
+     * @param chunkSize the chunk size
+     *
+     * @return this.
+     */
+    @Nonnull
+    public BulkNotification withChunkSize(int chunkSize)
+    {
+        Preconditions.checkArgument(chunkSize > 0, "chunkSize must be positive");
+        _chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Get the email template
+     *
+     * @return the email template, null if no email is sent.
+     */
+    @Nullable
+    public EmailTemplate getEmailTemplate()
+    {
+        return _emailTemplate;
+    }
+
+    /**
+     * Get the email template context
+     *
+     * @return the context
+     */
+    @Nullable
+    public EmailTemplateContext getEmailTemplateContext()
+    {
+        return _emailTemplateContext;
+    }
+
+    /**
+     * Get the supplier for the name of the default sender
+     *
+     * @return the supplier
+     */
+    @Nullable
+    public Supplier<String> getDefaultFromNameSupplier()
+    {
+        return _defaultFromNameSupplier;
+    }
+
+    /**
+     * Get the function providing the values of the email template variables for each user
+     *
+     * @return the function
+     */
+    @Nonnull
+    public Function<User, Map<String, String>> getEmailVariables()
+    {
+        return _emailVariables;
+    }
+
+    /**
+     * Get the function providing the content of the SMS message for each user
+     *
+     * @return the function, null if no SMS is sent.
+     */
+    @Nullable
+    public Function<User, String> getSmsContent()
+    {
+        return _smsContent;
+    }
+
+    /**
+     * Get the number of users sent to at a time
+     *
+     * @return the chunk size
+     */
+    public int getChunkSize()
+    {
+        return _chunkSize;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Starts delivery to a chunk of recipients, then waits for the outcomes of the chunk before reading the next one, so
+ * at most one chunk of recipients is in flight and held in memory.
+ *
+ * @param <R> the recipient type
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+final class ChunkedDelivery<R> implements Iterator<DeliveryOutcome>
+{
+    private final Iterator<? extends R> _recipients;
+    private final int _chunkSize;
+    private final Function<? super R, Supplier<DeliveryOutcome>> _deliver;
+    private final Queue<DeliveryOutcome> _outcomes = new ArrayDeque<>();
+
+    /**
+     * Instantiate a new instance of ChunkedDelivery
+     *
+     * @param recipients the recipients
+     * @param chunkSize the number of recipients in flight at a time
+     * @param deliver starts delivery to a recipient, returning a supplier that waits for the outcome.
+     */
+    ChunkedDelivery(Iterator<? extends R> recipients, int chunkSize,
+        Function<? super R, Supplier<DeliveryOutcome>> deliver)
+    {
+        _recipients = recipients;
+        _chunkSize = chunkSize;
+        _deliver = deliver;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (_outcomes.isEmpty() && _recipients.hasNext())
+        {
+            final List<Supplier<DeliveryOutcome>> pending = new ArrayList<>(_chunkSize);
+            while (pending.size() < _chunkSize && _recipients.hasNext())
+            {
+                pending.add(_deliver.apply(_recipients.next()));
+            }
+            pending.forEach(outcome -> _outcomes.add(outcome.get()));
+        }
+        return !_outcomes.isEmpty();
+    }
+
+    @Override
+    public DeliveryOutcome next()
+    {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return _outcomes.remove();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import com.example.app.profile.model.user.ContactMethod;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The outcome of sending a {@link BulkNotification} to a single user.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public final class DeliveryOutcome
+{
+    /**
+     * Delivery status.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    public enum Status
+    {
+        /** The provider accepted the notification */
+        SENT,
+        /** The notification could not be sent */
+        FAILED,
+        /** The user has no way to receive the notification, or has been filtered */
+        SKIPPED
+    }
+
+    private final Integer _userId;
+    private final ContactMethod _channel;
+    private final Status _status;
+    private final Throwable _error;
+
+    DeliveryOutcome(@Nullable Integer userId, @Nullable ContactMethod channel, @Nonnull Status status,
+        @Nullable Throwable error)
+    {
+        _userId = userId;
+        _channel = channel;
+        _status = status;
+        _error = error;
+    }
+
+    /**
+     * Get the user id
+     *
+     * @return the user id
+     */
+    @Nullable
+    public Integer getUserId()
+    {
+        return _userId;
+    }
+
+    /**
+     * Get the channel the notification was sent on
+     *
+     * @return the channel, null if skipped because the user has no usable channel.
+     */
+    @Nullable
+    public ContactMethod getChannel()
+    {
+        return _channel;
+    }
+
+    /**
+     * Get the status
+     *
+     * @return the status
+     */
+    @Nonnull
+    public Status getStatus()
+    {
+        return _status;
+    }
+
+    /**
+     * Get the error
+     *
+     * @return the error, if the notification failed with an exception
+     */
+    @Nullable
+    public Throwable getError()
+    {
+        return _error;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DeliveryOutcome{"
+               + "userId=" + _userId
+               + ", channel=" + _channel
+               + ", status=" + _status
+               + (_error != null ? ", error=" + _error : "")
+               + '}';
+    }
+}
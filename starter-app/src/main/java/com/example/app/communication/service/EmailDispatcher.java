@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.i2rd.mail.model.TrackedEmail;
+
+/**
+ * Sends email on a pool of worker threads, off the caller's thread.
+ * <br><br>
+ * Messages wait in a bounded queue.  Each worker takes up to a batch of messages from the queue and sends them with a
+ * single {@link EmailTransport} obtained from the transport factory, so whatever the transport sets up, such as a
+ * Hibernate session, is set up once per batch rather than once per message.  When the queue is full, {@link #submit(MimeMessage)} waits up to the offer timeout
+ * for space and then rejects the message, pushing back on the producer.
+ * <br><br>
+ * Instances own their workers and must be {@link #close() closed}.  Closing stops accepting messages and sends the
+ * ones already queued.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class EmailDispatcher implements AutoCloseable
+{
+    /** Default maximum number of messages sent with a single transport */
+    public static final int DEFAULT_BATCH_SIZE = 25;
+    /** Logger. */
+    private static final Logger _logger = LogManager.getLogger(EmailDispatcher.class);
+    /** How long an idle worker waits before checking if the dispatcher has been closed */
+    private static final long POLL_MILLIS = 100L;
+    /** How long close waits for the queued messages to be sent */
+    private static final long CLOSE_TIMEOUT_SECONDS = 30L;
+
+    private final Supplier<? extends EmailTransport> _transportFactory;
+    private final BlockingQueue<PendingEmail> _queue;
+    private final ExecutorService _workers;
+    private final int _batchSize;
+    private final long _offerTimeoutNanos;
+    private final long _startNanos = System.nanoTime();
+    private final LongAdder _sent = new LongAdder();
+    private final LongAdder _failed = new LongAdder();
+    private final LongAdder _rejected = new LongAdder();
+    private final LongAdder _batches = new LongAdder();
+    private final LongAdder _totalLatencyNanos = new LongAdder();
+    private final AtomicLong _maxLatencyNanos = new AtomicLong();
+    private volatile boolean _closed;
+
+    /**
+     * Instantiate a new instance of EmailDispatcher
+     *
+     * @param transportFactory supplies a transport for each batch
+     * @param workers the number of worker threads
+     * @param queueCapacity the maximum number of messages waiting to be sent
+     * @param batchSize the maximum number of messages sent with a single transport
+     * @param offerTimeout how long {@link #submit(MimeMessage)} waits for space in a full queue
+     * @param unit the unit of the offer timeout
+     */
+    public EmailDispatcher(@Nonnull Supplier<? extends EmailTransport> transportFactory, int workers,
+        int queueCapacity, int batchSize, long offerTimeout, @Nonnull TimeUnit unit)
+    {
+        Preconditions.checkArgument(workers > 0, "workers must be positive");
+        Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be positive");
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        Preconditions.checkArgument(offerTimeout >= 0, "offerTimeout must not be negative");
+        _transportFactory = transportFactory;
+        _queue = new ArrayBlockingQueue<>(queueCapacity);
+        _batchSize = batchSize;
+        _offerTimeoutNanos = unit.toNanos(offerTimeout);
+        _workers = Executors.newFixedThreadPool(workers,
+            new ThreadFactoryBuilder().setNameFormat("email-dispatch-%d").setDaemon(true).build());
+        for (int i = 0; i < workers; i++)
+        {
+            _workers.execute(this::_work);
+        }
+    }
+
+    /**
+     * Queue a message to be sent.  The message must not be modified after it has been submitted.
+     *
+     * @param message the message
+     *
+     * @return the delivery receipt.  Completes with the tracked email, which may be null, once the message is sent, or
+     * exceptionally if it could not be sent.  Cancelling the receipt before the message is sent prevents sending it.
+     *
+     * @throws RejectedExecutionException if the queue stayed full for the offer timeout, or the dispatcher is closed.
+     */
+    @Nonnull
+    public CompletableFuture<TrackedEmail> submit(@Nonnull MimeMessage message)
+    {
+        if (_closed)
+        {
+            _rejected.increment();
+            throw new RejectedExecutionException("Email dispatcher is closed.");
+        }
+        final PendingEmail pending = new PendingEmail(message);
+        boolean queued;
+        try
+        {
+            queued = _queue.offer(pending, _offerTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued)
+        {
+            _rejected.increment();
+            throw new RejectedExecutionException("Email dispatch queue is full.");
+        }
+        return pending.getReceipt();
+    }
+
+    /**
+     * Get the number of messages waiting to be sent.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth()
+    {
+        return _queue.size();
+    }
+
+    /**
+     * Get a snapshot of the dispatch metrics.
+     *
+     * @return the metrics
+     */
+    @Nonnull
+    public Metrics getMetrics()
+    {
+        final long sent = _sent.sum();
+        final long failed = _failed.sum();
+        final long completed = sent + failed;
+        return new Metrics(_queue.size(), sent, failed, _rejected.sum(), _batches.sum(),
+            Duration.ofNanos(System.nanoTime() - _startNanos),
+            Duration.ofNanos(completed == 0 ? 0L : _totalLatencyNanos.sum() / completed),
+            Duration.ofNanos(_maxLatencyNanos.get()));
+    }
+
+    @Override
+    public void close()
+    {
+        _closed = true;
+        _workers.shutdown();
+        try
+        {
+            if (!_workers.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                _workers.shutdownNow();
+        }
+        catch (InterruptedException e)
+        {
+            _workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        final List<PendingEmail> unsent = new ArrayList<>();
+        _queue.drainTo(unsent);
+        if (!unsent.isEmpty())
+        {
+            _logger.warn("Email dispatcher closed with " + unsent.size() + " unsent message(s).");
+            unsent.forEach(pending -> pending.getReceipt().cancel(false));
+        }
+    }
+
+    private void _work()
+    {
+        final List<PendingEmail> batch = new ArrayList<>(_batchSize);
+        while (true)
+        {
+            final PendingEmail first;
+            try
+            {
+                first = _queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            if (first == null)
+            {
+                if (_closed)
+                    return;
+                continue;
+            }
+            batch.add(first);
+            _queue.drainTo(batch, _batchSize - 1);
+            _sendBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void _sendBatch(List<PendingEmail> batch)
+    {
+        _batches.increment();
+        try (EmailTransport transport = _transportFactory.get())
+        {
+            for (PendingEmail pending : batch)
+            {
+                if (pending.getReceipt().isDone())
+                    continue;
+                try
+                {
+                    _complete(pending, transport.send(pending.getMessage()));
+                }
+                catch (MessagingException | RuntimeException e)
+                {
+                    _logger.error("Unable to send message.", e);
+                    _fail(pending, e);
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            _logger.error("Unable to send messages.", e);
+            batch.stream().filter(pending -> !pending.getReceipt().isDone()).forEach(pending -> _fail(pending, e));
+        }
+    }
+
+    private void _complete(PendingEmail pending, TrackedEmail trackedEmail)
+    {
+        // Record before completing, so the metrics include the message by the time the receipt is observed.
+        _sent.increment();
+        _recordLatency(pending);
+        pending.getReceipt().complete(trackedEmail);
+    }
+
+    private void _fail(PendingEmail pending, Throwable cause)
+    {
+        _failed.increment();
+        _recordLatency(pending);
+        pending.getReceipt().completeExceptionally(cause);
+    }
+
+    private void _recordLatency(PendingEmail pending)
+    {
+        final long latency = System.nanoTime() - pending.getQueuedNanos();
+        _totalLatencyNanos.add(latency);
+        _maxLatencyNanos.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * A snapshot of the dispatch metrics.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    public static final class Metrics
+    {
+        private final int _queueDepth;
+        private final long _sent;
+        private final long _failed;
+        private final long _rejected;
+        private final long _batches;
+        private final Duration _uptime;
+        private final Duration _averageLatency;
+        private final Duration _maxLatency;
+
+        Metrics(int queueDepth, long sent, long failed, long rejected, long batches, Duration uptime,
+            Duration averageLatency, Duration maxLatency)
+        {
+            _queueDepth = queueDepth;
+            _sent = sent;
+            _failed = failed;
+            _rejected = rejected;
+            _batches = batches;
+            _uptime = uptime;
+            _averageLatency = averageLatency;
+            _maxLatency = maxLatency;
+        }
+
+        /**
+         * Get the number of messages waiting to be sent
+         *
+         * @return the queue depth
+         */
+        public int getQueueDepth()
+        {
+            return _queueDepth;
+        }
+
+        /**
+         * Get the number of messages sent
+         *
+         * @return the sent count
+         */
+        public long getSent()
+        {
+            return _sent;
+        }
+
+        /**
+         * Get the number of messages that could not be sent
+         *
+         * @return the failed count
+         */
+        public long getFailed()
+        {
+            return _failed;
+        }
+
+        /**
+         * Get the number of messages rejected because the queue was full or the dispatcher was closed
+         *
+         * @return the rejected count
+         */
+        public long getRejected()
+        {
+            return _rejected;
+        }
+
+        /**
+         * Get the number of batches, which is the number of transports used
+         *
+         * @return the batch count
+         */
+        public long getBatches()
+        {
+            return _batches;
+        }
+
+        /**
+         * Get the average number of messages sent per second since the dispatcher was created
+         *
+         * @return the throughput
+         */
+        public double getThroughput()
+        {
+            final long nanos = _uptime.toNanos();
+            return nanos == 0L ? 0.0 : _sent * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+
+        /**
+         * Get the average time from submission until a message was sent or failed
+         *
+         * @return the average latency
+         */
+        @Nonnull
+        public Duration getAverageLatency()
+        {
+            return _averageLatency;
+        }
+
+        /**
+         * Get the longest time from submission until a message was sent or failed
+         *
+         * @return the maximum latency
+         */
+        @Nonnull
+        public Duration getMaxLatency()
+        {
+            return _maxLatency;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Metrics{"
+                   + "queueDepth=" + _queueDepth
+                   + ", sent=" + _sent
+                   + ", failed=" + _failed
+                   + ", rejected=" + _rejected
+                   + ", batches=" + _batches
+                   + ", throughput=" + String.format("%.1f/s", getThroughput())
+                   + ", averageLatency=" + _averageLatency.toMillis() + "ms"
+                   + ", maxLatency=" + _maxLatency.toMillis() + "ms"
+                   + '}';
+        }
+    }
+
+    /**
+     * A queued message and its receipt.
+     */
+    private static final class PendingEmail
+    {
+        private final MimeMessage _message;
+        private final CompletableFuture<TrackedEmail> _receipt = new CompletableFuture<>();
+        private final long _queuedNanos = System.nanoTime();
+
+        PendingEmail(MimeMessage message)
+        {
+            _message = message;
+        }
+
+        MimeMessage getMessage()
+        {
+            return _message;
+        }
+
+        CompletableFuture<TrackedEmail> getReceipt()
+        {
+            return _receipt;
+        }
+
+        long getQueuedNanos()
+        {
+            return _queuedNanos;
+        }
+    }
+}
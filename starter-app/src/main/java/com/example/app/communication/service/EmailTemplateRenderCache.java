@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimePart;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.proteusframework.core.mail.MailDataHandlerException;
+import net.proteusframework.core.mail.MailMessage;
+import net.proteusframework.data.mail.FileEntityMailDataHandler;
+import net.proteusframework.email.EmailTemplate;
+import net.proteusframework.email.EmailTemplateContext;
+import net.proteusframework.email.EmailTemplateException;
+import net.proteusframework.email.EmailTemplateProcessor;
+
+/**
+ * Renders an email template once, so sending it to many recipients only evaluates the template
+ * {@link EmailTemplateVariables#getEmailTemplateVariables(EmailTemplate) variables} for each message.
+ * <br><br>
+ * A template is compiled by processing it with a token in place of each variable, then splitting the rendered subject
+ * and text parts around the tokens.  Each token carries the HTML special characters, so compiling also records how the
+ * processor escaped them at that spot, and rendering a message escapes the variable values the same way.
+ * A template that does not copy every variable into the output, for example by testing it in a condition, cannot be
+ * compiled and is processed in full for every message.
+ * <br><br>
+ * Compiled templates are keyed by template id and version, which is a fingerprint of the template subject and bodies,
+ * and by the site, locale, time zone and mode of the context.  A context with a principal, or with attributes other
+ * than the template variables, may render differently for each recipient, so it is always processed in full.
+ * Each message is processed with its own copy of the context attributes, so a context may be shared by concurrent
+ * sends.  Previewing a template invalidates it.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Service
+public class EmailTemplateRenderCache
+{
+    /** Logger. */
+    private static final Logger _logger = LogManager.getLogger(EmailTemplateRenderCache.class);
+
+    private final Cache<RenderKey, Optional<CompiledEmailTemplate>> _cache = CacheBuilder.newBuilder()
+        .maximumSize(100)
+        .expireAfterAccess(10, TimeUnit.MINUTES)
+        .build();
+    /** Unlikely to occur in a template, and unchanged by HTML escaping */
+    private final String _tokenPrefix = "etrc" + Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE,
+        Character.MAX_RADIX) + 'v';
+
+    @Autowired
+    private EmailTemplateProcessor _emailTemplateProcessor;
+
+    /**
+     * Render a message.
+     *
+     * @param emailTemplate the email template
+     * @param context the context.  It is not modified, so it may be shared by every message of the template.
+     * @param variables the values of the template variables for this message.  Missing variables are empty.
+     *
+     * @return a new message with the subject and body of the template.
+     *
+     * @throws EmailTemplateException if the template could not be processed.
+     * @throws MailDataHandlerException if the template could not be processed.
+     * @throws MessagingException if the message could not be created.
+     */
+    @Nonnull
+    public MimeMessage render(@Nonnull EmailTemplate emailTemplate, @Nonnull EmailTemplateContext context,
+        @Nonnull Map<String, String> variables) throws EmailTemplateException, MailDataHandlerException, MessagingException
+    {
+        final List<String> variableNames = EmailTemplateVariables.getEmailTemplateVariables(emailTemplate);
+        if (!_isShared(context, variableNames, variables))
+            return _process(emailTemplate, context, variables);
+        final Optional<CompiledEmailTemplate> compiled;
+        try
+        {
+            compiled = _cache.get(new RenderKey(emailTemplate, context),
+                () -> Optional.ofNullable(_compile(emailTemplate, context, variableNames)));
+        }
+        catch (ExecutionException | UncheckedExecutionException | ExecutionError e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof EmailTemplateException)
+                throw (EmailTemplateException) cause;
+            if (cause instanceof MailDataHandlerException)
+                throw (MailDataHandlerException) cause;
+            if (cause instanceof MessagingException)
+                throw (MessagingException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new MessagingException("Unable to render email template.", (Exception) cause);
+        }
+        if (compiled.isPresent())
+        {
+            final String[] values = new String[variableNames.size()];
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = Strings.nullToEmpty(variables.get(variableNames.get(i)));
+            }
+            return compiled.get().render(values);
+        }
+        return _process(emailTemplate, context, variables);
+    }
+
+    /**
+     * Discard the compiled forms of the given template.
+     *
+     * @param emailTemplate the email template
+     */
+    public void invalidate(@Nonnull EmailTemplate emailTemplate)
+    {
+        final Object templateId = emailTemplate.getId();
+        _cache.asMap().keySet().removeIf(key -> Objects.equals(key.getTemplateId(), templateId));
+    }
+
+    /**
+     * Test if a compiled template may be shared with other messages rendered with the same kind of context.
+     *
+     * @param context the context
+     * @param variableNames the template variables
+     * @param variables the values of the template variables for this message
+     *
+     * @return true if the context has no principal, and no attributes but template variables overridden by the values.
+     */
+    private static boolean _isShared(EmailTemplateContext context, List<String> variableNames,
+        Map<String, String> variables)
+    {
+        if (context.getPrincipal() != null)
+            return false;
+        for (Object name : context.getAttributes().keySet())
+        {
+            if (!variableNames.contains(name) || !variables.containsKey(name))
+                return false;
+        }
+        return true;
+    }
+
+    @Nullable
+    private CompiledEmailTemplate _compile(EmailTemplate emailTemplate, EmailTemplateContext context,
+        List<String> variableNames) throws EmailTemplateException, MailDataHandlerException, MessagingException
+    {
+        final Map<String, String> tokens = new HashMap<>();
+        for (int i = 0; i < variableNames.size(); i++)
+        {
+            tokens.put(variableNames.get(i), _tokenPrefix + i + 'x' + CompiledText.PROBE + _tokenPrefix + 'z');
+        }
+        final MimeMessage prototype = _process(emailTemplate, context, tokens);
+        try
+        {
+            final CompiledEmailTemplate compiled = CompiledEmailTemplate.compile(prototype,
+                Pattern.compile(Pattern.quote(_tokenPrefix) + "(\\d+)x(.*?)" + Pattern.quote(_tokenPrefix) + 'z'),
+                variableNames.size());
+            if (compiled == null)
+                _logger.debug("Email template uses variables in expressions, rendering per message: " + emailTemplate);
+            return compiled;
+        }
+        catch (IOException e)
+        {
+            throw new MessagingException("Unable to read email template content.", e);
+        }
+    }
+
+    private MimeMessage _process(EmailTemplate emailTemplate, EmailTemplateContext context,
+        Map<String, String> variables) throws EmailTemplateException, MailDataHandlerException, MessagingException
+    {
+        final EmailTemplateContext messageContext = new EmailTemplateContext(context.getSite(), context.getLocale(),
+            context.getTimeZone(), context.getMode())
+            .withPrincipal(context.getPrincipal());
+        messageContext.getAttributes().putAll(context.getAttributes());
+        messageContext.getAttributes().putAll(variables);
+        return process(messageContext, emailTemplate);
+    }
+
+    /**
+     * Process a template.
+     *
+     * @param context the context of this message
+     * @param emailTemplate the email template
+     *
+     * @return the message.
+     *
+     * @throws EmailTemplateException if the template could not be processed.
+     * @throws MailDataHandlerException if the template could not be processed.
+     * @throws MessagingException if the message could not be created.
+     */
+    @VisibleForTesting
+    MimeMessage process(EmailTemplateContext context, EmailTemplate emailTemplate)
+        throws EmailTemplateException, MailDataHandlerException, MessagingException
+    {
+        final FileEntityMailDataHandler mdh = _emailTemplateProcessor.process(context, emailTemplate);
+        try (MailMessage mm = new MailMessage(mdh))
+        {
+            return new MimeMessage(mm.getMessage());
+        }
+    }
+
+    /**
+     * Identifies a compiled template.
+     */
+    private static final class RenderKey
+    {
+        private final Object _templateId;
+        private final long _templateVersion;
+        private final Object _siteId;
+        private final Locale _locale;
+        private final TimeZone _timeZone;
+        private final Object _mode;
+
+        RenderKey(EmailTemplate emailTemplate, EmailTemplateContext context)
+        {
+            _templateId = emailTemplate.getId();
+            _siteId = context.getSite() != null ? context.getSite().getId() : null;
+            _locale = context.getLocale();
+            _timeZone = context.getTimeZone();
+            _mode = context.getMode();
+            _templateVersion = Hashing.murmur3_128().newHasher()
+                .putString(Strings.nullToEmpty(emailTemplate.getSubject()), StandardCharsets.UTF_8)
+                .putString(Strings.nullToEmpty(emailTemplate.getPlainTextBody()), StandardCharsets.UTF_8)
+                .putString(Strings.nullToEmpty(emailTemplate.getHtmlBody()), StandardCharsets.UTF_8)
+                .hash().asLong();
+        }
+
+        Object getTemplateId()
+        {
+            return _templateId;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof RenderKey)) return false;
+            RenderKey renderKey = (RenderKey) o;
+            return _templateVersion == renderKey._templateVersion
+                   && Objects.equals(_templateId, renderKey._templateId)
+                   && Objects.equals(_siteId, renderKey._siteId)
+                   && Objects.equals(_locale, renderKey._locale)
+                   && Objects.equals(_timeZone, renderKey._timeZone)
+                   && Objects.equals(_mode, renderKey._mode);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(_templateId, _templateVersion, _siteId, _locale, _timeZone, _mode);
+        }
+    }
+
+    /**
+     * A rendered message with the variables left as slots in its subject and text parts.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    static final class CompiledEmailTemplate
+    {
+        private final MimeMessage _prototype;
+        @Nullable
+        private final CompiledText _subject;
+        private final List<CompiledText> _parts;
+
+        private CompiledEmailTemplate(MimeMessage prototype, @Nullable CompiledText subject, List<CompiledText> parts)
+        {
+            _prototype = prototype;
+            _subject = subject;
+            _parts = parts;
+        }
+
+        /**
+         * Compile a message rendered with a token in place of each variable.
+         *
+         * @param prototype the rendered message
+         * @param token matches a token, with the variable index as group 1 and the {@link CompiledText#PROBE} as
+         * rendered as group 2
+         * @param variableCount the number of variables
+         *
+         * @return the compiled template, or null if a variable does not appear in the message, or is not inserted
+         * as a whole.
+         *
+         * @throws MessagingException if the message could not be read.
+         * @throws IOException if the message could not be read.
+         */
+        @Nullable
+        static CompiledEmailTemplate compile(MimeMessage prototype, Pattern token, int variableCount)
+            throws MessagingException, IOException
+        {
+            final BitSet found = new BitSet(variableCount);
+            final String subject = prototype.getSubject();
+            final CompiledText compiledSubject = subject == null ? null : CompiledText.compile(subject, token, found);
+            final List<CompiledText> parts = new ArrayList<>();
+            if (!_compileParts(prototype, token, found, parts) || (subject != null && compiledSubject == null))
+                return null;
+            if (found.cardinality() < variableCount || found.length() > variableCount)
+                return null;
+            return new CompiledEmailTemplate(prototype, compiledSubject, parts);
+        }
+
+        private static boolean _compileParts(Part part, Pattern token, BitSet found, List<CompiledText> parts)
+            throws MessagingException, IOException
+        {
+            if (part.isMimeType("text/*"))
+            {
+                final CompiledText text = CompiledText.compile((String) part.getContent(), token, found);
+                if (text == null)
+                    return false;
+                parts.add(text);
+            }
+            else if (part.isMimeType("multipart/*"))
+            {
+                final Multipart multipart = (Multipart) part.getContent();
+                for (int i = 0; i < multipart.getCount(); i++)
+                {
+                    if (!_compileParts(multipart.getBodyPart(i), token, found, parts))
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Render a message.
+         *
+         * @param values the variable values, by variable index
+         *
+         * @return a new message
+         *
+         * @throws MessagingException if the message could not be created.
+         */
+        MimeMessage render(String[] values) throws MessagingException
+        {
+            final MimeMessage message = new MimeMessage(_prototype);
+            if (_subject != null && _subject.hasSlots())
+                message.setSubject(_subject.render(values), StandardCharsets.UTF_8.name());
+            try
+            {
+                _renderParts(message, values, 0);
+            }
+            catch (IOException e)
+            {
+                throw new MessagingException("Unable to read email template content.", e);
+            }
+            message.saveChanges();
+            return message;
+        }
+
+        private int _renderParts(Part part, String[] values, int index) throws MessagingException, IOException
+        {
+            int next = index;
+            if (part.isMimeType("text/*"))
+            {
+                final CompiledText text = _parts.get(next++);
+                if (text.hasSlots())
+                {
+                    final ContentType contentType = new ContentType(part.getContentType());
+                    final String charset = contentType.getParameter("charset");
+                    ((MimePart) part).setText(text.render(values),
+                        charset != null ? charset : StandardCharsets.UTF_8.name(), contentType.getSubType());
+                }
+            }
+            else if (part.isMimeType("multipart/*"))
+            {
+                final Multipart multipart = (Multipart) part.getContent();
+                for (int i = 0; i < multipart.getCount(); i++)
+                {
+                    next = _renderParts(multipart.getBodyPart(i), values, next);
+                }
+                part.setContent(multipart);
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Text split into literal segments around variable slots.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    static final class CompiledText
+    {
+        /** Rendered after each token, to learn how the processor escapes a value at that spot */
+        static final String PROBE = "<y&y>y\"y'";
+        private static final String PROBE_CHARS = "<&>\"'";
+
+        private final String[] _literals;
+        private final int[] _slots;
+        /** The replacements of the {@link #PROBE_CHARS} for each slot, or null if a slot is not escaped */
+        private final String[][] _escapes;
+        private final int _literalLength;
+
+        private CompiledText(String[] literals, int[] slots, String[][] escapes)
+        {
+            _literals = literals;
+            _slots = slots;
+            _escapes = escapes;
+            int literalLength = 0;
+            for (String literal : literals)
+            {
+                literalLength += literal.length();
+            }
+            _literalLength = literalLength;
+        }
+
+        /**
+         * Compile text.
+         *
+         * @param text the text
+         * @param token matches a token, with the variable index as group 1 and the {@link #PROBE} as rendered as group 2
+         * @param found set to the variable indexes found
+         *
+         * @return the compiled text, or null if a probe was not rendered one character at a time.
+         */
+        @Nullable
+        static CompiledText compile(String text, Pattern token, BitSet found)
+        {
+            final List<String> literals = new ArrayList<>();
+            final List<Integer> slots = new ArrayList<>();
+            final List<String[]> escapes = new ArrayList<>();
+            final Matcher matcher = token.matcher(text);
+            int start = 0;
+            while (matcher.find())
+            {
+                final int slot = Integer.parseInt(matcher.group(1));
+                final String[] replacements = matcher.group(2).split("y", -1);
+                if (replacements.length != PROBE_CHARS.length())
+                    return null;
+                literals.add(text.substring(start, matcher.start()));
+                slots.add(slot);
+                escapes.add(matcher.group(2).equals(PROBE) ? null : replacements);
+                found.set(slot);
+                start = matcher.end();
+            }
+            literals.add(text.substring(start));
+            return new CompiledText(literals.toArray(new String[literals.size()]),
+                slots.stream().mapToInt(Integer::intValue).toArray(), escapes.toArray(new String[escapes.size()][]));
+        }
+
+        /**
+         * Test if the text has any slots.
+         *
+         * @return true if the text varies by message.
+         */
+        boolean hasSlots()
+        {
+            return _slots.length > 0;
+        }
+
+        /**
+         * Render the text.
+         *
+         * @param values the variable values, by variable index
+         *
+         * @return the text
+         */
+        String render(String[] values)
+        {
+            if (_slots.length == 0)
+                return _literals[0];
+            int length = _literalLength;
+            for (int slot : _slots)
+            {
+                length += values[slot].length();
+            }
+            final StringBuilder text = new StringBuilder(length);
+            for (int i = 0; i < _slots.length; i++)
+            {
+                text.append(_literals[i]);
+                _append(text, values[_slots[i]], _escapes[i]);
+            }
+            return text.append(_literals[_slots.length]).toString();
+        }
+
+        private static void _append(StringBuilder text, String value, @Nullable String[] escapes)
+        {
+            if (escapes == null)
+            {
+                text.append(value);
+                return;
+            }
+            for (int i = 0; i < value.length(); i++)
+            {
+                final char c = value.charAt(i);
+                final int escape = PROBE_CHARS.indexOf(c);
+                if (escape < 0)
+                    text.append(c);
+                else
+                    text.append(escapes[escape]);
+            }
+        }
+    }
+}
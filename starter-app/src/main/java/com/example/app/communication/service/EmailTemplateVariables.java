@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.proteusframework.email.EmailTemplate;
+
+import static java.util.regex.Pattern.compile;
+import static java.util.regex.Pattern.quote;
+import static net.proteusframework.core.StringFactory.isEmptyString;
+
+/**
+ * Input variables of an email template, written as <code>${var_name}</code> within its bodies.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public final class EmailTemplateVariables
+{
+    /** Prefix for email template input variables. */
+    public static final String VAR_PREFIX = "var_";
+
+    private static final Pattern PAT_VAR = compile(quote("${") + '(' + VAR_PREFIX + ".+?)" + quote("}"));
+
+    private EmailTemplateVariables()
+    {
+    }
+
+    /**
+     * Get the variables.
+     *
+     * @param emailTemplate the email template
+     *
+     * @return the variables, in order of first use.
+     */
+    @Nonnull
+    public static List<String> getEmailTemplateVariables(@Nonnull EmailTemplate emailTemplate)
+    {
+        List<String> list = new ArrayList<>();
+        _getVariables(list, emailTemplate.getPlainTextBody());
+        _getVariables(list, emailTemplate.getHtmlBody());
+        return list;
+    }
+
+    private static void _getVariables(List<String> list, @Nullable String body)
+    {
+        if (isEmptyString(body))
+            return;
+        final Matcher matcher = PAT_VAR.matcher(body);
+        while (matcher.find())
+        {
+            final String variable = matcher.group(1);
+            if (!list.contains(variable))
+                list.add(variable);
+        }
+    }
+}
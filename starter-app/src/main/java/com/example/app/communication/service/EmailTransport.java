@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+
+import com.i2rd.mail.model.TrackedEmail;
+
+/**
+ * Sends a batch of messages to a mail provider for {@link EmailDispatcher}.  A transport is opened for each batch and
+ * closed once the batch has been sent.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@FunctionalInterface
+public interface EmailTransport extends AutoCloseable
+{
+    /**
+     * Send a message.
+     *
+     * @param message the message.
+     *
+     * @return the tracked email, if the provider tracks messages.
+     *
+     * @throws MessagingException if the message could not be sent.
+     */
+    @Nullable
+    TrackedEmail send(@Nonnull MimeMessage message) throws MessagingException;
+
+    /**
+     * Release what the transport opened for the batch.  Called once the batch has been sent.
+     */
+    @Override
+    default void close()
+    {
+    }
+}
@@ -13,6 +13,7 @@ package com.example.app.communication.service;
 
 
 import com.example.app.profile.model.Profile;
+import com.example.app.profile.model.user.ContactMethod;
 import com.example.app.profile.model.user.User;
 import com.example.app.support.service.ContactUtil;
 import com.google.common.base.Preconditions;
@@ -21,20 +22,41 @@ import com.ibm.icu.text.BreakIterator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.i2rd.java.qrelay.mail.StaticMailRequest;
 import com.i2rd.mail.MailConfig;
@@ -42,6 +64,7 @@ import com.i2rd.mail.model.TrackedEmail;
 import com.i2rd.qrelay.scheduled.ScheduledRequestProcessor;
 
 import net.proteusframework.core.StringFactory;
+import net.proteusframework.core.hibernate.HibernateSessionHandler;
 import net.proteusframework.core.mail.EmailValidationService;
 import net.proteusframework.core.mail.MailDataHandlerException;
 import net.proteusframework.core.mail.MailMessage;
@@ -83,8 +106,22 @@ public class NotificationService implements ApplicationListener<ContextRefreshed
     private SmsService _smsService;
     @Autowired
     private EmailTemplateProcessor _emailTemplateProcessor;
+    @Autowired
+    private EmailTemplateRenderCache _emailTemplateRenderCache;
+    @Autowired
+    @Qualifier(HibernateSessionHandler.RESOURCE_NAME)
+    private HibernateSessionHandler _sessionHandler;
     @Value("${system.sender}")
     private String _systemSender;
+    @Value("${email-dispatch.workers:4}")
+    private int _emailDispatchWorkers;
+    @Value("${email-dispatch.queue-capacity:10000}")
+    private int _emailDispatchQueueCapacity;
+    @Value("${email-dispatch.batch-size:25}")
+    private int _emailDispatchBatchSize;
+    @Value("${email-dispatch.offer-timeout-millis:1000}")
+    private long _emailDispatchOfferTimeoutMillis;
+    private EmailDispatcher _emailDispatcher;
 
     /**
      * Get the system sender.
@@ -102,6 +139,73 @@ public class NotificationService implements ApplicationListener<ContextRefreshed
         _deploymentContext = DeploymentContext.getContext();
     }
 
+    /**
+     * Post construction.  Start the email dispatcher.
+     */
+    @PostConstruct
+    public void postConstruct()
+    {
+        _emailDispatcher = new EmailDispatcher(this::_openEmailTransport, _emailDispatchWorkers,
+            _emailDispatchQueueCapacity, _emailDispatchBatchSize, _emailDispatchOfferTimeoutMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open a transport for a batch of the email dispatcher.  The batch is sent within its own Hibernate session,
+     * which the mail provider uses to track the messages.
+     *
+     * @return the transport.  Closing it clears the session.
+     */
+    private EmailTransport _openEmailTransport()
+    {
+        _sessionHandler.openSessions();
+        try
+        {
+            final EmailTransport provider = _mailConfig.mailProviderHandler()::sendMessage;
+            return new EmailTransport()
+            {
+                @Nullable
+                @Override
+                public TrackedEmail send(@Nonnull MimeMessage message) throws MessagingException
+                {
+                    return provider.send(message);
+                }
+
+                @Override
+                public void close()
+                {
+                    _sessionHandler.clearSessions();
+                }
+            };
+        }
+        catch (RuntimeException e)
+        {
+            _sessionHandler.clearSessions();
+            throw e;
+        }
+    }
+
+    /**
+     * Pre destruction.  Send the queued email and stop the email dispatcher.
+     */
+    @PreDestroy
+    public void preDestroy()
+    {
+        _emailDispatcher.close();
+        _logger.info("Email dispatch: " + _emailDispatcher.getMetrics());
+    }
+
+    /**
+     * Get the email dispatch metrics: queue depth, throughput and latency of {@link #sendEmailAsync(MailMessage)}.
+     *
+     * @return the metrics.
+     */
+    @Nonnull
+    public EmailDispatcher.Metrics getEmailDispatchMetrics()
+    {
+        return _emailDispatcher.getMetrics();
+    }
+
     /**
      * Send an email.
      *
@@ -161,13 +265,7 @@ public class NotificationService implements ApplicationListener<ContextRefreshed
     {
         try
         {
-            if (_deploymentContext != DeploymentContext.release)
-            {
-                final String contextName = _deploymentContext == DeploymentContext.qa
-                    ? _deploymentContext.name()
-                    : StringFactory.capitalize(_deploymentContext.name());
-                mm.setSubject('{' + contextName + "} " + mm.getSubject());
-            }
+            _prefixSubject(mm);
             final TrackedEmail trackedEmail = _mailConfig.mailProviderHandler().sendMessage(mm.getMessage());
             // NOTE : you should associate the tracked email to the interaction responsible for triggering it.
         }
@@ -240,6 +338,130 @@ public class NotificationService implements ApplicationListener<ContextRefreshed
         }
     }
 
+    /**
+     * Send an email without blocking on the mail provider.  The message is copied, so it may be closed once this
+     * returns.  If the dispatch queue is full, the message is sent on the caller's thread instead.
+     *
+     * @param profile the plan.
+     * @param mm the message.
+     *
+     * @return the delivery receipt.
+     */
+    @Nonnull
+    public CompletableFuture<TrackedEmail> sendEmailAsync(Profile profile, MailMessage mm)
+    {
+        try
+        {
+            _prefixSubject(mm);
+            return _dispatch(mm);
+        }
+        catch (MessagingException e)
+        {
+            _logger.error("Unable to send message.", e);
+            return _failed(e);
+        }
+    }
+
+    /**
+     * Send an email without blocking on the mail provider.  The message is copied, so it may be closed once this
+     * returns.  If the dispatch queue is full, the message is sent on the caller's thread instead.
+     *
+     * @param mm the message.
+     *
+     * @return the delivery receipt.
+     */
+    @Nonnull
+    public CompletableFuture<TrackedEmail> sendEmailAsync(MailMessage mm)
+    {
+        try
+        {
+            return _dispatch(mm);
+        }
+        catch (MessagingException e)
+        {
+            _logger.error("Unable to send message.", e);
+            return _failed(e);
+        }
+    }
+
+    /**
+     * Send an email without blocking on the mail provider.
+     *
+     * @param emailTemplate the email template
+     * @param context the context
+     * @param defaultFromNameSupplier the supplier for the name of the default sender.
+     *
+     * @return the delivery receipt.
+     */
+    @Nonnull
+    public CompletableFuture<TrackedEmail> sendEmailAsync(EmailTemplate emailTemplate, EmailTemplateContext context,
+        @Nullable Supplier<String> defaultFromNameSupplier)
+    {
+        try
+        {
+            final FileEntityMailDataHandler mdh = _emailTemplateProcessor.process(context, emailTemplate);
+            try(MailMessage mm = new MailMessage(mdh))
+            {
+                if(mm.getToRecipients().isEmpty())
+                {
+                    final EmailTemplateRecipient recipientAttribute = context.getRecipientAttribute();
+                    if(recipientAttribute != null)
+                        mm.addTo(recipientAttribute.getEmailAddress());
+                }
+                if(mm.getFrom().isEmpty())
+                {
+                    UnparsedAddress from = new UnparsedAddress(_systemSender,
+                        defaultFromNameSupplier != null ? defaultFromNameSupplier.get() : null);
+                    mm.addFrom(from);
+                }
+                return sendEmailAsync(mm);
+            }
+        }
+        catch(EmailTemplateException | MailDataHandlerException e)
+        {
+            _logger.error("Unable to send message.", e);
+            return _failed(e);
+        }
+    }
+
+    /**
+     * Send an email to one of many recipients of a template without blocking on the mail provider.  The template is
+     * rendered once for the context, and only the template variables are evaluated for each recipient.
+     *
+     * @param emailTemplate the email template
+     * @param context the context shared by every recipient.  It must not be modified while sending.
+     * @param defaultFromNameSupplier the supplier for the name of the default sender.
+     * @param recipient the recipient, if the template does not specify one.
+     * @param variables the values of the template variables for the recipient.
+     *
+     * @return the delivery receipt.
+     *
+     * @see EmailTemplateRenderCache
+     */
+    @Nonnull
+    public CompletableFuture<TrackedEmail> sendEmailAsync(EmailTemplate emailTemplate, EmailTemplateContext context,
+        @Nullable Supplier<String> defaultFromNameSupplier, InternetAddress recipient, Map<String, String> variables)
+    {
+        try
+        {
+            final MimeMessage message = _emailTemplateRenderCache.render(emailTemplate, context, variables);
+            if (message.getRecipients(Message.RecipientType.TO) == null)
+                message.setRecipient(Message.RecipientType.TO, recipient);
+            if (message.getFrom() == null)
+            {
+                UnparsedAddress from = new UnparsedAddress(_systemSender,
+                    defaultFromNameSupplier != null ? defaultFromNameSupplier.get() : null);
+                message.setFrom(from.toInternetAddress());
+            }
+            return _dispatch(message);
+        }
+        catch (EmailTemplateException | MailDataHandlerException | MessagingException e)
+        {
+            _logger.error("Unable to send message.", e);
+            return _failed(e);
+        }
+    }
+
     /**
      * Send an SMS message delaying until an appropriate time if necessary.
      *
@@ -263,33 +485,29 @@ public class NotificationService implements ApplicationListener<ContextRefreshed
     public void sendSMS(User user, PhoneNumber phoneNumber, String content, @Nullable Long delayMillis)
     {
         // FUTURE : make sure SMS messages are delayed if necessary based on user timezone, etc.
-        final Optional<EmailAddress> emailAddress =
-            ContactUtil.getEmailAddress(user.getPrincipal().getContact(), ContactDataCategory.values());
-        if(!emailAddress.isPresent())
-        {
-            _logger.error("Users are required to have an email address. Not sending SMS. User.id = " + user.getId());
-            return;
-        }
-        if(!_emailValidationService.checkForValidDomain(emailAddress.get().getEmail(), false))
-        {
-            _logger.info("User's email address is being filtered/sanitized. Not sending SMS. User.id = " + user.getId());
-            return;
-        }
-
+        if (_isSmsAllowed(user))
+            _sendSms(phoneNumber, content);
+    }
 
-        if (content.length() < SMS_MESSAGE_LIMIT)
-            _smsService.sendSms(phoneNumber, content);
-        else
-        {
-            RateLimiter rateLimiter = RateLimiter.create(1.5);
-            // Space out split message so it isn't interleaved
-            final List<String> parts = splitContent(content);
-            for (String part : parts)
-            {
-                rateLimiter.acquire();
-                _smsService.sendSms(phoneNumber, part);
-            }
-        }
+    /**
+     * Send a notification to many users.  Users are read from the given stream and sent to a chunk at a time as the
+     * returned stream is consumed, so they need not all be held in memory.  Everything the notification needs from a
+     * user is read before the next user, so the users may be streamed from the database, for example by
+     * {@link com.example.app.profile.model.ProfileDAO#streamUsersWithOperation}.
+     *
+     * @param users the users.  Closed when the returned stream is closed.
+     * @param notification the notification.
+     *
+     * @return the outcome for each user, in the order of the users.
+     */
+    @Nonnull
+    public Stream<DeliveryOutcome> sendToAll(@Nonnull Stream<User> users, @Nonnull BulkNotification notification)
+    {
+        final Iterator<DeliveryOutcome> outcomes = new ChunkedDelivery<>(users.iterator(), notification.getChunkSize(),
+            user -> _deliver(user, notification));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(outcomes,
+            Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(users::close);
     }
 
     /**
@@ -337,6 +555,143 @@ public class NotificationService implements ApplicationListener<ContextRefreshed
         }
     }
 
+    private boolean _isSmsAllowed(User user)
+    {
+        final Optional<EmailAddress> emailAddress =
+            ContactUtil.getEmailAddress(user.getPrincipal().getContact(), ContactDataCategory.values());
+        if(!emailAddress.isPresent())
+        {
+            _logger.error("Users are required to have an email address. Not sending SMS. User.id = " + user.getId());
+            return false;
+        }
+        if(!_emailValidationService.checkForValidDomain(emailAddress.get().getEmail(), false))
+        {
+            _logger.info("User's email address is being filtered/sanitized. Not sending SMS. User.id = " + user.getId());
+            return false;
+        }
+        return true;
+    }
+
+    private List<Future<Boolean>> _sendSms(PhoneNumber phoneNumber, String content)
+    {
+        if (content.length() < SMS_MESSAGE_LIMIT)
+            return Collections.singletonList(_smsService.sendSms(phoneNumber, content));
+        RateLimiter rateLimiter = RateLimiter.create(1.5);
+        // Space out split message so it isn't interleaved
+        final List<String> parts = splitContent(content);
+        final List<Future<Boolean>> results = new ArrayList<>(parts.size());
+        for (String part : parts)
+        {
+            rateLimiter.acquire();
+            results.add(_smsService.sendSms(phoneNumber, part));
+        }
+        return results;
+    }
+
+    /**
+     * Start sending a bulk notification to a user.
+     *
+     * @param user the user
+     * @param notification the notification
+     *
+     * @return waits for the outcome
+     */
+    private Supplier<DeliveryOutcome> _deliver(User user, BulkNotification notification)
+    {
+        final Integer userId = user.getId();
+        final Function<User, String> smsContent = notification.getSmsContent();
+        final PhoneNumber smsPhone = user.getSmsPhone();
+        if (smsContent != null && smsPhone != null && user.getPreferredContactMethod() == ContactMethod.PhoneSms)
+        {
+            if (!_isSmsAllowed(user))
+                return () -> new DeliveryOutcome(userId, ContactMethod.PhoneSms, DeliveryOutcome.Status.SKIPPED, null);
+            final List<Future<Boolean>> parts = _sendSms(smsPhone, smsContent.apply(user));
+            return () -> _await(userId, ContactMethod.PhoneSms, parts);
+        }
+        final EmailTemplate emailTemplate = notification.getEmailTemplate();
+        final Optional<EmailAddress> emailAddress =
+            ContactUtil.getEmailAddress(user.getPrincipal().getContact(), ContactDataCategory.values());
+        if (emailTemplate == null || !emailAddress.isPresent())
+            return () -> new DeliveryOutcome(userId, null, DeliveryOutcome.Status.SKIPPED, null);
+        final InternetAddress recipient;
+        try
+        {
+            recipient = new InternetAddress(emailAddress.get().getEmail());
+        }
+        catch (AddressException e)
+        {
+            return () -> new DeliveryOutcome(userId, ContactMethod.Email, DeliveryOutcome.Status.FAILED, e);
+        }
+        final CompletableFuture<TrackedEmail> receipt = sendEmailAsync(emailTemplate,
+            notification.getEmailTemplateContext(), notification.getDefaultFromNameSupplier(), recipient,
+            notification.getEmailVariables().apply(user));
+        return () -> _await(userId, ContactMethod.Email, Collections.singletonList(receipt));
+    }
+
+    private static DeliveryOutcome _await(Integer userId, ContactMethod channel, List<? extends Future<?>> results)
+    {
+        try
+        {
+            for (Future<?> result : results)
+            {
+                // SmsService reports a rejected message as false
+                if (Boolean.FALSE.equals(result.get()))
+                    return new DeliveryOutcome(userId, channel, DeliveryOutcome.Status.FAILED, null);
+            }
+            return new DeliveryOutcome(userId, channel, DeliveryOutcome.Status.SENT, null);
+        }
+        catch (ExecutionException e)
+        {
+            return new DeliveryOutcome(userId, channel, DeliveryOutcome.Status.FAILED, e.getCause());
+        }
+        catch (CancellationException e)
+        {
+            return new DeliveryOutcome(userId, channel, DeliveryOutcome.Status.FAILED, e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return new DeliveryOutcome(userId, channel, DeliveryOutcome.Status.FAILED, e);
+        }
+    }
+
+    private void _prefixSubject(MailMessage mm) throws MessagingException
+    {
+        if (_deploymentContext != DeploymentContext.release)
+        {
+            final String contextName = _deploymentContext == DeploymentContext.qa
+                ? _deploymentContext.name()
+                : StringFactory.capitalize(_deploymentContext.name());
+            mm.setSubject('{' + contextName + "} " + mm.getSubject());
+        }
+    }
+
+    private CompletableFuture<TrackedEmail> _dispatch(MailMessage mm) throws MessagingException
+    {
+        // Copy the message so its content no longer depends on the MailMessage, which the caller may close.
+        return _dispatch(new MimeMessage(mm.getMessage()));
+    }
+
+    private CompletableFuture<TrackedEmail> _dispatch(MimeMessage message) throws MessagingException
+    {
+        try
+        {
+            return _emailDispatcher.submit(message);
+        }
+        catch (RejectedExecutionException e)
+        {
+            _logger.warn("Email dispatch queue is full. Sending on the caller's thread.");
+            return CompletableFuture.completedFuture(_mailConfig.mailProviderHandler().sendMessage(message));
+        }
+    }
+
+    private static CompletableFuture<TrackedEmail> _failed(Exception e)
+    {
+        final CompletableFuture<TrackedEmail> receipt = new CompletableFuture<>();
+        receipt.completeExceptionally(e);
+        return receipt;
+    }
+
     /**
      * Split content list.
      *
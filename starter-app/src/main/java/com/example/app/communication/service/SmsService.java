@@ -13,27 +13,27 @@ package com.example.app.communication.service;
 
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import org.apache.http.client.fluent.Request;
-import org.apache.http.entity.ContentType;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.client.HttpResponseException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Nonnull;
-import java.io.IOException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
-import net.proteusframework.core.config.ExecutorConfig;
-import net.proteusframework.internet.http.ResponseStatus;
 import net.proteusframework.users.model.PhoneNumber;
 
 /**
  * Sms Service Integration.  Provides a consistent API for sending Sms messages programmatically.
+ * <br><br>
+ * Messages are sent by an {@link SmsTransport}, which pools connections to Tropo, throttles and retries requests, and
+ * stops sending while Tropo is failing.
  *
  * @author Alan Holt (aholt@venturetech.net)
  * @since 11/10/15 12:42 PM
@@ -46,14 +46,60 @@ public class SmsService
     /** Logger. */
     private static final Logger _logger = LogManager.getLogger(SmsService.class);
     private static final Pattern PAT_PHONE_SEPARATORS = Pattern.compile("[\\-()]");
-
-    @Autowired
-    private ExecutorConfig _executorConfig;
+    private static final Gson GSON = new Gson();
 
     @Value("${tropo_endpoint}")
     private String _tropoEndpoint;
     @Value("${tropo_message_api_key}")
     private String _tropoMessageApiKey;
+    @Value("${sms.max-connections:20}")
+    private int _maxConnections;
+    @Value("${sms.threads:4}")
+    private int _threads;
+    @Value("${sms.queue-capacity:1000}")
+    private int _queueCapacity;
+    @Value("${sms.permits-per-second:5}")
+    private double _permitsPerSecond;
+    @Value("${sms.max-attempts:4}")
+    private int _maxAttempts;
+    @Value("${sms.initial-backoff-millis:500}")
+    private long _initialBackoffMillis;
+    @Value("${sms.failure-threshold:5}")
+    private int _failureThreshold;
+    @Value("${sms.open-millis:30000}")
+    private long _openMillis;
+    @Value("${sms.timeout-millis:10000}")
+    private long _timeoutMillis;
+
+    private SmsTransport _transport;
+
+    /**
+     * Create the transport.
+     */
+    @PostConstruct
+    public void postConstruct()
+    {
+        _transport = new SmsTransport(_tropoEndpoint, new SmsTransport.Settings()
+            .withMaxConnections(_maxConnections)
+            .withThreads(_threads)
+            .withQueueCapacity(_queueCapacity)
+            .withPermitsPerSecond(_permitsPerSecond)
+            .withMaxAttempts(_maxAttempts)
+            .withInitialBackoff(Duration.ofMillis(_initialBackoffMillis))
+            .withFailureThreshold(_failureThreshold)
+            .withOpenDuration(Duration.ofMillis(_openMillis))
+            .withTimeout(Duration.ofMillis(_timeoutMillis)));
+    }
+
+    /**
+     * Close the transport.
+     */
+    @PreDestroy
+    public void preDestroy()
+    {
+        if (_transport != null)
+            _transport.close();
+    }
 
     /**
      * Send an Sms message to the specified phone number with the given content.
@@ -65,46 +111,38 @@ public class SmsService
      */
     public Future<Boolean> sendSms(@Nonnull final PhoneNumber recipient, @Nonnull final String content)
     {
-        return _executorConfig.executorService().submit(() -> {
-            //All we want is a raw number with a '+' in front -- so we strip the formatting.
-            String numberToDial = PAT_PHONE_SEPARATORS.matcher(recipient.toExternalForm()).replaceAll("");
-
-            Gson gson = new GsonBuilder().create();
+        //All we want is a raw number with a '+' in front -- so we strip the formatting.
+        String numberToDial = PAT_PHONE_SEPARATORS.matcher(recipient.toExternalForm()).replaceAll("");
 
-            TropoRequest request = new TropoRequest();
-            request.action = "create";
-            request.message = content;
-            request.numberToDial = numberToDial;
-            request.token = _tropoMessageApiKey;
+        TropoRequest request = new TropoRequest();
+        request.action = "create";
+        request.message = content;
+        request.numberToDial = numberToDial;
+        request.token = _tropoMessageApiKey;
 
-            try
+        return _transport.post(GSON.toJson(request)).handle((responseString, error) -> {
+            if (error != null)
             {
-                return Request.Post(_tropoEndpoint)
-                    .addHeader("accept", "application/json")
-                    .addHeader("content-type", "application/json")
-                    .bodyString(gson.toJson(request), ContentType.APPLICATION_JSON)
-                    .execute().handleResponse(httpResponse -> {
-                        if (httpResponse.getStatusLine().getStatusCode() != ResponseStatus.OK.getCode())
-                        {
-                            _logger.warn("Sms Message sending failed.  Status code: "
-                                         + httpResponse.getStatusLine().getStatusCode() + " was returned.");
-                            return false;
-                        }
-                        String responseString = EntityUtils.toString(httpResponse.getEntity());
-                        TropoResponse response = gson.fromJson(responseString, TropoResponse.class);
-                        if (response.success == null || !response.success)
-                        {
-                            _logger.warn("Sms Message sending failed. Tropo Response: " + responseString);
-                            return false;
-                        }
-                        return true;
-                    });
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                if (cause instanceof HttpResponseException)
+                {
+                    _logger.warn("Sms Message sending failed.  Status code: "
+                                 + ((HttpResponseException) cause).getStatusCode() + " was returned.");
+                }
+                else
+                {
+                    _logger.error("Unable to send Sms message request to Tropo.", cause);
+                }
+                return false;
             }
-            catch (IOException e)
+            TropoResponse response = GSON.fromJson(responseString, TropoResponse.class);
+            if (response == null || response.success == null || !response.success)
             {
-                _logger.error("Unable to send Sms message request to Tropo.", e);
+                _logger.warn("Sms Message sending failed. Tropo Response: " + responseString);
                 return false;
             }
+            return true;
         });
     }
 }
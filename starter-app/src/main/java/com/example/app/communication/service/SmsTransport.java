@@ -0,0 +1,617 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.fluent.Executor;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Posts JSON requests to an SMS provider endpoint.
+ * <br><br>
+ * Requests are sent over a pool of persistent connections by a dedicated, bounded pool of worker threads, so a slow
+ * provider cannot tie up threads shared with the rest of the application.  Requests are throttled by a token bucket,
+ * and a request the provider did not accept is retried with exponential backoff and jitter.  Sending a message is not
+ * idempotent, so only a request that could not connect, or that was refused with a 429 or 503, is retried: any other
+ * failure may have sent the message already.  Consecutive failures open a circuit breaker, which fails requests
+ * immediately until the provider has had time to recover.
+ * <br><br>
+ * Instances own their connections and threads and must be {@link #close() closed}.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class SmsTransport implements AutoCloseable
+{
+    /** Logger. */
+    private static final Logger _logger = LogManager.getLogger(SmsTransport.class);
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    private final String _endpoint;
+    private final Settings _settings;
+    private final PoolingClientConnectionManager _connectionManager;
+    private final Executor _http;
+    private final ThreadPoolExecutor _workers;
+    private final ScheduledExecutorService _retryScheduler;
+    private final RateLimiter _rateLimiter;
+    private final CircuitBreaker _circuitBreaker;
+
+    /**
+     * Instantiate a new instance of SmsTransport
+     *
+     * @param endpoint the endpoint URL
+     * @param settings the settings
+     */
+    public SmsTransport(@Nonnull String endpoint, @Nonnull Settings settings)
+    {
+        _endpoint = endpoint;
+        _settings = settings;
+        _connectionManager = new PoolingClientConnectionManager();
+        _connectionManager.setMaxTotal(settings.getMaxConnections());
+        _connectionManager.setDefaultMaxPerRoute(settings.getMaxConnections());
+        final DefaultHttpClient client = new DefaultHttpClient(_connectionManager);
+        final HttpParams params = client.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, (int) settings.getTimeout().toMillis());
+        HttpConnectionParams.setSoTimeout(params, (int) settings.getTimeout().toMillis());
+        _http = Executor.newInstance(client);
+        _workers = new ThreadPoolExecutor(settings.getThreads(), settings.getThreads(), 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(settings.getQueueCapacity()),
+            new ThreadFactoryBuilder().setNameFormat("sms-transport-%d").setDaemon(true).build());
+        _retryScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("sms-transport-retry-%d").setDaemon(true).build());
+        _rateLimiter = RateLimiter.create(settings.getPermitsPerSecond());
+        _circuitBreaker = new CircuitBreaker(settings.getFailureThreshold(), settings.getOpenDuration(),
+            System::nanoTime);
+    }
+
+    /**
+     * Post a request.
+     *
+     * @param json the request body
+     *
+     * @return the response body.  Completes exceptionally with an {@link HttpResponseException} if the provider
+     * rejected the request, an {@link IOException} if it could not be reached, or a
+     * {@link RejectedExecutionException} if the request queue is full or the circuit breaker is open.
+     */
+    @Nonnull
+    public CompletableFuture<String> post(@Nonnull String json)
+    {
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        _submit(json, response, 1);
+        return response;
+    }
+
+    /**
+     * Get the circuit breaker state.
+     *
+     * @return the state
+     */
+    @Nonnull
+    public CircuitBreaker.State getCircuitState()
+    {
+        return _circuitBreaker.getState();
+    }
+
+    @Override
+    public void close()
+    {
+        _retryScheduler.shutdownNow();
+        _workers.shutdown();
+        try
+        {
+            if (!_workers.awaitTermination(_settings.getTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                _workers.shutdownNow();
+        }
+        catch (InterruptedException e)
+        {
+            _workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        _connectionManager.shutdown();
+    }
+
+    private void _submit(String json, CompletableFuture<String> response, int attempt)
+    {
+        try
+        {
+            _workers.execute(() -> _attempt(json, response, attempt));
+        }
+        catch (RejectedExecutionException e)
+        {
+            response.completeExceptionally(e);
+        }
+    }
+
+    private void _attempt(String json, CompletableFuture<String> response, int attempt)
+    {
+        if (!_circuitBreaker.allowRequest())
+        {
+            response.completeExceptionally(new RejectedExecutionException("SMS provider circuit breaker is open."));
+            return;
+        }
+        _rateLimiter.acquire();
+        try
+        {
+            final String body = _http.execute(Request.Post(_endpoint)
+                .addHeader("accept", "application/json")
+                .bodyString(json, ContentType.APPLICATION_JSON))
+                .handleResponse(httpResponse -> {
+                    final int status = httpResponse.getStatusLine().getStatusCode();
+                    if (status < 200 || status >= 300)
+                        throw new HttpResponseException(status, httpResponse.getStatusLine().getReasonPhrase());
+                    return httpResponse.getEntity() != null ? EntityUtils.toString(httpResponse.getEntity()) : "";
+                });
+            _circuitBreaker.recordSuccess();
+            response.complete(body);
+        }
+        catch (HttpResponseException e)
+        {
+            final int status = e.getStatusCode();
+            if (status >= HTTP_SERVER_ERROR || status == HTTP_TOO_MANY_REQUESTS)
+            {
+                _circuitBreaker.recordFailure();
+                if (isRetryable(e))
+                    _retryOrFail(json, response, attempt, e);
+                else
+                    response.completeExceptionally(e);
+            }
+            else
+            {
+                // The provider is up, it rejected this request.
+                _circuitBreaker.recordSuccess();
+                response.completeExceptionally(e);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            _circuitBreaker.recordFailure();
+            if (isRetryable(e))
+                _retryOrFail(json, response, attempt, e);
+            else
+                response.completeExceptionally(e);
+        }
+    }
+
+    private void _retryOrFail(String json, CompletableFuture<String> response, int attempt, Exception e)
+    {
+        if (attempt >= _settings.getMaxAttempts())
+        {
+            response.completeExceptionally(e);
+            return;
+        }
+        final long delay = getBackoffMillis(_settings.getInitialBackoff().toMillis(), attempt);
+        _logger.debug("SMS request failed, retrying in " + delay + "ms: " + e);
+        try
+        {
+            _retryScheduler.schedule(() -> _submit(json, response, attempt + 1), delay, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException closed)
+        {
+            response.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Test if a failed request may be sent again without risk of sending the message twice: it never reached the
+     * provider, or the provider refused it without processing it.
+     *
+     * @param failure the failure
+     *
+     * @return true if the request may be retried.
+     */
+    @VisibleForTesting
+    static boolean isRetryable(@Nonnull Throwable failure)
+    {
+        if (failure instanceof HttpResponseException)
+        {
+            final int status = ((HttpResponseException) failure).getStatusCode();
+            return status == HTTP_TOO_MANY_REQUESTS || status == HTTP_SERVICE_UNAVAILABLE;
+        }
+        // Includes a timeout waiting for a pooled connection
+        return failure instanceof ConnectException
+               || failure instanceof ConnectTimeoutException
+               || failure instanceof UnknownHostException;
+    }
+
+    /**
+     * Get the delay before retrying: the initial backoff doubled for every failed attempt, with jitter of up to half
+     * the delay so retries of requests that failed together are spread out.
+     *
+     * @param initialBackoffMillis the initial backoff
+     * @param attempt the number of the attempt that failed, starting at 1
+     *
+     * @return the delay in milliseconds
+     */
+    @VisibleForTesting
+    static long getBackoffMillis(long initialBackoffMillis, int attempt)
+    {
+        final long delay = initialBackoffMillis << Math.min(attempt - 1, 20);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * SmsTransport settings.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    public static final class Settings
+    {
+        private int _maxConnections = 20;
+        private int _threads = 4;
+        private int _queueCapacity = 1_000;
+        private double _permitsPerSecond = 5.0;
+        private int _maxAttempts = 4;
+        private Duration _initialBackoff = Duration.ofMillis(500L);
+        private int _failureThreshold = 5;
+        private Duration _openDuration = Duration.ofSeconds(30L);
+        private Duration _timeout = Duration.ofSeconds(10L);
+
+        /**
+         * Set the maximum number of pooled connections.
+         *
+         * @param maxConnections the maximum number of connections
+         *
+         * @return this.
+         */
+        @Nonnull
+        public Settings withMaxConnections(int maxConnections)
+        {
+            Preconditions.checkArgument(maxConnections > 0, "maxConnections must be positive");
+            _maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * Set the number of worker threads.
+         *
+         * @param threads the number of threads
+         *
+         * @return this.
+         */
+        @Nonnull
+        public Settings withThreads(int threads)
+        {
+            Preconditions.checkArgument(threads > 0, "threads must be positive");
+            _threads = threads;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of requests waiting for a worker.
+         *
+         * @param queueCapacity the queue capacity
+         *
+         * @return this.
+         */
+        @Nonnull
+        public Settings withQueueCapacity(int queueCapacity)
+        {
+            Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be positive");
+            _queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Set the rate requests are sent at, including retries.
+         *
+         * @param permitsPerSecond the requests per second
+         *
+         * @return this.
+         */
+        @Nonnull
+        public Settings withPermitsPerSecond(double permitsPerSecond)
+        {
+            Preconditions.checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive");
+            _permitsPerSecond = permitsPerSecond;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of attempts to send a request.
+         *
+         * @param maxAttempts the maximum attempts, 1 to disable retries
+         *
+         * @return this.
+         */
+        @Nonnull
+        public Settings withMaxAttempts(int maxAttempts)
+        {
+            Preconditions.checkArgument(maxAttempts > 0, "maxAttempts must be positive");
+            _maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Set the delay before the first retry.  The delay doubles for each retry after that.
+         *
+         * @param initialBackoff the initial backoff
+         *
+         * @return this.
+         */
+        @Nonnull
+        public Settings withInitialBackoff(@Nonnull Duration initialBackoff)
+        {
+            Preconditions.checkArgument(!initialBackoff.isNegative(), "initialBackoff must not be negative");
+            _initialBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * Set the number of consecutive failures that opens the circuit breaker.
+         *
+         * @param failureThreshold the failure threshold
+         *
+         * @return this.
+         */
+        @Nonnull
+        public Settings withFailureThreshold(int failureThreshold)
+        {
+            Preconditions.checkArgument(failureThreshold > 0, "failureThreshold must be positive");
+            _failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * Set how long the circuit breaker stays open before a trial request is allowed.
+         *
+         * @param openDuration the open duration
+         *
+         * @return this.
+         */
+        @Nonnull
+        public Settings withOpenDuration(@Nonnull Duration openDuration)
+        {
+            Preconditions.checkArgument(!openDuration.isNegative(), "openDuration must not be negative");
+            _openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * Set the connect and read timeout.
+         *
+         * @param timeout the timeout
+         *
+         * @return this.
+         */
+        @Nonnull
+        public Settings withTimeout(@Nonnull Duration timeout)
+        {
+            Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive");
+            _timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Get the maximum number of pooled connections
+         *
+         * @return the maximum number of connections
+         */
+        public int getMaxConnections()
+        {
+            return _maxConnections;
+        }
+
+        /**
+         * Get the number of worker threads
+         *
+         * @return the number of threads
+         */
+        public int getThreads()
+        {
+            return _threads;
+        }
+
+        /**
+         * Get the maximum number of requests waiting for a worker
+         *
+         * @return the queue capacity
+         */
+        public int getQueueCapacity()
+        {
+            return _queueCapacity;
+        }
+
+        /**
+         * Get the rate requests are sent at
+         *
+         * @return the requests per second
+         */
+        public double getPermitsPerSecond()
+        {
+            return _permitsPerSecond;
+        }
+
+        /**
+         * Get the maximum number of attempts to send a request
+         *
+         * @return the maximum attempts
+         */
+        public int getMaxAttempts()
+        {
+            return _maxAttempts;
+        }
+
+        /**
+         * Get the delay before the first retry
+         *
+         * @return the initial backoff
+         */
+        @Nonnull
+        public Duration getInitialBackoff()
+        {
+            return _initialBackoff;
+        }
+
+        /**
+         * Get the number of consecutive failures that opens the circuit breaker
+         *
+         * @return the failure threshold
+         */
+        public int getFailureThreshold()
+        {
+            return _failureThreshold;
+        }
+
+        /**
+         * Get how long the circuit breaker stays open
+         *
+         * @return the open duration
+         */
+        @Nonnull
+        public Duration getOpenDuration()
+        {
+            return _openDuration;
+        }
+
+        /**
+         * Get the connect and read timeout
+         *
+         * @return the timeout
+         */
+        @Nonnull
+        public Duration getTimeout()
+        {
+            return _timeout;
+        }
+    }
+
+    /**
+     * Fails requests fast after consecutive failures.  Opens after the failure threshold is reached, then after the
+     * open duration allows a single trial request: success closes the breaker, failure opens it again.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    public static final class CircuitBreaker
+    {
+        /**
+         * Circuit breaker state.
+         *
+         * @author Alan Holt (aholt@venturetech.net)
+         */
+        public enum State
+        {
+            /** Requests are allowed */
+            CLOSED,
+            /** Requests fail fast */
+            OPEN,
+            /** A trial request is in flight */
+            HALF_OPEN
+        }
+
+        private final int _failureThreshold;
+        private final long _openNanos;
+        private final LongSupplier _nanoClock;
+        private State _state = State.CLOSED;
+        private int _failures;
+        private long _openedAt;
+
+        /**
+         * Instantiate a new instance of CircuitBreaker
+         *
+         * @param failureThreshold the number of consecutive failures that opens the breaker
+         * @param openDuration how long the breaker stays open before a trial request is allowed
+         * @param nanoClock the clock, as {@link System#nanoTime()}
+         */
+        CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier nanoClock)
+        {
+            _failureThreshold = failureThreshold;
+            _openNanos = openDuration.toNanos();
+            _nanoClock = nanoClock;
+        }
+
+        /**
+         * Test if a request may be sent.
+         *
+         * @return true if the request may be sent.
+         */
+        synchronized boolean allowRequest()
+        {
+            switch (_state)
+            {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (_nanoClock.getAsLong() - _openedAt < _openNanos)
+                        return false;
+                    _state = State.HALF_OPEN;
+                    return true;
+                case HALF_OPEN:
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Record a successful request.
+         */
+        synchronized void recordSuccess()
+        {
+            _state = State.CLOSED;
+            _failures = 0;
+        }
+
+        /**
+         * Record a failed request.
+         */
+        synchronized void recordFailure()
+        {
+            if (_state == State.HALF_OPEN || ++_failures >= _failureThreshold)
+            {
+                if (_state != State.OPEN)
+                    _logger.warn("SMS provider circuit breaker opened.");
+                _state = State.OPEN;
+                _openedAt = _nanoClock.getAsLong();
+                _failures = 0;
+            }
+        }
+
+        /**
+         * Get the state
+         *
+         * @return the state
+         */
+        @Nonnull
+        synchronized State getState()
+        {
+            return _state;
+        }
+    }
+}
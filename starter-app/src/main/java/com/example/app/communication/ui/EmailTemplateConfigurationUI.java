@@ -11,6 +11,8 @@
 
 package com.example.app.communication.ui;
 
+import com.example.app.communication.service.EmailTemplateRenderCache;
+import com.example.app.communication.service.EmailTemplateVariables;
 import com.example.app.profile.model.Profile;
 import com.example.app.profile.service.SelectedCompanyTermProvider;
 import com.google.common.base.Preconditions;
@@ -41,8 +43,6 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import com.i2rd.cms.backend.files.FileField;
 import com.i2rd.cms.miwt.LinkChooser;
@@ -98,8 +98,6 @@ import net.proteusframework.users.model.dao.PrincipalDAO;
 import static com.example.app.communication.ui.EmailTemplateConfigurationUILOK.*;
 import static com.example.app.profile.ui.UIText.PROFILE;
 import static java.util.Optional.ofNullable;
-import static java.util.regex.Pattern.compile;
-import static java.util.regex.Pattern.quote;
 import static net.proteusframework.core.StringFactory.capitalize;
 import static net.proteusframework.core.StringFactory.isEmptyString;
 import static net.proteusframework.core.locale.TextSources.createText;
@@ -131,9 +129,8 @@ import static net.proteusframework.core.locale.TextSources.createText;
 public class EmailTemplateConfigurationUI extends Container
 {
     /** Prefix for email template input variables. */
-    public static final String VAR_PREFIX = "var_";
+    public static final String VAR_PREFIX = EmailTemplateVariables.VAR_PREFIX;
 
-    private static final Pattern PAT_VAR = compile(quote("${") + '(' + VAR_PREFIX + ".+?)" + quote("}"));
     private static final Logger _logger = LogManager.getLogger(EmailTemplateConfigurationUI.class);
 
     /**
@@ -307,6 +304,8 @@ public class EmailTemplateConfigurationUI extends Container
     @Autowired
     private EmailTemplateProcessor _emailTemplateProcessor;
     @Autowired
+    private EmailTemplateRenderCache _emailTemplateRenderCache;
+    @Autowired
     private SelectedCompanyTermProvider _profileTermProvider;
     @Autowired
     private CmsFrontendDAO _siteContext;
@@ -320,19 +319,6 @@ public class EmailTemplateConfigurationUI extends Container
     private final AtomicReference<String> _modifiedSubject = new AtomicReference<>();
     private String _processedSubject;
 
-    private static void _getVariables(List<String> list, String body)
-    {
-        if (isEmptyString(body))
-            return;
-        final Matcher matcher = PAT_VAR.matcher(body);
-        while (matcher.find())
-        {
-            final String variable = matcher.group(1);
-            if (!list.contains(variable))
-                list.add(variable);
-        }
-    }
-
     /**
      * Get the body as text from the email data. HTML content will be cleaned for inclusion in an HTML document.
      *
@@ -378,10 +364,7 @@ public class EmailTemplateConfigurationUI extends Container
      */
     public static List<String> getEmailTemplateVariables(EmailTemplate emailTemplate)
     {
-        List<String> list = new ArrayList<>();
-        _getVariables(list, emailTemplate.getPlainTextBody());
-        _getVariables(list, emailTemplate.getHtmlBody());
-        return list;
+        return EmailTemplateVariables.getEmailTemplateVariables(emailTemplate);
     }
 
     /**
@@ -634,6 +617,8 @@ public class EmailTemplateConfigurationUI extends Container
         {
             return;
         }
+        // The template may have been edited since it was last sent.
+        _emailTemplateRenderCache.invalidate(emailTemplate);
 
         CmsSite site = _siteContext.getOperationalSite();
         try
@@ -12,9 +12,12 @@
 package com.example.app.config;
 
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
 
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
+
 import net.proteusframework.core.cache.AbstractCacheRegionsConfiguration;
 
 /**
@@ -48,6 +51,14 @@ public class ProjectCacheRegions extends AbstractCacheRegionsConfiguration
     public static final String ENTITY_DATA = DATA_PREFIX + '.' + ENTITY_SUFFIX;
     /** Entity query cache region */
     public static final String ENTITY_QUERY = QUERY_PREFIX + '.' + ENTITY_SUFFIX;
+    /** The suffix to use for admin role cache regions */
+    private static final String ADMIN_ROLE_SUFFIX = "adminrole";
+    /** Admin role resolution cache region, keyed on principal id */
+    public static final String ADMIN_ROLE_DATA = DATA_PREFIX + '.' + ADMIN_ROLE_SUFFIX;
+    /** The suffix to use for membership permission cache regions */
+    private static final String MEMBERSHIP_PERMISSION_SUFFIX = "membershippermission";
+    /** Membership permission index cache region, keyed on user id */
+    public static final String MEMBERSHIP_PERMISSION_DATA = DATA_PREFIX + '.' + MEMBERSHIP_PERMISSION_SUFFIX;
 
 
     /** Max TTI for data cache regions */
@@ -58,10 +69,20 @@ public class ProjectCacheRegions extends AbstractCacheRegionsConfiguration
     private static final int MAX_DATA_ENTRIES = 1000;
     /** Max entries for query cache regions */
     private static final int MAX_QUERY_ENTRIES = 300;
+    /** Max TTI for the admin role cache region */
+    private static final int MAX_ADMIN_ROLE_TTI = 600;
+    /** Max TTI for the membership permission cache region */
+    private static final int MAX_MEMBERSHIP_PERMISSION_TTI = 600;
+    /** Max entries for the membership permission cache region */
+    private static final int MAX_MEMBERSHIP_PERMISSION_ENTRIES = 10_000;
+
+    private CacheManager _cacheManager;
 
     @Override
     public void applyConfiguration(CacheManager manager)
     {
+        _cacheManager = manager;
+
         setupRegion(manager, PROFILE_DATA, MAX_DATA_TTI, MAX_DATA_ENTRIES);
         setupRegion(manager, MEMBER_DATA, MAX_DATA_TTI, MAX_DATA_ENTRIES);
         setupRegion(manager, ENTITY_DATA, MAX_DATA_TTI, MAX_DATA_ENTRIES);
@@ -69,5 +90,22 @@ public class ProjectCacheRegions extends AbstractCacheRegionsConfiguration
         setupRegion(manager, PROFILE_QUERY, MAX_QUERY_TTI, 500);
         setupRegion(manager, MEMBER_QUERY, MAX_QUERY_TTI, 500);
         setupRegion(manager, ENTITY_QUERY, MAX_QUERY_TTI, MAX_QUERY_ENTRIES);
+
+        setupRegion(manager, ADMIN_ROLE_DATA, MAX_ADMIN_ROLE_TTI, MAX_DATA_ENTRIES);
+        setupRegion(manager, MEMBERSHIP_PERMISSION_DATA, MAX_MEMBERSHIP_PERMISSION_TTI,
+            MAX_MEMBERSHIP_PERMISSION_ENTRIES);
+    }
+
+    /**
+     * Get the cache for one of the regions configured by this class.
+     *
+     * @param region the region name
+     *
+     * @return the cache, or null if the configuration has not been applied yet
+     */
+    @Nullable
+    public Ehcache getCache(String region)
+    {
+        return _cacheManager != null ? _cacheManager.getEhcache(region) : null;
     }
 }
@@ -123,6 +123,18 @@ public class ProjectConfig implements ApplicationListener<ContextRefreshedEvent>
         return "com.example.app.profile";
     }
 
+    /**
+     * Package to scan for annotated entities.
+     *
+     * @return bean.
+     */
+    @Bean()
+    @LocationQualifier(entity_location)
+    public String annotatedEntityScanSupport()
+    {
+        return "com.example.app.support.model";
+    }
+
     /**
      * Scan com.example for HBM XML files.
      *
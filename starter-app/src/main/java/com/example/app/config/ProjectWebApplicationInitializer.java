@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.config;
+
+import com.example.app.support.service.ImageRenditionServlet;
+import org.springframework.web.WebApplicationInitializer;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Registers the servlets of the project.  When launching with Cms.main, this package must be included in
+ * "Cms.ServerOptions.configurationPackage", as described in {@link ProjectConfig}.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class ProjectWebApplicationInitializer implements WebApplicationInitializer
+{
+    @Override
+    public void onStartup(ServletContext servletContext)
+    {
+        servletContext.addServlet("imageRendition", ImageRenditionServlet.class)
+            .addMapping(ImageRenditionServlet.PATH + '*');
+    }
+}
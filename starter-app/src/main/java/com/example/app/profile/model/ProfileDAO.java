@@ -12,16 +12,25 @@
 package com.example.app.profile.model;
 
 import com.example.app.config.ProjectCacheRegions;
+import com.example.app.config.ProjectConfig;
 import com.example.app.profile.model.membership.Membership;
 import com.example.app.profile.model.membership.MembershipOperation;
+import com.example.app.profile.model.membership.MembershipPermissionIndex;
 import com.example.app.profile.model.membership.MembershipType;
 import com.example.app.profile.model.membership.MembershipTypeInfo;
 import com.example.app.profile.model.user.User;
 import com.example.app.support.service.AppUtil;
+import com.example.app.support.service.BulkUpdates;
 import com.google.common.base.Preconditions;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.FlushMode;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.envers.AuditReaderFactory;
+import org.hibernate.envers.RevisionType;
 import org.jetbrains.annotations.Contract;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -34,18 +43,31 @@ import javax.annotation.Nullable;
 import javax.validation.ConstraintViolationException;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.sql.PreparedStatement;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TimeZone;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.i2rd.hibernate.util.HibernateUtil;
 
@@ -83,16 +105,58 @@ import static net.proteusframework.ui.search.QLBuilder.JoinType.INNER;
 @Lazy
 public class ProfileDAO extends DAOHelper implements Serializable
 {
+    /** Max range of Membership ids updated within one statement when a MembershipType's default operations change */
+    public static final int MEMBERSHIP_UPDATE_CHUNK_SIZE = 5_000;
     /** Logger. */
     private static final Logger _logger = LogManager.getLogger(ProfileDAO.class);
     private static final long serialVersionUID = 7736105536343360133L;
+    /** The suffix Envers gives audit tables */
+    private static final String AUDIT_TABLE_SUFFIX = "_AUD";
+    /** The default operations missing from the Memberships of a MembershipType within a range of ids */
+    private static final String MISSING_DEFAULT_OPERATIONS_SQL =
+        "FROM " + ProjectConfig.PROJECT_SCHEMA + '.' + Membership.TABLE_NAME + " m\n"
+        + "INNER JOIN " + ProjectConfig.PROJECT_SCHEMA + '.' + MembershipType.OPERATIONS_JOIN_TABLE + " mto"
+        + " ON mto." + MembershipType.ID_COLUMN + " = m." + Membership.MEMBERSHIP_TYPE_COLUMN + "\n"
+        + "WHERE m." + Membership.MEMBERSHIP_TYPE_COLUMN + " = ? AND m." + Membership.ID_COLUMN + " BETWEEN ? AND ?\n"
+        + "AND NOT EXISTS (SELECT 1 FROM " + ProjectConfig.PROJECT_SCHEMA + '.' + Membership.OPERATIONS_JOIN_TABLE + " mo"
+        + " WHERE mo." + Membership.ID_COLUMN + " = m." + Membership.ID_COLUMN
+        + " AND mo." + MembershipOperation.ID_COLUMN + " = mto." + MembershipOperation.ID_COLUMN + ')';
+    private static final String INSERT_DEFAULT_OPERATIONS_SQL =
+        "INSERT INTO " + ProjectConfig.PROJECT_SCHEMA + '.' + Membership.OPERATIONS_JOIN_TABLE
+        + " (" + Membership.ID_COLUMN + ", " + MembershipOperation.ID_COLUMN + ")\n"
+        + "SELECT m." + Membership.ID_COLUMN + ", mto." + MembershipOperation.ID_COLUMN + "\n"
+        + MISSING_DEFAULT_OPERATIONS_SQL;
+    /** Records the operations inserted by {@link #INSERT_DEFAULT_OPERATIONS_SQL} as Envers would */
+    private static final String AUDIT_DEFAULT_OPERATIONS_SQL =
+        "INSERT INTO " + ProjectConfig.ENVERS_SCHEMA + '.' + Membership.OPERATIONS_JOIN_TABLE + AUDIT_TABLE_SUFFIX
+        + " (REV, revtype, " + Membership.ID_COLUMN + ", " + MembershipOperation.ID_COLUMN + ")\n"
+        + "SELECT ?, " + RevisionType.ADD.getRepresentation() + ", m." + Membership.ID_COLUMN
+        + ", mto." + MembershipOperation.ID_COLUMN + "\n"
+        + MISSING_DEFAULT_OPERATIONS_SQL;
+    /** Records a modification of each Membership changed by {@link #INSERT_DEFAULT_OPERATIONS_SQL} as Envers would */
+    private static final String AUDIT_MEMBERSHIPS_SQL =
+        "INSERT INTO " + ProjectConfig.ENVERS_SCHEMA + '.' + Membership.TABLE_NAME + AUDIT_TABLE_SUFFIX
+        + " (" + Membership.ID_COLUMN + ", REV, revtype, " + Membership.START_DATE_PROP + ", "
+        + Membership.END_DATE_PROP + ", " + Membership.MEMBERSHIP_TYPE_COLUMN + ", " + Membership.PROFILE_COLUMN + ", "
+        + Membership.USER_COLUMN + ")\n"
+        + "SELECT DISTINCT m." + Membership.ID_COLUMN + ", ?, " + RevisionType.MOD.getRepresentation()
+        + ", m." + Membership.START_DATE_PROP + ", m." + Membership.END_DATE_PROP
+        + ", m." + Membership.MEMBERSHIP_TYPE_COLUMN + ", m." + Membership.PROFILE_COLUMN
+        + ", m." + Membership.USER_COLUMN + "\n"
+        + MISSING_DEFAULT_OPERATIONS_SQL;
 
     @Autowired
     private transient AppUtil _appUtil;
     @Autowired
     private transient EntityRetriever _er;
+    @Autowired
+    private transient MembershipPermissionIndex _permissionIndex;
     @Value("#{new Boolean('${update-memberships:false}')}")
     private transient Boolean _updateMemberships;
+    @Value("#{new Boolean('${membership-permission-index:true}')}")
+    private transient Boolean _usePermissionIndex;
+    @Value("#{new Boolean('${membership-permission-index.verify:false}')}")
+    private transient Boolean _verifyPermissionIndex;
 
     /**
      * Returns a boolean flag on whether or not the given User can perform the given MembershipOperations on the given Profile
@@ -131,26 +195,23 @@ public class ProfileDAO extends DAOHelper implements Serializable
             return false;
         final Date now = convertForPersistence(getZonedDateTimeForComparison(timeZone));
         Preconditions.checkArgument(operations.length > 0);
-        final Query query = getSession().createQuery(
-            "SELECT COUNT(m) FROM Membership m INNER JOIN m.profile p\n"
-            + " INNER JOIN m.operations  op\n"
-            + " WHERE m.user = :user\n"
-            + " AND p IN (:profiles)\n"
-            + " AND op IN (:operations)\n"
-            + " AND (m.startDate IS NULL OR m.startDate <= :today)\n"
-            + " AND (m.endDate IS NULL OR m.endDate >= :today)\n"
-            + " GROUP BY m\n"
-            + "  HAVING COUNT(op) = :operationCount");
-        query.setCacheable(true).setCacheRegion(ProjectCacheRegions.PROFILE_QUERY);
-        query.setParameter("user", user);
-        query.setParameterList("profiles", profiles);
-        query.setParameterList("operations", operations);
-        query.setParameter("today", now);
-        query.setInteger("operationCount", operations.length);
-        return Optional.ofNullable(((Number) query.uniqueResult()))
-            .map(Number::intValue)
-            .map(i -> i > 0)
-            .orElse(false);
+        if (!_usePermissionIndex)
+            return _canOperateQuery(user, profiles, now, operations);
+        final List<Integer> profileIds = profiles.stream().map(Profile::getId).collect(Collectors.toList());
+        final boolean result = _permissionIndex.getPermissions(user)
+            .canOperate(profileIds, now.getTime(), _getOperationIds(operations));
+        if (_verifyPermissionIndex)
+        {
+            final boolean expected = _canOperateQuery(user, profiles, now, operations);
+            if (expected != result)
+            {
+                _logger.warn("Membership permission index mismatch for " + user + " on profiles " + profileIds
+                             + " and operations " + Arrays.toString(operations) + ".  Index: " + result + ", query: " + expected);
+                _permissionIndex.evict(user.getId());
+                return expected;
+            }
+        }
+        return result;
     }
 
     /**
@@ -171,26 +232,81 @@ public class ProfileDAO extends DAOHelper implements Serializable
         if (user == null || profileType == null) return false;
         Preconditions.checkArgument(operations.length > 0);
         final Date now = convertForPersistence(getZonedDateTimeForComparison(timeZone));
-        final Query query = getSession().createQuery(
-            "SELECT COUNT(m) FROM Membership m INNER JOIN m.profile p INNER JOIN p.profileType pt\n"
+        if (!_usePermissionIndex || profileType.getId() == null)
+            return _canOperateQuery(user, profileType, now, operations);
+        final boolean result = _permissionIndex.getPermissions(user)
+            .canOperateOnProfileType(profileType.getId(), now.getTime(), _getOperationIds(operations));
+        if (_verifyPermissionIndex)
+        {
+            final boolean expected = _canOperateQuery(user, profileType, now, operations);
+            if (expected != result)
+            {
+                _logger.warn("Membership permission index mismatch for " + user + " on " + profileType
+                             + " and operations " + Arrays.toString(operations) + ".  Index: " + result + ", query: " + expected);
+                _permissionIndex.evict(user.getId());
+                return expected;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check the given MembershipOperations for the given User against many Profiles at once.
+     * This replaces one {@link #canOperate(User, Profile, TimeZone, MembershipOperation...)} call per Profile and operation
+     * with a single lookup, which is useful for search result rows and action columns.
+     *
+     * @param user the User, may be null
+     * @param profiles the Profiles
+     * @param timeZone the timezone.
+     * @param operations the MembershipOperations to check.  At most {@link ProfilePermissionMatrix#MAX_OPERATIONS}.
+     *
+     * @return the permission matrix of Profile to granted operations
+     */
+    @Nonnull
+    public ProfilePermissionMatrix getPermissionMatrix(@Nullable User user, @Nonnull Collection<? extends Profile> profiles,
+        TimeZone timeZone, @Nonnull MembershipOperation... operations)
+    {
+        Preconditions.checkArgument(operations.length > 0);
+        final ProfilePermissionMatrix.Builder builder = new ProfilePermissionMatrix.Builder(operations);
+        if(user != null && _appUtil.userHasAdminRole(user)) return builder.buildUnrestricted();
+        final Set<Integer> profileIds = profiles.stream()
+            .filter(Objects::nonNull)
+            .map(Profile::getId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+        if (user == null || profileIds.isEmpty())
+            return builder.build();
+        final Date now = convertForPersistence(getZonedDateTimeForComparison(timeZone));
+        if (_usePermissionIndex)
+        {
+            _permissionIndex.getPermissions(user).forEachActiveMembership(profileIds, now.getTime(), builder::grant);
+            return builder.build();
+        }
+        @SuppressWarnings("unchecked")
+        final List<Object[]> rows = getSession().createQuery(
+            "SELECT m.id, p.id, op.id FROM Membership m INNER JOIN m.profile p\n"
             + " INNER JOIN m.operations  op\n"
             + " WHERE m.user = :user\n"
-            + " AND pt.id = :profileTypeId\n"
+            + " AND p.id IN (:profileIds)\n"
             + " AND op IN (:operations)\n"
             + " AND (m.startDate IS NULL OR m.startDate <= :today)\n"
-            + " AND (m.endDate IS NULL OR m.endDate >= :today)\n"
-            + " GROUP BY m\n"
-            + "  HAVING COUNT(op) = :operationCount");
-        query.setCacheable(true).setCacheRegion(ProjectCacheRegions.PROFILE_QUERY);
-        query.setParameter("user", user);
-        query.setParameter("profileTypeId", profileType.getId());
-        query.setParameterList("operations", operations);
-        query.setParameter("today", now);
-        query.setInteger("operationCount", operations.length);
-        return Optional.ofNullable(((Number) query.uniqueResult()))
-            .map(Number::intValue)
-            .map(i -> i > 0)
-            .orElse(false);
+            + " AND (m.endDate IS NULL OR m.endDate >= :today)")
+            .setCacheable(true).setCacheRegion(ProjectCacheRegions.PROFILE_QUERY)
+            .setParameter("user", user)
+            .setParameterList("profileIds", profileIds)
+            .setParameterList("operations", operations)
+            .setParameter("today", now)
+            .list();
+        final Map<Integer, Integer> membershipProfiles = new HashMap<>();
+        final Map<Integer, List<Integer>> membershipOperations = new HashMap<>();
+        for (Object[] row : rows)
+        {
+            membershipProfiles.put((Integer) row[0], (Integer) row[1]);
+            membershipOperations.computeIfAbsent((Integer) row[0], id -> new ArrayList<>()).add((Integer) row[2]);
+        }
+        membershipOperations.forEach((membershipId, operationIds) -> builder.grant(
+            membershipProfiles.get(membershipId), operationIds.stream().mapToInt(Integer::intValue).toArray()));
+        return builder.build();
     }
 
     /**
@@ -314,7 +430,8 @@ public class ProfileDAO extends DAOHelper implements Serializable
     }
 
     /**
-     * Get the children of the given subclass for the given Profile parent
+     * Get the children of the given subclass for the given Profile parent, including the children of those children.
+     * The whole subtree is resolved in a single query against the {@link ProfileHierarchy} closure table.
      *
      * @param profile the parent profile
      * @param clazz the subclass
@@ -322,18 +439,23 @@ public class ProfileDAO extends DAOHelper implements Serializable
      *
      * @return the children
      */
+    @SuppressWarnings("unchecked")
     public <Pr extends Profile> List<Pr> getChildren(Pr profile, Class<Pr> clazz)
     {
-        List<Pr> children = new ArrayList<>();
-        getDirectChildren(profile, clazz).forEach(child -> {
-            //Do check on child != profile to prevent infinite loop
-            children.add(child);
-            if (child != profile)
-            {
-                children.addAll(getChildren(child, clazz));
-            }
-        });
-        return children;
+        //Only descendants reachable through children of the given subclass are included, so exclude any
+        //descendant with an ancestor below the given profile that is not of the subclass.
+        final String entityName = clazz.getSimpleName();
+        return getSession().createQuery(
+            "select pr from " + entityName + " pr, ProfileHierarchy h\n"
+            + "where h.descendantId = pr.id and h.ancestorId = :parentId and h.depth > 0\n"
+            + "and not exists (select i.ancestorId from ProfileHierarchy i\n"
+            + "  where i.descendantId = pr.id and i.depth > 0\n"
+            + "  and i.ancestorId in (select s.descendantId from ProfileHierarchy s\n"
+            + "    where s.ancestorId = :parentId and s.depth > 0)\n"
+            + "  and i.ancestorId not in (select c.id from " + entityName + " c))\n"
+            + "order by h.depth, pr.id")
+            .setParameter("parentId", profile.getId())
+            .list();
     }
 
     /**
@@ -401,12 +523,45 @@ public class ProfileDAO extends DAOHelper implements Serializable
      */
     @Nonnull
     public TextSource getHierarchyDisplay(Profile profile)
+    {
+        if (profile.getId() != null)
+        {
+            @SuppressWarnings("unchecked")
+            final List<TextSource> names = getSession().createQuery(
+                "select p.name from ProfileHierarchy h, Profile p\n"
+                + "where p.id = h.ancestorId and h.descendantId = :profileId\n"
+                + "order by h.depth desc")
+                .setParameter("profileId", profile.getId())
+                .list();
+            if (!names.isEmpty())
+            {
+                TextSource display = names.get(0);
+                for (int i = 1; i < names.size(); i++)
+                {
+                    display = ConcatTextSource.create(display, names.get(i)).withSeparator(" > ");
+                }
+                return display;
+            }
+        }
+        return _getHierarchyDisplayByParent(profile);
+    }
+
+    /**
+     * Get the hierarchy display by walking the parents of the given Profile.
+     * Used for Profiles that are not in the hierarchy table yet.
+     *
+     * @param profile the profile
+     *
+     * @return the hierarchy names
+     */
+    @Nonnull
+    private TextSource _getHierarchyDisplayByParent(Profile profile)
     {
         profile = _er.reattachIfNecessary(profile);
         //Do check on parent != profile to prevent infinite loop
         if (profile.getParent() != null && profile.getParent() != profile)
         {
-            return ConcatTextSource.create(getHierarchyDisplay(profile.getParent()), profile.getName())
+            return ConcatTextSource.create(_getHierarchyDisplayByParent(profile.getParent()), profile.getName())
                 .withSeparator(" > ");
         }
         else
@@ -604,30 +759,107 @@ public class ProfileDAO extends DAOHelper implements Serializable
     @Nonnull
     public MembershipType mergeMembershipType(MembershipType membershipType, boolean updateMemberships)
     {
-        return doInTransaction(session -> {
-            MembershipType mt = (MembershipType)session.merge(membershipType);
-            if(updateMemberships)
-            {
-                QLBuilderImpl membershipBuilder = new QLBuilderImpl(Membership.class, "membershipAlias");
-                membershipBuilder.appendCriteria(Membership.MEMBERSHIP_TYPE_PROP, eq, mt);
-                List<Membership> memberships = membershipBuilder.getQueryResolver().list();
-                if(!memberships.isEmpty())
-                {
-                    _logger.debug("Updating existing memberships within the system based on recently updated membership type: "
-                                  + mt.getId());
-                }
-                memberships.forEach(membership -> {
-                    mt.getDefaultOperations().forEach(op -> {
-                        if(!membership.getOperations().contains(op))
+        final MembershipType mt = doInTransaction(session -> (MembershipType)session.merge(membershipType));
+        if(updateMemberships)
+            addDefaultOperationsToMemberships(mt);
+        return mt;
+    }
+
+    /**
+     * Add the default operations of the given MembershipType to each of its Memberships that is missing one.
+     * <br><br>
+     * The missing rows are inserted with one statement and transaction per {@link #MEMBERSHIP_UPDATE_CHUNK_SIZE}
+     * Membership ids, so Memberships are never loaded and a large MembershipType does not hold its locks until the end.
+     * Only the operations of the updated Memberships are evicted from the cache, along with the permissions of their
+     * Users.  The update is recorded in the audit history as Envers would record it, under the revision of the
+     * transaction that adds them.
+     *
+     * @param membershipType the membership type
+     *
+     * @return the number of operations added.
+     */
+    public int addDefaultOperationsToMemberships(@Nonnull MembershipType membershipType)
+    {
+        final Object[] range = (Object[]) getSession().createQuery(
+            "SELECT MIN(m.id), MAX(m.id) FROM Membership m WHERE m.membershipType = :mt")
+            .setParameter("mt", membershipType)
+            .uniqueResult();
+        if(range == null || range[0] == null)
+            return 0;
+        final int min = (Integer) range[0];
+        final int max = (Integer) range[1];
+        _logger.debug("Updating existing memberships within the system based on recently updated membership type: "
+                      + membershipType.getId());
+        final String operationsRole = Membership.class.getName() + '.' + OPERATIONS_PROP;
+        int total = 0;
+        for(long lo = min; lo <= max; lo += MEMBERSHIP_UPDATE_CHUNK_SIZE)
+        {
+            final int from = (int) lo;
+            final int to = (int) Math.min(lo + MEMBERSHIP_UPDATE_CHUNK_SIZE - 1, max);
+            final List<Object[]> affected = new ArrayList<>();
+            total += doInTransaction(session -> {
+                // The default operations may not be flushed if the caller has a transaction.
+                session.flush();
+                @SuppressWarnings("unchecked")
+                final List<Object[]> rows = session.createQuery(
+                    "SELECT DISTINCT m.id, u.id FROM Membership m LEFT JOIN m.user u INNER JOIN m.membershipType mt\n"
+                    + " INNER JOIN mt.defaultOperations op\n"
+                    + " WHERE mt = :mt AND m.id BETWEEN :from AND :to AND op NOT IN elements(m.operations)")
+                    .setParameter("mt", membershipType)
+                    .setParameter("from", from)
+                    .setParameter("to", to)
+                    .list();
+                if(rows.isEmpty())
+                    return 0;
+                affected.addAll(rows);
+                // The revision must be in the database before the audit rows that reference it
+                final Object revision = AuditReaderFactory.get(session).getCurrentRevision(Object.class, true);
+                session.flush();
+                final int rev = ((Number) session.getIdentifier(revision)).intValue();
+                final int[] inserted = new int[1];
+                session.doWork(connection -> {
+                    // Audit first, while the operations are still missing
+                    for(String sql : Arrays.asList(AUDIT_MEMBERSHIPS_SQL, AUDIT_DEFAULT_OPERATIONS_SQL))
+                    {
+                        try(PreparedStatement statement = connection.prepareStatement(sql))
                         {
-                            membership.getOperations().add(op);
+                            statement.setInt(1, rev);
+                            statement.setInt(2, membershipType.getId());
+                            statement.setInt(3, from);
+                            statement.setInt(4, to);
+                            statement.executeUpdate();
                         }
-                    });
-                    saveMembership(membership);
+                    }
+                    try(PreparedStatement statement = connection.prepareStatement(INSERT_DEFAULT_OPERATIONS_SQL))
+                    {
+                        statement.setInt(1, membershipType.getId());
+                        statement.setInt(2, from);
+                        statement.setInt(3, to);
+                        inserted[0] = statement.executeUpdate();
+                    }
                 });
+                return inserted[0];
+            });
+            if(affected.isEmpty())
+                continue;
+            final List<Integer> membershipIds = new ArrayList<>(affected.size());
+            for(Object[] row : affected)
+            {
+                final Integer membershipId = (Integer) row[0];
+                getSession().getSessionFactory().getCache().evictCollection(operationsRole, membershipId);
+                _permissionIndex.evict((Integer) row[1]);
+                membershipIds.add(membershipId);
             }
-            return mt;
-        });
+            BulkUpdates.refreshManaged(getSession(), Membership.class, membershipIds);
+            _logger.info("Added " + total + " operations to memberships of membership type " + membershipType.getId()
+                         + ": " + (to - min + 1) + " of " + (max - min + 1) + " ids.");
+        }
+        if(total > 0)
+        {
+            // Cached queries over membership operations do not see updates made outside of Hibernate.
+            getSession().getSessionFactory().getCache().evictQueryRegion(ProjectCacheRegions.PROFILE_QUERY);
+        }
+        return total;
     }
 
     /**
@@ -1068,6 +1300,64 @@ public class ProfileDAO extends DAOHelper implements Serializable
             .list();
     }
 
+    /**
+     * Stream the Users that have a Membership to the given Profile that has the given MembershipOperation.
+     * <br><br>
+     * Users are loaded a chunk at a time in a read-only session of their own, which is cleared when the next chunk is
+     * loaded, so any number of users may be streamed in bounded memory along with whatever is loaded from them.  The
+     * users are not attached to the current session.  Read what is needed from each User before advancing past its
+     * chunk, and close the stream.
+     *
+     * @param profile the Profile
+     * @param operation the Operation
+     * @param startDate the start date to use when looking for active memberships
+     * @param endDate the end date to use when looking for active memberships
+     * @param chunkSize the number of Users loaded at a time
+     *
+     * @return the Users, in id order
+     */
+    @Nonnull
+    public Stream<User> streamUsersWithOperation(@Nonnull Profile profile, @Nonnull MembershipOperation operation,
+        @Nonnull ZonedDateTime startDate, @Nonnull ZonedDateTime endDate, int chunkSize)
+    {
+        Preconditions.checkArgument(chunkSize > 0, "chunkSize must be positive");
+        final Session session = getSession().getSessionFactory().openSession();
+        session.setDefaultReadOnly(true);
+        session.setFlushMode(FlushMode.MANUAL);
+        final ScrollableResults userIds;
+        try
+        {
+            // The transaction lets the driver fetch the scroll with a cursor.
+            session.beginTransaction();
+            userIds = session.createQuery(
+                "select distinct user.id\n"
+                + "from Membership membership\n"
+                + "inner join membership.user user\n"
+                + "inner join membership.profile profile\n"
+                + "inner join membership.operations operation\n"
+                + "where profile.id = :profileId\n"
+                + "and operation.id = :mopId\n"
+                + "and (membership.startDate is null or membership.startDate <= :startDate)\n"
+                + "and (membership.endDate is null or membership.endDate >= :endDate)\n"
+                + "order by user.id")
+                .setParameter("profileId", profile.getId())
+                .setParameter("mopId", operation.getId())
+                .setParameter("startDate", convertForPersistence(startDate))
+                .setParameter("endDate", convertForPersistence(endDate))
+                .setFetchSize(chunkSize)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        }
+        catch (RuntimeException e)
+        {
+            session.close();
+            throw e;
+        }
+        final UserChunkIterator users = new UserChunkIterator(session, userIds, chunkSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(users,
+            Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false)
+            .onClose(users::close);
+    }
+
     /**
      * Get users that have the given Operations on their Membership for the given Profile
      *
@@ -1224,6 +1514,69 @@ public class ProfileDAO extends DAOHelper implements Serializable
         });
     }
 
+    private boolean _canOperateQuery(@Nonnull User user, @Nonnull Collection<Profile> profiles, @Nonnull Date now,
+        @Nonnull MembershipOperation... operations)
+    {
+        final Query query = getSession().createQuery(
+            "SELECT COUNT(m) FROM Membership m INNER JOIN m.profile p\n"
+            + " INNER JOIN m.operations  op\n"
+            + " WHERE m.user = :user\n"
+            + " AND p IN (:profiles)\n"
+            + " AND op IN (:operations)\n"
+            + " AND (m.startDate IS NULL OR m.startDate <= :today)\n"
+            + " AND (m.endDate IS NULL OR m.endDate >= :today)\n"
+            + " GROUP BY m\n"
+            + "  HAVING COUNT(op) = :operationCount");
+        query.setCacheable(true).setCacheRegion(ProjectCacheRegions.PROFILE_QUERY);
+        query.setParameter("user", user);
+        query.setParameterList("profiles", profiles);
+        query.setParameterList("operations", operations);
+        query.setParameter("today", now);
+        query.setInteger("operationCount", operations.length);
+        return _hasPositiveCount(query);
+    }
+
+    private boolean _canOperateQuery(@Nonnull User user, @Nonnull ProfileType profileType, @Nonnull Date now,
+        @Nonnull MembershipOperation... operations)
+    {
+        final Query query = getSession().createQuery(
+            "SELECT COUNT(m) FROM Membership m INNER JOIN m.profile p INNER JOIN p.profileType pt\n"
+            + " INNER JOIN m.operations  op\n"
+            + " WHERE m.user = :user\n"
+            + " AND pt.id = :profileTypeId\n"
+            + " AND op IN (:operations)\n"
+            + " AND (m.startDate IS NULL OR m.startDate <= :today)\n"
+            + " AND (m.endDate IS NULL OR m.endDate >= :today)\n"
+            + " GROUP BY m\n"
+            + "  HAVING COUNT(op) = :operationCount");
+        query.setCacheable(true).setCacheRegion(ProjectCacheRegions.PROFILE_QUERY);
+        query.setParameter("user", user);
+        query.setParameter("profileTypeId", profileType.getId());
+        query.setParameterList("operations", operations);
+        query.setParameter("today", now);
+        query.setInteger("operationCount", operations.length);
+        return _hasPositiveCount(query);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean _hasPositiveCount(Query query)
+    {
+        // Grouped by membership, so there is one count per matching membership
+        final List<Number> counts = query.setMaxResults(1).list();
+        return counts.stream().anyMatch(count -> count.intValue() > 0);
+    }
+
+    private static int[] _getOperationIds(@Nonnull MembershipOperation... operations)
+    {
+        final int[] ids = new int[operations.length];
+        for (int i = 0; i < operations.length; i++)
+        {
+            // Transient operations can not be held by any membership
+            ids[i] = operations[i].getId() != null ? operations[i].getId() : Integer.MIN_VALUE;
+        }
+        return ids;
+    }
+
     private Object readResolve() throws ObjectStreamException
     {
         ApplicationContext context = ApplicationContextUtils.getInstance().getContext();
@@ -1236,4 +1589,71 @@ public class ProfileDAO extends DAOHelper implements Serializable
     {
         return this;
     }
+
+    /**
+     * Loads users a chunk at a time from a scroll of user ids, clearing the session when the next chunk is loaded.
+     */
+    private static final class UserChunkIterator implements Iterator<User>
+    {
+        private final Session _session;
+        private final ScrollableResults _userIds;
+        private final int _chunkSize;
+        private List<User> _chunk = Collections.emptyList();
+        private int _index;
+
+        UserChunkIterator(Session session, ScrollableResults userIds, int chunkSize)
+        {
+            _session = session;
+            _userIds = userIds;
+            _chunkSize = chunkSize;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (_index < _chunk.size())
+                return true;
+            _session.clear();
+            final List<Integer> ids = new ArrayList<>(_chunkSize);
+            while (ids.size() < _chunkSize && _userIds.next())
+            {
+                ids.add((Integer) _userIds.get(0));
+            }
+            if (ids.isEmpty())
+            {
+                _chunk = Collections.emptyList();
+                return false;
+            }
+            @SuppressWarnings("unchecked")
+            final List<User> chunk = _session.createQuery(
+                "select user from User user where user.id in (:ids) order by user.id")
+                .setParameterList("ids", ids)
+                .list();
+            _chunk = chunk;
+            _index = 0;
+            return !_chunk.isEmpty() || hasNext();
+        }
+
+        @Override
+        public User next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return _chunk.get(_index++);
+        }
+
+        void close()
+        {
+            _chunk = Collections.emptyList();
+            try
+            {
+                _userIds.close();
+                _session.getTransaction().rollback();
+            }
+            finally
+            {
+                _session.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.profile.model;
+
+import com.example.app.config.ProjectConfig;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Closure table row for {@link Profile#getParent()}: one row for every ancestor / descendant pair, including a row of
+ * depth 0 for each Profile to itself.
+ * <br><br>
+ * Rows are maintained by a database trigger on the Profile table (see ProfileDataConversionVersion1), so this entity
+ * is read-only and only used to query a Profile's subtree or ancestry in a single query.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Entity
+@Immutable
+@Table(name = ProfileHierarchy.TABLE_NAME, schema = ProjectConfig.PROJECT_SCHEMA, indexes = {
+    @Index(name = "profilehierarchy_descendant_idx", columnList = ProfileHierarchy.DESCENDANT_COLUMN + ','
+                                                                  + ProfileHierarchy.DEPTH_COLUMN_PROP)
+})
+public class ProfileHierarchy implements Serializable
+{
+    /** The database table name */
+    public static final String TABLE_NAME = "profilehierarchy";
+    /** The database column: ancestor */
+    public static final String ANCESTOR_COLUMN = "ancestor_id";
+    /** The property: ancestorId */
+    public static final String ANCESTOR_PROP = "ancestorId";
+    /** The database column: descendant */
+    public static final String DESCENDANT_COLUMN = "descendant_id";
+    /** The property: descendantId */
+    public static final String DESCENDANT_PROP = "descendantId";
+    /** The database column and property: depth */
+    public static final String DEPTH_COLUMN_PROP = "depth";
+    private static final long serialVersionUID = -2180873370471549606L;
+    private Integer _ancestorId;
+    private Integer _descendantId;
+    private int _depth;
+
+    /**
+     * Get the id of the ancestor Profile
+     *
+     * @return the ancestor id
+     */
+    @Id
+    @Column(name = ANCESTOR_COLUMN)
+    public Integer getAncestorId()
+    {
+        return _ancestorId;
+    }
+
+    /**
+     * Set the id of the ancestor Profile
+     *
+     * @param ancestorId the ancestor id
+     */
+    public void setAncestorId(Integer ancestorId)
+    {
+        _ancestorId = ancestorId;
+    }
+
+    /**
+     * Get the id of the descendant Profile
+     *
+     * @return the descendant id
+     */
+    @Id
+    @Column(name = DESCENDANT_COLUMN)
+    public Integer getDescendantId()
+    {
+        return _descendantId;
+    }
+
+    /**
+     * Set the id of the descendant Profile
+     *
+     * @param descendantId the descendant id
+     */
+    public void setDescendantId(Integer descendantId)
+    {
+        _descendantId = descendantId;
+    }
+
+    /**
+     * Get the number of parent links between the ancestor and the descendant
+     *
+     * @return the depth, 0 when the ancestor and descendant are the same Profile
+     */
+    @Column(name = DEPTH_COLUMN_PROP, nullable = false)
+    public int getDepth()
+    {
+        return _depth;
+    }
+
+    /**
+     * Set the number of parent links between the ancestor and the descendant
+     *
+     * @param depth the depth
+     */
+    public void setDepth(int depth)
+    {
+        _depth = depth;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof ProfileHierarchy)) return false;
+        ProfileHierarchy that = (ProfileHierarchy) o;
+        return Objects.equals(_ancestorId, that._ancestorId) && Objects.equals(_descendantId, that._descendantId);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(_ancestorId, _descendantId);
+    }
+}
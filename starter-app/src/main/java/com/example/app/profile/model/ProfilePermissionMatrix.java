@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.profile.model;
+
+import com.example.app.profile.model.membership.MembershipOperation;
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The result of a bulk permission check for one User against many Profiles and MembershipOperations.
+ * <br><br>
+ * Each Profile maps to one operation bitmask per active Membership the User holds on it, so
+ * {@link #canOperate(Profile, MembershipOperation...)} keeps the same semantics as
+ * {@link ProfileDAO#canOperate(com.example.app.profile.model.user.User, Profile, java.util.TimeZone, MembershipOperation...)}:
+ * a single Membership must grant all the requested operations.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ * @see ProfileDAO#getPermissionMatrix(com.example.app.profile.model.user.User, Collection, java.util.TimeZone,
+ * MembershipOperation...)
+ */
+public final class ProfilePermissionMatrix implements Serializable
+{
+    /** Max number of MembershipOperations a matrix may be created for */
+    public static final int MAX_OPERATIONS = Long.SIZE;
+    private static final long serialVersionUID = -5304281126317468823L;
+    private static final long[] NO_GRANTS = new long[0];
+
+    private final Map<Integer, Integer> _operationBits;
+    private final Map<Integer, long[]> _grants;
+    private final boolean _unrestricted;
+
+    private ProfilePermissionMatrix(Map<Integer, Integer> operationBits, Map<Integer, long[]> grants, boolean unrestricted)
+    {
+        _operationBits = operationBits;
+        _grants = grants;
+        _unrestricted = unrestricted;
+    }
+
+    /**
+     * Test if the User can perform all the given operations on the given Profile.
+     *
+     * @param profile the Profile, may be null
+     * @param operations the MembershipOperations to check.  These must be operations this matrix was created for.
+     *
+     * @return true or false.
+     */
+    public boolean canOperate(@Nullable Profile profile, @Nonnull MembershipOperation... operations)
+    {
+        if (_unrestricted) return true;
+        if (profile == null || profile.getId() == null) return false;
+        return _canOperate(profile.getId(), _getMask(operations));
+    }
+
+    /**
+     * Test if the User can perform all the given operations on any of the given Profiles.
+     *
+     * @param profiles the Profiles
+     * @param operations the MembershipOperations to check.  These must be operations this matrix was created for.
+     *
+     * @return true or false.
+     */
+    public boolean canOperate(@Nonnull Collection<? extends Profile> profiles, @Nonnull MembershipOperation... operations)
+    {
+        if (_unrestricted) return true;
+        final long mask = _getMask(operations);
+        for (Profile profile : profiles)
+        {
+            if (profile != null && profile.getId() != null && _canOperate(profile.getId(), mask))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Test if this matrix grants every operation on every Profile, as it does for administrators.
+     *
+     * @return true or false.
+     */
+    public boolean isUnrestricted()
+    {
+        return _unrestricted;
+    }
+
+    /**
+     * Get the ids of the Profiles that the User has at least one of the checked operations on.
+     *
+     * @return the Profile ids
+     */
+    @Nonnull
+    public Set<Integer> getProfileIds()
+    {
+        return Collections.unmodifiableSet(_grants.keySet());
+    }
+
+    private boolean _canOperate(Integer profileId, long mask)
+    {
+        for (long granted : _grants.getOrDefault(profileId, NO_GRANTS))
+        {
+            if ((granted & mask) == mask) return true;
+        }
+        return false;
+    }
+
+    private long _getMask(MembershipOperation... operations)
+    {
+        Preconditions.checkArgument(operations.length > 0);
+        long mask = 0L;
+        for (MembershipOperation operation : operations)
+        {
+            final Integer bit = _operationBits.get(operation.getId());
+            Preconditions.checkArgument(bit != null || _unrestricted,
+                "MembershipOperation was not part of the permission check: %s", operation.getProgrammaticIdentifier());
+            if (bit != null) mask |= 1L << bit;
+        }
+        return mask;
+    }
+
+    /**
+     * Builder for {@link ProfilePermissionMatrix}
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    public static final class Builder
+    {
+        private final Map<Integer, Integer> _operationBits = new HashMap<>();
+        private final Map<Integer, long[]> _grants = new HashMap<>();
+
+        /**
+         * Instantiate a new instance of Builder
+         *
+         * @param operations the MembershipOperations the matrix is created for
+         */
+        public Builder(@Nonnull MembershipOperation... operations)
+        {
+            Preconditions.checkArgument(operations.length <= MAX_OPERATIONS,
+                "Too many operations for a permission matrix: %s", operations.length);
+            for (MembershipOperation operation : operations)
+            {
+                if (operation.getId() != null && !_operationBits.containsKey(operation.getId()))
+                    _operationBits.put(operation.getId(), _operationBits.size());
+            }
+        }
+
+        /**
+         * Record a single Membership on the given Profile and the operations it grants.
+         * Operations the matrix was not created for are ignored.
+         *
+         * @param profileId the Profile id
+         * @param operationIds the ids of the MembershipOperations the Membership grants
+         *
+         * @return this
+         */
+        public Builder grant(@Nonnull Integer profileId, @Nonnull int... operationIds)
+        {
+            long mask = 0L;
+            for (int operationId : operationIds)
+            {
+                final Integer bit = _operationBits.get(operationId);
+                if (bit != null) mask |= 1L << bit;
+            }
+            if (mask != 0L)
+            {
+                final long[] existing = _grants.getOrDefault(profileId, NO_GRANTS);
+                final long[] updated = Arrays.copyOf(existing, existing.length + 1);
+                updated[existing.length] = mask;
+                _grants.put(profileId, updated);
+            }
+            return this;
+        }
+
+        /**
+         * Build the matrix.
+         *
+         * @return the matrix
+         */
+        @Nonnull
+        public ProfilePermissionMatrix build()
+        {
+            return new ProfilePermissionMatrix(new HashMap<>(_operationBits), new HashMap<>(_grants), false);
+        }
+
+        /**
+         * Build a matrix that grants every operation on every Profile.
+         *
+         * @return the matrix
+         */
+        @Nonnull
+        public ProfilePermissionMatrix buildUnrestricted()
+        {
+            return new ProfilePermissionMatrix(new HashMap<>(_operationBits), Collections.emptyMap(), true);
+        }
+    }
+}
@@ -11,7 +11,6 @@
 
 package com.example.app.profile.model.company;
 
-import com.example.app.config.ProjectCacheRegions;
 import com.example.app.profile.model.ProfileDAO;
 import com.example.app.profile.model.ProfileType;
 import com.example.app.profile.model.membership.Membership;
@@ -23,21 +22,33 @@ import com.example.app.profile.model.terminology.ProfileTermProvider;
 import com.example.app.profile.model.terminology.ProfileTerms;
 import com.example.app.profile.model.user.User;
 import com.example.app.profile.model.user.UserDAO;
+import com.example.app.profile.model.user.UserSearchIndex;
 import com.example.app.profile.service.MembershipOperationConfiguration;
 import com.example.app.support.service.AppUtil;
+import com.example.app.support.service.BulkUpdates;
 import com.example.app.support.service.EntityIdCollector;
 import com.example.app.support.service.FileSaver;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.fileupload.FileItem;
-import org.hibernate.Query;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.QueryableCollection;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.jetbrains.annotations.Contract;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -45,13 +56,19 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import net.proteusframework.cms.FileSystemDirectory;
 import net.proteusframework.cms.dao.CmsFrontendDAO;
 import net.proteusframework.core.GloballyUniqueStringGenerator;
+import net.proteusframework.core.hibernate.HibernateSessionHandler;
 import net.proteusframework.core.hibernate.dao.DAOHelper;
 import net.proteusframework.core.hibernate.dao.EntityRetriever;
 import net.proteusframework.core.locale.TransientLocalizedObjectKey;
@@ -89,7 +106,16 @@ import static net.proteusframework.ui.search.PropertyConstraint.Operator.eq;
 @Lazy
 public class CompanyDAO extends DAOHelper implements Serializable
 {
+    /** Max number of hostnames held within the Company resolution cache */
+    public static final int MAX_HOSTNAMES = 1_000;
+    /** Max age of a resolved hostname.  A hostname moved to another Company on another node is picked up after this. */
+    public static final int MAX_HOSTNAME_AGE_MINUTES = 10;
+    /** Max number of admin Principals added to an authentication domain within one batch */
+    public static final int ADMIN_DOMAIN_CHUNK_SIZE = 1_000;
+    /** Logger. */
+    private static final Logger _logger = LogManager.getLogger(CompanyDAO.class);
     private static final long serialVersionUID = -1864046652465972120L;
+    private static final String AUTHENTICATION_DOMAINS_ROLE = Principal.class.getName() + ".authenticationDomains";
     @Autowired private transient AppUtil _appUtil;
     @Autowired private transient ProfileDAO _profileDAO;
     @Autowired private transient UserDAO _userDAO;
@@ -97,6 +123,16 @@ public class CompanyDAO extends DAOHelper implements Serializable
     @Autowired private transient CmsFrontendDAO _cmsFrontendDAO;
     @Autowired private transient FileSystemDAO _fileSystemDAO;
     @Autowired private transient EntityRetriever _er;
+    @Autowired private transient UserSearchIndex _userSearchIndex;
+    @Autowired @Qualifier(HibernateSessionHandler.RESOURCE_NAME) private transient HibernateSessionHandler _sessionHandler;
+
+    /** Hostname id to Company id, shared by every session on this node */
+    private final transient Cache<Serializable, Integer> _companyIdByHostnameId = CacheBuilder.newBuilder()
+        .maximumSize(MAX_HOSTNAMES)
+        .expireAfterWrite(MAX_HOSTNAME_AGE_MINUTES, TimeUnit.MINUTES)
+        .build();
+    private final transient ExecutorService _adminExecutor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("company-admin-update-%d").setDaemon(true).build());
 
     private FileSaver<Company> _webImageSaver;
     private FileSaver<Company> _emailLogoSaver;
@@ -197,7 +233,7 @@ public class CompanyDAO extends DAOHelper implements Serializable
                 session.save(domain);
             }
         };
-        return doInTransaction(session -> {
+        final Company saved = doInTransaction(session -> {
             Company retVal = company;
             presave.accept(company, session);
             if(isAttached(company))
@@ -206,6 +242,8 @@ public class CompanyDAO extends DAOHelper implements Serializable
                 retVal = (Company) session.merge(company);
             return retVal;
         });
+        _evictHostnames(saved);
+        return saved;
     }
 
     /**
@@ -258,6 +296,7 @@ public class CompanyDAO extends DAOHelper implements Serializable
         doInTransaction(session -> {
             session.delete(company);
         });
+        _evictHostnames(company);
     }
 
     /**
@@ -506,32 +545,95 @@ public class CompanyDAO extends DAOHelper implements Serializable
      * <ul>
      *     <li>Update Admin authentication domains to include Company authentication domain.</li>
      * </ul>
+     * The missing authentication domain rows are inserted directly with one INSERT ... SELECT per
+     * {@link #ADMIN_DOMAIN_CHUNK_SIZE} admins, without loading the admins or their authentication domains.
+     *
      * @param company company.
+     *
+     * @return the number of admins added to the Company authentication domain.
      */
-    public void updateAdminsForCompany(Company company)
+    public int updateAdminsForCompany(Company company)
     {
-        doInTransaction(session -> {
-            AuthenticationDomain domain = company.getHostname().getDomain();
-            assert domain != null;
-            @SuppressWarnings("unchecked")
-            List<Principal> admins = (List<Principal>)
-                    session.createQuery("SELECT DISTINCT p FROM Principal p INNER JOIN p.children r\n"
-                                    + "WHERE r.programmaticName = :adminRolePN")
-                    .setCacheRegion(UsersCacheRegions.ROLE_QUERY)
-                    .setCacheable(true)
-                    .setParameter("adminRolePN", _appUtil.getAdminAccessRole().getProgrammaticName())
-                .list();
-            for (Principal admin : admins)
+        AuthenticationDomain domain = company.getHostname().getDomain();
+        assert domain != null;
+        @SuppressWarnings("unchecked")
+        final List<Serializable> adminIds = (List<Serializable>) getSession().createQuery(
+            "SELECT DISTINCT p.id FROM Principal p INNER JOIN p.children r\n"
+            + "WHERE r.programmaticName = :adminRolePN AND :domain NOT IN elements(p.authenticationDomains)")
+            .setParameter("adminRolePN", _appUtil.getAdminAccessRole().getProgrammaticName())
+            .setParameter("domain", domain)
+            .list();
+        if(adminIds.isEmpty())
+            return 0;
+
+        final SessionFactoryImplementor factory = (SessionFactoryImplementor) getSession().getSessionFactory();
+        final QueryableCollection persister = (QueryableCollection) factory
+            .getCollectionPersister(AUTHENTICATION_DOMAINS_ROLE);
+        final AbstractEntityPersister principalPersister = (AbstractEntityPersister) factory
+            .getClassMetadata(Principal.class);
+        final String table = persister.getTableName();
+        final String keyColumn = persister.getKeyColumnNames()[0];
+        final String elementColumn = persister.getElementColumnNames()[0];
+        final String idColumn = principalPersister.getIdentifierColumnNames()[0];
+        final String sql = "INSERT INTO " + table + " (" + keyColumn + ", " + elementColumn + ")\n"
+                           + "SELECT p." + idColumn + ", :domainId FROM " + principalPersister.getTableName() + " p\n"
+                           + "WHERE p." + idColumn + " IN (:adminIds)\n"
+                           + "AND NOT EXISTS (SELECT 1 FROM " + table + " ad WHERE ad." + keyColumn + " = p." + idColumn
+                           + " AND ad." + elementColumn + " = :domainId)";
+        int total = 0;
+        for(List<Serializable> chunk : Lists.partition(adminIds, ADMIN_DOMAIN_CHUNK_SIZE))
+        {
+            total += doInTransaction(session -> {
+                return session.createSQLQuery(sql)
+                    .setParameter("domainId", domain.getId())
+                    .setParameterList("adminIds", chunk)
+                    .executeUpdate();
+            });
+        }
+        _evictAdmins(adminIds);
+        _logger.info("Added " + total + " admins to authentication domain " + domain.getId() + " of Company "
+                     + company.getId() + '.');
+        return total;
+    }
+
+    /**
+     * Update Admins for Company in the background.  The Company must already be committed.
+     *
+     * @param company company.
+     *
+     * @return the number of admins added to the Company authentication domain.
+     *
+     * @see #updateAdminsForCompany(Company)
+     */
+    @Nonnull
+    public CompletableFuture<Integer> updateAdminsForCompanyAsync(@Nonnull Company company)
+    {
+        final Integer companyId = company.getId();
+        return CompletableFuture.supplyAsync(() -> {
+            _sessionHandler.openSessions();
+            try
+            {
+                return updateAdminsForCompany((Company) getSession().get(Company.class, companyId));
+            }
+            finally
             {
-                if(!admin.getAuthenticationDomains().contains(domain))
-                {
-                    admin.getAuthenticationDomains().add(domain);
-                    session.update(admin);
-                }
+                _sessionHandler.clearSessions();
             }
+        }, _adminExecutor).whenComplete((count, e) -> {
+            if(e != null)
+                _logger.error("Unable to update admins for Company#" + companyId, e);
         });
     }
 
+    /**
+     * Shut down the background admin update thread.
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        _adminExecutor.shutdownNow();
+    }
+
     /**
      * Get the first owning Company for the given User.  If one is not found, an exception is thrown.
      *
@@ -565,7 +667,7 @@ public class CompanyDAO extends DAOHelper implements Serializable
     }
 
     /**
-     * Get users matching the specified parameters.
+     * Get users of a company matching the specified parameters from the {@link UserSearchIndex}.
      * All parameters are optional. If none are specified, an empty list is returned.
      *
      * @param firstName first name.
@@ -574,72 +676,38 @@ public class CompanyDAO extends DAOHelper implements Serializable
      * @param exclude optional exclusion collection.
      * @param company the company
      *
-     * @return the user list.
+     * @return the user list, ranked.  Every term of the parameters must match a name, email address or username.
      */
     public List<User> getUsers(@Nullable String firstName, @Nullable String lastName, @Nullable String email,
         @Nullable Collection<User> exclude, @Nonnull Company company)
     {
-        boolean hasFirst = !isEmptyString(firstName);
-        boolean hasLast = !isEmptyString(lastName);
-        boolean hasEmail = !isEmptyString(email);
-        boolean hasExclude = exclude != null && !exclude.isEmpty();
-        if(!hasFirst && !hasLast && !hasEmail)
-            return new ArrayList<>();
-        StringBuilder hql = new StringBuilder();
-        hql.append( "SELECT DISTINCT user FROM Company ce\n"
-                    + " INNER JOIN ce.users user\n"
-                    + " INNER JOIN user.principal as p\n"
-                    + " LEFT JOIN p.contact as c \n");
-        if(hasFirst || hasLast)
-        {
-            hql.append(" LEFT JOIN c.name as n\n");
-        }
-        if(hasEmail)
-        {
-            hql.append(" LEFT JOIN c.emailAddresses as ea\n");
-        }
-        hql.append(" WHERE (");
-        if(hasFirst)
-        {
-            hql.append(" LOWER(n.first) LIKE :firstName");
-        }
-        if(hasLast)
-        {
-            if(hasFirst) hql.append(" OR");
-            hql.append(" LOWER(n.last) LIKE :lastName");
-        }
-        if(hasEmail)
-        {
-            if(hasFirst || hasLast) hql.append(" OR");
-            hql.append(" LOWER(ea.email) LIKE :email");
-        }
-        hql.append(")\n");
-
-        if(hasExclude)
-        {
-            hql.append(" AND user NOT IN (:exclude)\n");
-        }
-
-        hql.append("AND ce.id = :ceid");
-
-        final Session session = getSession();
-        final Query query = session.createQuery(hql.toString());
-        query.setCacheable(true);
-        query.setCacheRegion(ProjectCacheRegions.MEMBER_QUERY);
-
-        if (hasFirst) query.setParameter("firstName", '%' + firstName.trim().toLowerCase() + '%');
-        if (hasLast) query.setParameter("lastName", '%' + lastName.trim().toLowerCase() + '%');
-        if (hasEmail) query.setParameter("email", '%' + email.trim().toLowerCase() + '%');
-        if (hasExclude) query.setParameterList("exclude", exclude);
-        query.setParameter("ceid", company.getId());
+        return searchUsers(Stream.of(firstName, lastName, email)
+            .filter(value -> !isEmptyString(value))
+            .distinct()
+            .collect(Collectors.joining(" ")), exclude, company, 0, 0);
+    }
 
-        @SuppressWarnings("unchecked")
-        final List<User> list = query.list();
-        return list;
+    /**
+     * Search for users of a company using the {@link UserSearchIndex}.
+     *
+     * @param query the query.  Every term must match a name, email address or username of the user.
+     * @param exclude optional exclusion collection.
+     * @param company the company
+     * @param firstResult the index of the first result
+     * @param maxResults the maximum number of results, 0 for no limit
+     *
+     * @return the user list, ranked.  Empty if the query has no terms.
+     */
+    @Nonnull
+    public List<User> searchUsers(@Nullable String query, @Nullable Collection<User> exclude, @Nonnull Company company,
+        int firstResult, int maxResults)
+    {
+        return _userSearchIndex.search(query, company, exclude, firstResult, maxResults);
     }
 
     /**
      * Gets company for hostname.
+     * The Company id is cached by hostname on this node, and evicted when a Company is saved or deleted.
      *
      * @param hostname the hostname
      *
@@ -647,12 +715,56 @@ public class CompanyDAO extends DAOHelper implements Serializable
      */
     public Company getCompanyForHostname(Hostname hostname)
     {
-        return doInTransaction(session -> (Company) session.createQuery(
+        final Serializable hostnameId = hostname.getId();
+        final Integer companyId = hostnameId != null ? _companyIdByHostnameId.getIfPresent(hostnameId) : null;
+        if(companyId != null)
+        {
+            final Company company = (Company) getSession().get(Company.class, companyId);
+            if(company != null)
+                return company;
+            _companyIdByHostnameId.invalidate(hostnameId);
+        }
+        final Company company = doInTransaction(session -> (Company) session.createQuery(
             "SELECT ce FROM Company ce\n"
                         + "WHERE ce.hostname.id = :hostnameId")
-            .setParameter("hostnameId", hostname.getId())
+            .setParameter("hostnameId", hostnameId)
             .setMaxResults(1)
             .uniqueResult());
+        // Unknown hostnames are not cached so a new Company is found as soon as it is saved on any node
+        if(company != null && hostnameId != null)
+            _companyIdByHostnameId.put(hostnameId, company.getId());
+        return company;
+    }
+
+    /**
+     * Evict the hostnames of the given Company, both the one it was resolved for and its current one.
+     *
+     * @param company the company
+     */
+    private void _evictHostnames(@Nullable Company company)
+    {
+        if(company == null)
+            return;
+        final Integer companyId = company.getId();
+        if(companyId != null)
+            _companyIdByHostnameId.asMap().values().removeIf(companyId::equals);
+        final Hostname hostname = company.getHostname();
+        if(hostname != null && hostname.getId() != null)
+            _companyIdByHostnameId.invalidate(hostname.getId());
+    }
+
+    /**
+     * Evict the authentication domains of admins updated outside of Hibernate.
+     *
+     * @param adminIds the admin Principal ids
+     */
+    private void _evictAdmins(List<Serializable> adminIds)
+    {
+        for(Serializable adminId : adminIds)
+            getSession().getSessionFactory().getCache().evictCollection(AUTHENTICATION_DOMAINS_ROLE, adminId);
+        BulkUpdates.refreshManaged(getSession(), Principal.class, adminIds);
+        // Cached principal queries may filter on authentication domains.
+        getSession().getSessionFactory().getCache().evictQueryRegion(UsersCacheRegions.ROLE_QUERY);
     }
 
     private Object readResolve() throws ObjectStreamException
@@ -0,0 +1,537 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.profile.model.membership;
+
+import com.example.app.config.ProjectCacheRegions;
+import com.example.app.profile.model.user.User;
+import com.example.app.support.service.EntityEventListeners;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+import net.proteusframework.core.hibernate.dao.DAOHelper;
+import net.proteusframework.core.spring.ApplicationContextUtils;
+
+/**
+ * In-memory index of the MembershipOperations each User holds on each Profile.
+ * <br><br>
+ * The index is loaded one User at a time with a single query and answers
+ * {@link com.example.app.profile.model.ProfileDAO#canOperate(User, Collection, java.util.TimeZone, MembershipOperation...)}
+ * style questions without a database round trip.  Membership start and end dates are kept with each entry and evaluated
+ * at check time, so a Membership becoming active or expiring does not require a reload.
+ * <br><br>
+ * Permissions are loaded in a read-only session of their own, so only committed Memberships are indexed, whatever the
+ * transaction of the caller has changed.  They are held in a node-local cache or, when
+ * {@code membership-permission-index.shared} is enabled, in the {@link ProjectCacheRegions#MEMBERSHIP_PERMISSION_DATA}
+ * region so an eviction reaches the whole cluster.
+ * <br><br>
+ * Entries are evicted when a Membership, or its operations, are inserted, updated or deleted.  Node-local entries
+ * also expire after {@link #MAX_ENTRY_AGE_MINUTES}, which bounds how stale they get when another node changes a
+ * Membership.  A load that overlaps an eviction of its User is discarded, so a revoked operation is never cached by
+ * a slow reload.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Repository
+@Lazy
+public class MembershipPermissionIndex extends DAOHelper implements PostInsertEventListener, PostUpdateEventListener,
+    PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+    PostCollectionRemoveEventListener, Serializable
+{
+    /** Max number of users held within the index */
+    public static final int MAX_USERS = 10_000;
+    /** Max age of a node-local entry before it is reloaded */
+    public static final int MAX_ENTRY_AGE_MINUTES = 5;
+    /** Logger. */
+    private static final Logger _logger = LogManager.getLogger(MembershipPermissionIndex.class);
+    private static final long serialVersionUID = -2245071582218331447L;
+    private static final int GENERATION_STRIPES = 1024;
+
+    @Autowired
+    private transient ProjectCacheRegions _cacheRegions;
+    @Value("#{new Boolean('${membership-permission-index.shared:false}')}")
+    private transient Boolean _shared;
+
+    private final transient Cache<Integer, UserPermissions> _localCache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_USERS)
+        .expireAfterWrite(MAX_ENTRY_AGE_MINUTES, TimeUnit.MINUTES)
+        .build();
+    /** Bumped on eviction.  Users share stripes, so an eviction may discard an unrelated load, but never miss one. */
+    private final transient AtomicLongArray _generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final transient AtomicLong _allGeneration = new AtomicLong();
+    private transient volatile boolean _listenersRegistered;
+
+    /**
+     * Get the indexed permissions for the given User, loading them if necessary.
+     *
+     * @param user the User
+     *
+     * @return the permissions of the User.  Transient Users have no permissions.
+     */
+    @Nonnull
+    public UserPermissions getPermissions(@Nonnull User user)
+    {
+        final Integer userId = user.getId();
+        if (userId == null) return UserPermissions.EMPTY;
+        _registerListenersIfNecessary();
+        final UserPermissions cached = _getCached(userId);
+        if (cached != null) return cached;
+        final long generation = _getGeneration(userId);
+        final UserPermissions loaded = _loadPermissions(userId);
+        if (_getGeneration(userId) == generation)
+        {
+            _putCached(userId, loaded);
+            // An eviction between the check and the put must not be lost
+            if (_getGeneration(userId) != generation)
+                _removeCached(userId);
+        }
+        return loaded;
+    }
+
+    /**
+     * Evict the given User from the index.
+     *
+     * @param userId the User id
+     */
+    public void evict(@Nullable Integer userId)
+    {
+        if (userId == null) return;
+        _generations.incrementAndGet(_getStripe(userId));
+        _removeCached(userId);
+    }
+
+    /**
+     * Evict all Users from the index.
+     */
+    public void evictAll()
+    {
+        _allGeneration.incrementAndGet();
+        _localCache.invalidateAll();
+        final Ehcache sharedCache = _getSharedCache();
+        if (sharedCache != null) sharedCache.removeAll();
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event)
+    {
+        if (event.getEntity() instanceof Membership) _evict((Membership) event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event)
+    {
+        if (event.getEntity() instanceof Membership) _evict((Membership) event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event)
+    {
+        if (event.getEntity() instanceof Membership) _evict((Membership) event.getEntity());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister)
+    {
+        return Membership.class.isAssignableFrom(persister.getMappedClass());
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event)
+    {
+        _onCollectionEvent(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event)
+    {
+        _onCollectionEvent(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event)
+    {
+        _onCollectionEvent(event);
+    }
+
+    /**
+     * Collection events are only fired at flush time, so evict once now and again after the transaction completes
+     * to avoid a concurrent reload caching the pre-commit operations.
+     *
+     * @param event the event
+     */
+    private void _onCollectionEvent(AbstractCollectionEvent event)
+    {
+        if (!(event.getAffectedOwnerOrNull() instanceof Membership)) return;
+        final Membership membership = (Membership) event.getAffectedOwnerOrNull();
+        _evict(membership);
+        final Integer userId = _getUserId(membership);
+        final EventSource session = event.getSession();
+        if (userId != null && session != null)
+        {
+            session.getActionQueue().registerProcess(
+                (AfterTransactionCompletionProcess) (success, sessionImplementor) -> evict(userId));
+        }
+    }
+
+    private void _evict(Membership membership)
+    {
+        final Integer userId = _getUserId(membership);
+        if (userId != null)
+        {
+            _logger.trace("Evicting membership permissions for User#" + userId);
+            evict(userId);
+        }
+        else
+        {
+            evictAll();
+        }
+    }
+
+    @Nullable
+    private UserPermissions _getCached(Integer userId)
+    {
+        final Ehcache sharedCache = _getSharedCache();
+        if (sharedCache != null)
+        {
+            final Element element = sharedCache.get(userId);
+            return element != null ? (UserPermissions) element.getObjectValue() : null;
+        }
+        return _localCache.getIfPresent(userId);
+    }
+
+    private void _putCached(Integer userId, UserPermissions permissions)
+    {
+        final Ehcache sharedCache = _getSharedCache();
+        if (sharedCache != null)
+            sharedCache.put(new Element(userId, permissions));
+        else
+            _localCache.put(userId, permissions);
+    }
+
+    private void _removeCached(Integer userId)
+    {
+        _localCache.invalidate(userId);
+        final Ehcache sharedCache = _getSharedCache();
+        if (sharedCache != null) sharedCache.remove(userId);
+    }
+
+    @Nullable
+    private Ehcache _getSharedCache()
+    {
+        return Boolean.TRUE.equals(_shared)
+            ? _cacheRegions.getCache(ProjectCacheRegions.MEMBERSHIP_PERMISSION_DATA)
+            : null;
+    }
+
+    private long _getGeneration(Integer userId)
+    {
+        return _allGeneration.get() + _generations.get(_getStripe(userId));
+    }
+
+    private static int _getStripe(Integer userId)
+    {
+        return Math.floorMod(userId, GENERATION_STRIPES);
+    }
+
+    @Nullable
+    private static Integer _getUserId(Membership membership)
+    {
+        // getId() on an uninitialized proxy does not hit the database
+        final User user = membership.getUser();
+        return user != null ? user.getId() : null;
+    }
+
+    /**
+     * Load the permissions of a User in a read-only session of its own, so changes the current transaction has not
+     * committed, and may yet roll back, are never cached.
+     *
+     * @param userId the User id
+     *
+     * @return the permissions
+     */
+    @SuppressWarnings("unchecked")
+    private UserPermissions _loadPermissions(Integer userId)
+    {
+        final List<Object[]> rows;
+        final Session session = getSession().getSessionFactory().openSession();
+        try
+        {
+            session.setDefaultReadOnly(true);
+            session.setFlushMode(FlushMode.MANUAL);
+            session.beginTransaction();
+            rows = session.createQuery(
+                "SELECT m.id, p.id, pt.id, m.startDate, m.endDate, op.id\n"
+                + " FROM Membership m INNER JOIN m.profile p\n"
+                + " LEFT JOIN p.profileType pt\n"
+                + " LEFT JOIN m.operations op\n"
+                + " WHERE m.user.id = :userId")
+                .setParameter("userId", userId)
+                .list();
+            // Nothing was written
+            session.getTransaction().rollback();
+        }
+        finally
+        {
+            session.close();
+        }
+        final Map<Integer, UserPermissions.Builder> memberships = new LinkedHashMap<>();
+        for (Object[] row : rows)
+        {
+            final UserPermissions.Builder builder = memberships.computeIfAbsent((Integer) row[0],
+                id -> new UserPermissions.Builder((Integer) row[1], (Integer) row[2], (Date) row[3], (Date) row[4]));
+            if (row[5] != null) builder.addOperation((Integer) row[5]);
+        }
+        final List<UserPermissions.Entry> entries = new ArrayList<>(memberships.size());
+        memberships.values().forEach(builder -> entries.add(builder.build()));
+        return new UserPermissions(entries);
+    }
+
+    private void _registerListenersIfNecessary()
+    {
+        if (_listenersRegistered) return;
+        synchronized (this)
+        {
+            if (_listenersRegistered) return;
+            EntityEventListeners.appendListeners(getSession().getSessionFactory(), this,
+                EventType.POST_COMMIT_INSERT, EventType.POST_COMMIT_UPDATE, EventType.POST_COMMIT_DELETE,
+                EventType.POST_COLLECTION_RECREATE, EventType.POST_COLLECTION_UPDATE, EventType.POST_COLLECTION_REMOVE);
+            _listenersRegistered = true;
+            _logger.debug("Registered membership permission index listeners.");
+        }
+    }
+
+    private Object readResolve() throws ObjectStreamException
+    {
+        ApplicationContext context = ApplicationContextUtils.getInstance().getContext();
+        assert context != null;
+        return context.getBean(MembershipPermissionIndex.class);
+    }
+
+    private Object writeReplace() throws ObjectStreamException
+    {
+        return this;
+    }
+
+    /**
+     * Immutable snapshot of the Memberships a single User holds.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    public static final class UserPermissions implements Serializable
+    {
+        /** Permissions of a User without Memberships */
+        public static final UserPermissions EMPTY = new UserPermissions(Collections.emptyList());
+        private static final long serialVersionUID = 6028215319418052563L;
+
+        private final List<Entry> _entries;
+
+        /**
+         * Instantiate a new instance of UserPermissions
+         *
+         * @param entries the membership entries
+         */
+        UserPermissions(@Nonnull List<Entry> entries)
+        {
+            _entries = entries;
+        }
+
+        /**
+         * Test if any Membership on one of the given Profiles is active at the given time and has all the given operations.
+         *
+         * @param profileIds the Profile ids
+         * @param now the time to check for active Memberships, in epoch milliseconds
+         * @param operationIds the MembershipOperation ids
+         *
+         * @return true or false.
+         */
+        public boolean canOperate(@Nonnull Collection<Integer> profileIds, long now, @Nonnull int... operationIds)
+        {
+            final int[] sorted = _sortedDistinct(operationIds);
+            for (Entry entry : _entries)
+            {
+                if (profileIds.contains(entry._profileId) && entry.isActive(now) && entry.hasAll(sorted))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Test if any Membership on a Profile of the given ProfileType is active at the given time and has all the given
+         * operations.
+         *
+         * @param profileTypeId the ProfileType id
+         * @param now the time to check for active Memberships, in epoch milliseconds
+         * @param operationIds the MembershipOperation ids
+         *
+         * @return true or false.
+         */
+        public boolean canOperateOnProfileType(int profileTypeId, long now, @Nonnull int... operationIds)
+        {
+            final int[] sorted = _sortedDistinct(operationIds);
+            for (Entry entry : _entries)
+            {
+                if (entry._profileTypeId != null && entry._profileTypeId == profileTypeId
+                    && entry.isActive(now) && entry.hasAll(sorted))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Visit each Membership on one of the given Profiles that is active at the given time.
+         *
+         * @param profileIds the Profile ids
+         * @param now the time to check for active Memberships, in epoch milliseconds
+         * @param visitor receives the Profile id and the MembershipOperation ids of each active Membership
+         */
+        public void forEachActiveMembership(@Nonnull Collection<Integer> profileIds, long now,
+            @Nonnull BiConsumer<Integer, int[]> visitor)
+        {
+            for (Entry entry : _entries)
+            {
+                if (profileIds.contains(entry._profileId) && entry.isActive(now))
+                    visitor.accept(entry._profileId, entry._operationIds.clone());
+            }
+        }
+
+        /**
+         * Get the number of indexed Memberships.
+         *
+         * @return the size
+         */
+        public int size()
+        {
+            return _entries.size();
+        }
+
+        private static int[] _sortedDistinct(int[] operationIds)
+        {
+            return Arrays.stream(operationIds).distinct().sorted().toArray();
+        }
+
+        /**
+         * A single indexed Membership.
+         */
+        static final class Entry implements Serializable
+        {
+            private static final long serialVersionUID = -4188837326650127045L;
+            private final int _profileId;
+            private final Integer _profileTypeId;
+            private final long _startDate;
+            private final long _endDate;
+            private final int[] _operationIds;
+
+            Entry(int profileId, @Nullable Integer profileTypeId, @Nullable Date startDate, @Nullable Date endDate,
+                int[] operationIds)
+            {
+                _profileId = profileId;
+                _profileTypeId = profileTypeId;
+                _startDate = startDate != null ? startDate.getTime() : Long.MIN_VALUE;
+                _endDate = endDate != null ? endDate.getTime() : Long.MAX_VALUE;
+                _operationIds = _sortedDistinct(operationIds);
+            }
+
+            boolean isActive(long now)
+            {
+                return _startDate <= now && _endDate >= now;
+            }
+
+            boolean hasAll(int[] sortedOperationIds)
+            {
+                for (int operationId : sortedOperationIds)
+                {
+                    if (Arrays.binarySearch(_operationIds, operationId) < 0) return false;
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Builder for an {@link Entry}, used while aggregating query rows.
+         */
+        static final class Builder
+        {
+            private final int _profileId;
+            private final Integer _profileTypeId;
+            private final Date _startDate;
+            private final Date _endDate;
+            private int[] _operationIds = new int[4];
+            private int _operationCount;
+
+            Builder(int profileId, @Nullable Integer profileTypeId, @Nullable Date startDate, @Nullable Date endDate)
+            {
+                _profileId = profileId;
+                _profileTypeId = profileTypeId;
+                _startDate = startDate;
+                _endDate = endDate;
+            }
+
+            Builder addOperation(int operationId)
+            {
+                if (_operationCount == _operationIds.length)
+                    _operationIds = Arrays.copyOf(_operationIds, _operationCount * 2);
+                _operationIds[_operationCount++] = operationId;
+                return this;
+            }
+
+            Entry build()
+            {
+                return new Entry(_profileId, _profileTypeId, _startDate, _endDate,
+                    Arrays.copyOf(_operationIds, _operationCount));
+            }
+        }
+    }
+}
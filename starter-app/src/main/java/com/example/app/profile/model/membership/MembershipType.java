@@ -75,6 +75,8 @@ public class MembershipType extends AbstractAuditableEntity<Integer> implements
     public static final String DESC_COLUMN_PROP = "description";
     /** The database column name and property: defaultOperations */
     public static final String DEFAULT_OPERATIONS_PROP = "defaultOperations";
+    /** The database join table for property: defaultOperations */
+    public static final String OPERATIONS_JOIN_TABLE = "membershiptype_operations";
     /** The database column name and property: programmaticIdentifier */
     public static final String PROGRAMMATIC_ID_COLUMN_PROP = "programmaticIdentifier";
     /** The property: profileType */
@@ -115,7 +117,7 @@ public class MembershipType extends AbstractAuditableEntity<Integer> implements
      * @return the operations.
      */
     @ManyToMany
-    @JoinTable(schema = ProjectConfig.PROJECT_SCHEMA, name = "membershiptype_operations",
+    @JoinTable(schema = ProjectConfig.PROJECT_SCHEMA, name = OPERATIONS_JOIN_TABLE,
         joinColumns = {@JoinColumn(name = ID_COLUMN)},
         inverseJoinColumns = {@JoinColumn(name = MembershipOperation.ID_COLUMN)})
     @Cascade(CascadeType.ALL)
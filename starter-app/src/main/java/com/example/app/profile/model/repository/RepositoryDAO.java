@@ -36,6 +36,7 @@ import java.util.stream.Collectors;
 
 import net.proteusframework.core.hibernate.dao.DAOHelper;
 import net.proteusframework.core.hibernate.dao.EntityRetriever;
+import net.proteusframework.ui.search.QLBuilder;
 
 /**
  * {@link DAOHelper} implementation for {@link Repository}
@@ -197,6 +198,38 @@ public class RepositoryDAO extends DAOHelper
             .list();
     }
 
+    /**
+     * Get a page of the RepositoryItemRelations matching the given query, ordered by create time.
+     * Pages are found by keyset rather than offset, so each page costs the same as the first.
+     *
+     * @param builder the query for RepositoryItemRelations.  Ordering and keyset criteria are added to it.
+     * @param after the last RepositoryItemRelation of the previous page, or null for the first page
+     * @param ascending true to order oldest first, false for newest first
+     * @param maxResults the maximum number of RepositoryItemRelations to return
+     *
+     * @return RepositoryItemRelations
+     */
+    @SuppressWarnings("unchecked")
+    public List<RepositoryItemRelation> getRelations(@Nonnull QLBuilder builder, @Nullable RepositoryItemRelation after,
+        boolean ascending, int maxResults)
+    {
+        final String alias = builder.getAlias();
+        final String createTime = alias + '.' + RepositoryItemRelation.CREATE_TIME_PROP;
+        final String direction = ascending ? "ASC" : "DESC";
+        if (after != null)
+        {
+            final String op = ascending ? ">" : "<";
+            builder.appendCriteria('(' + createTime + ' ' + op + " :afterTime OR (" + createTime + " = :afterTime AND "
+                                   + alias + ".id " + op + " :afterId))")
+                .putParameter("afterTime", after.getCreateTime())
+                .putParameter("afterId", after.getId());
+        }
+        builder.setOrderBy(createTime + ' ' + direction + ", " + alias + ".id " + direction);
+        return builder.getQueryResolver().createQuery(getSession())
+            .setMaxResults(maxResults)
+            .list();
+    }
+
     /**
      * Delete the given RepositoryItem from the database
      *
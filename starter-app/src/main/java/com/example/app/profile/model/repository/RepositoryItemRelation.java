@@ -71,6 +71,8 @@ public class RepositoryItemRelation extends AbstractAuditableEntity<Integer>
     public static final String REPOSITORY_PROP = "repository";
     /** The property: relationType */
     public static final String RELATION_TYPE_PROP = "relationType";
+    /** The property: createTime */
+    public static final String CREATE_TIME_PROP = "createTime";
     private static final long serialVersionUID = 4502761901001997105L;
     private static final String GENERATOR = ProjectConfig.PROJECT_SCHEMA + '.' + ID_COLUMN + "_seq";
     private RepositoryItem _repositoryItem;
@@ -18,8 +18,6 @@ import org.apache.commons.fileupload.FileItem;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hibernate.Query;
-import org.hibernate.Session;
-import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.Contract;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
@@ -36,6 +34,8 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import net.proteusframework.cms.FileSystemDirectory;
 import net.proteusframework.cms.dao.CmsFrontendDAO;
@@ -91,6 +91,9 @@ public class UserDAO extends DAOHelper implements Serializable
     /** principal dao */
     @Autowired
     protected transient PrincipalDAO _principalDAO;
+    /** user search index */
+    @Autowired
+    protected transient UserSearchIndex _userSearchIndex;
     private FileSaver<User> _userImageSaver;
 
     /**
@@ -172,37 +175,17 @@ public class UserDAO extends DAOHelper implements Serializable
     }
 
     /**
-     * Gets users by email address.
+     * Gets users by email address or username, ignoring case.
+     * This is an indexed lookup of the login keys maintained by {@link UserSearchIndex}.
      *
      * @param emailAddress the email address
      * @param domainList authentication domain list.
      * @return the users by email address.
      */
-    @SuppressWarnings("unchecked")
     public List<User> getUsersByEmailAddress(String emailAddress, AuthenticationDomainList domainList)
     {
-        return (List<User>)
-            doInTransaction(session -> {
-                @Language("HQL")
-                String hql = "SELECT DISTINCT u FROM User u INNER JOIN u.principal p\n"
-                             + "INNER JOIN p.credentials cred\n"
-                             + "INNER JOIN p.authenticationDomains ad\n"
-                             + "INNER JOIN p.contact c INNER JOIN c.emailAddresses ea\n"
-                             + "WHERE (LOWER(ea.email) = LOWER(:email) OR LOWER(cred.username) = LOWER(:email))\n";
-                if(!domainList.isEmpty())
-                {
-                    hql += " AND ad IN (:authDomains)";
-                }
-
-                Query query = session.createQuery(hql)
-                    .setParameter("email", emailAddress);
-                if(!domainList.isEmpty())
-                {
-                    query.setParameterList("authDomains", domainList.getAuthenticationDomainList());
-                }
-
-                return query.list();
-            });
+        return _userSearchIndex.getUsersByLogin(emailAddress,
+            domainList.isEmpty() ? null : domainList.getAuthenticationDomainList());
     }
 
     /**
@@ -270,7 +253,7 @@ public class UserDAO extends DAOHelper implements Serializable
     }
 
     /**
-     * Get users matching the specified parameters.
+     * Get users matching the specified parameters from the {@link UserSearchIndex}.
      * All parameters are optional. If none are specified, an empty list is returned.
      *
      * @param firstName first name.
@@ -278,64 +261,32 @@ public class UserDAO extends DAOHelper implements Serializable
      * @param email email address.
      * @param exclude optional exclusion collection.
      *
-     * @return the user list.
+     * @return the user list, ranked.  Every term of the parameters must match a name, email address or username.
      */
     public List<User> getUsers(@Nullable String firstName, @Nullable String lastName, @Nullable String email,
         @Nullable Collection<User> exclude)
     {
-        boolean hasFirst = !isEmptyString(firstName);
-        boolean hasLast = !isEmptyString(lastName);
-        boolean hasEmail = !isEmptyString(email);
-        boolean hasExclude = exclude != null && !exclude.isEmpty();
-        if (!hasFirst && !hasLast && !hasEmail)
-            return new ArrayList<>();
-        StringBuilder hql = new StringBuilder();
-        hql.append("SELECT DISTINCT user FROM User user \n"
-                   + " INNER JOIN user.principal as p\n"
-                   + " LEFT JOIN p.contact as c \n");
-        if (hasFirst || hasLast)
-        {
-            hql.append(" LEFT JOIN c.name as n\n");
-        }
-        if (hasEmail)
-        {
-            hql.append(" LEFT JOIN c.emailAddresses as ea\n");
-        }
-        hql.append(" WHERE (");
-        if (hasFirst)
-        {
-            hql.append(" LOWER(n.first) LIKE :firstName");
-        }
-        if (hasLast)
-        {
-            if (hasFirst) hql.append(" OR");
-            hql.append(" LOWER(n.last) LIKE :lastName");
-        }
-        if (hasEmail)
-        {
-            if (hasFirst || hasLast) hql.append(" OR");
-            hql.append(" LOWER(ea.email) LIKE :email");
-        }
-        hql.append(')');
-
-        if (hasExclude)
-        {
-            hql.append(" AND user NOT IN (:exclude)");
-        }
-
-        final Session session = getSession();
-        final Query query = session.createQuery(hql.toString());
-        query.setCacheable(true);
-        query.setCacheRegion(ProjectCacheRegions.MEMBER_QUERY);
-
-        if (hasFirst) query.setParameter("firstName", '%' + firstName.trim().toLowerCase() + '%');
-        if (hasLast) query.setParameter("lastName", '%' + lastName.trim().toLowerCase() + '%');
-        if (hasEmail) query.setParameter("email", '%' + email.trim().toLowerCase() + '%');
-        if (hasExclude) query.setParameterList("exclude", exclude);
+        return searchUsers(Stream.of(firstName, lastName, email)
+            .filter(value -> !isEmptyString(value))
+            .distinct()
+            .collect(Collectors.joining(" ")), exclude, 0, 0);
+    }
 
-        @SuppressWarnings("unchecked")
-        final List<User> list = query.list();
-        return list;
+    /**
+     * Search for users using the {@link UserSearchIndex}.
+     *
+     * @param query the query.  Every term must match a name, email address or username of the user.
+     * @param exclude optional exclusion collection.
+     * @param firstResult the index of the first result
+     * @param maxResults the maximum number of results, 0 for no limit
+     *
+     * @return the user list, ranked.  Empty if the query has no terms.
+     */
+    @Nonnull
+    public List<User> searchUsers(@Nullable String query, @Nullable Collection<User> exclude, int firstResult,
+        int maxResults)
+    {
+        return _userSearchIndex.search(query, null, exclude, firstResult, maxResults);
     }
 
     /**
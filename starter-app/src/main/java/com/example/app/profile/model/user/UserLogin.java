@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.profile.model.user;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.validation.constraints.NotNull;
+
+import net.proteusframework.core.hibernate.model.AbstractEntity;
+
+import static com.example.app.config.ProjectConfig.PROJECT_SCHEMA;
+
+/**
+ * Normalized login key of a {@link User}, maintained by {@link UserSearchIndex}.
+ * <br><br>
+ * A User has one key for each of its email addresses and usernames, trimmed and lower cased with
+ * {@link UserSearchIndex#normalizeLogin(String)}, so resolving a login is an equality probe on the unique
+ * {@code (login, user_id)} index.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Entity
+@Access(AccessType.FIELD)
+@Table(name = UserLogin.TABLE_NAME, schema = PROJECT_SCHEMA, uniqueConstraints = {
+    @UniqueConstraint(name = "userlogin_key", columnNames = {UserLogin.LOGIN_COLUMN_PROP, User.ID_COLUMN})
+})
+public class UserLogin extends AbstractEntity<Integer>
+{
+    /** The database table name */
+    public static final String TABLE_NAME = "userlogin";
+    /** The database id column */
+    public static final String ID_COLUMN = "userlogin_id";
+    /** The property: user */
+    public static final String USER_PROP = "user";
+    /** The database column and property: login */
+    public static final String LOGIN_COLUMN_PROP = "login";
+    private static final long serialVersionUID = 4472902153886310263L;
+    private static final String GENERATOR = PROJECT_SCHEMA + '.' + ID_COLUMN + "_seq";
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = User.ID_COLUMN)
+    private User user;
+
+    @Column(name = LOGIN_COLUMN_PROP, nullable = false)
+    private String login;
+
+    @Id
+    @Column(name = ID_COLUMN)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = GENERATOR)
+    @SequenceGenerator(name = GENERATOR, sequenceName = GENERATOR)
+    @NotNull
+    @Override
+    @Access(AccessType.PROPERTY)
+    public Integer getId()
+    {
+        return super.getId();
+    }
+
+    /**
+     * Get the User
+     *
+     * @return the user
+     */
+    public User getUser()
+    {
+        return user;
+    }
+
+    /**
+     * Set the User
+     *
+     * @param user the user
+     */
+    public void setUser(User user)
+    {
+        this.user = user;
+    }
+
+    /**
+     * Get the normalized email address or username
+     *
+     * @return the login
+     */
+    public String getLogin()
+    {
+        return login;
+    }
+
+    /**
+     * Set the normalized email address or username
+     *
+     * @param login the login
+     */
+    public void setLogin(String login)
+    {
+        this.login = login;
+    }
+}
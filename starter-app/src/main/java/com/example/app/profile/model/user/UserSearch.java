@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.profile.model.user;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.OneToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+import net.proteusframework.core.hibernate.model.AbstractEntity;
+
+import static com.example.app.config.ProjectConfig.PROJECT_SCHEMA;
+
+/**
+ * Denormalized search document for a {@link User}, maintained by {@link UserSearchIndex}.
+ * <br><br>
+ * The document holds the normalized name, email address and username tokens of the User separated by spaces, with a
+ * leading and trailing space so a word prefix can be matched with {@code like '% term%'}.  The database keeps a
+ * trigram index on the document so substring matches do not scan every User.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Entity
+@Access(AccessType.FIELD)
+@Table(name = UserSearch.TABLE_NAME, schema = PROJECT_SCHEMA)
+public class UserSearch extends AbstractEntity<Integer>
+{
+    /** The database table name */
+    public static final String TABLE_NAME = "usersearch";
+    /** The database id column */
+    public static final String ID_COLUMN = "usersearch_id";
+    /** The property: user */
+    public static final String USER_PROP = "user";
+    /** The database column and property: document */
+    public static final String DOCUMENT_COLUMN_PROP = "document";
+    /** The database column and property: sortName */
+    public static final String SORT_NAME_COLUMN_PROP = "sortName";
+    private static final long serialVersionUID = -2209184728812371590L;
+    private static final String GENERATOR = PROJECT_SCHEMA + '.' + ID_COLUMN + "_seq";
+
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = User.ID_COLUMN, unique = true)
+    private User user;
+
+    @Column(name = DOCUMENT_COLUMN_PROP, length = 4000, nullable = false)
+    private String document;
+
+    @Column(name = SORT_NAME_COLUMN_PROP, nullable = false)
+    private String sortName;
+
+    @Id
+    @Column(name = ID_COLUMN)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = GENERATOR)
+    @SequenceGenerator(name = GENERATOR, sequenceName = GENERATOR)
+    @NotNull
+    @Override
+    @Access(AccessType.PROPERTY)
+    public Integer getId()
+    {
+        return super.getId();
+    }
+
+    /**
+     * Get the User
+     *
+     * @return the user
+     */
+    public User getUser()
+    {
+        return user;
+    }
+
+    /**
+     * Set the User
+     *
+     * @param user the user
+     */
+    public void setUser(User user)
+    {
+        this.user = user;
+    }
+
+    /**
+     * Get the search document
+     *
+     * @return the document
+     */
+    public String getDocument()
+    {
+        return document;
+    }
+
+    /**
+     * Set the search document
+     *
+     * @param document the document
+     */
+    public void setDocument(String document)
+    {
+        this.document = document;
+    }
+
+    /**
+     * Get the normalized "last first" name used to order Users that rank the same
+     *
+     * @return the sort name
+     */
+    public String getSortName()
+    {
+        return sortName;
+    }
+
+    /**
+     * Set the normalized "last first" name used to order Users that rank the same
+     *
+     * @param sortName the sort name
+     */
+    public void setSortName(String sortName)
+    {
+        this.sortName = sortName;
+    }
+}
@@ -0,0 +1,799 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.profile.model.user;
+
+import com.example.app.config.ProjectCacheRegions;
+import com.example.app.profile.model.company.Company;
+import com.example.app.support.service.EntityEventListeners;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Query;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.ApplicationContextEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.ContextStartedEvent;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.text.Normalizer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import net.proteusframework.core.hibernate.HibernateSessionHandler;
+import net.proteusframework.core.hibernate.dao.DAOHelper;
+import net.proteusframework.core.spring.ApplicationContextUtils;
+import net.proteusframework.ui.search.QLBuilder;
+import net.proteusframework.users.model.AuthenticationDomain;
+import net.proteusframework.users.model.Contact;
+import net.proteusframework.users.model.EmailAddress;
+import net.proteusframework.users.model.Name;
+import net.proteusframework.users.model.PasswordCredentials;
+import net.proteusframework.users.model.Principal;
+
+/**
+ * Indexed people search over the {@link UserSearch} documents of Users.
+ * <br><br>
+ * Each term of a query must match a substring of the document, which the database answers from a trigram index
+ * instead of scanning every User.  Results are ranked with Users whose name, email address or username starts with
+ * the first term ahead of those that only contain it, then by last and first name.
+ * <br><br>
+ * The index also keeps a {@link UserLogin} key for each email address and username of a User, so a login is resolved
+ * with an equality probe instead of comparing the lower cased email address and username of every User.  Resolved
+ * logins are cached on this node by login and authentication domains, and evicted when one of the Users changes.
+ * <br><br>
+ * Documents and login keys are rebuilt in the background after a User, or its Principal, Contact, Name, EmailAddress
+ * or credentials change on this node.  Users without a document are indexed when the application starts.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Repository
+@Lazy
+public class UserSearchIndex extends DAOHelper implements ApplicationListener<ApplicationContextEvent>,
+    PostInsertEventListener, PostUpdateEventListener, PostCollectionRecreateEventListener,
+    PostCollectionUpdateEventListener, PostCollectionRemoveEventListener, Serializable
+{
+    /** Max number of Users indexed within one transaction */
+    public static final int BATCH_SIZE = 500;
+    /** Max number of terms in a query.  Extra terms are ignored. */
+    public static final int MAX_TERMS = 8;
+    /** Max number of resolved logins held within the node-local cache */
+    public static final int MAX_LOGINS = 10_000;
+    /** Max age of a resolved login.  A login given to another User on another node resolves as before until then. */
+    public static final int MAX_LOGIN_AGE_MINUTES = 5;
+    /** Max age of an unknown login.  A User created on another node may be unable to sign in here until it expires. */
+    public static final int MAX_UNKNOWN_LOGIN_AGE_SECONDS = 30;
+    /** Logger. */
+    private static final Logger _logger = LogManager.getLogger(UserSearchIndex.class);
+    private static final long serialVersionUID = -5386012409475418130L;
+
+    /**
+     * The entities a search document is built from, and how to find the Users affected by a change to one.
+     */
+    enum Source
+    {
+        /** User */
+        USER("SELECT u.id FROM User u WHERE u.id IN (:ids)"),
+        /** Principal */
+        PRINCIPAL("SELECT u.id FROM User u WHERE u.principal.id IN (:ids)"),
+        /** Contact */
+        CONTACT("SELECT u.id FROM User u INNER JOIN u.principal p WHERE p.contact.id IN (:ids)"),
+        /** Name */
+        NAME("SELECT u.id FROM User u INNER JOIN u.principal p INNER JOIN p.contact c WHERE c.name.id IN (:ids)"),
+        /** EmailAddress */
+        EMAIL_ADDRESS("SELECT u.id FROM User u INNER JOIN u.principal p INNER JOIN p.contact c\n"
+                      + " INNER JOIN c.emailAddresses ea WHERE ea.id IN (:ids)"),
+        /** PasswordCredentials */
+        CREDENTIALS("SELECT u.id FROM User u INNER JOIN u.principal p INNER JOIN p.credentials cred\n"
+                    + " WHERE cred.id IN (:ids)");
+
+        private final String _userIdQuery;
+
+        Source(String userIdQuery)
+        {
+            _userIdQuery = userIdQuery;
+        }
+
+        @Nullable
+        static Source of(@Nullable Object entity)
+        {
+            if (entity instanceof User) return USER;
+            if (entity instanceof Principal) return PRINCIPAL;
+            if (entity instanceof Contact) return CONTACT;
+            if (entity instanceof Name) return NAME;
+            if (entity instanceof EmailAddress) return EMAIL_ADDRESS;
+            if (entity instanceof PasswordCredentials) return CREDENTIALS;
+            return null;
+        }
+    }
+
+    private final transient Queue<Map.Entry<Source, Serializable>> _pending = new ConcurrentLinkedQueue<>();
+    private final transient AtomicBoolean _scheduled = new AtomicBoolean();
+    private final transient ExecutorService _executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("user-search-index-%d").setDaemon(true).build());
+    private final transient Cache<List<Object>, List<Integer>> _loginCache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_LOGINS)
+        .expireAfterWrite(MAX_LOGIN_AGE_MINUTES, TimeUnit.MINUTES)
+        .build();
+    private final transient Cache<List<Object>, Boolean> _unknownLoginCache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_LOGINS)
+        .expireAfterWrite(MAX_UNKNOWN_LOGIN_AGE_SECONDS, TimeUnit.SECONDS)
+        .build();
+    private transient volatile HibernateSessionHandler _sessionHandler;
+    private transient volatile boolean _listenersRegistered;
+
+    /**
+     * Search for Users.
+     *
+     * @param query the query.  Every term must match a name, email address or username of the User.
+     * @param company optional Company the Users must belong to
+     * @param exclude optional Users to exclude
+     * @param firstResult the index of the first result
+     * @param maxResults the maximum number of results, 0 for no limit
+     *
+     * @return the ranked Users.  Empty if the query has no terms.
+     */
+    @Nonnull
+    public List<User> search(@Nullable String query, @Nullable Company company, @Nullable Collection<User> exclude,
+        int firstResult, int maxResults)
+    {
+        final List<String> terms = Document.getTerms(query);
+        if (terms.isEmpty())
+            return new ArrayList<>();
+        final boolean hasExclude = exclude != null && !exclude.isEmpty();
+        final StringBuilder hql = new StringBuilder("SELECT us.user FROM UserSearch us\n WHERE ");
+        for (int i = 0; i < terms.size(); i++)
+        {
+            if (i > 0) hql.append(" AND ");
+            hql.append("us.").append(UserSearch.DOCUMENT_COLUMN_PROP).append(" LIKE :term").append(i);
+        }
+        if (hasExclude)
+            hql.append("\n AND us.user NOT IN (:exclude)");
+        if (company != null)
+        {
+            hql.append("\n AND EXISTS (SELECT ce.id FROM Company ce INNER JOIN ce.users cu\n"
+                       + "  WHERE ce.id = :ceid AND cu.id = us.user.id)");
+        }
+        hql.append("\n ORDER BY CASE WHEN us.").append(UserSearch.DOCUMENT_COLUMN_PROP)
+            .append(" LIKE :prefix THEN 0 ELSE 1 END, us.").append(UserSearch.SORT_NAME_COLUMN_PROP).append(", us.id");
+
+        final Query q = getSession().createQuery(hql.toString());
+        q.setCacheable(true);
+        q.setCacheRegion(ProjectCacheRegions.MEMBER_QUERY);
+        for (int i = 0; i < terms.size(); i++)
+            q.setParameter("term" + i, '%' + terms.get(i) + '%');
+        q.setParameter("prefix", "% " + terms.get(0) + '%');
+        if (hasExclude) q.setParameterList("exclude", exclude);
+        if (company != null) q.setParameter("ceid", company.getId());
+        q.setFirstResult(firstResult);
+        if (maxResults > 0) q.setMaxResults(maxResults);
+
+        @SuppressWarnings("unchecked")
+        final List<User> list = q.list();
+        return list;
+    }
+
+    /**
+     * Restrict a User query to Users matching the given query.
+     *
+     * @param builder the User query
+     * @param query the query.  Every term must match a name, email address or username of the User.
+     */
+    public void appendCriteria(@Nonnull QLBuilder builder, @Nullable String query)
+    {
+        final List<String> terms = Document.getTerms(query);
+        if (terms.isEmpty())
+            return;
+        final StringBuilder criteria = new StringBuilder("EXISTS (SELECT us.id FROM UserSearch us WHERE us.user.id = ")
+            .append(builder.getAlias()).append(".id");
+        for (int i = 0; i < terms.size(); i++)
+            criteria.append(" AND us.").append(UserSearch.DOCUMENT_COLUMN_PROP).append(" LIKE :usersearch").append(i);
+        builder.appendCriteria(criteria.append(')').toString());
+        for (int i = 0; i < terms.size(); i++)
+            builder.putParameter("usersearch" + i, '%' + terms.get(i) + '%');
+    }
+
+    /**
+     * Get the Users with the given email address or username, ignoring case.
+     * <br><br>
+     * Logins are looked up by their login keys only.  An unknown login is remembered briefly, so repeated attempts
+     * with it do not reach the database.
+     *
+     * @param login the email address or username
+     * @param authenticationDomains optional authentication domains the Users must belong to.
+     * If null or empty, the Users may belong to any domain.
+     *
+     * @return the Users
+     */
+    @Nonnull
+    public List<User> getUsersByLogin(@Nullable String login,
+        @Nullable Collection<AuthenticationDomain> authenticationDomains)
+    {
+        final String key = normalizeLogin(login);
+        if (key.isEmpty())
+            return new ArrayList<>();
+        final boolean hasDomains = authenticationDomains != null && !authenticationDomains.isEmpty();
+        final List<Object> cacheKey = new ArrayList<>();
+        cacheKey.add(key);
+        if (hasDomains)
+        {
+            authenticationDomains.stream().map(AuthenticationDomain::getId).filter(Objects::nonNull).sorted()
+                .forEach(cacheKey::add);
+        }
+        List<Integer> userIds = _loginCache.getIfPresent(cacheKey);
+        if (userIds == null && _unknownLoginCache.getIfPresent(cacheKey) != null)
+            userIds = Collections.emptyList();
+        if (userIds == null)
+        {
+            String hql = "SELECT DISTINCT u.id FROM UserLogin ul INNER JOIN ul.user u INNER JOIN u.principal p\n"
+                         + " INNER JOIN p.authenticationDomains ad WHERE ul." + UserLogin.LOGIN_COLUMN_PROP + " = :login";
+            if (hasDomains)
+                hql += " AND ad IN (:authDomains)";
+            final Query query = getSession().createQuery(hql).setParameter("login", key);
+            if (hasDomains)
+                query.setParameterList("authDomains", authenticationDomains);
+            @SuppressWarnings("unchecked")
+            final List<Integer> list = query.list();
+            userIds = list;
+            // Unknown logins are evicted once a User with the login is indexed on this node
+            if (!userIds.isEmpty())
+                _loginCache.put(cacheKey, userIds);
+            else
+                _unknownLoginCache.put(cacheKey, Boolean.TRUE);
+        }
+        final List<User> users = new ArrayList<>(userIds.size());
+        for (Integer userId : userIds)
+        {
+            final User user = (User) getSession().get(User.class, userId);
+            if (user != null) users.add(user);
+        }
+        return users;
+    }
+
+    /**
+     * Rebuild the documents of the Users affected by changes made on this node.
+     * This is only done on the background thread, within its own session, so searches read the committed index.
+     * If the rebuild fails, the changes are queued again and retried with the next change.
+     */
+    private void _drain()
+    {
+        final List<Map.Entry<Source, Serializable>> polled = new ArrayList<>();
+        final Map<Source, Set<Serializable>> changes = new LinkedHashMap<>();
+        Map.Entry<Source, Serializable> change;
+        while ((change = _pending.poll()) != null)
+        {
+            polled.add(change);
+            changes.computeIfAbsent(change.getKey(), key -> new LinkedHashSet<>()).add(change.getValue());
+        }
+        if (changes.isEmpty())
+            return;
+        try
+        {
+            final Set<Integer> userIds = new LinkedHashSet<>();
+            changes.forEach((source, ids) -> {
+                for (List<Serializable> batch : Lists.partition(new ArrayList<>(ids), BATCH_SIZE))
+                {
+                    @SuppressWarnings("unchecked")
+                    final List<Integer> list = getSession().createQuery(source._userIdQuery)
+                        .setParameterList("ids", batch)
+                        .list();
+                    userIds.addAll(list);
+                }
+            });
+            for (List<Integer> batch : Lists.partition(new ArrayList<>(userIds), BATCH_SIZE))
+                _reindex(batch);
+        }
+        catch (RuntimeException e)
+        {
+            _pending.addAll(polled);
+            throw e;
+        }
+    }
+
+    /**
+     * Rebuild the documents and login keys of the given Users.
+     *
+     * @param userIds the User ids
+     */
+    @SuppressWarnings("unchecked")
+    private void _reindex(@Nonnull Collection<Integer> userIds)
+    {
+        if (userIds.isEmpty())
+            return;
+        final Map<Integer, Document.Builder> builders = new LinkedHashMap<>();
+        final Map<Integer, Set<String>> logins = new HashMap<>();
+        for (Object[] row : (List<Object[]>) getSession().createQuery(
+            "SELECT u.id, n.first, n.last FROM User u INNER JOIN u.principal p\n"
+            + " LEFT JOIN p.contact c LEFT JOIN c.name n WHERE u.id IN (:ids)")
+            .setParameterList("ids", userIds)
+            .list())
+        {
+            builders.computeIfAbsent((Integer) row[0], id -> new Document.Builder())
+                .addName((String) row[1], (String) row[2]);
+        }
+        for (Object[] row : (List<Object[]>) getSession().createQuery(
+            "SELECT u.id, ea.email FROM User u INNER JOIN u.principal p\n"
+            + " INNER JOIN p.contact c INNER JOIN c.emailAddresses ea WHERE u.id IN (:ids)")
+            .setParameterList("ids", userIds)
+            .list())
+        {
+            final Document.Builder builder = builders.get(row[0]);
+            if (builder != null) builder.addEmail((String) row[1]);
+            _addLogin(logins, (Integer) row[0], (String) row[1]);
+        }
+        for (Object[] row : (List<Object[]>) getSession().createQuery(
+            "SELECT u.id, cred.username FROM User u INNER JOIN u.principal p\n"
+            + " INNER JOIN p.credentials cred WHERE u.id IN (:ids)")
+            .setParameterList("ids", userIds)
+            .list())
+        {
+            final Document.Builder builder = builders.get(row[0]);
+            if (builder != null) builder.addEmail((String) row[1]);
+            _addLogin(logins, (Integer) row[0], (String) row[1]);
+        }
+        final Map<Integer, UserSearch> existing = new HashMap<>();
+        for (UserSearch userSearch : (List<UserSearch>) getSession().createQuery(
+            "FROM UserSearch us WHERE us.user.id IN (:ids)")
+            .setParameterList("ids", userIds)
+            .list())
+        {
+            existing.put(userSearch.getUser().getId(), userSearch);
+        }
+        final Map<Integer, Map<String, UserLogin>> existingLogins = new HashMap<>();
+        for (UserLogin userLogin : (List<UserLogin>) getSession().createQuery(
+            "FROM UserLogin ul WHERE ul.user.id IN (:ids)")
+            .setParameterList("ids", userIds)
+            .list())
+        {
+            existingLogins.computeIfAbsent(userLogin.getUser().getId(), id -> new HashMap<>())
+                .put(userLogin.getLogin(), userLogin);
+        }
+        // Resolved logins also depend on the Principal, so every login of a changed User is evicted
+        final Set<String> evictLogins = new HashSet<>();
+        existingLogins.values().forEach(userLogins -> evictLogins.addAll(userLogins.keySet()));
+        logins.values().forEach(evictLogins::addAll);
+        doInTransaction(session -> {
+            builders.forEach((userId, builder) -> {
+                final Document document = builder.build();
+                UserSearch userSearch = existing.get(userId);
+                if (userSearch == null)
+                {
+                    userSearch = new UserSearch();
+                    userSearch.setUser((User) session.load(User.class, userId));
+                }
+                if (userSearch.getId() == null || !document.getDocument().equals(userSearch.getDocument())
+                    || !document.getSortName().equals(userSearch.getSortName()))
+                {
+                    userSearch.setDocument(document.getDocument());
+                    userSearch.setSortName(document.getSortName());
+                    session.saveOrUpdate(userSearch);
+                }
+
+                final Map<String, UserLogin> userLogins = existingLogins.getOrDefault(userId, new HashMap<>());
+                for (String login : logins.getOrDefault(userId, Collections.emptySet()))
+                {
+                    if (userLogins.remove(login) != null)
+                        continue;
+                    final UserLogin userLogin = new UserLogin();
+                    userLogin.setUser((User) session.load(User.class, userId));
+                    userLogin.setLogin(login);
+                    session.save(userLogin);
+                }
+                for (UserLogin userLogin : userLogins.values())
+                {
+                    session.delete(userLogin);
+                }
+            });
+        });
+        if (!evictLogins.isEmpty())
+        {
+            _loginCache.asMap().keySet().removeIf(key -> evictLogins.contains(key.get(0)));
+            _unknownLoginCache.asMap().keySet().removeIf(key -> evictLogins.contains(key.get(0)));
+        }
+    }
+
+    /**
+     * Normalize an email address or username for {@link #getUsersByLogin(String, Collection)}.
+     *
+     * @param login the email address or username
+     *
+     * @return the trimmed and lower cased login, or an empty string.
+     */
+    @Nonnull
+    public static String normalizeLogin(@Nullable String login)
+    {
+        return login != null ? login.trim().toLowerCase(Locale.ENGLISH) : "";
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationContextEvent event)
+    {
+        if (_listenersRegistered || !(event instanceof ContextRefreshedEvent || event instanceof ContextStartedEvent))
+            return;
+        _sessionHandler = (HibernateSessionHandler) event.getApplicationContext()
+            .getBean(HibernateSessionHandler.RESOURCE_NAME);
+        _inSession(() -> {
+            synchronized (this)
+            {
+                if (_listenersRegistered) return;
+                EntityEventListeners.appendListeners(getSession().getSessionFactory(), this,
+                    EventType.POST_COMMIT_INSERT, EventType.POST_COMMIT_UPDATE, EventType.POST_COLLECTION_RECREATE,
+                    EventType.POST_COLLECTION_UPDATE, EventType.POST_COLLECTION_REMOVE);
+                _listenersRegistered = true;
+            }
+        });
+        _executor.execute(() -> _inSession(this::_indexMissing));
+        // Changes queued before the session handler was known
+        _executor.execute(() -> _inSession(this::_drain));
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event)
+    {
+        _enqueue(Source.of(event.getEntity()), event.getId());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event)
+    {
+        _enqueue(Source.of(event.getEntity()), event.getId());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister)
+    {
+        final Class<?> mappedClass = persister.getMappedClass();
+        return User.class.isAssignableFrom(mappedClass) || Principal.class.isAssignableFrom(mappedClass)
+               || Contact.class.isAssignableFrom(mappedClass) || Name.class.isAssignableFrom(mappedClass)
+               || EmailAddress.class.isAssignableFrom(mappedClass)
+               || PasswordCredentials.class.isAssignableFrom(mappedClass);
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event)
+    {
+        _onCollectionEvent(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event)
+    {
+        _onCollectionEvent(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event)
+    {
+        _onCollectionEvent(event);
+    }
+
+    /**
+     * Shut down the background indexing thread.
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Collection events, such as an EmailAddress added to a Contact, are fired at flush time.  The owner is queued
+     * once the transaction commits so the document is not rebuilt from uncommitted data.
+     *
+     * @param event the event
+     */
+    private void _onCollectionEvent(AbstractCollectionEvent event)
+    {
+        final Source source = Source.of(event.getAffectedOwnerOrNull());
+        final Serializable ownerId = event.getAffectedOwnerIdOrNull();
+        final EventSource session = event.getSession();
+        if (source == null || ownerId == null || session == null)
+            return;
+        session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, sessionImplementor) -> {
+            if (success) _enqueue(source, ownerId);
+        });
+    }
+
+    private static void _addLogin(Map<Integer, Set<String>> logins, Integer userId, @Nullable String login)
+    {
+        final String key = normalizeLogin(login);
+        if (!key.isEmpty())
+            logins.computeIfAbsent(userId, id -> new HashSet<>()).add(key);
+    }
+
+    private void _enqueue(@Nullable Source source, @Nullable Serializable id)
+    {
+        if (source == null || id == null)
+            return;
+        _pending.add(new AbstractMap.SimpleImmutableEntry<>(source, id));
+        if (_sessionHandler != null && _scheduled.compareAndSet(false, true))
+        {
+            _executor.execute(() -> {
+                _scheduled.set(false);
+                _inSession(this::_drain);
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void _indexMissing()
+    {
+        int count = 0;
+        int failed = 0;
+        int lastId = 0;
+        List<Integer> userIds;
+        do
+        {
+            userIds = getSession().createQuery("SELECT u.id FROM User u WHERE u.id > :lastId\n"
+                                               + " AND NOT EXISTS (SELECT us.id FROM UserSearch us WHERE us.user = u)\n"
+                                               + " ORDER BY u.id")
+                .setParameter("lastId", lastId)
+                .setMaxResults(BATCH_SIZE)
+                .list();
+            if (userIds.isEmpty())
+                break;
+            lastId = userIds.get(userIds.size() - 1);
+            try
+            {
+                _reindex(userIds);
+                getSession().clear();
+                count += userIds.size();
+            }
+            catch (RuntimeException e)
+            {
+                // Skip the batch rather than stop, it is indexed again when its Users change or on the next start
+                _logger.error("Unable to index Users for search, through User.id " + lastId, e);
+                failed += userIds.size();
+                _sessionHandler.clearSessions();
+                _sessionHandler.openSessions();
+            }
+        }
+        while (userIds.size() == BATCH_SIZE);
+        if (count > 0)
+            _logger.info("Indexed " + count + " Users for search.");
+        if (failed > 0)
+            _logger.warn("Unable to index " + failed + " Users for search.");
+    }
+
+    private void _inSession(Runnable task)
+    {
+        final HibernateSessionHandler sessionHandler = _sessionHandler;
+        sessionHandler.openSessions();
+        try
+        {
+            task.run();
+        }
+        catch (RuntimeException e)
+        {
+            _logger.error("Unable to update User search index.", e);
+        }
+        finally
+        {
+            sessionHandler.clearSessions();
+        }
+    }
+
+    private Object readResolve() throws ObjectStreamException
+    {
+        ApplicationContext context = ApplicationContextUtils.getInstance().getContext();
+        assert context != null;
+        return context.getBean(UserSearchIndex.class);
+    }
+
+    private Object writeReplace() throws ObjectStreamException
+    {
+        return this;
+    }
+
+    /**
+     * A normalized search document.  Values are lower cased, stripped of accents and split into terms on anything
+     * other than letters, digits and the {@code @ . -} of email addresses.  A term containing those characters is
+     * also split into its parts, so a hyphenated name or an email address can be matched by word prefix.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    public static final class Document
+    {
+        /** Max length of a document */
+        public static final int MAX_LENGTH = 4000;
+        private static final Pattern PAT_MARKS = Pattern.compile("\\p{M}+");
+        private static final Pattern PAT_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}@.\\-]+");
+        private static final Pattern PAT_PART_SEPARATORS = Pattern.compile("[@.\\-]+");
+
+        private final String _document;
+        private final String _sortName;
+
+        Document(String document, String sortName)
+        {
+            _document = document;
+            _sortName = sortName;
+        }
+
+        /**
+         * Get the document: the distinct terms separated by, and surrounded with, a space.
+         *
+         * @return the document
+         */
+        @Nonnull
+        public String getDocument()
+        {
+            return _document;
+        }
+
+        /**
+         * Get the normalized "last first" name
+         *
+         * @return the sort name
+         */
+        @Nonnull
+        public String getSortName()
+        {
+            return _sortName;
+        }
+
+        /**
+         * Normalize a value.
+         *
+         * @param value the value
+         *
+         * @return the normalized value, with terms separated by a single space
+         */
+        @Nonnull
+        public static String normalize(@Nullable String value)
+        {
+            if (value == null)
+                return "";
+            final String stripped = PAT_MARKS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+            return PAT_SEPARATORS.matcher(stripped.toLowerCase(Locale.ENGLISH)).replaceAll(" ").trim();
+        }
+
+        /**
+         * Get the distinct terms of a query.
+         *
+         * @param query the query
+         *
+         * @return up to {@link #MAX_TERMS} terms
+         */
+        @Nonnull
+        public static List<String> getTerms(@Nullable String query)
+        {
+            final String normalized = normalize(query);
+            if (normalized.isEmpty())
+                return Collections.emptyList();
+            final Set<String> terms = new LinkedHashSet<>();
+            for (String term : normalized.split(" "))
+            {
+                if (terms.size() == MAX_TERMS) break;
+                terms.add(term);
+            }
+            return new ArrayList<>(terms);
+        }
+
+        /**
+         * Builder for a Document.
+         *
+         * @author Alan Holt (aholt@venturetech.net)
+         */
+        public static final class Builder
+        {
+            private final Set<String> _terms = new LinkedHashSet<>();
+            private String _sortName = "";
+
+            /**
+             * Add a name.
+             *
+             * @param first the first name
+             * @param last the last name
+             *
+             * @return this
+             */
+            public Builder addName(@Nullable String first, @Nullable String last)
+            {
+                final String normalizedFirst = normalize(first);
+                final String normalizedLast = normalize(last);
+                _addTerms(normalizedFirst);
+                _addTerms(normalizedLast);
+                if (_sortName.isEmpty())
+                    _sortName = (normalizedLast + ' ' + normalizedFirst).trim();
+                return this;
+            }
+
+            /**
+             * Add an email address or username.
+             *
+             * @param email the email address or username
+             *
+             * @return this
+             */
+            public Builder addEmail(@Nullable String email)
+            {
+                _addTerms(normalize(email));
+                return this;
+            }
+
+            /**
+             * Build the Document.
+             *
+             * @return the document
+             */
+            @Nonnull
+            public Document build()
+            {
+                final StringBuilder document = new StringBuilder(" ");
+                for (String term : _terms)
+                {
+                    if (document.length() + term.length() + 1 > MAX_LENGTH) break;
+                    document.append(term).append(' ');
+                }
+                String sortName = _sortName;
+                if (sortName.isEmpty() && !_terms.isEmpty())
+                    sortName = _terms.iterator().next();
+                return new Document(document.toString(), sortName.length() > 255 ? sortName.substring(0, 255) : sortName);
+            }
+
+            private void _addTerms(String normalized)
+            {
+                if (normalized.isEmpty()) return;
+                for (String term : normalized.split(" "))
+                {
+                    _terms.add(term);
+                    for (String part : PAT_PART_SEPARATORS.split(term))
+                    {
+                        if (!part.isEmpty()) _terms.add(part);
+                    }
+                }
+            }
+        }
+    }
+}
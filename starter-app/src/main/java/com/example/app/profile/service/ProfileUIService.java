@@ -26,7 +26,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.context.WebApplicationContext;
 
 import javax.annotation.Nonnull;
-import java.util.Optional;
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.proteusframework.core.hibernate.dao.EntityRetriever;
 import net.proteusframework.internet.http.Hostname;
@@ -34,6 +35,10 @@ import net.proteusframework.internet.http.SiteContext;
 
 /**
  * Provides methods for Profile API UIS.  This service is SESSION scoped
+ * <br><br>
+ * Methods do not lock the session, so concurrent requests in one session are not serialized.  Concurrent requests may
+ * resolve the same value, in which case either result is kept.  The selected company and its term provider are held
+ * together, so a term provider is never returned for a company other than the selected one.
  *
  * @author Alan Holt (aholt@venturetech.net)
  * @since 1/12/17
@@ -50,9 +55,9 @@ public class ProfileUIService
     @Autowired private EntityRetriever _er;
 
 
-    private Company _selectedCompany;
-    private User _currentUser;
-    private ProfileTermProvider _selectedCompanyTermProvider;
+    /** The selected company and its term provider, replaced together so they always match */
+    private final AtomicReference<SelectedCompany> _selectedCompany = new AtomicReference<>();
+    private volatile User _currentUser;
 
     /**
      * Gets the selected {@link Company} based on the current Hostname.
@@ -60,21 +65,10 @@ public class ProfileUIService
      *
      * @return the company for current user
      */
-    public synchronized Company getSelectedCompany()
+    public Company getSelectedCompany()
     {
-        if(_selectedCompany == null)
-        {
-            //Get the Company from the hostname of the Request.
-            Hostname hostname = _siteContext.getRequestedHostname();
-            _selectedCompany = _companyDAO.getCompanyForHostname(hostname);
-            if(_selectedCompany == null)
-                _logger.error("Unable to determine Company for hostname: " + hostname.getName());
-            return _selectedCompany;
-        }
-        else
-        {
-            return _er.reattachIfNecessary(_selectedCompany);
-        }
+        final SelectedCompany selectedCompany = _getSelectedCompany();
+        return selectedCompany != null ? _er.reattachIfNecessary(selectedCompany._company) : null;
     }
 
     /**
@@ -82,10 +76,9 @@ public class ProfileUIService
      *
      * @param company the company
      */
-    public synchronized void setSelectedCompany(@Nonnull Company company)
+    public void setSelectedCompany(@Nonnull Company company)
     {
-        _selectedCompany = company;
-        _selectedCompanyTermProvider = null;
+        _selectedCompany.set(new SelectedCompany(company, null));
     }
 
     /**
@@ -93,17 +86,18 @@ public class ProfileUIService
      *
      * @return the company term provider.
      */
-    public synchronized ProfileTermProvider getSelectedCompanyTermProvider()
+    public ProfileTermProvider getSelectedCompanyTermProvider()
     {
-        if(_selectedCompanyTermProvider == null)
-        {
-            return _selectedCompanyTermProvider = new FallbackProfileTermProvider(
-                Optional.ofNullable(getSelectedCompany()).map(Company::getProfileTerms).orElse(null));
-        }
-        else
-        {
-            return _selectedCompanyTermProvider;
-        }
+        final SelectedCompany selectedCompany = _getSelectedCompany();
+        if(selectedCompany == null)
+            return new FallbackProfileTermProvider(null);
+        if(selectedCompany._termProvider != null)
+            return selectedCompany._termProvider;
+        final ProfileTermProvider termProvider = new FallbackProfileTermProvider(
+            _er.reattachIfNecessary(selectedCompany._company).getProfileTerms());
+        // Not kept if another company was selected meanwhile
+        _selectedCompany.compareAndSet(selectedCompany, new SelectedCompany(selectedCompany._company, termProvider));
+        return termProvider;
     }
 
     /**
@@ -111,15 +105,50 @@ public class ProfileUIService
      *
      * @return the current user.
      */
-    public synchronized User getCurrentUser()
+    public User getCurrentUser()
     {
-        if(_currentUser != null)
+        final User currentUser = _currentUser;
+        if(currentUser != null)
         {
-            return _er.reattachIfNecessary(_currentUser);
+            return _er.reattachIfNecessary(currentUser);
         }
         else
         {
             return _currentUser = _userDAO.getAssertedCurrentUser();
         }
     }
+
+    @Nullable
+    private SelectedCompany _getSelectedCompany()
+    {
+        final SelectedCompany selectedCompany = _selectedCompany.get();
+        if(selectedCompany != null)
+            return selectedCompany;
+        //Get the Company from the hostname of the Request.
+        Hostname hostname = _siteContext.getRequestedHostname();
+        final Company company = _companyDAO.getCompanyForHostname(hostname);
+        if(company == null)
+        {
+            _logger.error("Unable to determine Company for hostname: " + hostname.getName());
+            return null;
+        }
+        final SelectedCompany resolved = new SelectedCompany(company, null);
+        // A company selected meanwhile wins
+        return _selectedCompany.compareAndSet(null, resolved) ? resolved : _selectedCompany.get();
+    }
+
+    /**
+     * A Company and, once it is needed, its term provider.
+     */
+    private static final class SelectedCompany
+    {
+        private final Company _company;
+        private final ProfileTermProvider _termProvider;
+
+        SelectedCompany(@Nonnull Company company, @Nullable ProfileTermProvider termProvider)
+        {
+            _company = company;
+            _termProvider = termProvider;
+        }
+    }
 }
@@ -14,6 +14,7 @@ package com.example.app.profile.ui.company;
 import com.example.app.profile.model.company.Company;
 import com.example.app.profile.model.location.Location;
 import com.example.app.support.service.AppUtil;
+import com.example.app.support.service.ImageRenditionService;
 import com.google.common.base.Preconditions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
@@ -50,6 +51,8 @@ public class CompanyValueViewer extends TemplateContainer
     private EntityRetriever _er;
     @Autowired
     private AppUtil _labsUtil;
+    @Autowired
+    private ImageRenditionService _imageRenditionService;
 
     private Company _company;
 
@@ -104,11 +107,11 @@ public class CompanyValueViewer extends TemplateContainer
         removeAllComponents();
 
         final ImageComponent logoField = new ImageComponent(getCompany().getImage() != null
-            ? new Image(getCompany().getImage())
+            ? new Image(_imageRenditionService.getRendition(getCompany().getImage(), 200, 0))
             : new Image(_labsUtil.getDefaultResourceImage()));
         logoField.setWidth(new PixelMetric(200));
         final ImageComponent emailLogoField = new ImageComponent(getCompany().getEmailLogo() != null
-            ? new Image(getCompany().getEmailLogo())
+            ? new Image(_imageRenditionService.getRendition(getCompany().getEmailLogo(), 200, 0))
             : new Image(_labsUtil.getDefaultResourceImage()));
         emailLogoField.setWidth(new PixelMetric(200));
 
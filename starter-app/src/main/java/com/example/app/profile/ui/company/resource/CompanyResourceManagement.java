@@ -13,6 +13,7 @@ package com.example.app.profile.ui.company.resource;
 
 import com.example.app.profile.model.Profile;
 import com.example.app.profile.model.ProfileDAO;
+import com.example.app.profile.model.ProfilePermissionMatrix;
 import com.example.app.profile.model.company.Company;
 import com.example.app.profile.model.repository.Repository;
 import com.example.app.profile.model.repository.RepositoryDAO;
@@ -38,6 +39,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Optional;
 import java.util.TimeZone;
@@ -163,6 +165,7 @@ public class CompanyResourceManagement extends MIWTPageElementModelContainer imp
     private Profile _adminProfile;
     private SearchUIImpl _searchUI;
     private Menu _addMenu;
+    private ProfilePermissionMatrix _permissionMatrix;
     /**
      * Instantiate a new instance of CompanyResourceManagement
      */
@@ -239,6 +242,23 @@ public class CompanyResourceManagement extends MIWTPageElementModelContainer imp
         return searchSupplier;
     }
 
+    /**
+     * Get the permissions of the current user on the admin profile, checked once per search.
+     *
+     * @return the permission matrix
+     */
+    @Nonnull
+    private ProfilePermissionMatrix getPermissionMatrix()
+    {
+        if (_permissionMatrix == null)
+        {
+            _permissionMatrix = _profileDAO.getPermissionMatrix(_userDAO.getAssertedCurrentUser(),
+                Collections.singletonList(_adminProfile), getSession().getTimeZone(),
+                _mop.viewRepositoryResources(), _mop.modifyRepositoryResources());
+        }
+        return _permissionMatrix;
+    }
+
     private void setBuilderSupplierAndAddActionAvailability(User currentUser)
     {
         assert _searchUI.getSearchSupplier() != null : "Search Supplier was null.  This should not happen.";
@@ -249,8 +269,10 @@ public class CompanyResourceManagement extends MIWTPageElementModelContainer imp
             if (currentUser == null)
                 currentUser = _userDAO.getAssertedCurrentUser();
 
-            _addMenu.setVisible(_profileDAO.canOperate(currentUser, _adminProfile, tz, _mop.viewRepositoryResources())
-                                && _profileDAO.canOperate(currentUser, _adminProfile, tz, _mop.modifyRepositoryResources()));
+            _permissionMatrix = _profileDAO.getPermissionMatrix(currentUser, Collections.singletonList(_adminProfile), tz,
+                _mop.viewRepositoryResources(), _mop.modifyRepositoryResources());
+            _addMenu.setVisible(_permissionMatrix.canOperate(_adminProfile, _mop.viewRepositoryResources())
+                                && _permissionMatrix.canOperate(_adminProfile, _mop.modifyRepositoryResources()));
         }
         else _addMenu.setVisible(false);
     }
@@ -297,7 +319,6 @@ public class CompanyResourceManagement extends MIWTPageElementModelContainer imp
 
     private void addResultColumns(SearchModelImpl searchModel)
     {
-        final TimeZone tz = getSession().getTimeZone();
         NavigationLinkColumn actions = new NavigationLinkColumn()
         {
             @Override
@@ -334,24 +355,13 @@ public class CompanyResourceManagement extends MIWTPageElementModelContainer imp
 
             private boolean userCanPerformModification(ResourceRepositoryItem rri)
             {
-                User currentUser = _userDAO.getAssertedCurrentUser();
-                if (rri != null)
-                {
-                    return _repositoryDAO.canOperate(
-                        currentUser, _repositoryDAO.getOwnerOfRepositoryItem(rri), tz, _mop.modifyRepositoryResources());
-                }
-                else return false;
+                // Every result is owned by the admin profile's repository -- see getBuilderSupplier()
+                return rri != null && getPermissionMatrix().canOperate(_adminProfile, _mop.modifyRepositoryResources());
             }
 
             private boolean userCanPerformView(ResourceRepositoryItem rri)
             {
-                User currentUser = _userDAO.getAssertedCurrentUser();
-                if (rri != null)
-                {
-                    return _repositoryDAO.canOperate(
-                        currentUser, _repositoryDAO.getOwnerOfRepositoryItem(rri), tz, _mop.viewRepositoryResources());
-                }
-                else return false;
+                return rri != null && getPermissionMatrix().canOperate(_adminProfile, _mop.viewRepositoryResources());
             }
         };
         actions.configure()
@@ -424,6 +434,7 @@ public class CompanyResourceManagement extends MIWTPageElementModelContainer imp
     private Supplier<QLBuilder> getBuilderSupplier()
     {
         return () -> {
+            _permissionMatrix = null;
             QLBuilder builder = new QLBuilderImpl(ResourceRepositoryItem.class, "rriAlias");
 
             builder.appendCriteria("rriAlias.id in(\n"
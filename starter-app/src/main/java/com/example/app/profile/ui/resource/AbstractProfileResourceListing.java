@@ -12,6 +12,7 @@
 package com.example.app.profile.ui.resource;
 
 import com.example.app.profile.model.repository.Repository;
+import com.example.app.profile.model.repository.RepositoryDAO;
 import com.example.app.profile.model.repository.RepositoryItem;
 import com.example.app.profile.model.repository.RepositoryItemRelation;
 import com.example.app.profile.model.repository.RepositoryItemRelationType;
@@ -27,8 +28,6 @@ import com.example.app.support.service.AppUtil;
 import com.example.app.support.service.EntityIdCollector;
 import com.example.app.support.service.InstantDayComparator;
 import com.example.app.support.ui.search.KeywordConstraint;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 
@@ -38,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -96,7 +96,8 @@ import static java.util.Optional.ofNullable;
         @I18N(symbol = "Sort Method Assignment Date ASC", l10n = @L10N("Oldest")),
         @I18N(symbol = "Sort Method Assignment Date DESC", l10n = @L10N("Newest")),
         @I18N(symbol = "Label Keyword Search", l10n = @L10N("Keyword Search (Title, Description)")),
-        @I18N(symbol = "Label Category", l10n = @L10N("Category"))
+        @I18N(symbol = "Label Category", l10n = @L10N("Category")),
+        @I18N(symbol = "Label Load More", l10n = @L10N("Load More"))
     }
 )
 @Configurable
@@ -110,23 +111,35 @@ public abstract class AbstractProfileResourceListing extends MIWTPageElementMode
     public static enum SortMethod implements NamedObject
     {
         /** Sort Method */
-        AssignmentDateASC(SORT_METHOD_ASSIGNMENT_DATE_ASC(), (rirel1, rirel2) ->
+        AssignmentDateASC(SORT_METHOD_ASSIGNMENT_DATE_ASC(), true, (rirel1, rirel2) ->
             InstantDayComparator.getAscInstance().compare(rirel1.getCreateTime().toInstant(),
                 rirel2.getCreateTime().toInstant())),
         /** Sort Method */
-        AssignmentDateDESC(SORT_METHOD_ASSIGNMENT_DATE_DESC(), (rirel1, rirel2) ->
+        AssignmentDateDESC(SORT_METHOD_ASSIGNMENT_DATE_DESC(), false, (rirel1, rirel2) ->
             InstantDayComparator.getDescInstance().compare(rirel1.getCreateTime().toInstant(),
                 rirel2.getCreateTime().toInstant()));
 
         private final TextSource _name;
+        private final boolean _ascending;
         private final Comparator<RepositoryItemRelation> _relationComparator;
 
-        SortMethod(TextSource name, Comparator<RepositoryItemRelation> relationComparator)
+        SortMethod(TextSource name, boolean ascending, Comparator<RepositoryItemRelation> relationComparator)
         {
             _name = name;
+            _ascending = ascending;
             _relationComparator = relationComparator;
         }
 
+        /**
+         * Get the boolean flag determining if RepositoryItemRelations are ordered by ascending create time
+         *
+         * @return true if the oldest RepositoryItemRelations are first
+         */
+        public boolean isAscending()
+        {
+            return _ascending;
+        }
+
         /**
          * Get the comparator used for sorting the RepositoryItemRelations
          *
@@ -171,15 +184,21 @@ public abstract class AbstractProfileResourceListing extends MIWTPageElementMode
     /** Autowired */
     @Autowired
     protected ResourceCategoryLabelProvider _rclp;
-    private final BiMap<RepositoryItemRelation, Component> _currentResults = HashBiMap.create();
+    /** Autowired */
+    @Autowired
+    protected RepositoryDAO _repositoryDAO;
+    private final Map<RepositoryItemRelation, Component> _currentResults = new LinkedHashMap<>();
     private final Map<SearchConstraint, Pair<Component, Container>> _constraints = new HashMap<>();
     private final Map<ReflectiveAction, PushButton> _actions = new HashMap<>();
     private final Container _constraintsCon = of("constraints").withHTMLElement(HTMLElement.span);
     private final Container _actionsCon = of("actions search-actions").withHTMLElement(HTMLElement.span);
     private final Container _resultsCon = of("search-results resource-listing");
+    private final PushButton _loadMore = new PushButton(LABEL_LOAD_MORE());
     private ComboBoxValueEditor<SortMethod> _sortBy;
     private boolean _includePublicOnly;
     private EnumSet<SortMethod> _sortMethods;
+    private int _pageSize = 25;
+    private RepositoryItemRelation _lastResult;
 
     /**
      * Instantiates a new Plan resources.
@@ -198,22 +217,27 @@ public abstract class AbstractProfileResourceListing extends MIWTPageElementMode
         _sortBy = new ComboBoxValueEditor<>(
             LABEL_SORT_BY(), nullFirst(new ArrayList<>(getSortMethods())), null);
         _sortBy.setCellRenderer(new CustomCellRenderer(CommonButtonText.NONE));
-        _sortBy.getValueComponent().addActionListener(ev -> setupResultsUI(getResults()));
+        _sortBy.getValueComponent().addActionListener(ev -> setupResultsUI(_pageSize));
         _sortBy.setVisible(!getSortMethods().isEmpty());
 
         add(_permanentMessages);
 
+        _loadMore.addClassName("load-more");
+        _loadMore.addActionListener(ev -> addResultsUI(getResults(_lastResult, _pageSize), _pageSize,
+            _currentResults));
+
         add(of("search", of("search-bar", _constraintsCon, _actionsCon),
-            of("search-content", of("actions content-actions", _sortBy), _resultsCon)));
+            of("search-content", of("actions content-actions", _sortBy), _resultsCon,
+                of("actions bottom", _loadMore))));
 
         //Set up Actions
         ReflectiveAction search = CommonActions.SEARCH.defaultAction();
-        search.setActionListener(ev -> setupResultsUI(getResults()));
+        search.setActionListener(ev -> setupResultsUI(_pageSize));
 
         ReflectiveAction reset = CommonActions.RESET.defaultAction();
         reset.setActionListener(ev -> {
             _constraints.entrySet().forEach(constraintEntry -> constraintEntry.getKey().reset(constraintEntry.getValue().getOne()));
-            setupResultsUI(getResults());
+            setupResultsUI(_pageSize);
         });
 
         addAction(search);
@@ -228,15 +252,7 @@ public abstract class AbstractProfileResourceListing extends MIWTPageElementMode
             {
                 Object val = getValue(constraintComponent);
                 if (shouldReturnConstraintForValue(val))
-                {
-                    QLBuilderImpl rriBuilder = new QLBuilderImpl(ResourceRepositoryItem.class, "rri");
-                    rriBuilder.setProjection("distinct rri.id");
-                    super.addCriteria(rriBuilder, constraintComponent);
-                    List<Integer> rriIds = rriBuilder.getQueryResolver().list();
-                    String property = builder.getAlias() + '.' + RepositoryItemRelation.REPOSITORY_ITEM_PROP + ".id";
-                    builder.appendCriteria(property + " in (:keywordrriIds)")
-                        .putParameter("keywordrriIds", rriIds.stream().collect(new EntityIdCollector<>(() -> 0)));
-                }
+                    super.addCriteria(createResourceJoin(builder, "keywordrri"), constraintComponent);
             }
         }
             .withProperties(
@@ -260,15 +276,7 @@ public abstract class AbstractProfileResourceListing extends MIWTPageElementMode
             {
                 Object val = getValue(constraintComponent);
                 if (shouldReturnConstraintForValue(val))
-                {
-                    QLBuilderImpl rriBuilder = new QLBuilderImpl(ResourceRepositoryItem.class, "rri");
-                    rriBuilder.setProjection("distinct rri.id");
-                    super.addCriteria(rriBuilder, constraintComponent);
-                    List<Integer> rriIds = rriBuilder.getQueryResolver().list();
-                    String property = builder.getAlias() + '.' + RepositoryItemRelation.REPOSITORY_ITEM_PROP + ".id";
-                    builder.appendCriteria(property + " in (:catrriids)")
-                        .putParameter("catrriids", rriIds.stream().collect(new EntityIdCollector<>(() -> 0)));
-                }
+                    super.addCriteria(createResourceJoin(builder, "catrri"), constraintComponent);
             }
         };
         categoryConstraint.withName("category");
@@ -280,7 +288,21 @@ public abstract class AbstractProfileResourceListing extends MIWTPageElementMode
         addConstraint(keywordConstraint);
         addConstraint(categoryConstraint);
 
-        setupResultsUI(getResults());
+        setupResultsUI(_pageSize);
+    }
+
+    /**
+     * Join the RepositoryItem of each RepositoryItemRelation so constraints on {@link ResourceRepositoryItem} properties
+     * are part of the same query.  The join is many-to-one, so it does not duplicate results.
+     *
+     * @param builder the RepositoryItemRelation builder
+     * @param alias the alias for the joined ResourceRepositoryItem
+     *
+     * @return the joined builder
+     */
+    private static JoinedQLBuilder createResourceJoin(QLBuilder builder, String alias)
+    {
+        return builder.createJoin(QLBuilder.JoinType.INNER, RepositoryItemRelation.REPOSITORY_ITEM_PROP, alias);
     }
 
     private void addAction(ReflectiveAction action)
@@ -317,12 +339,12 @@ public abstract class AbstractProfileResourceListing extends MIWTPageElementMode
                     final Field field = (Field) next;
                     field.watchIncremental();
                     field.addPropertyChangeListener(Field.PROP_TEXT,
-                        evt -> setupResultsUI(getResults()));
+                        evt -> setupResultsUI(_pageSize));
                 }
                 else if (next instanceof ComboBox)
                 {
                     final ComboBox comboBox = (ComboBox) next;
-                    comboBox.addActionListener(ev -> setupResultsUI(getResults()));
+                    comboBox.addActionListener(ev -> setupResultsUI(_pageSize));
                 }
                 else
                     HTMLFeature.watch.add(next);
@@ -346,50 +368,50 @@ public abstract class AbstractProfileResourceListing extends MIWTPageElementMode
 
         if (!request.isPartial() && isInited())
         {
-            setupResultsUI(getResults());
+            // Keep the rows the user has already loaded
+            setupResultsUI(Math.max(_pageSize, _currentResults.size()));
         }
     }
 
-    private void setupResultsUI(List<RepositoryItemRelation> results)
+    private void setupResultsUI(int limit)
+    {
+        final Map<RepositoryItemRelation, Component> previousResults = new HashMap<>(_currentResults);
+        _currentResults.clear();
+        _resultsCon.removeAllComponents();
+        _lastResult = null;
+        addResultsUI(getResults(null, limit), limit, previousResults);
+    }
+
+    private void addResultsUI(List<RepositoryItemRelation> results, int limit,
+        Map<RepositoryItemRelation, Component> previousResults)
     {
-        List<RepositoryItemRelation> relationsToRemove = new ArrayList<>();
-        _currentResults.keySet().forEach(currRes -> {
-            if (!results.contains(currRes))
+        _loadMore.setVisible(results.size() > limit);
+        results.stream().limit(limit).forEach(result -> {
+            Component container = previousResults.get(result);
+            ResourceRepositoryItem rri;
+            if (container == null && (rri = result.getCastRepositoryItem(ResourceRepositoryItem.class)) != null)
             {
-                _resultsCon.remove(_currentResults.get(currRes));
-                relationsToRemove.add(currRes);
+                ResourceRepositoryItemValueViewer vv = new ResourceRepositoryItemValueViewer(rri);
+                container = of("resource", vv);
             }
-        });
-        relationsToRemove.forEach(_currentResults::remove);
-        results.forEach(result -> {
-            if (!_currentResults.keySet().contains(result))
+            if (container != null && !_currentResults.containsKey(result))
             {
-                ResourceRepositoryItem rri;
-                if ((rri = result.getCastRepositoryItem(ResourceRepositoryItem.class)) != null)
-                {
-                    ResourceRepositoryItemValueViewer vv = new ResourceRepositoryItemValueViewer(rri);
-                    Container container = of("resource", vv);
-                    _resultsCon.add(container);
-                    _currentResults.put(result, container);
-                }
+                _resultsCon.add(container);
+                _currentResults.put(result, container);
             }
+            _lastResult = result;
         });
-        if (!getSortMethods().isEmpty())
-        {
-            _resultsCon.sort((com1, com2) -> {
-                RepositoryItemRelation rirel1 = _currentResults.inverse().get(com1);
-                RepositoryItemRelation rirel2 = _currentResults.inverse().get(com2);
-                SortMethod sortMethod = _sortBy.commitValue();
-                if (sortMethod != null)
-                {
-                    return sortMethod.getRelationComparator().compare(rirel1, rirel2);
-                }
-                else return 0;
-            });
-        }
     }
 
-    private List<RepositoryItemRelation> getResults()
+    /**
+     * Get a page of results, sorted by the database.
+     *
+     * @param after the last result of the previous page, or null for the first page
+     * @param limit the page size
+     *
+     * @return up to one more result than the page size, the extra result indicating that there are more pages
+     */
+    private List<RepositoryItemRelation> getResults(@Nullable RepositoryItemRelation after, int limit)
     {
         QLBuilderImpl builder = new QLBuilderImpl(RepositoryItemRelation.class, "rirel");
 
@@ -418,7 +440,8 @@ public abstract class AbstractProfileResourceListing extends MIWTPageElementMode
 
         _constraints.keySet().forEach(constraint -> constraint.addCriteria(builder, _constraints.get(constraint).getOne()));
 
-        return builder.getQueryResolver().list();
+        final SortMethod sortMethod = _sortBy.commitValue();
+        return _repositoryDAO.getRelations(builder, after, sortMethod == null || sortMethod.isAscending(), limit + 1);
     }
 
     /**
@@ -431,6 +454,26 @@ public abstract class AbstractProfileResourceListing extends MIWTPageElementMode
         return _sortMethods;
     }
 
+    /**
+     * Get the number of resources shown at a time.  More are loaded on demand.
+     *
+     * @return the page size
+     */
+    public int getPageSize()
+    {
+        return _pageSize;
+    }
+
+    /**
+     * Set the number of resources shown at a time.  More are loaded on demand.
+     *
+     * @param pageSize the page size
+     */
+    public void setPageSize(int pageSize)
+    {
+        _pageSize = pageSize;
+    }
+
     /**
      * Get the Repositories that this AbstractProfileResourceListing is listing resources from
      *
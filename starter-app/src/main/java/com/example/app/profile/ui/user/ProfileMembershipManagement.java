@@ -129,6 +129,8 @@ import static net.proteusframework.core.locale.TextSources.createText;
 @Configurable
 public class ProfileMembershipManagement extends HistoryContainer
 {
+    /** Max number of Users shown when searching for a User to add */
+    public static final int MAX_USER_RESULTS = 100;
     @Autowired
     private ProfileDAO _profileDAO;
     @Autowired
@@ -610,7 +612,8 @@ public class ProfileMembershipManagement extends HistoryContainer
                 .filter(membership -> Objects.equals(membershipType, membership.getMembershipType()))
                 .map(Membership::getUser)
                 .collect(Collectors.toList());
-            final List<User> users = _userDAO.getUsers(name.getText(), name.getText(), email.getText(), exclude);
+            final List<User> users = _userDAO.searchUsers(name.getText() + ' ' + email.getText(), exclude, 0,
+                MAX_USER_RESULTS);
             table.getDefaultModel().setRows(users.stream().filter(user -> user.getPrincipal().getStatus() == PrincipalStatus
                 .active).collect(Collectors.toList()));
         };
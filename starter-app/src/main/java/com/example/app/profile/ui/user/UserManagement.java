@@ -19,6 +19,7 @@ import com.example.app.profile.model.membership.MembershipType;
 import com.example.app.profile.model.user.ContactMethod;
 import com.example.app.profile.model.user.User;
 import com.example.app.profile.model.user.UserDAO;
+import com.example.app.profile.model.user.UserSearchIndex;
 import com.example.app.profile.model.user.UserPosition;
 import com.example.app.profile.service.MembershipOperationProvider;
 import com.example.app.profile.service.ProfileUIService;
@@ -112,6 +113,7 @@ import static com.example.app.profile.ui.user.UserManagementLOK.*;
         @I18N(symbol = "Search Supplier Name FMT", l10n = @L10N("{0} Search")),
         @I18N(symbol = "Search Supplier Description FMT", l10n = @L10N("Search Supplier for {0]")),
         @I18N(symbol = "Constraint Role", l10n = @L10N("Role")),
+        @I18N(symbol = "Constraint Keyword", l10n = @L10N("Name or Email")),
         @I18N(symbol = "Column Plan Role FMT", l10n = @L10N("{0} Role")),
         @I18N(symbol = "Column Contact Email", l10n = @L10N("Contact Email")),
         @I18N(symbol = "Column Contact Phone", l10n = @L10N("Contact Phone"))
@@ -135,6 +137,7 @@ public class UserManagement extends MIWTPageElementModelContainer implements Sea
     }
 
     @Autowired private UserDAO _userDAO;
+    @Autowired private UserSearchIndex _userSearchIndex;
     @Autowired private EntityRetriever _er;
     @Autowired private ProfileDAO _profileDAO;
     @Autowired private MembershipOperationProvider _mop;
@@ -276,17 +279,16 @@ public class UserManagement extends MIWTPageElementModelContainer implements Sea
                 .withLabel(CONSTRAINT_ROLE())
                 .withOperator(Operator.eq));
 
-        searchModel.getConstraints().add(new SimpleConstraint("first-name").withLabel(CommonColumnText.FIRST_NAME)
-            .withProperty(User.PRINCIPAL_PROP + ".contact.name.first")
-            .withOperator(Operator.like));
-
-        searchModel.getConstraints().add(new SimpleConstraint("last-name").withLabel(CommonColumnText.LAST_NAME)
-            .withProperty(User.PRINCIPAL_PROP + ".contact.name.last")
-            .withOperator(Operator.like));
-
-        searchModel.getConstraints().add(new SimpleConstraint("username").withLabel(CommonColumnText.EMAIL)
-            .withProperty(User.PRINCIPAL_PROP + ".credentials.username")
-            .withOperator(Operator.like));
+        searchModel.getConstraints().add(new SimpleConstraint("keyword")
+        {
+            @Override
+            public void addCriteria(QLBuilder builder, net.proteusframework.ui.miwt.component.Component constraintComponent)
+            {
+                final Object value = getValue(constraintComponent);
+                if (shouldReturnConstraintForValue(value))
+                    _userSearchIndex.appendCriteria(builder, value.toString());
+            }
+        }.withLabel(CONSTRAINT_KEYWORD()));
 
         searchModel.getConstraints().add(new UserPositionConstraint()
             .withLabel(CommonColumnText.TITLE)
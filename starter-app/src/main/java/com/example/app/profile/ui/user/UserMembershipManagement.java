@@ -13,6 +13,7 @@ package com.example.app.profile.ui.user;
 
 import com.example.app.profile.model.Profile;
 import com.example.app.profile.model.ProfileDAO;
+import com.example.app.profile.model.ProfilePermissionMatrix;
 import com.example.app.profile.model.membership.Membership;
 import com.example.app.profile.model.user.User;
 import com.example.app.profile.model.user.UserDAO;
@@ -28,7 +29,6 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.TimeZone;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -111,6 +111,7 @@ public class UserMembershipManagement extends HistoryContainer implements Search
     private final User _user;
     private final List<Profile> _profiles = new ArrayList<>();
     private SearchUIImpl _searchUI;
+    private ProfilePermissionMatrix _permissionMatrix;
 
     /**
      * Instantiate a new instance of UserMembershipManagement
@@ -151,11 +152,10 @@ public class UserMembershipManagement extends HistoryContainer implements Search
         AppUtil.enableTooltip(menu);
         menu.addClassName("entity-action");
         AtomicReference<Integer> counter = new AtomicReference<>(0);
-        final TimeZone tz = getSession().getTimeZone();
+        final ProfilePermissionMatrix permissionMatrix = getPermissionMatrix();
         getProfiles().forEach(profile -> {
             MenuItem subMenu = getProfileMenuItem(profile);
-            User currentUser = _userDAO.getAssertedCurrentUser();
-            if (_profileDAO.canOperate(currentUser, profile, tz, _mop.modifyUserRoles()))
+            if (permissionMatrix.canOperate(profile, _mop.modifyUserRoles()))
             {
                 counter.set(counter.get() + 1);
                 menu.add(subMenu);
@@ -174,7 +174,6 @@ public class UserMembershipManagement extends HistoryContainer implements Search
         SearchModelImpl searchModel = new SearchModelImpl();
         searchModel.setName("User Role Search");
         searchModel.setDisplayName(UserMembershipManagementLOK.SEARCH_MODEL_NAME_FMT(USER()));
-        final TimeZone tz = getSession().getTimeZone();
         ActionColumn actions = new ActionColumn()
         {
             @Override
@@ -196,10 +195,9 @@ public class UserMembershipManagement extends HistoryContainer implements Search
                             table, value, isSelected, hasFocus, row, column);
 
                         Membership mem = (Membership) value;
-                        User currentUser = _userDAO.getAssertedCurrentUser();
 
                         btcr.setVisible(
-                            mem != null && _profileDAO.canOperate(currentUser, mem.getProfile(), tz, _mop.modifyUserRoles()));
+                            mem != null && getPermissionMatrix().canOperate(mem.getProfile(), _mop.modifyUserRoles()));
 
                         return btcr;
                     }
@@ -254,6 +252,7 @@ public class UserMembershipManagement extends HistoryContainer implements Search
         searchSupplier.setSearchModel(searchModel);
 
         searchSupplier.setBuilderSupplier(() -> {
+            _permissionMatrix = null;
             QLBuilder builder = _profileDAO.getMembershipQLBuilder();
             builder.appendCriteria(Membership.USER_PROP, PropertyConstraint.Operator.eq, getUser())
                 .startGroup(JunctionOperator.OR)
@@ -266,6 +265,23 @@ public class UserMembershipManagement extends HistoryContainer implements Search
         return searchSupplier;
     }
 
+    /**
+     * Get the permissions of the current user on the profiles, checked once per search.
+     * Search results are limited to memberships on {@link #getProfiles()}.
+     *
+     * @return the permission matrix
+     */
+    @Nonnull
+    private ProfilePermissionMatrix getPermissionMatrix()
+    {
+        if (_permissionMatrix == null)
+        {
+            _permissionMatrix = _profileDAO.getPermissionMatrix(_userDAO.getAssertedCurrentUser(), getProfiles(),
+                getSession().getTimeZone(), _mop.modifyUserRoles());
+        }
+        return _permissionMatrix;
+    }
+
     @Nonnull
     private List<Profile> getProfiles()
     {
@@ -24,6 +24,7 @@ import com.example.app.profile.service.ProfileUIService;
 import com.example.app.profile.service.SelectedCompanyTermProvider;
 import com.example.app.support.service.AppUtil;
 import com.example.app.support.service.ContactUtil;
+import com.example.app.support.service.ImageRenditionService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -56,6 +57,7 @@ import net.proteusframework.core.metric.PixelMetric;
 import net.proteusframework.core.notification.Notifiable;
 import net.proteusframework.core.notification.Notification;
 import net.proteusframework.core.notification.NotificationImpl;
+import net.proteusframework.data.filesystem.FileEntity;
 import net.proteusframework.internet.http.Link;
 import net.proteusframework.ui.miwt.Image;
 import net.proteusframework.ui.miwt.component.Component;
@@ -172,6 +174,8 @@ public class UserValueViewer extends Container
     private MembershipTypeProvider _mtp;
     @Autowired
     private ProfileUIService _uiService;
+    @Autowired
+    private ImageRenditionService _imageRenditionService;
 
     private boolean _adminMode = true;
     private User _user;
@@ -324,9 +328,11 @@ public class UserValueViewer extends Container
         final ImageComponent userImage = new ImageComponent();
         if (getUser().getImage() != null)
         {
+            final FileEntity image = _imageRenditionService.getRendition(getUser().getImage(), 0,
+                MAX_HEIGHT_PROFILE_PIC_VIEW);
             try
             {
-                final Dimension size = ImageFileUtil.getDimension(getUser().getImage(), true);
+                final Dimension size = ImageFileUtil.getDimension(image, true);
                 // We are showing a max height of 200px
                 if (size != null && size.getHeightMetric().intValue() < MAX_HEIGHT_PROFILE_PIC_VIEW)
                     userImage.setSize(size);
@@ -337,7 +343,7 @@ public class UserValueViewer extends Container
             {
                 _logger.debug("Unable to get file dimension.", e);
             }
-            userImage.setImage(new Image(getUser().getImage()));
+            userImage.setImage(new Image(image));
         }
         else
             userImage.setImage(new Image(_appUtil.getDefaultUserImage()));
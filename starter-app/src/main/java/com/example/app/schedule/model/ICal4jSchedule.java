@@ -18,26 +18,31 @@ import net.fortuna.ical4j.model.Period;
 import net.fortuna.ical4j.model.Recur;
 import net.fortuna.ical4j.model.parameter.Value;
 
-import com.example.app.support.service.AppUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hibernate.Hibernate;
 import org.hibernate.envers.Audited;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.persistence.Column;
 import javax.persistence.Transient;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAmount;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 
 import net.proteusframework.core.hibernate.dao.EntityRetriever;
 
@@ -46,6 +51,10 @@ import static net.proteusframework.core.StringFactory.isEmptyString;
 
 /**
  * Schedule backed by ical4j.
+ * <br><br>
+ * Parsed rules and expanded schedule times are memoized across instances, keyed on the recurrence rule, the repeat
+ * flag and the schedule window, so repeatedly rendering the same calendar or reminder window does not re-parse and
+ * re-expand the rule.
  *
  * @author Russ Tennant (russ@venturetech.net)
  */
@@ -55,6 +64,21 @@ public class ICal4jSchedule extends Schedule
     private static final long serialVersionUID = -1973637805917656270L;
     /** Logger. */
     private static final Logger _logger = LogManager.getLogger(ICal4jSchedule.class);
+    /** Maximum number of schedule times held by {@link #EXPANSION_CACHE}. */
+    private static final long MAX_CACHED_INSTANTS = 250_000L;
+    /** Parsed rules, configured for the repeat flag. These are never modified once cached so they may be shared. */
+    private static final Cache<RecurKey, Recur> RECUR_CACHE = CacheBuilder.newBuilder()
+        .maximumSize(1_000)
+        .build();
+    /** Number of times expanded by the first batch of a {@link #scheduleIterator(ScheduleContext)}. */
+    private static final int INITIAL_BATCH_SIZE = 16;
+    /** Maximum number of times expanded by a single batch of a {@link #scheduleIterator(ScheduleContext)}. */
+    private static final int MAX_BATCH_SIZE = 4_096;
+    /** Expanded schedule times by rule and window. */
+    private static final Cache<ExpansionKey, List<Instant>> EXPANSION_CACHE = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_CACHED_INSTANTS)
+        .weigher((ExpansionKey key, List<Instant> instants) -> instants.size() + 1)
+        .build();
 
     private boolean _repeat;
     private String _eventProgrammaticIdentifier;
@@ -100,6 +124,14 @@ public class ICal4jSchedule extends Schedule
         return ScheduleType.internal;
     }
 
+    @Transient
+    @Nonnull
+    @Override
+    public Object getRuleKey()
+    {
+        return Arrays.asList(getType(), getRecurrenceRule(), isRepeat(), getTemporalDirection());
+    }
+
     @Override
     public boolean isRepeat()
     {
@@ -118,13 +150,56 @@ public class ICal4jSchedule extends Schedule
         _repeat = repeat;
     }
 
+    /**
+     * {@inheritDoc}
+     * <br><br>
+     * The returned list is shared with other callers scheduling the same rule and window, so it is unmodifiable.
+     */
     @Override
     public List<Instant> schedule(ScheduleContext scheduleContext)
     {
         if (isEmptyString(getRecurrenceRule()))
             return Collections.emptyList();
 
+        return _schedule(_getExpansionKey(scheduleContext));
+    }
 
+    /**
+     * {@inheritDoc}
+     * <br><br>
+     * A repeating rule is expanded in batches as the times are consumed, unless the window is already cached.
+     */
+    @Nonnull
+    @Override
+    public Iterator<Instant> scheduleIterator(ScheduleContext scheduleContext)
+    {
+        return _scheduleIterator(scheduleContext, null, INITIAL_BATCH_SIZE);
+    }
+
+    @Nonnull
+    @Override
+    public List<Instant> scheduleNext(ScheduleContext scheduleContext, Instant after, int count)
+    {
+        final List<Instant> times = new ArrayList<>();
+        final Iterator<Instant> iterator = _scheduleIterator(scheduleContext, after, Math.max(count, 1));
+        while (times.size() < count && iterator.hasNext())
+        {
+            final Instant next = iterator.next();
+            if (next.isAfter(after))
+                times.add(next);
+        }
+        return times;
+    }
+
+    /**
+     * Get the cache key for this schedule's rule over the window of the given context.
+     *
+     * @param scheduleContext the context.
+     *
+     * @return the key.
+     */
+    private ExpansionKey _getExpansionKey(ScheduleContext scheduleContext)
+    {
         LocalDateTime startTime = LocalDateTime.ofInstant(scheduleContext.getStartTime(), UTC)
             .truncatedTo(ChronoUnit.DAYS);
         final TemporalAmount duration = scheduleContext.getDuration();
@@ -138,47 +213,143 @@ public class ICal4jSchedule extends Schedule
             endTimeInclusive = swap;
         }
 
-        Recur recur;
+        return new ExpansionKey(new RecurKey(getRecurrenceRule(), isRepeat()),
+            startTime.toInstant(UTC), endTimeInclusive.toInstant(UTC));
+    }
+
+    /**
+     * Get the schedule times of the given key, expanding them if they are not cached.
+     *
+     * @param key the key.
+     *
+     * @return the schedule times.
+     */
+    private static List<Instant> _schedule(ExpansionKey key)
+    {
         try
         {
-            recur = new Recur(getRecurrenceRule());
+            return EXPANSION_CACHE.get(key, () -> expand(key));
         }
-        catch (ParseException e)
+        catch (ExecutionException | UncheckedExecutionException e)
         {
-            _logger.error("Bad rule: " + getRecurrenceRule(), e);
-            return Collections.emptyList();
+            // expand(ExpansionKey) does not throw checked exceptions
+            throw (RuntimeException) e.getCause();
         }
+    }
+
+    /**
+     * Provide the schedule times lazily.
+     *
+     * @param scheduleContext the context.
+     * @param after optional time to start after, exclusive.
+     * @param batchSize the number of times to expand in the first batch.
+     *
+     * @return the schedule times.
+     */
+    private Iterator<Instant> _scheduleIterator(ScheduleContext scheduleContext, @Nullable Instant after,
+        int batchSize)
+    {
+        if (isEmptyString(getRecurrenceRule()))
+            return Collections.emptyIterator();
 
-        List<Instant> instantList = new ArrayList<>();
+        final ExpansionKey key = _getExpansionKey(scheduleContext);
+        final List<Instant> cached = EXPANSION_CACHE.getIfPresent(key);
+        if (cached != null)
+            return cached.iterator();
+        if (!isRepeat())
+            return _schedule(key).iterator();
 
-        final Date until = new Date(endTimeInclusive.toInstant(UTC).toEpochMilli());
-        if(isRepeat())
-            recur.setUntil(until);
-        else
-            recur.setCount(1);
-        DateTime periodStart = new DateTime(new Date(startTime.toInstant(UTC).toEpochMilli()));
-        periodStart.setUtc(true);
-        DateTime periodEnd = new DateTime(until);
-        periodEnd.setUtc(true);
-        final DateList dateList = recur.getDates(periodStart, new Period(periodStart, periodEnd), Value.DATE_TIME);
-        DateFormat parser = new SimpleDateFormat("yyyyMMdd'T'HHmmss");
-        parser.setTimeZone(AppUtil.UTC);
+        final Recur recur = getRecur(key.getRecurKey());
+        if (recur == null)
+            return Collections.emptyIterator();
+        return new OccurrenceIterator(recur, key, after, batchSize);
+    }
+
+    /**
+     * Expand the rule of the given key over its window.
+     *
+     * @param key the key.
+     *
+     * @return the schedule times.
+     */
+    private static List<Instant> expand(ExpansionKey key)
+    {
+        final Recur recur = getRecur(key.getRecurKey());
+        if (recur == null)
+            return Collections.emptyList();
+
+        final DateTime periodStart = key.getPeriodStart();
+        final DateList dateList = recur.getDates(periodStart, new Period(periodStart, key.getPeriodEnd()),
+            Value.DATE_TIME);
+        List<Instant> instantList = new ArrayList<>(dateList.size());
         for (Object dateObject : dateList)
         {
-            try
-            {
-                final java.util.Date date = parser.parse(dateObject.toString());
-                instantList.add(date.toInstant());
-                if(!isRepeat())
-                    break;
-            }
-            catch (ParseException e)
-            {
-                _logger.error("Unable to parse date: " + dateObject, e);
-            }
+            instantList.add(toInstant((java.util.Date) dateObject));
+            if (!key.getRecurKey().isRepeat())
+                break;
         }
 
-        return instantList;
+        return Collections.unmodifiableList(instantList);
+    }
+
+    /**
+     * Get the parsed rule of the given key.
+     *
+     * @param key the key.
+     *
+     * @return the rule, or null if the rule is invalid.
+     */
+    @Nullable
+    private static Recur getRecur(RecurKey key)
+    {
+        try
+        {
+            return RECUR_CACHE.get(key, () -> parse(key));
+        }
+        catch (ExecutionException e)
+        {
+            _logger.error("Bad rule: " + key.getRule(), e.getCause());
+            return null;
+        }
+        catch (UncheckedExecutionException e)
+        {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Parse the rule of the given key.
+     *
+     * @param key the key.
+     *
+     * @return the rule, limited to a single occurrence if the key does not repeat.
+     *
+     * @throws ParseException if the rule is invalid.
+     */
+    private static Recur parse(RecurKey key) throws ParseException
+    {
+        Recur recur = new Recur(key.getRule());
+        if (key.isRepeat())
+        {
+            // The expansion period ends at the window end, which bounds the dates the same as an UNTIL would.
+            // This also clears any COUNT in the rule, so the cached rule does not depend on the window.
+            recur.setUntil(null);
+        }
+        else
+            recur.setCount(1);
+        return recur;
+    }
+
+    /**
+     * Convert an ical4j date to an Instant, truncated to the second like the rule's string representation.
+     *
+     * @param date the date.
+     *
+     * @return the instant.
+     */
+    static Instant toInstant(java.util.Date date)
+    {
+        return Instant.ofEpochMilli(date.getTime()).truncatedTo(ChronoUnit.SECONDS);
     }
 
     /**
@@ -250,4 +421,185 @@ public class ICal4jSchedule extends Schedule
                && Objects.equals(getRecurrenceRule(), that.getRecurrenceRule())
                && getTemporalDirection() == that.getTemporalDirection();
     }
+
+    /**
+     * Cache key for a parsed rule.
+     */
+    private static final class RecurKey
+    {
+        private final String _rule;
+        private final boolean _repeat;
+
+        RecurKey(String rule, boolean repeat)
+        {
+            _rule = rule;
+            _repeat = repeat;
+        }
+
+        String getRule()
+        {
+            return _rule;
+        }
+
+        boolean isRepeat()
+        {
+            return _repeat;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof RecurKey)) return false;
+            RecurKey that = (RecurKey) o;
+            return _repeat == that._repeat && _rule.equals(that._rule);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(_rule, _repeat);
+        }
+    }
+
+    /**
+     * Cache key for expanded schedule times: the rule and the window, with the temporal direction already applied.
+     */
+    private static final class ExpansionKey
+    {
+        private final RecurKey _recurKey;
+        private final Instant _start;
+        private final Instant _end;
+
+        ExpansionKey(RecurKey recurKey, Instant start, Instant end)
+        {
+            _recurKey = recurKey;
+            _start = start;
+            _end = end;
+        }
+
+        RecurKey getRecurKey()
+        {
+            return _recurKey;
+        }
+
+        Instant getStart()
+        {
+            return _start;
+        }
+
+        Instant getEnd()
+        {
+            return _end;
+        }
+
+        DateTime getPeriodStart()
+        {
+            DateTime periodStart = new DateTime(new Date(_start.toEpochMilli()));
+            periodStart.setUtc(true);
+            return periodStart;
+        }
+
+        DateTime getPeriodEnd()
+        {
+            DateTime periodEnd = new DateTime(new Date(_end.toEpochMilli()));
+            periodEnd.setUtc(true);
+            return periodEnd;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof ExpansionKey)) return false;
+            ExpansionKey that = (ExpansionKey) o;
+            return _recurKey.equals(that._recurKey) && _start.equals(that._start) && _end.equals(that._end);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(_recurKey, _start, _end);
+        }
+    }
+
+    /**
+     * Expands a repeating rule in batches of increasing size, each batch starting after the last time of the previous
+     * one.  Every batch is seeded with the window start, so the times are the same as a single expansion of the window.
+     */
+    private static final class OccurrenceIterator implements Iterator<Instant>
+    {
+        private final Recur _recur;
+        private final DateTime _periodEnd;
+        private DateTime _seed;
+        private DateTime _periodStart;
+        private int _batchSize;
+        private Iterator<Instant> _batch = Collections.emptyIterator();
+        private boolean _exhausted;
+
+        OccurrenceIterator(Recur recur, ExpansionKey key, @Nullable Instant after, int batchSize)
+        {
+            _recur = recur;
+            _seed = key.getPeriodStart();
+            _periodEnd = key.getPeriodEnd();
+            _periodStart = _seed;
+            if (after != null && !after.isBefore(key.getStart()))
+                _periodStart = nextSecond(after.toEpochMilli());
+            _batchSize = batchSize;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!_batch.hasNext() && !_exhausted)
+                _nextBatch();
+            return _batch.hasNext();
+        }
+
+        @Override
+        public Instant next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return _batch.next();
+        }
+
+        private void _nextBatch()
+        {
+            final DateList dateList = _recur.getDates(_seed, _periodStart, _periodEnd, Value.DATE_TIME, _batchSize);
+            // Fewer dates than requested means the expansion reached the end of the window.
+            _exhausted = dateList.size() < _batchSize;
+            if (dateList.isEmpty())
+                return;
+            List<Instant> instantList = new ArrayList<>(dateList.size());
+            for (Object dateObject : dateList)
+            {
+                instantList.add(toInstant((java.util.Date) dateObject));
+            }
+            _batch = instantList.iterator();
+            final java.util.Date last = (java.util.Date) dateList.get(dateList.size() - 1);
+            _periodStart = nextSecond(last.getTime());
+            // Recur walks one period at a time from the seed up to the period start, so continuing from the rule's
+            // start would make each batch slower than the last.  An occurrence lies within one of the rule's periods,
+            // so it can seed the rest of the expansion, unless the rule has a COUNT, which is counted from the start.
+            if (_recur.getCount() < 1 && last instanceof DateTime)
+                _seed = (DateTime) last;
+            _batchSize = Math.min(_batchSize * 2, MAX_BATCH_SIZE);
+        }
+
+        /**
+         * Get the start of the second after the given time.  Times have second precision, so this is the earliest
+         * time that may follow it.
+         *
+         * @param millis the time.
+         *
+         * @return the start of the next second.
+         */
+        private static DateTime nextSecond(long millis)
+        {
+            DateTime dateTime = new DateTime((Math.floorDiv(millis, 1000L) + 1) * 1000L);
+            dateTime.setUtc(true);
+            return dateTime;
+        }
+    }
 }
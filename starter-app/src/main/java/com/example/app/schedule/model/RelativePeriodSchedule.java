@@ -27,8 +27,14 @@ import java.time.Period;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.Temporal;
 import java.time.temporal.TemporalAmount;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
 import net.proteusframework.core.hibernate.dao.EntityRetriever;
@@ -70,6 +76,13 @@ public class RelativePeriodSchedule extends Schedule
         return ScheduleType.relative;
     }
 
+    @Nonnull
+    @Override
+    public Object getRuleKey()
+    {
+        return Arrays.asList(getType(), getPeriod(), getTime(), isRepeat(), getTemporalDirection());
+    }
+
     @Override
     public boolean isRepeat()
     {
@@ -80,6 +93,20 @@ public class RelativePeriodSchedule extends Schedule
     public List<Instant> schedule(ScheduleContext scheduleContext)
     {
         final List<Instant> times = new ArrayList<>();
+        scheduleIterator(scheduleContext).forEachRemaining(times::add);
+        return times;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br><br>
+     * Times move away from the context start time, so they are in reverse chronological order for
+     * {@link TemporalDirection#PAST}.
+     */
+    @Nonnull
+    @Override
+    public Iterator<Instant> scheduleIterator(ScheduleContext scheduleContext)
+    {
         LocalDateTime startTime = LocalDateTime.ofInstant(scheduleContext.getStartTime(), UTC)
             .truncatedTo(ChronoUnit.DAYS);
         final TemporalAmount duration = scheduleContext.getDuration();
@@ -90,15 +117,78 @@ public class RelativePeriodSchedule extends Schedule
         );
         @Nullable
         final LocalTime time = getTime() != null ? getTime().toLocalTime() : null;
-        LocalDateTime next = execute(startTime);
-        while (shouldContinue(next, endTimeInclusive))
+        final LocalDateTime first = execute(startTime);
+        return new Iterator<Instant>()
+        {
+            private LocalDateTime _next = shouldContinue(first, endTimeInclusive) ? first : null;
+
+            @Override
+            public boolean hasNext()
+            {
+                return _next != null;
+            }
+
+            @Override
+            public Instant next()
+            {
+                if (_next == null)
+                    throw new NoSuchElementException();
+                final Instant result = time != null
+                    ? _next.plus(time.toSecondOfDay(), ChronoUnit.SECONDS).toInstant(UTC)
+                    : _next.toInstant(UTC);
+                if (_repeat)
+                {
+                    _next = execute(_next);
+                    if (!shouldContinue(_next, endTimeInclusive))
+                        _next = null;
+                }
+                else
+                    _next = null;
+                return result;
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Instant> scheduleChronologically(ScheduleContext scheduleContext)
+    {
+        if (getTemporalDirection() == TemporalDirection.FUTURE)
+            return scheduleIterator(scheduleContext);
+        final List<Instant> times = schedule(scheduleContext);
+        Collections.reverse(times);
+        return times.iterator();
+    }
+
+    @Nonnull
+    @Override
+    public List<Instant> scheduleNext(ScheduleContext scheduleContext, Instant after, int count)
+    {
+        final Iterator<Instant> iterator = scheduleIterator(scheduleContext);
+        final List<Instant> times = new ArrayList<>();
+        if (getTemporalDirection() == TemporalDirection.FUTURE)
+        {
+            while (times.size() < count && iterator.hasNext())
+            {
+                final Instant next = iterator.next();
+                if (next.isAfter(after))
+                    times.add(next);
+            }
+        }
+        else
         {
-            if (time != null)
-                times.add(next.plus(time.toSecondOfDay(), ChronoUnit.SECONDS).toInstant(UTC));
-            else
-                times.add(next.toInstant(UTC));
-            if (!_repeat) break;
-            next = execute(next);
+            // Times are in reverse chronological order, so keep the last ones before reaching the given time.
+            final Deque<Instant> latest = new ArrayDeque<>();
+            while (iterator.hasNext())
+            {
+                final Instant next = iterator.next();
+                if (!next.isAfter(after))
+                    break;
+                latest.addFirst(next);
+                if (latest.size() > count)
+                    latest.removeLast();
+            }
+            times.addAll(latest);
         }
         return times;
     }
@@ -14,8 +14,15 @@ package com.example.app.schedule.model;
 import net.proteusframework.users.model.AbstractAuditableEntity;
 import org.hibernate.envers.Audited;
 
+import javax.annotation.Nonnull;
 import java.time.Instant;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Scheduling configuration.
@@ -42,6 +49,15 @@ public abstract class Schedule extends AbstractAuditableEntity<Integer>
      */
     public abstract ScheduleType getType();
 
+    /**
+     * Get a key for the rule of this schedule.  Schedules with equal rule keys produce the same times for any context,
+     * so the times only need to be computed once for all of them.
+     *
+     * @return the rule key.
+     */
+    @Nonnull
+    public abstract Object getRuleKey();
+
     /**
      * Test if the schedule repeats.
      *
@@ -58,5 +74,67 @@ public abstract class Schedule extends AbstractAuditableEntity<Integer>
      */
     public abstract List<Instant> schedule(ScheduleContext scheduleContext);
 
+    /**
+     * Provide the schedule times lazily, in the same order as {@link #schedule(ScheduleContext)}.
+     * Subclasses should override this to compute the times as they are consumed, so callers that stop early
+     * do not pay for the whole duration.
+     *
+     * @param scheduleContext the context.
+     *
+     * @return the schedule times.
+     */
+    @Nonnull
+    public Iterator<Instant> scheduleIterator(ScheduleContext scheduleContext)
+    {
+        return schedule(scheduleContext).iterator();
+    }
+
+    /**
+     * Provide the schedule times lazily, in chronological order.
+     * This is {@link #scheduleIterator(ScheduleContext)} unless a subclass iterates in another order.
+     *
+     * @param scheduleContext the context.
+     *
+     * @return the schedule times.
+     */
+    @Nonnull
+    public Iterator<Instant> scheduleChronologically(ScheduleContext scheduleContext)
+    {
+        return scheduleIterator(scheduleContext);
+    }
+
+    /**
+     * Provide the schedule times lazily, in the same order as {@link #schedule(ScheduleContext)}.
+     *
+     * @param scheduleContext the context.
+     *
+     * @return the schedule times.
+     *
+     * @see #scheduleIterator(ScheduleContext)
+     */
+    @Nonnull
+    public Stream<Instant> scheduleStream(ScheduleContext scheduleContext)
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scheduleIterator(scheduleContext),
+            Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
 
+    /**
+     * Provide the next schedule times after the given time.
+     *
+     * @param scheduleContext the context.
+     * @param after the time, exclusive.
+     * @param count the maximum number of times.
+     *
+     * @return up to count schedule times after the given time, in chronological order.
+     */
+    @Nonnull
+    public List<Instant> scheduleNext(ScheduleContext scheduleContext, Instant after, int count)
+    {
+        return scheduleStream(scheduleContext)
+            .filter(time -> time.isAfter(after))
+            .sorted()
+            .limit(count)
+            .collect(Collectors.toList());
+    }
 }
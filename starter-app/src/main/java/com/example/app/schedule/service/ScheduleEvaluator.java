@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.schedule.service;
+
+import com.example.app.schedule.model.Schedule;
+import com.example.app.schedule.model.ScheduleContext;
+import com.google.common.base.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Evaluates many schedules over the same window as a single, time ordered stream of occurrences.
+ * <br><br>
+ * Schedules with the same {@link Schedule#getRuleKey() rule} are evaluated once.  Each distinct rule is expanded
+ * lazily, a chunk at a time, on a bounded fork-join pool, and the next chunk of every rule is computed while the
+ * current one is consumed.  A min-heap merges the rules in time order, so memory is bounded by the number of distinct
+ * rules and the chunk size rather than the length of the window.
+ * <br><br>
+ * Instances own their pool and must be {@link #close() closed}.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class ScheduleEvaluator implements AutoCloseable
+{
+    /** Default number of times computed for a rule by a single task */
+    public static final int DEFAULT_CHUNK_SIZE = 32;
+    /** Logger. */
+    private static final Logger _logger = LogManager.getLogger(ScheduleEvaluator.class);
+
+    private final ForkJoinPool _pool;
+    private final int _chunkSize;
+
+    /**
+     * Instantiate a new instance of ScheduleEvaluator using all available processors.
+     */
+    public ScheduleEvaluator()
+    {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Instantiate a new instance of ScheduleEvaluator
+     *
+     * @param parallelism the number of threads
+     * @param chunkSize the number of times computed for a rule by a single task
+     */
+    public ScheduleEvaluator(int parallelism, int chunkSize)
+    {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        Preconditions.checkArgument(chunkSize > 0, "chunkSize must be positive");
+        _pool = new ForkJoinPool(parallelism);
+        _chunkSize = chunkSize;
+    }
+
+    /**
+     * Evaluate the given schedules.  Evaluation starts immediately and continues as the returned stream is consumed.
+     * Closing the stream cancels any evaluation in progress.
+     *
+     * @param schedules the schedules
+     * @param scheduleContext the window
+     *
+     * @return the occurrences in chronological order.  Occurrences at the same time are ordered by where their rule
+     * first appears in the given schedules, then by schedule.
+     */
+    @Nonnull
+    public Stream<Occurrence> evaluate(@Nonnull Collection<? extends Schedule> schedules,
+        @Nonnull ScheduleContext scheduleContext)
+    {
+        final OccurrenceIterator occurrences = new OccurrenceIterator(schedules, scheduleContext);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(occurrences,
+            Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(occurrences::cancel);
+    }
+
+    /**
+     * Evaluate the given schedules.  Evaluation starts immediately and continues as the returned iterator is consumed.
+     *
+     * @param schedules the schedules
+     * @param scheduleContext the window
+     *
+     * @return the occurrences in chronological order.  Occurrences at the same time are ordered by where their rule
+     * first appears in the given schedules, then by schedule.
+     */
+    @Nonnull
+    public Iterator<Occurrence> evaluateIterator(@Nonnull Collection<? extends Schedule> schedules,
+        @Nonnull ScheduleContext scheduleContext)
+    {
+        return new OccurrenceIterator(schedules, scheduleContext);
+    }
+
+    @Override
+    public void close()
+    {
+        _pool.shutdown();
+    }
+
+    /**
+     * A time at which a schedule fires.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    public static final class Occurrence
+    {
+        private final Schedule _schedule;
+        private final Instant _time;
+
+        Occurrence(@Nonnull Schedule schedule, @Nonnull Instant time)
+        {
+            _schedule = schedule;
+            _time = time;
+        }
+
+        /**
+         * Get the schedule
+         *
+         * @return the schedule
+         */
+        @Nonnull
+        public Schedule getSchedule()
+        {
+            return _schedule;
+        }
+
+        /**
+         * Get the schedule id
+         *
+         * @return the schedule id, null if the schedule has not been persisted
+         */
+        @Nullable
+        public Integer getScheduleId()
+        {
+            return _schedule.getId();
+        }
+
+        /**
+         * Get the time
+         *
+         * @return the time
+         */
+        @Nonnull
+        public Instant getTime()
+        {
+            return _time;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Occurrence{"
+                   + "scheduleId=" + getScheduleId()
+                   + ", time=" + _time
+                   + '}';
+        }
+    }
+
+    /**
+     * The schedules sharing a rule, and the times of the rule read ahead a chunk at a time.
+     */
+    private final class RuleTimes
+    {
+        private final int _order;
+        private final List<Schedule> _schedules = new ArrayList<>();
+        private final ScheduleContext _scheduleContext;
+        private Iterator<Instant> _source;
+        private ForkJoinTask<List<Instant>> _nextChunk;
+        private List<Instant> _chunk = Collections.emptyList();
+        private int _index;
+        private Instant _time;
+
+        RuleTimes(int order, ScheduleContext scheduleContext)
+        {
+            _order = order;
+            _scheduleContext = scheduleContext;
+        }
+
+        /**
+         * Start computing the first chunk.
+         */
+        void start()
+        {
+            _nextChunk = _pool.submit(this::_readChunk);
+        }
+
+        /**
+         * Move to the next time.
+         *
+         * @return true if there is a next time, false if the rule is exhausted.
+         */
+        boolean advance()
+        {
+            if (_index >= _chunk.size())
+            {
+                if (_nextChunk == null)
+                    return false;
+                try
+                {
+                    _chunk = _nextChunk.join();
+                }
+                catch (RuntimeException e)
+                {
+                    _logger.error("Unable to evaluate schedule: " + _schedules.get(0).getRuleKey(), e);
+                    _chunk = Collections.emptyList();
+                }
+                _index = 0;
+                // A short chunk means the source is exhausted.
+                _nextChunk = _chunk.size() == _chunkSize ? _pool.submit(this::_readChunk) : null;
+                if (_chunk.isEmpty())
+                    return false;
+            }
+            _time = _chunk.get(_index++);
+            return true;
+        }
+
+        /**
+         * Cancel the chunk being computed.
+         */
+        void cancel()
+        {
+            if (_nextChunk != null)
+                _nextChunk.cancel(false);
+            _nextChunk = null;
+        }
+
+        Instant getTime()
+        {
+            return _time;
+        }
+
+        int getOrder()
+        {
+            return _order;
+        }
+
+        List<Schedule> getSchedules()
+        {
+            return _schedules;
+        }
+
+        private List<Instant> _readChunk()
+        {
+            if (_source == null)
+                _source = _schedules.get(0).scheduleChronologically(_scheduleContext);
+            final List<Instant> chunk = new ArrayList<>(_chunkSize);
+            while (chunk.size() < _chunkSize && _source.hasNext())
+            {
+                chunk.add(_source.next());
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * Merges the times of every rule in chronological order, repeating each time for every schedule with the rule.
+     */
+    private final class OccurrenceIterator implements Iterator<Occurrence>
+    {
+        private final List<RuleTimes> _rules;
+        private final PriorityQueue<RuleTimes> _heap;
+        private boolean _started;
+        private RuleTimes _current;
+        private int _scheduleIndex;
+
+        OccurrenceIterator(Collection<? extends Schedule> schedules, ScheduleContext scheduleContext)
+        {
+            final Map<Object, RuleTimes> rules = new LinkedHashMap<>();
+            for (Schedule schedule : schedules)
+            {
+                rules.computeIfAbsent(schedule.getRuleKey(), key -> new RuleTimes(rules.size(), scheduleContext))
+                    .getSchedules().add(schedule);
+            }
+            _rules = new ArrayList<>(rules.values());
+            _heap = new PriorityQueue<>(Math.max(_rules.size(), 1),
+                Comparator.comparing(RuleTimes::getTime).thenComparingInt(RuleTimes::getOrder));
+            _rules.forEach(RuleTimes::start);
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (_current != null && _scheduleIndex < _current.getSchedules().size())
+                return true;
+            if (!_started)
+            {
+                _started = true;
+                for (RuleTimes rule : _rules)
+                {
+                    if (rule.advance())
+                        _heap.add(rule);
+                }
+            }
+            else if (_current != null && _current.advance())
+            {
+                _heap.add(_current);
+            }
+            _current = _heap.poll();
+            _scheduleIndex = 0;
+            return _current != null;
+        }
+
+        @Override
+        public Occurrence next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return new Occurrence(_current.getSchedules().get(_scheduleIndex++), _current.getTime());
+        }
+
+        /**
+         * Cancel the evaluation of every rule.
+         */
+        void cancel()
+        {
+            _rules.forEach(RuleTimes::cancel);
+            _heap.clear();
+            _current = null;
+        }
+    }
+}
@@ -210,10 +210,13 @@ import org.apache.commons.lang.StringUtils;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -230,6 +233,10 @@ import static com.example.app.support.address.AddressRegexLibrary.*;
 
 /**
  * Address parser
+ * <br><br>
+ * All the patterns and fill value maps used while parsing are compiled once when the class is initialized and are
+ * never modified afterwards, so parsing is thread-safe and only compiles the patterns that are built from the matched
+ * parts of the given address.
  *
  * @author jliang
  */
@@ -247,6 +254,30 @@ public class AddressParser
     private static final Pattern STREET_DESIGNATOR_CHECK = Pattern.compile("\\b(?i:(?:" + RegexLibrary.STREET_DESIGNATOR + "))\\b");
     //code used to replace hashcodes so they don't get removed by the address parser
     private static final String HASHCODE_VALUE = "48914631374";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern FIRST_WORD = Pattern.compile("^\\s?(\\S+)\\s?");
+    private static final Pattern LAST_WORD = Pattern.compile("\\s?(\\S+)$");
+    private static final Collection<String> STREET_DIRS = Collections.unmodifiableSet(
+        new HashSet<>(Arrays.asList("e", "w", "n", "s", "sw", "nw", "se", "ne")));
+    // The maps below are built once, so they are iterated (and applied) in the same order on every call
+    private static final Map<String, String> REQUIRED_CHARACTERS = getRequiredCharacters();
+    private static final List<Substitution> REPLACEMENT_STRINGS = Substitution.compile(getReplacementStrings());
+    private static final HashBiMap<String, String> CONST_STRING_MAP = setupConstStringMap();
+    private static final List<Substitution> CONST_STRINGS = Substitution.compile(CONST_STRING_MAP);
+    private static final List<Substitution> CONST_STRINGS_INVERSE = Substitution.compile(CONST_STRING_MAP.inverse());
+    private static final List<Substitution> REGEXP_STRINGS = Substitution.compile(formatRegexpStringMap());
+    private static final List<Substitution> DO_NOT_ESCAPE_REGEXP_STRINGS =
+        Substitution.compile(formatdoNotEscapeRegexpStringMap());
+    /** Fill value to the compiled pattern of the fill value, used to put the matched strings back in */
+    private static final Map<String, Pattern> FILL_VALUE_PATTERNS = new HashMap<>();
+
+    static
+    {
+        for (Substitution substitution : REGEXP_STRINGS)
+            FILL_VALUE_PATTERNS.put(substitution._replacement, Pattern.compile(substitution._replacement));
+        for (Substitution substitution : DO_NOT_ESCAPE_REGEXP_STRINGS)
+            FILL_VALUE_PATTERNS.put(substitution._replacement, Pattern.compile(substitution._replacement));
+    }
 
     /**
      * Parses a raw address string, this delegates to {@linkplain AddressParser#parseAddress(String, boolean)}
@@ -285,33 +316,23 @@ public class AddressParser
         */
 
         // There are some words that we want to remove / permanently change in the address (undefined / undefd)
-        Map<String, String> replacementStrings = getReplacementStrings();
-        address = escapeString(address, replacementStrings);
-
-        // create the map of regexp string to temporarily replace with fillers, since the addressparser doesn't like them
-        HashBiMap<String, String> constStringMap = setupConstStringMap();
-
-        // create the map of regexp string to temporarily replace with fillers, since the addressparser doesn't like them
-        HashBiMap<String, String> regexpStringMap = formatRegexpStringMap();
-
-        // create the map of regexp strings that we explicitly do not want to escape
-        HashBiMap<String, String> doNotEscapeRegexpStringMap = formatdoNotEscapeRegexpStringMap();
+        address = escapeString(address, REPLACEMENT_STRINGS);
 
         // Store the strings that we do not want to escape
-        HashBiMap<String, String> doNotEscapeFilledStringMap = getMatchingStrings(address, doNotEscapeRegexpStringMap);
+        HashBiMap<String, String> doNotEscapeFilledStringMap = getMatchingStrings(address, DO_NOT_ESCAPE_REGEXP_STRINGS);
 
         // temporarily move the parts of the string that we explicitly do not want to escape
-        address = escapeString(address, doNotEscapeRegexpStringMap);
+        address = escapeString(address, DO_NOT_ESCAPE_REGEXP_STRINGS);
 
         // Store the strings that match the regular expression fillers in the map for replacement later
-        HashBiMap<String, String> filledRegexpStringMap = getMatchingStrings(address, regexpStringMap);
+        HashBiMap<String, String> filledRegexpStringMap = getMatchingStrings(address, REGEXP_STRINGS);
 
         // replace the strings that match within the address with fillers
         address = escapeString(address, filledRegexpStringMap);
-        address = escapeString(address, constStringMap);
+        address = escapeString(address, CONST_STRINGS);
 
         // Put the strings we do not want to escape back in
-        address = escapeString(address, doNotEscapeFilledStringMap.inverse());
+        address = restoreString(address, doNotEscapeFilledStringMap.inverse());
 
         // parse the address into separate fields
         Map<AddressComponent, String> results = prepareAddressForParsingAndParse(address, autoCorrectStateSpelling);
@@ -324,7 +345,7 @@ public class AddressParser
 
         // Replace the fillers in the split up fields with the original values (requires an inverse)
         results = replaceOriginalStringsInSplitUpFields(results, filledRegexpStringMap.inverse());
-        results = replaceOriginalStringsInSplitUpFields(results, constStringMap.inverse());
+        results = replaceOriginalStringsInSplitUpFields(results, CONST_STRINGS_INVERSE);
 
         return results;
     }
@@ -381,6 +402,58 @@ public class AddressParser
         return stringToEscape;
     }
 
+    /**
+     * Apply the given precompiled substitutions to the given string, in order.
+     *
+     * @param stringToEscape string to escape.
+     * @param substitutions the substitutions.
+     *
+     * @return the escaped.
+     */
+    private static String escapeString(String stringToEscape, List<Substitution> substitutions)
+    {
+        if (stringToEscape == null)
+        {
+            return stringToEscape;
+        }
+        for (Substitution substitution : substitutions)
+        {
+            stringToEscape = substitution.apply(stringToEscape);
+        }
+        return stringToEscape;
+    }
+
+    /**
+     * Replace the fill values in the given string with the strings they originally replaced.
+     * Same as {@link #escapeString(String, Map)}, but uses the precompiled fill value patterns.
+     *
+     * @param stringToRestore string to restore.
+     * @param fillValueMap map of fill value to original string.
+     *
+     * @return the restored string.
+     */
+    private static String restoreString(String stringToRestore, Map<String, String> fillValueMap)
+    {
+        if (stringToRestore == null)
+        {
+            return stringToRestore;
+        }
+        for (Map.Entry<String, String> entry : fillValueMap.entrySet())
+        {
+            if (stringToRestore.contains(entry.getKey()))
+            {
+                stringToRestore = getFillValuePattern(entry.getKey()).matcher(stringToRestore).replaceAll(entry.getValue());
+            }
+        }
+        return stringToRestore;
+    }
+
+    private static Pattern getFillValuePattern(String fillValue)
+    {
+        Pattern pattern = FILL_VALUE_PATTERNS.get(fillValue);
+        return pattern != null ? pattern : Pattern.compile(fillValue);
+    }
+
     /**
      * Setup String fill value bimap. That is, a bidirectional
      * map of Strings that we use to temporarily insert
@@ -453,6 +526,25 @@ public class AddressParser
         return regexpStrings;
     }
 
+    /**
+     * Returns a map of the regular expressions from {@link #formatRegexpStringMap()} and
+     * {@link #formatdoNotEscapeRegexpStringMap()} to the characters that any match of them must contain.
+     * These are checked before running the regular expression, since most addresses do not contain any of them.
+     *
+     * @return mapping.
+     */
+    private static Map<String, String> getRequiredCharacters()
+    {
+        Map<String, String> requiredCharacters = new HashMap<>();
+        requiredCharacters.put(" ([a-zA-Z] \\d[\\/-]\\d)", "/-");
+        requiredCharacters.put(" ([iI]-\\d+) ", "-");
+        requiredCharacters.put("\\s?(\\s*#?\\w+(\\.\\w+)+)", ".");
+        requiredCharacters.put("\\s?(\\s*#?\\w+(,\\w+)+)", ",");
+        requiredCharacters.put("\\s?((\\-?\\s*#?(\\w+\\-\\w*)|(\\w*\\-\\w+))+)", "-");
+        requiredCharacters.put("(\\d{5}\\-\\d{4})", "-");
+        return requiredCharacters;
+    }
+
     /**
      * Generates a bi-map of regular reg expressions that we don't want to escape
      *
@@ -475,23 +567,26 @@ public class AddressParser
      * the fill values they are being replaced with.
      *
      * @param address the address.
-     * @param regexpMap regex mapping.
+     * @param regexps the precompiled regular expressions and their fill values.
      *
      * @return results.
      */
-    private static HashBiMap<String, String> getMatchingStrings(String address, Map<String, String> regexpMap)
+    private static HashBiMap<String, String> getMatchingStrings(String address, List<Substitution> regexps)
     {
         HashBiMap<String, String> matchingStrings = HashBiMap.create();
-        for (String key : regexpMap.keySet())
+        for (Substitution regexp : regexps)
         {
-            Pattern p = Pattern.compile(key);
-            Matcher m = p.matcher(address);
+            if (!regexp.canMatch(address))
+            {
+                continue;
+            }
+            Matcher m = regexp._pattern.matcher(address);
             boolean matching = m.find();
 
             if (matching)
             {
                 String from = m.group(1);
-                String to = regexpMap.get(key);
+                String to = regexp._replacement;
                 matchingStrings.put(from, to);
             }
             /*if (m.find())
@@ -531,7 +626,7 @@ public class AddressParser
         String splitStreetType = results.get(TYPE);
         String splitUnitNumber = results.get(LINE2);
 
-        Collection<String> streetDirs = getStreetDirs();
+        Collection<String> streetDirs = STREET_DIRS;
 
         /* if the street name is a direction then chances
          * are that the street direction was pulled into
@@ -559,8 +654,7 @@ public class AddressParser
             // the first part of the unit number into street name (e.g. hwy 19 or road 52)
             if (splitStreetType != null)
             {
-                Pattern p1 = Pattern.compile("^\\s?(\\S+)\\s?");
-                Matcher m1 = p1.matcher(splitUnitNumber);
+                Matcher m1 = FIRST_WORD.matcher(splitUnitNumber);
 
                 if (m1.find())
                 {
@@ -615,8 +709,7 @@ public class AddressParser
             {
                 // Pattern to get the last string so we can look at it to see if it looks like a unit number
                 // We assume that any string less than 3 characters or that is a number is a unit number
-                Pattern p2 = Pattern.compile("\\s?(\\S+)$");
-                Matcher m2 = p2.matcher(splitUnitNumber);
+                Matcher m2 = LAST_WORD.matcher(splitUnitNumber);
 
                 if (m2.find())
                 {
@@ -675,22 +768,39 @@ public class AddressParser
     {
         for (String oldString : codeMaps.keySet()) // contains a map of the form <stringToBeReplaced><StringToReplaceWith>
         {
+            replaceOriginalStringsInSplitUpFields(results, getFillValuePattern(oldString), codeMaps.get(oldString));
+        }
+        return results;
+    }
+
+    /**
+     * Same as {@link #replaceOriginalStringsInSplitUpFields(Map, BiMap)} for precompiled fill values.
+     *
+     * @param results parse results.
+     * @param substitutions the fill value patterns and the strings they originally replaced.
+     *
+     * @return the parse results.
+     */
+    private static Map<AddressComponent, String> replaceOriginalStringsInSplitUpFields(Map<AddressComponent, String> results,
+        List<Substitution> substitutions)
+    {
+        for (Substitution substitution : substitutions)
+        {
+            replaceOriginalStringsInSplitUpFields(results, substitution._pattern, substitution._replacement);
+        }
+        return results;
+    }
 
-            for (AddressComponent fieldKey : results.keySet())
+    private static void replaceOriginalStringsInSplitUpFields(Map<AddressComponent, String> results,
+        Pattern oldString, String newString)
+    {
+        for (Map.Entry<AddressComponent, String> field : results.entrySet())
+        {
+            if (field.getValue() != null) // only update fields that are not null
             {
-                if (results.get(fieldKey) == null) // only update fields that are not null
-                {
-                    continue;
-                }
-                else
-                {
-                    String originalString = results.get(fieldKey);
-                    String updatedString = originalString.replaceAll(oldString, codeMaps.get(oldString));
-                    results.put(fieldKey, updatedString);
-                }
+                field.setValue(oldString.matcher(field.getValue()).replaceAll(newString));
             }
         }
-        return results;
     }
 
     /**
@@ -750,22 +860,6 @@ public class AddressParser
         return ret;
     }
 
-    private static Collection<String> getStreetDirs()
-    {
-
-        Collection<String> streetDirs = new ArrayList<>();
-        streetDirs.add("e");
-        streetDirs.add("w");
-        streetDirs.add("n");
-        streetDirs.add("s");
-        streetDirs.add("sw");
-        streetDirs.add("nw");
-        streetDirs.add("se");
-        streetDirs.add("ne");
-
-        return streetDirs;
-    }
-
     /**
      * Creates the street name from the summation of the original
      * streetName + streetType (if non null) + part of the street
@@ -815,7 +909,7 @@ public class AddressParser
 
     private static String getCleanSttring(String rawAddr)
     {
-        return CLEANUP.matcher(rawAddr).replaceAll(" ").replaceAll("\\s+", " ").trim();
+        return WHITESPACE.matcher(CLEANUP.matcher(rawAddr).replaceAll(" ")).replaceAll(" ").trim();
     }
 
     private static Map<AddressComponent, String> getAddrMap(Matcher m, Map<Integer, String> groupMap)
@@ -911,4 +1005,65 @@ public class AddressParser
         if (v != null)
             m.put(ac, v);
     }
-}
\ No newline at end of file
+
+    /**
+     * A precompiled regular expression and the string that replaces its matches.
+     */
+    private static final class Substitution
+    {
+        private static final Pattern REGEX_META_CHARACTERS = Pattern.compile("[\\\\\\[\\](){}.*+?^$|]");
+        private final Pattern _pattern;
+        private final String _replacement;
+        /** Characters that any match must contain one of, or the whole regular expression if it is a plain string */
+        private final String _requiredCharacters;
+        private final boolean _literal;
+
+        private Substitution(String regex, String replacement)
+        {
+            _pattern = Pattern.compile(regex);
+            _replacement = replacement;
+            _literal = !REGEX_META_CHARACTERS.matcher(regex).find();
+            _requiredCharacters = _literal ? regex : REQUIRED_CHARACTERS.get(regex);
+        }
+
+        /**
+         * Test if the regular expression can match anything in the given input, without running the regular expression.
+         *
+         * @param input the input
+         *
+         * @return false if the regular expression can not match the input
+         */
+        boolean canMatch(String input)
+        {
+            if (_requiredCharacters == null) return true;
+            if (_literal) return input.contains(_requiredCharacters);
+            for (int i = 0; i < _requiredCharacters.length(); i++)
+            {
+                if (input.indexOf(_requiredCharacters.charAt(i)) != -1) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Compile the entries of the given map, keeping the iteration order of the map.
+         *
+         * @param regexpMap map of regular expression to replacement
+         *
+         * @return the substitutions
+         */
+        static List<Substitution> compile(Map<String, String> regexpMap)
+        {
+            List<Substitution> substitutions = new ArrayList<>(regexpMap.size());
+            for (Map.Entry<String, String> entry : regexpMap.entrySet())
+            {
+                substitutions.add(new Substitution(entry.getKey(), entry.getValue()));
+            }
+            return Collections.unmodifiableList(substitutions);
+        }
+
+        String apply(String input)
+        {
+            return canMatch(input) ? _pattern.matcher(input).replaceAll(_replacement) : input;
+        }
+    }
+}
@@ -367,7 +367,7 @@ public class AddressStandardizer
             {
                 if (line2.startsWith(e.getKey() + ' '))
                 {
-                    line2 = line2.replaceFirst(e.getKey() + ' ', e.getValue() + ' ');
+                    line2 = e.getValue() + line2.substring(e.getKey().length());
                     break;
                 }
             }
@@ -439,7 +439,7 @@ public class AddressStandardizer
         appendIfNotNull(sb, parsedAddr.get(CITY), ", ");
         appendIfNotNull(sb, parsedAddr.get(STATE), " ");
         appendIfNotNull(sb, parsedAddr.get(ZIP), " ");
-        return sb.toString().replaceAll(" ,", ",");
+        return sb.toString().replace(" ,", ",");
     }
 
     private static void appendIfNotNull(StringBuilder sb, String s, String suffix)
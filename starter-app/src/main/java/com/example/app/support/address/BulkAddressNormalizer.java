@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.address;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parses, spell-corrects and standardizes a stream of raw addresses on a bounded fork-join pool.
+ * <br><br>
+ * Addresses are read from the source in chunks, and at most a few chunks per thread are in flight at a time, so an
+ * import of any size runs in bounded memory.  Results are returned in the order of the source, and an address that
+ * fails to parse produces a {@link Result} holding the error instead of failing the whole batch.
+ * <br><br>
+ * Instances own their pool and must be {@link #close() closed}.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class BulkAddressNormalizer implements AutoCloseable
+{
+    /** Default number of addresses processed by a single task */
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    /** Number of chunks per thread that may be in flight at a time */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    private final ForkJoinPool _pool;
+    private final int _chunkSize;
+    private final int _maxChunksInFlight;
+
+    /**
+     * Instantiate a new instance of BulkAddressNormalizer using all available processors.
+     */
+    public BulkAddressNormalizer()
+    {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Instantiate a new instance of BulkAddressNormalizer
+     *
+     * @param parallelism the number of threads
+     * @param chunkSize the number of addresses processed by a single task
+     */
+    public BulkAddressNormalizer(int parallelism, int chunkSize)
+    {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        Preconditions.checkArgument(chunkSize > 0, "chunkSize must be positive");
+        _pool = new ForkJoinPool(parallelism);
+        _chunkSize = chunkSize;
+        _maxChunksInFlight = parallelism * CHUNKS_PER_THREAD;
+    }
+
+    /**
+     * Normalize a single address on the calling thread.
+     *
+     * @param rawAddress the raw address
+     *
+     * @return the result
+     */
+    @Nonnull
+    public static Result normalizeAddress(@Nullable String rawAddress)
+    {
+        try
+        {
+            Map<AddressComponent, String> parsed = AddressParser.parseAddress(rawAddress, true);
+            Map<AddressComponent, String> normalized = AddressStandardizer.normalizeParsedAddress(parsed);
+            return new Result(rawAddress, normalized, AddressStandardizer.toSingleLine(normalized), null);
+        }
+        catch (RuntimeException e)
+        {
+            return new Result(rawAddress, Collections.emptyMap(), null, e);
+        }
+    }
+
+    /**
+     * Normalize the given addresses.  The source is consumed lazily as the returned stream is consumed.
+     *
+     * @param rawAddresses the raw addresses
+     *
+     * @return the results, in the same order as the given addresses
+     */
+    @Nonnull
+    public Stream<Result> normalize(@Nonnull Stream<String> rawAddresses)
+    {
+        final Iterator<Result> results = normalize(rawAddresses.iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results,
+            Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(rawAddresses::close);
+    }
+
+    /**
+     * Normalize the given addresses.  The source is consumed lazily as the returned iterator is consumed.
+     *
+     * @param rawAddresses the raw addresses
+     *
+     * @return the results, in the same order as the given addresses
+     */
+    @Nonnull
+    public Iterator<Result> normalize(@Nonnull Iterator<String> rawAddresses)
+    {
+        return new ResultIterator(rawAddresses);
+    }
+
+    @Override
+    public void close()
+    {
+        _pool.shutdown();
+    }
+
+    /**
+     * Normalize a chunk of addresses, splitting it across the pool.
+     *
+     * @param chunk the chunk
+     * @param results the results, populated at the same index as the address
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     */
+    private void _normalize(List<String> chunk, Result[] results, int from, int to)
+    {
+        if (to - from <= 16)
+        {
+            for (int i = from; i < to; i++)
+            {
+                results[i] = normalizeAddress(chunk.get(i));
+            }
+        }
+        else
+        {
+            final int mid = (from + to) >>> 1;
+            ForkJoinTask.invokeAll(
+                ForkJoinTask.adapt(() -> _normalize(chunk, results, from, mid)),
+                ForkJoinTask.adapt(() -> _normalize(chunk, results, mid, to)));
+        }
+    }
+
+    /**
+     * The outcome of normalizing a single address.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    public static final class Result
+    {
+        private final String _rawAddress;
+        private final Map<AddressComponent, String> _address;
+        private final String _singleLine;
+        private final RuntimeException _error;
+
+        Result(@Nullable String rawAddress, @Nonnull Map<AddressComponent, String> address, @Nullable String singleLine,
+            @Nullable RuntimeException error)
+        {
+            _rawAddress = rawAddress;
+            _address = address;
+            _singleLine = singleLine;
+            _error = error;
+        }
+
+        /**
+         * Get the raw address
+         *
+         * @return the raw address
+         */
+        @Nullable
+        public String getRawAddress()
+        {
+            return _rawAddress;
+        }
+
+        /**
+         * Get the normalized address, as returned by {@link AddressStandardizer#normalizeParsedAddress(Map)}
+         *
+         * @return the normalized address, empty if the address could not be parsed
+         */
+        @Nonnull
+        public Map<AddressComponent, String> getAddress()
+        {
+            return _address;
+        }
+
+        /**
+         * Get the normalized address as returned by {@link AddressStandardizer#toSingleLine(Map)}
+         *
+         * @return the single line address, null if there was an error
+         */
+        @Nullable
+        public String getSingleLine()
+        {
+            return _singleLine;
+        }
+
+        /**
+         * Get the error thrown while normalizing the address
+         *
+         * @return the error, null if the address was normalized
+         */
+        @Nullable
+        public RuntimeException getError()
+        {
+            return _error;
+        }
+
+        /**
+         * Test if the address was normalized without error
+         *
+         * @return true or false
+         */
+        public boolean isSuccess()
+        {
+            return _error == null;
+        }
+    }
+
+    /**
+     * Reads chunks from the source ahead of the consumer, keeping up to {@link #_maxChunksInFlight} in flight.
+     */
+    private final class ResultIterator implements Iterator<Result>
+    {
+        private final Iterator<String> _source;
+        private final Deque<ForkJoinTask<Result[]>> _inFlight = new ArrayDeque<>();
+        private Result[] _current = new Result[0];
+        private int _index;
+
+        ResultIterator(Iterator<String> source)
+        {
+            _source = source;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (_index < _current.length) return true;
+            _fill();
+            if (_inFlight.isEmpty()) return false;
+            _current = _join(_inFlight.removeFirst());
+            _index = 0;
+            _fill();
+            return _current.length > 0;
+        }
+
+        @Override
+        public Result next()
+        {
+            if (!hasNext()) throw new NoSuchElementException();
+            return _current[_index++];
+        }
+
+        private void _fill()
+        {
+            while (_inFlight.size() < _maxChunksInFlight && _source.hasNext())
+            {
+                final List<String> chunk = new ArrayList<>(_chunkSize);
+                while (chunk.size() < _chunkSize && _source.hasNext())
+                {
+                    chunk.add(_source.next());
+                }
+                _inFlight.addLast(_pool.submit(() -> {
+                    final Result[] results = new Result[chunk.size()];
+                    _normalize(chunk, results, 0, results.length);
+                    return results;
+                }));
+            }
+        }
+
+        private Result[] _join(ForkJoinTask<Result[]> task)
+        {
+            try
+            {
+                return task.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                _cancelAll();
+                throw new CancellationException("Interrupted while normalizing addresses");
+            }
+            catch (ExecutionException e)
+            {
+                _cancelAll();
+                throw new IllegalStateException("Unable to normalize addresses", e.getCause());
+            }
+        }
+
+        private void _cancelAll()
+        {
+            _inFlight.forEach(task -> task.cancel(true));
+            _inFlight.clear();
+        }
+    }
+}
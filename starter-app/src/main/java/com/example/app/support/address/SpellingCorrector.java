@@ -207,21 +207,28 @@ package com.example.app.support.address;
 
 import org.apache.commons.lang.StringUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
- * Javadocs me
+ * Corrects mis-spelled state names at the end of an address.
+ * <br><br>
+ * The state names are indexed once, by number of words, in {@link BKTree}s, so a lookup only computes the
+ * Levenshtein distance to the names that are close enough to be a correction.  When several names are close enough,
+ * the first one in the order of the original brute force search is still the one used.
  *
  * @author jliang
  */
 public class SpellingCorrector
 {
-    private static final Map<Integer, Set<String>> STATE_TOKENS = new HashMap<>();
-    private static final Pattern DIGIT = Pattern.compile("^\\d+$");
+    private static final Map<Integer, BKTree> STATE_TOKENS = new HashMap<>();
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final float MIN_SIMILARITY = 0.75f;
 
     /**
      * Attempts to correct possible state mis-spellings
@@ -230,15 +237,18 @@ public class SpellingCorrector
      *
      * @return rawAddress or spelling corrected address if a state mis-spelling is found
      */
-    @SuppressWarnings("OverlyNestedMethod")
     public static String correctStateSpelling(String rawAddress)
     {
-        String[] originalTokens = rawAddress.split("\\s+");
-        String[] tokens = rawAddress.toUpperCase().split("\\s+");
+        String[] originalTokens = WHITESPACE.split(rawAddress);
+        String[] tokens = new String[originalTokens.length];
+        for (int i = 0; i < tokens.length; i++)
+        {
+            tokens[i] = originalTokens[i].toUpperCase();
+        }
         int end = tokens.length - 1;
         for (int i = end; i > 0; i--)
         {
-            if (DIGIT.matcher(tokens[i]).matches())
+            if (isDigits(tokens[i]))
             {
                 end--;
             }
@@ -251,41 +261,53 @@ public class SpellingCorrector
         { //short word
             return rawAddress;  //this almost never works so just skip it
         }
+        StringBuilder sb = new StringBuilder();
         for (int i = 1; i <= 4; i++)
         {
-            if (end >= i - 1)
+            BKTree tree = STATE_TOKENS.get(i);
+            if (end >= i - 1 && tree != null)
             {
-                for (String s : STATE_TOKENS.get(i))
+                sb.setLength(0);
+                int newEnd = end - i + 1;
+                for (int j = 0; j < i; j++)
                 {
-                    StringBuilder sb = new StringBuilder();
-                    int newEnd = end - i + 1;
-                    for (int j = 0; j < i; j++)
-                    {
-                        sb.append(tokens[newEnd + j]).append(' ');
-                    }
-                    float metrics = getNormalizedSimilarity(s, sb.toString().trim());
-                    if ((int)metrics == 1)
+                    sb.append(tokens[newEnd + j]).append(' ');
+                }
+                String s = tree.findFirstSimilar(sb.toString().trim());
+                if (s == null)
+                {
+                    continue;
+                }
+                if ((int) getNormalizedSimilarity(s, sb.toString().trim()) == 1)
+                {
+                    return rawAddress;
+                }
+                //assume mis-spelling
+                if (i != 1)
+                {
+                    for (int j = 0; j < i - 1; j++)
                     {
-                        return rawAddress;
-                    }
-                    else if (metrics >= 0.75f)
-                    { //assume mis-spelling
-                        if (i != 1)
-                        {
-                            for (int j = 0; j < i - 1; j++)
-                            {
-                                originalTokens[newEnd + j] = "";
-                            }
-                        }
-                        originalTokens[end] = s;
-                        return StringUtils.join(originalTokens, " ");
+                        originalTokens[newEnd + j] = "";
                     }
                 }
+                originalTokens[end] = s;
+                return StringUtils.join(originalTokens, " ");
             }
         }
         return rawAddress;
     }
 
+    private static boolean isDigits(String token)
+    {
+        if (token.isEmpty()) return false;
+        for (int i = 0; i < token.length(); i++)
+        {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
     private static float getNormalizedSimilarity(String s, String t)
     {
         return 1f - StringUtils.getLevenshteinDistance(s, t) / (float) Math.max(s.length(), t.length());
@@ -293,15 +315,164 @@ public class SpellingCorrector
 
     static
     {
+        // The trees are built from the same HashSets, in the same order, that the brute force search iterated
+        Map<Integer, Set<String>> stateTokens = new HashMap<>();
         for (String s : Data.getSTATE_CODE_MAP().keySet())
         {
             int size = s.split("\\s+").length;
-            Set<String> set = STATE_TOKENS.get(size);
+            Set<String> set = stateTokens.get(size);
             if (set == null)
             {
-                STATE_TOKENS.put(size, new HashSet<>());
+                stateTokens.put(size, new HashSet<>());
+            }
+            stateTokens.get(size).add(s);
+        }
+        for (Map.Entry<Integer, Set<String>> entry : stateTokens.entrySet())
+        {
+            STATE_TOKENS.put(entry.getKey(), new BKTree(entry.getValue()));
+        }
+    }
+
+    /**
+     * Burkhard-Keller tree over Levenshtein distance.  Each term keeps its position in the iteration order of the set
+     * it was built from, so {@link #findFirstSimilar(String)} returns the same term a linear scan of that set would.
+     */
+    static final class BKTree
+    {
+        private final Node _root;
+        private final int _maxLength;
+
+        BKTree(Iterable<String> terms)
+        {
+            Node root = null;
+            int maxLength = 0;
+            int order = 0;
+            for (String term : terms)
+            {
+                Node node = new Node(term, order++);
+                maxLength = Math.max(maxLength, term.length());
+                if (root == null)
+                {
+                    root = node;
+                }
+                else
+                {
+                    root.add(node);
+                }
+            }
+            _root = root;
+            _maxLength = maxLength;
+        }
+
+        /**
+         * Find the first term, in the order the terms were given, with a normalized similarity of at least 0.75 to the
+         * given query.
+         *
+         * @param query the query
+         *
+         * @return the term or null
+         */
+        String findFirstSimilar(String query)
+        {
+            if (_root == null) return null;
+            // 1 - d / max(|s|, |q|) >= 0.75 requires d <= max(|s|, |q|) / 4, so this radius includes every match
+            int radius = Math.max(_maxLength, query.length()) / 4;
+            Node first = null;
+            List<Node> pending = new ArrayList<>();
+            pending.add(_root);
+            while (!pending.isEmpty())
+            {
+                Node node = pending.remove(pending.size() - 1);
+                // Beyond this limit the node can not match, and none of its children are within the radius
+                int limit = node._maxChildDistance + radius;
+                int distance = getBoundedDistance(node._term, query, limit);
+                if (distance <= radius && (first == null || node._order < first._order)
+                    && 1f - distance / (float) Math.max(node._term.length(), query.length()) >= MIN_SIMILARITY)
+                {
+                    first = node;
+                }
+                if (distance > limit)
+                {
+                    continue;
+                }
+                for (Map.Entry<Integer, Node> child : node._children.entrySet())
+                {
+                    if (Math.abs(child.getKey() - distance) <= radius)
+                    {
+                        pending.add(child.getValue());
+                    }
+                }
+            }
+            return first != null ? first._term : null;
+        }
+
+        /**
+         * Get the Levenshtein distance between the given strings, or any value greater than the limit if the distance
+         * is greater than the limit.
+         *
+         * @param s the first string
+         * @param t the second string
+         * @param limit the limit
+         *
+         * @return the distance
+         */
+        static int getBoundedDistance(String s, String t, int limit)
+        {
+            int n = s.length();
+            int m = t.length();
+            if (Math.abs(n - m) > limit) return limit + 1;
+            int[] previous = new int[n + 1];
+            int[] current = new int[n + 1];
+            for (int i = 0; i <= n; i++)
+            {
+                previous[i] = i;
+            }
+            for (int j = 1; j <= m; j++)
+            {
+                char tj = t.charAt(j - 1);
+                current[0] = j;
+                int rowMin = current[0];
+                for (int i = 1; i <= n; i++)
+                {
+                    int cost = s.charAt(i - 1) == tj ? 0 : 1;
+                    current[i] = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                    rowMin = Math.min(rowMin, current[i]);
+                }
+                if (rowMin > limit) return limit + 1;
+                int[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            return previous[n];
+        }
+
+        private static final class Node
+        {
+            private final String _term;
+            private final int _order;
+            private final Map<Integer, Node> _children = new HashMap<>();
+            private int _maxChildDistance;
+
+            Node(String term, int order)
+            {
+                _term = term;
+                _order = order;
+            }
+
+            void add(Node node)
+            {
+                int distance = StringUtils.getLevenshteinDistance(_term, node._term);
+                Node child = _children.get(distance);
+                if (child == null)
+                {
+                    _children.put(distance, node);
+                    _maxChildDistance = Math.max(_maxChildDistance, distance);
+                }
+                else
+                {
+                    child.add(node);
+                }
             }
-            STATE_TOKENS.get(size).add(s);
         }
     }
-}
\ No newline at end of file
+}
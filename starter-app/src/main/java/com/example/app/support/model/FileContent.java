@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.model;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+import net.proteusframework.core.hibernate.model.AbstractEntity;
+import net.proteusframework.data.filesystem.DirectoryEntity;
+import net.proteusframework.data.filesystem.FileEntity;
+
+import static com.example.app.config.ProjectConfig.PROJECT_SCHEMA;
+
+/**
+ * The content hash of a {@link FileEntity} saved by {@link com.example.app.support.service.FileSaver}, and the number
+ * of entities referencing the file.  Entities saving identical content to the same directory share the file.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Entity
+@Access(AccessType.FIELD)
+@Table(name = FileContent.TABLE_NAME, schema = PROJECT_SCHEMA, indexes = {
+    @Index(name = "filecontent_hash_idx", columnList = FileContent.HASH_COLUMN_PROP),
+    @Index(name = "filecontent_directory_hash_idx",
+        columnList = FileContent.DIRECTORY_COLUMN + ',' + FileContent.HASH_COLUMN_PROP)
+})
+public class FileContent extends AbstractEntity<Integer>
+{
+    /** The database table name */
+    public static final String TABLE_NAME = "filecontent";
+    /** The database id column */
+    public static final String ID_COLUMN = "filecontent_id";
+    /** The database column: file */
+    public static final String FILE_COLUMN = "file_id";
+    /** The property: file */
+    public static final String FILE_PROP = "file";
+    /** The database column: directory */
+    public static final String DIRECTORY_COLUMN = "directory_id";
+    /** The property: directory */
+    public static final String DIRECTORY_PROP = "directory";
+    /** The database column and property: hash */
+    public static final String HASH_COLUMN_PROP = "hash";
+    /** The database column and property: contentLength */
+    public static final String CONTENT_LENGTH_COLUMN_PROP = "contentLength";
+    /** The database column: referenceCount */
+    public static final String REFERENCE_COUNT_COLUMN = "refcount";
+    /** The property: referenceCount */
+    public static final String REFERENCE_COUNT_PROP = "referenceCount";
+    private static final long serialVersionUID = 4385203785916672411L;
+    private static final String GENERATOR = PROJECT_SCHEMA + '.' + ID_COLUMN + "_seq";
+
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = FILE_COLUMN, unique = true)
+    private FileEntity file;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = DIRECTORY_COLUMN)
+    private DirectoryEntity directory;
+
+    @Column(name = HASH_COLUMN_PROP, length = 64, nullable = false)
+    private String hash;
+
+    @Column(name = CONTENT_LENGTH_COLUMN_PROP)
+    private long contentLength;
+
+    @Column(name = REFERENCE_COUNT_COLUMN)
+    private int referenceCount;
+
+    @Id
+    @Column(name = ID_COLUMN)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = GENERATOR)
+    @SequenceGenerator(name = GENERATOR, sequenceName = GENERATOR)
+    @NotNull
+    @Override
+    @Access(AccessType.PROPERTY)
+    public Integer getId()
+    {
+        return super.getId();
+    }
+
+    /**
+     * Get the file
+     *
+     * @return the file
+     */
+    public FileEntity getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Set the file
+     *
+     * @param file the file
+     */
+    public void setFile(FileEntity file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Get the directory the file was saved to.  Only entities saving to the same directory share the file.
+     *
+     * @return the directory, or null if the file is not shared.
+     */
+    public DirectoryEntity getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Set the directory the file was saved to
+     *
+     * @param directory the directory
+     */
+    public void setDirectory(DirectoryEntity directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the SHA-256 hash of the file content
+     *
+     * @return the hash, in hex
+     */
+    public String getHash()
+    {
+        return hash;
+    }
+
+    /**
+     * Set the SHA-256 hash of the file content
+     *
+     * @param hash the hash, in hex
+     */
+    public void setHash(String hash)
+    {
+        this.hash = hash;
+    }
+
+    /**
+     * Get the length of the file content
+     *
+     * @return the length in bytes
+     */
+    public long getContentLength()
+    {
+        return contentLength;
+    }
+
+    /**
+     * Set the length of the file content
+     *
+     * @param contentLength the length in bytes
+     */
+    public void setContentLength(long contentLength)
+    {
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Get the number of entities referencing the file
+     *
+     * @return the reference count
+     */
+    public int getReferenceCount()
+    {
+        return referenceCount;
+    }
+
+    /**
+     * Set the number of entities referencing the file
+     *
+     * @param referenceCount the reference count
+     */
+    public void setReferenceCount(int referenceCount)
+    {
+        this.referenceCount = referenceCount;
+    }
+}
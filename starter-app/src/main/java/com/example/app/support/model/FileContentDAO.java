@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.model;
+
+import org.hibernate.LockMode;
+import org.hibernate.Query;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.event.spi.EventSource;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.function.Supplier;
+
+import net.proteusframework.core.hibernate.dao.DAOHelper;
+import net.proteusframework.data.filesystem.DirectoryEntity;
+import net.proteusframework.data.filesystem.FileEntity;
+
+/**
+ * DAO for {@link FileContent}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Repository
+@Lazy
+public class FileContentDAO extends DAOHelper
+{
+    /**
+     * Get the content of a file.
+     *
+     * @param file the file
+     *
+     * @return the content, or null if the file was not saved by a FileSaver.
+     */
+    @Nullable
+    public FileContent getContent(@Nonnull FileEntity file)
+    {
+        return (FileContent) getSession().createQuery("from FileContent where " + FileContent.FILE_PROP + " = :file")
+            .setParameter("file", file)
+            .uniqueResult();
+    }
+
+    /**
+     * Get the content of a file, locked until the current transaction ends so its reference count cannot change.
+     *
+     * @param file the file
+     *
+     * @return the content, or null if the file was not saved by a FileSaver.
+     *
+     * @see #doInContentTransaction(Supplier)
+     */
+    @Nullable
+    public FileContent lockContent(@Nonnull FileEntity file)
+    {
+        final FileContent content = (FileContent) getSession().createQuery(
+            "from FileContent content where content." + FileContent.FILE_PROP + " = :file")
+            .setParameter("file", file)
+            .setLockMode("content", LockMode.PESSIMISTIC_WRITE)
+            .uniqueResult();
+        return _refresh(content);
+    }
+
+    /**
+     * Get a referenced file with the given content in a directory, locked until the current transaction ends so its
+     * reference count cannot change.
+     *
+     * @param hash the SHA-256 hash of the content, in hex
+     * @param directory the directory
+     *
+     * @return the oldest referenced file with the content, or null if there is none.
+     *
+     * @see #doInContentTransaction(Supplier)
+     */
+    @Nullable
+    public FileContent lockContent(@Nonnull String hash, @Nonnull DirectoryEntity directory)
+    {
+        final FileContent content = (FileContent) getSession().createQuery(
+            "from FileContent content where content." + FileContent.DIRECTORY_PROP + " = :directory and content."
+            + FileContent.HASH_COLUMN_PROP + " = :hash and content." + FileContent.REFERENCE_COUNT_PROP
+            + " > 0 order by content.id")
+            .setParameter("directory", directory)
+            .setParameter("hash", hash)
+            .setLockMode("content", LockMode.PESSIMISTIC_WRITE)
+            .setMaxResults(1)
+            .uniqueResult();
+        return _refresh(content);
+    }
+
+    /**
+     * Test if a file name in a directory belongs to a file that is referenced by any entity.
+     *
+     * @param directory the directory
+     * @param name the file name
+     * @param exclude a file to ignore, or null.
+     *
+     * @return true if storing a different file under the name would overwrite a referenced file.
+     */
+    public boolean isReferenced(@Nonnull DirectoryEntity directory, @Nonnull String name, @Nullable FileEntity exclude)
+    {
+        final Query query = getSession().createQuery(
+            "select count(content) from FileContent content where content." + FileContent.DIRECTORY_PROP
+            + " = :directory and content." + FileContent.FILE_PROP + ".name = :name and content."
+            + FileContent.REFERENCE_COUNT_PROP + " > 0"
+            + (exclude != null ? " and content." + FileContent.FILE_PROP + " <> :exclude" : ""))
+            .setParameter("directory", directory)
+            .setParameter("name", name);
+        if (exclude != null)
+            query.setParameter("exclude", exclude);
+        return ((Number) query.uniqueResult()).longValue() > 0L;
+    }
+
+    /**
+     * Run work in one transaction, so content locked by the work stays locked until the work is done.
+     *
+     * @param work the work
+     * @param <R> the result type
+     *
+     * @return the result of the work
+     */
+    public <R> R doInContentTransaction(@Nonnull Supplier<R> work)
+    {
+        return doInTransaction(session -> {
+            return work.get();
+        });
+    }
+
+    /**
+     * Run a task once the current transaction commits, so it sees the files stored by the transaction.
+     * The task is not run if the transaction rolls back.
+     *
+     * @param task the task
+     */
+    public void afterCommit(@Nonnull Runnable task)
+    {
+        ((EventSource) getSession()).getActionQueue().registerProcess(
+            (AfterTransactionCompletionProcess) (success, sessionImplementor) -> {
+                if (success) task.run();
+            });
+    }
+
+    /**
+     * Record the content of a file that was just stored, referenced once.
+     *
+     * @param file the file
+     * @param directory the directory the file was stored to
+     * @param hash the SHA-256 hash of the content, in hex
+     * @param contentLength the length of the content
+     *
+     * @return the content
+     */
+    @Nonnull
+    public FileContent saveContent(@Nonnull FileEntity file, @Nonnull DirectoryEntity directory, @Nonnull String hash,
+        long contentLength)
+    {
+        return doInTransaction(session -> {
+            FileContent content = getContent(file);
+            if (content == null)
+            {
+                content = new FileContent();
+                content.setFile(file);
+            }
+            content.setDirectory(directory);
+            content.setHash(hash);
+            content.setContentLength(contentLength);
+            content.setReferenceCount(1);
+            session.saveOrUpdate(content);
+            return content;
+        });
+    }
+
+    /**
+     * Add a reference to a file.
+     *
+     * @param content the file content
+     */
+    public void addReference(@Nonnull FileContent content)
+    {
+        doInTransaction(session -> {
+            session.createQuery("update FileContent set " + FileContent.REFERENCE_COUNT_PROP + " = "
+                                + FileContent.REFERENCE_COUNT_PROP + " + 1 where id = :id")
+                .setParameter("id", content.getId())
+                .executeUpdate();
+        });
+    }
+
+    /**
+     * Remove a reference to a file.  A file without references is no longer shared.
+     *
+     * @param file the file
+     */
+    public void removeReference(@Nonnull FileEntity file)
+    {
+        doInTransaction(session -> {
+            session.createQuery("update FileContent set " + FileContent.REFERENCE_COUNT_PROP + " = "
+                                + FileContent.REFERENCE_COUNT_PROP + " - 1 where " + FileContent.FILE_PROP
+                                + " = :file and " + FileContent.REFERENCE_COUNT_PROP + " > 0")
+                .setParameter("file", file)
+                .executeUpdate();
+        });
+    }
+
+    @Nullable
+    private FileContent _refresh(@Nullable FileContent content)
+    {
+        // A managed instance is not updated by the query, and reference counts are changed by bulk updates
+        if (content != null)
+            getSession().refresh(content);
+        return content;
+    }
+}
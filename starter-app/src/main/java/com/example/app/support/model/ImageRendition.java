@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.model;
+
+import javax.annotation.Nullable;
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.validation.constraints.NotNull;
+
+import net.proteusframework.core.hibernate.model.AbstractEntity;
+import net.proteusframework.data.filesystem.FileEntity;
+
+import static com.example.app.config.ProjectConfig.PROJECT_SCHEMA;
+
+/**
+ * A copy of an image scaled to fit within a fixed size, generated once and stored as a {@link FileEntity}.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Entity
+@Access(AccessType.FIELD)
+@Table(name = ImageRendition.TABLE_NAME, schema = PROJECT_SCHEMA, uniqueConstraints = {
+    @UniqueConstraint(name = ImageRendition.KEY_CONSTRAINT, columnNames = {ImageRendition.SOURCE_COLUMN,
+        ImageRendition.WIDTH_COLUMN_PROP, ImageRendition.HEIGHT_COLUMN_PROP, ImageRendition.FORMAT_COLUMN_PROP})
+}, indexes = {
+    @Index(name = "imagerendition_hash_idx", columnList = ImageRendition.HASH_COLUMN_PROP)
+})
+public class ImageRendition extends AbstractEntity<Integer>
+{
+    /** The database table name */
+    public static final String TABLE_NAME = "imagerendition";
+    /** The unique constraint on source, width, height and format */
+    public static final String KEY_CONSTRAINT = "imagerendition_key";
+    /** The database id column */
+    public static final String ID_COLUMN = "imagerendition_id";
+    /** The database column: source */
+    public static final String SOURCE_COLUMN = "source_id";
+    /** The property: source */
+    public static final String SOURCE_PROP = "source";
+    /** The database column: file */
+    public static final String FILE_COLUMN = "file_id";
+    /** The property: file */
+    public static final String FILE_PROP = "file";
+    /** The database column and property: width */
+    public static final String WIDTH_COLUMN_PROP = "width";
+    /** The database column and property: height */
+    public static final String HEIGHT_COLUMN_PROP = "height";
+    /** The database column and property: format */
+    public static final String FORMAT_COLUMN_PROP = "format";
+    /** The database column and property: hash */
+    public static final String HASH_COLUMN_PROP = "hash";
+    private static final long serialVersionUID = -6620463512081839512L;
+    private static final String GENERATOR = PROJECT_SCHEMA + '.' + ID_COLUMN + "_seq";
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = SOURCE_COLUMN)
+    private FileEntity source;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = FILE_COLUMN)
+    private FileEntity file;
+
+    @Column(name = WIDTH_COLUMN_PROP)
+    private int width;
+
+    @Column(name = HEIGHT_COLUMN_PROP)
+    private int height;
+
+    @Column(name = FORMAT_COLUMN_PROP, length = 16, nullable = false)
+    private String format;
+
+    @Column(name = HASH_COLUMN_PROP, length = 64)
+    private String hash;
+
+    @Id
+    @Column(name = ID_COLUMN)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = GENERATOR)
+    @SequenceGenerator(name = GENERATOR, sequenceName = GENERATOR)
+    @NotNull
+    @Override
+    @Access(AccessType.PROPERTY)
+    public Integer getId()
+    {
+        return super.getId();
+    }
+
+    /**
+     * Get the source image
+     *
+     * @return the source
+     */
+    public FileEntity getSource()
+    {
+        return source;
+    }
+
+    /**
+     * Set the source image
+     *
+     * @param source the source
+     */
+    public void setSource(FileEntity source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * Get the rendition file.  This is the source if the source already fits.
+     *
+     * @return the file
+     */
+    public FileEntity getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Set the rendition file
+     *
+     * @param file the file
+     */
+    public void setFile(FileEntity file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Get the maximum width
+     *
+     * @return the width, 0 for no limit
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Set the maximum width
+     *
+     * @param width the width, 0 for no limit
+     */
+    public void setWidth(int width)
+    {
+        this.width = width;
+    }
+
+    /**
+     * Get the maximum height
+     *
+     * @return the height, 0 for no limit
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Set the maximum height
+     *
+     * @param height the height, 0 for no limit
+     */
+    public void setHeight(int height)
+    {
+        this.height = height;
+    }
+
+    /**
+     * Get the image format
+     *
+     * @return the format
+     */
+    public String getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * Set the image format
+     *
+     * @param format the format
+     */
+    public void setFormat(String format)
+    {
+        this.format = format;
+    }
+
+    /**
+     * Get the SHA-256 hash of the rendition content
+     *
+     * @return the hash, in hex.  Null if the source has been replaced and the rendition must be generated again.
+     */
+    @Nullable
+    public String getHash()
+    {
+        return hash;
+    }
+
+    /**
+     * Set the SHA-256 hash of the rendition content
+     *
+     * @param hash the hash, in hex
+     */
+    public void setHash(@Nullable String hash)
+    {
+        this.hash = hash;
+    }
+}
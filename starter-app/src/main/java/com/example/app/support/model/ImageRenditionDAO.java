@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.model;
+
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+
+import net.proteusframework.core.hibernate.dao.DAOHelper;
+import net.proteusframework.data.filesystem.FileEntity;
+
+import static com.example.app.config.ProjectConfig.PROJECT_SCHEMA;
+
+/**
+ * DAO for {@link ImageRendition}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Repository
+@Lazy
+public class ImageRenditionDAO extends DAOHelper
+{
+    /**
+     * Get a rendition of an image.
+     *
+     * @param source the image
+     * @param width the maximum width, 0 for no limit
+     * @param height the maximum height, 0 for no limit
+     * @param format the format
+     *
+     * @return the rendition, or null if it has not been generated.
+     */
+    @Nullable
+    public ImageRendition getRendition(@Nonnull FileEntity source, int width, int height, @Nonnull String format)
+    {
+        return (ImageRendition) getSession().createQuery("from ImageRendition where "
+                                                         + ImageRendition.SOURCE_PROP + " = :source and "
+                                                         + ImageRendition.WIDTH_COLUMN_PROP + " = :width and "
+                                                         + ImageRendition.HEIGHT_COLUMN_PROP + " = :height and "
+                                                         + ImageRendition.FORMAT_COLUMN_PROP + " = :format")
+            .setParameter("source", source)
+            .setParameter("width", width)
+            .setParameter("height", height)
+            .setParameter("format", format)
+            .uniqueResult();
+    }
+
+    /**
+     * Get a generated rendition by the hash of its content.
+     *
+     * @param hash the SHA-256 hash of the rendition content, in hex
+     *
+     * @return a rendition with the content, or null if there is none.
+     */
+    @Nullable
+    public ImageRendition getRendition(@Nonnull String hash)
+    {
+        return (ImageRendition) getSession().createQuery("from ImageRendition where "
+                                                         + ImageRendition.HASH_COLUMN_PROP + " = :hash and "
+                                                         + ImageRendition.FILE_PROP + " is not null order by id")
+            .setParameter("hash", hash)
+            .setMaxResults(1)
+            .uniqueResult();
+    }
+
+    /**
+     * Get a rendition of an image, adding it if it does not exist yet.  The rendition is added with an upsert, so
+     * renditions generated concurrently for the same size share one row.
+     *
+     * @param source the image
+     * @param width the maximum width, 0 for no limit
+     * @param height the maximum height, 0 for no limit
+     * @param format the format
+     *
+     * @return the rendition
+     */
+    @Nonnull
+    public ImageRendition getOrCreateRendition(@Nonnull FileEntity source, int width, int height, @Nonnull String format)
+    {
+        return doInTransaction(session -> {
+            ImageRendition rendition = getRendition(source, width, height, format);
+            if (rendition == null)
+            {
+                session.createSQLQuery("insert into " + PROJECT_SCHEMA + '.' + ImageRendition.TABLE_NAME + " ("
+                                       + ImageRendition.ID_COLUMN + ", " + ImageRendition.SOURCE_COLUMN + ", "
+                                       + ImageRendition.WIDTH_COLUMN_PROP + ", " + ImageRendition.HEIGHT_COLUMN_PROP
+                                       + ", " + ImageRendition.FORMAT_COLUMN_PROP + ") values (nextval('"
+                                       + PROJECT_SCHEMA + '.' + ImageRendition.ID_COLUMN + "_seq'), :source, :width, "
+                                       + ":height, :format) on conflict on constraint " + ImageRendition.KEY_CONSTRAINT
+                                       + " do nothing")
+                    .setParameter("source", source.getId())
+                    .setParameter("width", width)
+                    .setParameter("height", height)
+                    .setParameter("format", format)
+                    .executeUpdate();
+                rendition = getRendition(source, width, height, format);
+                assert rendition != null;
+            }
+            return rendition;
+        });
+    }
+
+    /**
+     * Get every rendition of an image.
+     *
+     * @param source the image
+     *
+     * @return the renditions
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public List<ImageRendition> getRenditions(@Nonnull FileEntity source)
+    {
+        return getSession().createQuery("from ImageRendition where " + ImageRendition.SOURCE_PROP + " = :source")
+            .setParameter("source", source)
+            .list();
+    }
+
+    /**
+     * Save a rendition.
+     *
+     * @param rendition the rendition
+     *
+     * @return the rendition
+     */
+    @Nonnull
+    public ImageRendition saveRendition(@Nonnull ImageRendition rendition)
+    {
+        return doInTransaction(session -> {
+            session.saveOrUpdate(rendition);
+            return rendition;
+        });
+    }
+
+    /**
+     * Mark every rendition of an image as needing to be generated again, keeping the rendition files so they can be
+     * overwritten.
+     *
+     * @param source the image
+     */
+    public void invalidate(@Nonnull FileEntity source)
+    {
+        doInTransaction(session -> {
+            for (ImageRendition rendition : getRenditions(source))
+            {
+                rendition.setHash(null);
+                session.saveOrUpdate(rendition);
+            }
+        });
+    }
+}
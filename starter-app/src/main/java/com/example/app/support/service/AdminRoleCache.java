@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.service;
+
+import com.example.app.config.ProjectCacheRegions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import net.proteusframework.core.hibernate.dao.DAOHelper;
+import net.proteusframework.core.spring.ApplicationContextUtils;
+import net.proteusframework.users.model.Principal;
+import net.proteusframework.users.model.Role;
+
+/**
+ * Cache of principal id to admin flag used by {@link AppUtil#userHasAdminRole(Principal)}.
+ * <br><br>
+ * Lookups are first answered from the current request, then from a node-local cache or, when
+ * {@code admin-role-cache.shared} is enabled, from the {@link ProjectCacheRegions#ADMIN_ROLE_DATA} region so the result
+ * is shared across the cluster.  A principal is evicted when it is updated or deleted, and the whole cache is cleared
+ * when a principal's roles or children change or a role is modified.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Repository
+@Lazy
+public class AdminRoleCache extends DAOHelper implements PostInsertEventListener, PostUpdateEventListener,
+    PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+    PostCollectionRemoveEventListener, Serializable
+{
+    /** Max number of principals held within the node-local cache */
+    public static final int MAX_PRINCIPALS = 10_000;
+    /** Max age of a node-local entry */
+    public static final int MAX_ENTRY_AGE_MINUTES = 10;
+    /** Logger. */
+    private static final Logger _logger = LogManager.getLogger(AdminRoleCache.class);
+    private static final long serialVersionUID = 3319520512632213046L;
+    private static final String REQUEST_ATTRIBUTE = AdminRoleCache.class.getName();
+
+    @Autowired
+    private transient ProjectCacheRegions _cacheRegions;
+    @Value("#{new Boolean('${admin-role-cache.shared:false}')}")
+    private transient Boolean _shared;
+
+    private final transient Cache<Serializable, Boolean> _localCache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_PRINCIPALS)
+        .expireAfterWrite(MAX_ENTRY_AGE_MINUTES, TimeUnit.MINUTES)
+        .build();
+    private final transient AtomicLong _requestHits = new AtomicLong();
+    private final transient AtomicLong _hits = new AtomicLong();
+    private final transient AtomicLong _misses = new AtomicLong();
+    private transient volatile boolean _listenersRegistered;
+
+    /**
+     * Get the admin flag for the given principal id, resolving it with the given supplier on a cache miss.
+     *
+     * @param principalId the principal id
+     * @param resolver resolves the admin flag by walking the principal's roles
+     *
+     * @return the admin flag
+     */
+    public boolean isAdmin(@Nonnull Serializable principalId, @Nonnull BooleanSupplier resolver)
+    {
+        _registerListenersIfNecessary();
+        final Map<Serializable, Boolean> requestCache = _getRequestCache();
+        Boolean result = requestCache != null ? requestCache.get(principalId) : null;
+        if (result != null)
+        {
+            _requestHits.incrementAndGet();
+            return result;
+        }
+        result = _getShared(principalId);
+        if (result != null)
+        {
+            _hits.incrementAndGet();
+        }
+        else
+        {
+            _misses.incrementAndGet();
+            result = resolver.getAsBoolean();
+            _putShared(principalId, result);
+        }
+        if (requestCache != null) requestCache.put(principalId, result);
+        return result;
+    }
+
+    /**
+     * Evict the given principal.
+     *
+     * @param principalId the principal id
+     */
+    public void evict(@Nullable Serializable principalId)
+    {
+        if (principalId == null) return;
+        _localCache.invalidate(principalId);
+        final Ehcache sharedCache = _getSharedCache();
+        if (sharedCache != null) sharedCache.remove(principalId);
+        final Map<Serializable, Boolean> requestCache = _getRequestCache();
+        if (requestCache != null) requestCache.remove(principalId);
+    }
+
+    /**
+     * Evict all principals.
+     */
+    public void evictAll()
+    {
+        _localCache.invalidateAll();
+        final Ehcache sharedCache = _getSharedCache();
+        if (sharedCache != null) sharedCache.removeAll();
+        final Map<Serializable, Boolean> requestCache = _getRequestCache();
+        if (requestCache != null) requestCache.clear();
+    }
+
+    /**
+     * Get the number of lookups answered from the current request.
+     *
+     * @return the count
+     */
+    public long getRequestHitCount()
+    {
+        return _requestHits.get();
+    }
+
+    /**
+     * Get the number of lookups answered from the node-local or shared cache.
+     *
+     * @return the count
+     */
+    public long getHitCount()
+    {
+        return _hits.get();
+    }
+
+    /**
+     * Get the number of lookups that had to walk the role graph.
+     *
+     * @return the count
+     */
+    public long getMissCount()
+    {
+        return _misses.get();
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event)
+    {
+        if (event.getEntity() instanceof Role) evictAll();
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event)
+    {
+        _onEntityChange(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event)
+    {
+        _onEntityChange(event.getEntity());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister)
+    {
+        final Class<?> mappedClass = persister.getMappedClass();
+        return Principal.class.isAssignableFrom(mappedClass) || Role.class.isAssignableFrom(mappedClass);
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event)
+    {
+        _onCollectionEvent(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event)
+    {
+        _onCollectionEvent(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event)
+    {
+        _onCollectionEvent(event);
+    }
+
+    private void _onEntityChange(Object entity)
+    {
+        if (entity instanceof Principal)
+            evict(((Principal) entity).getId());
+        else if (entity instanceof Role)
+            evictAll();
+    }
+
+    /**
+     * Role and child collections change the roles of the principal and all of its descendants.
+     * Collection events are only fired at flush time, so clear once now and again after the transaction commits
+     * to avoid a concurrent lookup caching the pre-commit roles.
+     *
+     * @param event the event
+     */
+    private void _onCollectionEvent(AbstractCollectionEvent event)
+    {
+        final Object owner = event.getAffectedOwnerOrNull();
+        if (owner instanceof Principal || owner instanceof Role)
+        {
+            _logger.debug("Clearing admin role cache for change to " + event.getAffectedOwnerEntityName());
+            evictAll();
+            final EventSource session = event.getSession();
+            if (session != null)
+            {
+                session.getActionQueue().registerProcess(
+                    (AfterTransactionCompletionProcess) (success, sessionImplementor) -> {
+                        if (success) evictAll();
+                    });
+            }
+        }
+    }
+
+    @Nullable
+    private Boolean _getShared(Serializable principalId)
+    {
+        final Ehcache sharedCache = _getSharedCache();
+        if (sharedCache != null)
+        {
+            final Element element = sharedCache.get(principalId);
+            return element != null ? (Boolean) element.getObjectValue() : null;
+        }
+        return _localCache.getIfPresent(principalId);
+    }
+
+    private void _putShared(Serializable principalId, boolean admin)
+    {
+        final Ehcache sharedCache = _getSharedCache();
+        if (sharedCache != null)
+            sharedCache.put(new Element(principalId, admin));
+        else
+            _localCache.put(principalId, admin);
+    }
+
+    @Nullable
+    private Ehcache _getSharedCache()
+    {
+        return Boolean.TRUE.equals(_shared) ? _cacheRegions.getCache(ProjectCacheRegions.ADMIN_ROLE_DATA) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private static Map<Serializable, Boolean> _getRequestCache()
+    {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) return null;
+        Map<Serializable, Boolean> requestCache =
+            (Map<Serializable, Boolean>) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (requestCache == null)
+        {
+            requestCache = new HashMap<>();
+            attributes.setAttribute(REQUEST_ATTRIBUTE, requestCache, RequestAttributes.SCOPE_REQUEST);
+        }
+        return requestCache;
+    }
+
+    private void _registerListenersIfNecessary()
+    {
+        if (_listenersRegistered) return;
+        synchronized (this)
+        {
+            if (_listenersRegistered) return;
+            EntityEventListeners.appendListeners(getSession().getSessionFactory(), this,
+                EventType.POST_COMMIT_INSERT, EventType.POST_COMMIT_UPDATE, EventType.POST_COMMIT_DELETE,
+                EventType.POST_COLLECTION_RECREATE, EventType.POST_COLLECTION_UPDATE, EventType.POST_COLLECTION_REMOVE);
+            _listenersRegistered = true;
+        }
+    }
+
+    private Object readResolve() throws ObjectStreamException
+    {
+        ApplicationContext context = ApplicationContextUtils.getInstance().getContext();
+        assert context != null;
+        return context.getBean(AdminRoleCache.class);
+    }
+
+    private Object writeReplace() throws ObjectStreamException
+    {
+        return this;
+    }
+}
@@ -139,6 +139,8 @@ public class AppUtil implements Serializable
     private transient CmsFrontendDAO _cmsFrontendDAO;
     @Autowired
     private transient EntityRetriever _entityRetriever;
+    @Autowired
+    private transient AdminRoleCache _adminRoleCache;
 
     @Value("${system.sender}")
     private String _systemSender;
@@ -960,8 +962,7 @@ public class AppUtil implements Serializable
      */
     public boolean userHasAdminRole(User user)
     {
-        return _principalDAO.getAllRoles(_entityRetriever.reattachIfNecessary(user).getPrincipal())
-            .contains(getAdminAccessRole());
+        return userHasAdminRole(_entityRetriever.reattachIfNecessary(user).getPrincipal());
     }
 
     /**
@@ -973,7 +974,10 @@ public class AppUtil implements Serializable
      */
     public boolean userHasAdminRole(Principal user)
     {
-        return _principalDAO.getAllRoles(_entityRetriever.reattachIfNecessary(user)).contains(getAdminAccessRole());
+        if (user.getId() == null)
+            return _principalDAO.getAllRoles(user).contains(getAdminAccessRole());
+        return _adminRoleCache.isAdmin(user.getId(), () ->
+            _principalDAO.getAllRoles(_entityRetriever.reattachIfNecessary(user)).contains(getAdminAccessRole()));
     }
 
     /**
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.service;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.EntityKey;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Utility for keeping a Session consistent with rows changed by SQL, such as set-based updates that skip loading
+ * the entities they change.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public final class BulkUpdates
+{
+    private BulkUpdates()
+    {
+    }
+
+    /**
+     * Refresh the entities with the given ids that the session manages.  Entities the session does not manage are not
+     * loaded.
+     *
+     * @param session the session
+     * @param entityClass the entity class
+     * @param ids the ids of the changed entities
+     */
+    public static void refreshManaged(@Nonnull Session session, @Nonnull Class<?> entityClass,
+        @Nonnull Collection<? extends Serializable> ids)
+    {
+        final Set<Serializable> managed = new HashSet<>();
+        for (Object key : session.getStatistics().getEntityKeys())
+        {
+            final EntityKey entityKey = (EntityKey) key;
+            if (entityClass.getName().equals(entityKey.getEntityName()))
+                managed.add(entityKey.getIdentifier());
+        }
+        for (Serializable id : ids)
+        {
+            if (managed.contains(id))
+                session.refresh(session.load(entityClass, id));
+        }
+    }
+}
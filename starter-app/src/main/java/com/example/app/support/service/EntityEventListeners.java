@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Utility for registering Hibernate entity event listeners from application components, such as in-memory indexes
+ * that need to be invalidated when the entities they are built from change.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public final class EntityEventListeners
+{
+    private EntityEventListeners()
+    {
+    }
+
+    /**
+     * Append the given listener to the given event types of the given SessionFactory.
+     * The listener must implement the listener interface of each of the event types.
+     *
+     * @param sessionFactory the session factory
+     * @param listener the listener
+     * @param eventTypes the event types
+     */
+    @SuppressWarnings("unchecked")
+    public static void appendListeners(@Nonnull SessionFactory sessionFactory, @Nonnull Object listener,
+        @Nonnull EventType<?>... eventTypes)
+    {
+        final EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+            .getService(EventListenerRegistry.class);
+        for (EventType<?> eventType : eventTypes)
+        {
+            if (!eventType.baseListenerInterface().isInstance(listener))
+                throw new IllegalArgumentException(listener.getClass().getName() + " does not implement "
+                                                   + eventType.baseListenerInterface().getName());
+            registry.appendListeners((EventType<Object>) eventType, listener);
+        }
+    }
+}
@@ -11,6 +11,12 @@
 
 package com.example.app.support.service;
 
+import com.example.app.support.model.FileContent;
+import com.example.app.support.model.FileContentDAO;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -19,6 +25,9 @@ import org.springframework.beans.factory.annotation.Configurable;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -48,6 +57,10 @@ public class FileSaver<E>
 
     @Autowired
     private FileSystemDAO _fileSystemDAO;
+    @Autowired
+    private FileContentDAO _fileContentDAO;
+    @Autowired
+    private ImageRenditionService _imageRenditionService;
 
     private final BiFunction<E, FileEntity, E> _setFile;
     private final Function<E, FileEntity> _getFile;
@@ -75,6 +88,28 @@ public class FileSaver<E>
         _saveValue = saveValue;
     }
 
+    /**
+     * Instantiate a new instance of FileSaver with the given services, rather than autowired ones.
+     *
+     * @param setFile function for setting the file on {@link E}
+     * @param getFile function for getting the file from {@link E}
+     * @param getDirectory function for getting a Directory for the given {@link E}
+     * @param getFileName function for getting a file name for the given {@link E}
+     * @param saveValue function for saving {@link E}.
+     * @param fileContentDAO the FileContentDAO
+     * @param imageRenditionService the ImageRenditionService
+     */
+    @VisibleForTesting
+    FileSaver(@Nonnull BiFunction<E, FileEntity, E> setFile, @Nonnull Function<E, FileEntity> getFile,
+        @Nonnull BiFunction<E, FileItem, DirectoryEntity> getDirectory, @Nonnull BiFunction<E, FileItem, String> getFileName,
+        @Nonnull Function<E, E> saveValue, @Nonnull FileContentDAO fileContentDAO,
+        @Nonnull ImageRenditionService imageRenditionService)
+    {
+        this(setFile, getFile, getDirectory, getFileName, saveValue);
+        _fileContentDAO = fileContentDAO;
+        _imageRenditionService = imageRenditionService;
+    }
+
     /**
      *   Set the file on {@link E} and saves it.  Returns the persisted instance of {@link E}
      *   @param value the instance of {@link E} to set the file on and save
@@ -85,33 +120,38 @@ public class FileSaver<E>
     {
         if(file == null)
         {
+            FileEntity currFile = _getFile.apply(value);
+            if(currFile != null)
+                _fileContentDAO.removeReference(currFile);
             value = _setFile.apply(value, null);
         }
         else
         {
             value = _saveValue.apply(value);
             FileEntity currFile = _getFile.apply(value);
-            if(currFile == null)
-                currFile = new FileEntity();
             String fileName = StringFactory.getBasename(file.getName());
             String ct = file.getContentType();
             if(ct == null || "application/octet-stream".equals(ct)) ct = MimeTypeUtility.getInstance().getContentType(fileName);
-            currFile.setContentType(ct);
             final DirectoryEntity directory = _getDirectory.apply(value, file);
-            if(directory != null)
+            final ContentHash hash = _hash(file);
+            final FileContent currContent = currFile != null && hash != null ? _fileContentDAO.getContent(currFile) : null;
+            if(directory == null)
             {
-                currFile.setName(_getFileName.apply(value, file));
-
-                FileSystemDAO.StoreRequest request = new FileSystemDAO.StoreRequest(
-                    directory, currFile, new FileItemByteSource(file));
-                request.setCreateMode(FileSystemEntityCreateMode.overwrite);
-
-                currFile = _fileSystemDAO.store(request);
+                _logger.error("Unable to save File.");
+                currFile = _getFile.apply(value);
+            }
+            else if(currContent != null && currContent.getHash().equals(hash.getHash())
+                    && Objects.equals(ct, currFile.getContentType()))
+            {
+                _logger.debug("Skipping save of unchanged File: " + fileName);
             }
             else
             {
-                _logger.error("Unable to save File.");
-                currFile = _getFile.apply(value);
+                final E owner = value;
+                final FileEntity prevFile = currFile;
+                final String contentType = ct;
+                currFile = _fileContentDAO.doInContentTransaction(
+                    () -> _store(owner, file, prevFile, contentType, directory, hash));
             }
 
             value = _setFile.apply(value, currFile);
@@ -120,8 +160,92 @@ public class FileSaver<E>
         return value;
     }
 
+    private FileEntity _store(E value, FileItem file, @Nullable FileEntity currFile, @Nullable String ct,
+        DirectoryEntity directory, @Nullable ContentHash hash)
+    {
+        // Hold the reference counts until the file is stored, so a file cannot become shared while it is overwritten
+        final FileContent currContent = currFile != null ? _fileContentDAO.lockContent(currFile) : null;
+        final boolean exclusive = currFile != null && (currContent == null || currContent.getReferenceCount() <= 1);
+        final FileContent shared = hash != null && !exclusive
+            ? _fileContentDAO.lockContent(hash.getHash(), directory) : null;
+        if(shared != null && Objects.equals(ct, shared.getFile().getContentType()))
+        {
+            if(currFile != null)
+                _fileContentDAO.removeReference(currFile);
+            _fileContentDAO.addReference(shared);
+            return shared.getFile();
+        }
+        if(currFile != null && !exclusive)
+        {
+            _fileContentDAO.removeReference(currFile);
+            currFile = null;
+        }
+        String name = _getFileName.apply(value, file);
+        // The name of a file this entity no longer owns alone may still be in use by the entities sharing it
+        if(_fileContentDAO.isReferenced(directory, name, currFile))
+            name = _getUniqueName(name);
+        if(currFile == null)
+            currFile = new FileEntity();
+        currFile.setContentType(ct);
+        currFile.setName(name);
+
+        currFile = storeFile(directory, currFile, file);
+        if(hash != null)
+            _fileContentDAO.saveContent(currFile, directory, hash.getHash(), hash.getLength());
+        if(ct != null && ct.startsWith("image/"))
+        {
+            _imageRenditionService.invalidate(currFile);
+            _imageRenditionService.warmAfterCommit(currFile);
+        }
+        return currFile;
+    }
+
+    /**
+     * Store the content of a file, overwriting the file of the same name in the directory.
+     *
+     * @param directory the directory
+     * @param file the file
+     * @param content the content
+     *
+     * @return the stored file
+     */
+    @VisibleForTesting
+    FileEntity storeFile(DirectoryEntity directory, FileEntity file, FileItem content)
+    {
+        FileSystemDAO.StoreRequest request = new FileSystemDAO.StoreRequest(
+            directory, file, new FileItemByteSource(content));
+        request.setCreateMode(FileSystemEntityCreateMode.overwrite);
+        return _fileSystemDAO.store(request);
+    }
+
+    private static String _getUniqueName(String name)
+    {
+        final String suffix = '-' + Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE,
+            Character.MAX_RADIX);
+        final int extension = name.lastIndexOf('.');
+        return extension > 0
+            ? name.substring(0, extension) + suffix + name.substring(extension)
+            : name + suffix;
+    }
+
+    @Nullable
+    private static ContentHash _hash(FileItem file)
+    {
+        try(HashingInputStream in = new HashingInputStream(Hashing.sha256(), file.getInputStream()))
+        {
+            final long length = ByteStreams.copy(in, ByteStreams.nullOutputStream());
+            return new ContentHash(in.hash().toString(), length);
+        }
+        catch(IOException e)
+        {
+            _logger.warn("Unable to hash File, it will not be shared: " + file.getName(), e);
+            return null;
+        }
+    }
+
     /**
      * Copy file from the given FileEntity into the value.
+     * The copy is saved as by {@link #save(Object, FileItem)}, so it shares the content of an identical file.
      *
      * @param value the value
      * @param file the file
@@ -130,19 +254,31 @@ public class FileSaver<E>
      */
     public E copyFromEntity(@Nonnull E value, @Nullable FileEntity file)
     {
-        if(file == null)
+        return save(value, file != null ? new FileEntityFileItem(file) : null);
+    }
+
+    /**
+     * The hash and length of file content.
+     */
+    private static final class ContentHash
+    {
+        private final String _hash;
+        private final long _length;
+
+        ContentHash(String hash, long length)
         {
-            value = _setFile.apply(value, null);
+            _hash = hash;
+            _length = length;
         }
-        else
+
+        String getHash()
         {
-            value = _saveValue.apply(value);
-            FileEntityFileItem fileItem = new FileEntityFileItem(file);
-            FileEntity copy = _fileSystemDAO.copy(file, _getDirectory.apply(value, fileItem),
-                _getFileName.apply(value, fileItem), null, FileSystemEntityCreateMode.overwrite);
-            value = _setFile.apply(value, copy);
+            return _hash;
+        }
+
+        long getLength()
+        {
+            return _length;
         }
-        value = _saveValue.apply(value);
-        return value;
     }
 }
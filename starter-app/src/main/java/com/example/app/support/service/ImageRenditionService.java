@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.service;
+
+import com.example.app.support.model.FileContent;
+import com.example.app.support.model.FileContentDAO;
+import com.example.app.support.model.ImageRendition;
+import com.example.app.support.model.ImageRenditionDAO;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.proteusframework.cms.FileSystemDirectory;
+import net.proteusframework.cms.dao.CmsFrontendDAO;
+import net.proteusframework.core.hibernate.HibernateSessionHandler;
+import net.proteusframework.core.hibernate.dao.EntityRetriever;
+import net.proteusframework.data.filesystem.DirectoryEntity;
+import net.proteusframework.data.filesystem.FileEntity;
+import net.proteusframework.data.filesystem.FileSystemDAO;
+import net.proteusframework.data.filesystem.FileSystemEntityCreateMode;
+import net.proteusframework.data.filesystem.http.FileEntityFileItem;
+import net.proteusframework.data.filesystem.http.FileItemByteSource;
+
+/**
+ * Fixed size renditions of images, such as user pictures and company logos.
+ * <br><br>
+ * A rendition is generated once for each image, size and format, and stored as a file in the {@link #RENDITION_FOLDER}
+ * so views serve a small file instead of the original.  Images are never scaled up: if the original already fits, it
+ * is its own rendition.  Each rendition records the hash of its content, which is cleared when the rendition must be
+ * generated again.
+ * <br><br>
+ * Renditions are served by {@link ImageRenditionServlet} with a strong entity tag, the hash of their content.
+ * <br><br>
+ * Renditions are always generated in the background, so rendering a view never waits for an image to be scaled: until
+ * a rendition is ready, the original is served in its place.  When {@link FileSaver} replaces an image, its renditions
+ * are invalidated, and generated again along with the {@code image-rendition.warm-sizes} once the new image is
+ * committed.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Service
+public class ImageRenditionService
+{
+    /** The folder to store renditions within */
+    public static final String RENDITION_FOLDER = "Renditions";
+    /** Logger. */
+    private static final Logger _logger = LogManager.getLogger(ImageRenditionService.class);
+    private static final Pattern PAT_SIZE = Pattern.compile("(\\d+)x(\\d+)");
+
+    @Autowired
+    private ImageRenditionDAO _imageRenditionDAO;
+    @Autowired
+    private FileContentDAO _fileContentDAO;
+    @Autowired
+    private FileSystemDAO _fileSystemDAO;
+    @Autowired
+    private CmsFrontendDAO _cmsFrontendDAO;
+    @Autowired
+    private EntityRetriever _entityRetriever;
+    @Autowired
+    @Qualifier(HibernateSessionHandler.RESOURCE_NAME)
+    private HibernateSessionHandler _sessionHandler;
+    @Autowired
+    private ImageScaler _imageScaler;
+    @Autowired
+    private FileItemFactory _fileItemFactory;
+
+    @Value("${image-rendition.warm-sizes:0x200,200x0}")
+    private String _warmSizes;
+
+    /** Renditions being generated, so a rendition requested again meanwhile is not queued twice */
+    private final Set<String> _pending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService _warmExecutor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("image-rendition-warm-%d").setDaemon(true).build());
+
+    /**
+     * Get a rendition of an image, generating it in the background if necessary.
+     *
+     * @param source the image
+     * @param width the maximum width, 0 for no limit
+     * @param height the maximum height, 0 for no limit
+     *
+     * @return the rendition, or the source until the rendition has been generated.
+     */
+    @Nonnull
+    public FileEntity getRendition(@Nonnull FileEntity source, int width, int height)
+    {
+        final ImageRendition rendition = getImageRendition(source, width, height);
+        return rendition != null ? rendition.getFile() : source;
+    }
+
+    /**
+     * Get a rendition of an image, generating it in the background if necessary.
+     *
+     * @param source the image
+     * @param width the maximum width, 0 for no limit
+     * @param height the maximum height, 0 for no limit
+     *
+     * @return the rendition, or null if it has not been generated yet.
+     */
+    @Nullable
+    public ImageRendition getImageRendition(@Nonnull FileEntity source, int width, int height)
+    {
+        final ImageRendition rendition = _imageRenditionDAO.getRendition(source, width, height, _getFormat(source));
+        if (rendition != null && rendition.getHash() != null)
+            return rendition;
+        _generate(source, Collections.singletonList(new Dimension(width, height)));
+        return null;
+    }
+
+    /**
+     * Invalidate the renditions of an image that was replaced.
+     *
+     * @param source the image
+     */
+    public void invalidate(@Nonnull FileEntity source)
+    {
+        _imageRenditionDAO.invalidate(source);
+        // Renditions of the previous image that are still being generated must not stop the new ones
+        final String prefix = source.getId() + "_";
+        _pending.removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Generate the renditions of an image in the background: its existing renditions, and the
+     * {@code image-rendition.warm-sizes}.
+     *
+     * @param source the image
+     */
+    public void warm(@Nonnull FileEntity source)
+    {
+        final Set<Dimension> sizes = parseSizes(_warmSizes);
+        final String format = _getFormat(source);
+        for (ImageRendition rendition : _imageRenditionDAO.getRenditions(source))
+        {
+            final Dimension size = new Dimension(rendition.getWidth(), rendition.getHeight());
+            if (rendition.getHash() == null)
+                sizes.add(size);
+            else if (format.equals(rendition.getFormat()))
+                sizes.remove(size);
+        }
+        _generate(source, sizes);
+    }
+
+    /**
+     * Generate the renditions of an image once the current transaction commits, as {@link #warm(FileEntity)} does.
+     * Renditions reference the image, so they are not generated if the transaction that stored it rolls back.
+     *
+     * @param source the image
+     */
+    public void warmAfterCommit(@Nonnull FileEntity source)
+    {
+        _fileContentDAO.afterCommit(() -> _warmExecutor.execute(() -> {
+            _sessionHandler.openSessions();
+            try
+            {
+                warm(_entityRetriever.reattachIfNecessary(source));
+            }
+            catch (RuntimeException e)
+            {
+                _logger.warn("Unable to generate renditions of " + source.getName(), e);
+            }
+            finally
+            {
+                _sessionHandler.clearSessions();
+            }
+        }));
+    }
+
+    /**
+     * Shut down the warm-up thread.
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        _warmExecutor.shutdownNow();
+    }
+
+    /**
+     * Parse a list of sizes.
+     *
+     * @param sizes the sizes, as comma separated WIDTHxHEIGHT, 0 for no limit.  Malformed sizes are ignored.
+     *
+     * @return the sizes, in order
+     */
+    @VisibleForTesting
+    static Set<Dimension> parseSizes(String sizes)
+    {
+        final Set<Dimension> parsed = new LinkedHashSet<>();
+        for (String size : sizes.split(","))
+        {
+            final Matcher matcher = PAT_SIZE.matcher(size.trim());
+            if (matcher.matches())
+                parsed.add(new Dimension(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+        }
+        return parsed;
+    }
+
+    /**
+     * Get the sizes to scale an image to, so it is never scaled up.
+     *
+     * @param bounds the maximum sizes, 0 for no limit
+     * @param size the size of the image
+     *
+     * @return the bounds, limited to the size of the image
+     */
+    @VisibleForTesting
+    static List<Dimension> clamp(List<Dimension> bounds, Dimension size)
+    {
+        final List<Dimension> clamped = new ArrayList<>(bounds.size());
+        for (Dimension bound : bounds)
+        {
+            clamped.add(new Dimension(bound.width == 0 ? size.width : Math.min(bound.width, size.width),
+                bound.height == 0 ? size.height : Math.min(bound.height, size.height)));
+        }
+        return clamped;
+    }
+
+    private void _generate(FileEntity source, Collection<Dimension> sizes)
+    {
+        final String format = _getFormat(source);
+        final List<Dimension> bounds = new ArrayList<>(sizes.size());
+        final List<String> keys = new ArrayList<>(sizes.size());
+        for (Dimension size : sizes)
+        {
+            final String key = source.getId() + "_" + size.width + 'x' + size.height + '.' + format;
+            if (_pending.add(key))
+            {
+                bounds.add(size);
+                keys.add(key);
+            }
+        }
+        if (bounds.isEmpty())
+            return;
+        final DirectoryEntity directory = _getDirectory();
+        try
+        {
+            _scale(source, bounds).thenAccept(scaled -> {
+                _sessionHandler.openSessions();
+                try
+                {
+                    _store(_entityRetriever.reattachIfNecessary(source),
+                        _entityRetriever.reattachIfNecessary(directory), bounds, scaled);
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+                finally
+                {
+                    _sessionHandler.clearSessions();
+                }
+            }).whenComplete((ignored, e) -> {
+                _pending.removeAll(keys);
+                if (e != null)
+                    _logger.warn("Unable to generate renditions of " + source.getName(), e);
+            });
+        }
+        catch (IOException | RuntimeException e)
+        {
+            _pending.removeAll(keys);
+            _logger.warn("Unable to generate renditions of " + source.getName(), e);
+        }
+    }
+
+    private CompletableFuture<List<FileItem>> _scale(FileEntity source, List<Dimension> bounds) throws IOException
+    {
+        final FileItem sourceItem = new FileEntityFileItem(source);
+        final Dimension size;
+        try (InputStream in = sourceItem.getInputStream())
+        {
+            size = ImageScaler.readDimension(in);
+        }
+        if (size == null)
+            throw new IOException("Unsupported image format: " + source.getName());
+        return _imageScaler.scale(sourceItem, clamp(bounds, size), _fileItemFactory);
+    }
+
+    private List<ImageRendition> _store(FileEntity source, DirectoryEntity directory, List<Dimension> bounds,
+        List<FileItem> scaled) throws IOException
+    {
+        final String format = _getFormat(source);
+        final List<ImageRendition> renditions = new ArrayList<>(bounds.size());
+        for (int i = 0; i < bounds.size(); i++)
+        {
+            final Dimension bound = bounds.get(i);
+            final FileItem item = scaled.get(i);
+            final ImageRendition rendition = _imageRenditionDAO.getOrCreateRendition(source, bound.width, bound.height,
+                format);
+            if (item instanceof FileEntityFileItem)
+            {
+                // The source already fits
+                final FileContent content = _fileContentDAO.getContent(source);
+                rendition.setHash(content != null ? content.getHash() : _hash(item));
+                rendition.setFile(source);
+            }
+            else
+            {
+                FileEntity file = rendition.getFile() != null && rendition.getFile() != source
+                    ? rendition.getFile()
+                    : new FileEntity();
+                file.setName(source.getId() + "_" + bound.width + 'x' + bound.height + '.' + format);
+                file.setContentType(source.getContentType());
+                final FileSystemDAO.StoreRequest request = new FileSystemDAO.StoreRequest(
+                    directory, file, new FileItemByteSource(item));
+                request.setCreateMode(FileSystemEntityCreateMode.overwrite);
+                rendition.setHash(_hash(item));
+                rendition.setFile(_fileSystemDAO.store(request));
+                item.delete();
+            }
+            renditions.add(_imageRenditionDAO.saveRendition(rendition));
+        }
+        return renditions;
+    }
+
+    private DirectoryEntity _getDirectory()
+    {
+        return _fileSystemDAO.mkdirs(FileSystemDirectory.Pictures.getDirectory2(_cmsFrontendDAO.getOperationalSite()),
+            null, RENDITION_FOLDER);
+    }
+
+    private static String _getFormat(FileEntity source)
+    {
+        final String contentType = source.getContentType();
+        final int slash = contentType != null ? contentType.indexOf('/') : -1;
+        return slash >= 0 ? contentType.substring(slash + 1).toLowerCase(Locale.ENGLISH) : "unknown";
+    }
+
+    private static String _hash(FileItem item) throws IOException
+    {
+        try (HashingInputStream in = new HashingInputStream(Hashing.sha256(), item.getInputStream()))
+        {
+            ByteStreams.copy(in, ByteStreams.nullOutputStream());
+            return in.hash().toString();
+        }
+    }
+}
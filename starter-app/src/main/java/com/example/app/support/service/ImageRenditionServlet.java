@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.service;
+
+import com.example.app.support.model.ImageRendition;
+import com.example.app.support.model.ImageRenditionDAO;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import org.springframework.context.ApplicationContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.proteusframework.core.hibernate.HibernateSessionHandler;
+import net.proteusframework.core.spring.ApplicationContextUtils;
+import net.proteusframework.data.filesystem.FileEntity;
+import net.proteusframework.data.filesystem.http.FileEntityFileItem;
+
+/**
+ * Serves {@link ImageRendition}s with a strong entity tag.
+ * <br><br>
+ * A rendition is addressed by the SHA-256 hash of its content, which is also its entity tag, so a URL always serves
+ * the same bytes.  Replacing an image gives its renditions new URLs, and a client revalidating a rendition it has
+ * cached gets 304 Not Modified.  The hash is only known to those the rendition was shown to, so the URLs cannot be
+ * enumerated.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class ImageRenditionServlet extends HttpServlet
+{
+    /** The path renditions are served from */
+    public static final String PATH = "/image-rendition/";
+    private static final long serialVersionUID = 4270964617120383718L;
+    private static final Pattern PAT_NAME = Pattern.compile("/([0-9a-f]{64})\\.[a-z0-9.+-]+");
+    /** The content of a URL never changes */
+    private static final String CACHE_CONTROL = "private, max-age=31536000";
+
+    /**
+     * Get the path a rendition is served from.
+     *
+     * @param rendition the rendition
+     *
+     * @return the path, relative to the context path, or null if the rendition has not been generated.
+     */
+    @Nullable
+    public static String getPath(@Nonnull ImageRendition rendition)
+    {
+        return rendition.getHash() != null ? PATH + rendition.getHash() + '.' + rendition.getFormat() : null;
+    }
+
+    /**
+     * Test if a conditional request may be answered with 304 Not Modified.
+     *
+     * @param ifNoneMatch the If-None-Match header, if any
+     * @param eTag the entity tag of the rendition
+     *
+     * @return true if the header matches the entity tag.  The weak comparison is used, as for any If-None-Match.
+     */
+    @VisibleForTesting
+    static boolean isNotModified(@Nullable String ifNoneMatch, @Nonnull String eTag)
+    {
+        if (ifNoneMatch == null)
+            return false;
+        for (String tag : ifNoneMatch.split(","))
+        {
+            final String trimmed = tag.trim();
+            if ("*".equals(trimmed) || trimmed.equals(eTag) || trimmed.equals("W/" + eTag))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        final Matcher matcher = PAT_NAME.matcher(Strings.nullToEmpty(request.getPathInfo()));
+        if (!matcher.matches())
+        {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final ApplicationContext context = ApplicationContextUtils.getInstance().getContext();
+        assert context != null;
+        final HibernateSessionHandler sessionHandler = (HibernateSessionHandler) context.getBean(
+            HibernateSessionHandler.RESOURCE_NAME);
+        sessionHandler.openSessions();
+        try
+        {
+            final ImageRendition rendition = context.getBean(ImageRenditionDAO.class).getRendition(matcher.group(1));
+            if (rendition == null)
+            {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            final String eTag = '"' + rendition.getHash() + '"';
+            response.setHeader("ETag", eTag);
+            response.setHeader("Cache-Control", CACHE_CONTROL);
+            if (isNotModified(request.getHeader("If-None-Match"), eTag))
+            {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            final FileEntity file = rendition.getFile();
+            response.setContentType(file.getContentType());
+            try (InputStream in = new FileEntityFileItem(file).getInputStream())
+            {
+                ByteStreams.copy(in, response.getOutputStream());
+            }
+        }
+        finally
+        {
+            sessionHandler.clearSessions();
+        }
+    }
+}
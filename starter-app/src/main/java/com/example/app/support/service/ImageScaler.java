@@ -0,0 +1,567 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Scales uploaded images.
+ * <br><br>
+ * Image dimensions are read from the image header without decoding the pixels.  The image is decoded once for all the
+ * requested sizes, and large images are subsampled while decoding so the full resolution raster is never held in
+ * memory.  Decoding keeps at least twice the pixels of the largest requested size, which are then reduced in
+ * halving steps to keep the quality of the result.
+ * <br><br>
+ * Scaling runs on a small, bounded pool of threads so concurrent uploads cannot exhaust the heap.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@Service
+public class ImageScaler implements AutoCloseable
+{
+    /** Bytes per pixel of a decoded image */
+    static final int BYTES_PER_PIXEL = 4;
+    /** Logger. */
+    private static final Logger _logger = LogManager.getLogger(ImageScaler.class);
+    private static final List<String> FORMATS_WITHOUT_ALPHA = Arrays.asList("jpeg", "jpg", "bmp", "wbmp");
+
+    private final ThreadPoolExecutor _executor;
+    private final Duration _timeout;
+    private final long _createdNanos = System.nanoTime();
+    private final LongAdder _scaled = new LongAdder();
+    private final LongAdder _failed = new LongAdder();
+    private final LongAdder _rejected = new LongAdder();
+    private final LongAdder _sourcePixels = new LongAdder();
+    private final LongAdder _decodedPixels = new LongAdder();
+    private final AtomicLong _inFlightBytes = new AtomicLong();
+    private final AtomicLong _peakInFlightBytes = new AtomicLong();
+    private final LongAdder _totalLatencyNanos = new LongAdder();
+    private final AtomicLong _maxLatencyNanos = new AtomicLong();
+
+    /**
+     * Instantiate a new instance of ImageScaler
+     *
+     * @param concurrency the number of images scaled at a time
+     * @param queueCapacity the number of images that may wait to be scaled
+     * @param timeoutSeconds how long callers should wait for an image to be scaled
+     */
+    @Autowired
+    public ImageScaler(@Value("${image-scaler.concurrency:2}") int concurrency,
+        @Value("${image-scaler.queue-capacity:50}") int queueCapacity,
+        @Value("${image-scaler.timeout-seconds:30}") long timeoutSeconds)
+    {
+        Preconditions.checkArgument(concurrency > 0, "concurrency must be positive");
+        Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be positive");
+        _executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new ThreadFactoryBuilder().setNameFormat("image-scaler-%d").setDaemon(true).build());
+        _timeout = Duration.ofSeconds(timeoutSeconds);
+    }
+
+    /**
+     * Read the dimensions of an image from its header.
+     *
+     * @param in the image
+     *
+     * @return the dimensions, or null if the format is not supported.
+     *
+     * @throws IOException if the image cannot be read
+     */
+    @Nullable
+    public static Dimension readDimension(@Nonnull InputStream in) throws IOException
+    {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in))
+        {
+            final ImageReader reader = _getReader(iis);
+            if (reader == null)
+                return null;
+            try
+            {
+                reader.setInput(iis, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Get the size of an image scaled to fit within bounds, keeping its aspect ratio.
+     *
+     * @param size the size of the image
+     * @param bounds the bounds
+     *
+     * @return the scaled size
+     */
+    @Nonnull
+    public static Dimension fit(@Nonnull Dimension size, @Nonnull Dimension bounds)
+    {
+        final double scale = Math.min(bounds.getWidth() / size.width, bounds.getHeight() / size.height);
+        return new Dimension(Math.max(1, (int) Math.round(size.width * scale)),
+            Math.max(1, (int) Math.round(size.height * scale)));
+    }
+
+    /**
+     * Scale an image to fit within each of the given bounds.  The image is decoded once for all of the bounds.
+     *
+     * @param source the image
+     * @param bounds the bounds of each scaled image
+     * @param fileItemFactory the factory for the scaled images
+     *
+     * @return the scaled images, in the order of the bounds.  The source is returned for bounds the image already fits
+     * exactly.  Completes exceptionally if the image cannot be scaled, or with a {@link RejectedExecutionException} if
+     * too many images are waiting to be scaled.  Cancel it when giving up on the result: the image is then skipped if
+     * it has not been scaled yet, and the scaled images are deleted if it has.
+     */
+    @Nonnull
+    public CompletableFuture<List<FileItem>> scale(@Nonnull FileItem source, @Nonnull List<Dimension> bounds,
+        @Nonnull FileItemFactory fileItemFactory)
+    {
+        final CompletableFuture<List<FileItem>> result = new CompletableFuture<>();
+        final long submitted = System.nanoTime();
+        try
+        {
+            _executor.execute(() -> {
+                if (result.isDone())
+                    return;
+                try
+                {
+                    final List<FileItem> scaled = _scale(source, bounds, fileItemFactory);
+                    _scaled.increment();
+                    _recordLatency(submitted);
+                    if (!result.complete(scaled))
+                        _discard(source, scaled);
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    _failed.increment();
+                    _recordLatency(submitted);
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            _rejected.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Get how long callers should wait for an image to be scaled
+     *
+     * @return the timeout
+     */
+    @Nonnull
+    public Duration getTimeout()
+    {
+        return _timeout;
+    }
+
+    /**
+     * Get a snapshot of the scaler metrics.
+     *
+     * @return the metrics
+     */
+    @Nonnull
+    public Metrics getMetrics()
+    {
+        final long completed = _scaled.sum() + _failed.sum();
+        return new Metrics(_executor.getQueue().size(), _scaled.sum(), _failed.sum(), _rejected.sum(),
+            _inFlightBytes.get(), _peakInFlightBytes.get(), _sourcePixels.sum(), _decodedPixels.sum(),
+            Duration.ofNanos(System.nanoTime() - _createdNanos),
+            Duration.ofNanos(completed == 0L ? 0L : _totalLatencyNanos.sum() / completed),
+            Duration.ofNanos(_maxLatencyNanos.get()));
+    }
+
+    @PreDestroy
+    @Override
+    public void close()
+    {
+        _executor.shutdown();
+        try
+        {
+            if (!_executor.awaitTermination(_timeout.toMillis(), TimeUnit.MILLISECONDS))
+                _executor.shutdownNow();
+        }
+        catch (InterruptedException e)
+        {
+            _executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        _logger.debug("Image scaler closed: " + getMetrics());
+    }
+
+    private static void _discard(FileItem source, List<FileItem> scaled)
+    {
+        _logger.debug("Discarding scaled images of " + source.getName() + ", the caller gave up waiting.");
+        scaled.stream().filter(item -> item != source).forEach(FileItem::delete);
+    }
+
+    private List<FileItem> _scale(FileItem source, List<Dimension> bounds, FileItemFactory fileItemFactory)
+        throws IOException
+    {
+        final List<BufferedImage> images = new ArrayList<>(Collections.nCopies(bounds.size(), null));
+        final String formatName;
+        try (InputStream in = source.getInputStream();
+             ImageInputStream iis = ImageIO.createImageInputStream(in))
+        {
+            final ImageReader reader = _getReader(iis);
+            if (reader == null)
+                throw new IOException("Unsupported image format: " + source.getName());
+            try
+            {
+                reader.setInput(iis, true, true);
+                formatName = reader.getFormatName().toLowerCase(Locale.ENGLISH);
+                final Dimension size = new Dimension(reader.getWidth(0), reader.getHeight(0));
+                final List<Dimension> targets = new ArrayList<>(bounds.size());
+                for (Dimension bound : bounds)
+                {
+                    targets.add(fit(size, bound));
+                }
+                if (targets.stream().allMatch(size::equals))
+                    return Collections.nCopies(bounds.size(), source);
+                _decodeAndResize(reader, size, targets, images, !FORMATS_WITHOUT_ALPHA.contains(formatName));
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+
+        final List<FileItem> scaled = new ArrayList<>(images.size());
+        for (BufferedImage image : images)
+        {
+            if (image == null)
+            {
+                scaled.add(source);
+                continue;
+            }
+            final FileItem item = fileItemFactory.createItem(source.getFieldName(), source.getContentType(),
+                source.isFormField(), source.getName());
+            try (OutputStream os = item.getOutputStream())
+            {
+                if (!ImageIO.write(image, formatName, os))
+                    throw new IOException("Unable to write image format: " + formatName);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                item.delete();
+                scaled.stream().filter(file -> file != source).forEach(FileItem::delete);
+                throw e;
+            }
+            scaled.add(item);
+        }
+        return scaled;
+    }
+
+    private void _decodeAndResize(ImageReader reader, Dimension size, List<Dimension> targets,
+        List<BufferedImage> images, boolean keepAlpha) throws IOException
+    {
+        final Dimension largest = targets.stream()
+            .max(Comparator.comparingLong(target -> (long) target.width * target.height))
+            .orElse(size);
+        final int subsampling = getSubsampling(size, largest);
+        final ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        final long decodedPixels = (long) _ceilDiv(size.width, subsampling) * _ceilDiv(size.height, subsampling);
+        final long decodedBytes = decodedPixels * BYTES_PER_PIXEL;
+        _peakInFlightBytes.accumulateAndGet(_inFlightBytes.addAndGet(decodedBytes), Math::max);
+        try
+        {
+            final BufferedImage decoded = reader.read(0, param);
+            _sourcePixels.add((long) size.width * size.height);
+            _decodedPixels.add(decodedPixels);
+            for (int i = 0; i < targets.size(); i++)
+            {
+                final Dimension target = targets.get(i);
+                if (!target.equals(size))
+                    images.set(i, resize(decoded, target, keepAlpha));
+            }
+        }
+        finally
+        {
+            _inFlightBytes.addAndGet(-decodedBytes);
+        }
+    }
+
+    /**
+     * Get the subsampling factor for decoding an image, keeping at least twice the pixels of the target in each
+     * direction.
+     *
+     * @param size the image size
+     * @param target the target size
+     *
+     * @return the subsampling factor, 1 to decode every pixel
+     */
+    static int getSubsampling(Dimension size, Dimension target)
+    {
+        return Math.max(1, Math.min(size.width / (target.width * 2), size.height / (target.height * 2)));
+    }
+
+    /**
+     * Resize an image, halving it until it is within twice the target size so every source pixel contributes.
+     *
+     * @param image the image
+     * @param target the target size
+     * @param keepAlpha true to keep the alpha channel
+     *
+     * @return the resized image
+     */
+    static BufferedImage resize(BufferedImage image, Dimension target, boolean keepAlpha)
+    {
+        final int type = keepAlpha && image.getColorModel().hasAlpha()
+            ? BufferedImage.TYPE_INT_ARGB
+            : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do
+        {
+            width = width > target.width * 2 ? width / 2 : target.width;
+            height = height > target.height * 2 ? height / 2 : target.height;
+            final BufferedImage next = new BufferedImage(width, height, type);
+            final Graphics2D graphics = next.createGraphics();
+            try
+            {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            }
+            finally
+            {
+                graphics.dispose();
+            }
+            current = next;
+        }
+        while (width != target.width || height != target.height);
+        return current;
+    }
+
+    @Nullable
+    private static ImageReader _getReader(@Nullable ImageInputStream iis)
+    {
+        if (iis == null)
+            return null;
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        return readers.hasNext() ? readers.next() : null;
+    }
+
+    private static int _ceilDiv(int value, int divisor)
+    {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private void _recordLatency(long submittedNanos)
+    {
+        final long latency = System.nanoTime() - submittedNanos;
+        _totalLatencyNanos.add(latency);
+        _maxLatencyNanos.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * Snapshot of {@link ImageScaler} metrics.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    public static final class Metrics
+    {
+        private final int _queueDepth;
+        private final long _scaled;
+        private final long _failed;
+        private final long _rejected;
+        private final long _inFlightBytes;
+        private final long _peakInFlightBytes;
+        private final long _sourcePixels;
+        private final long _decodedPixels;
+        private final Duration _uptime;
+        private final Duration _averageLatency;
+        private final Duration _maxLatency;
+
+        Metrics(int queueDepth, long scaled, long failed, long rejected, long inFlightBytes, long peakInFlightBytes,
+            long sourcePixels, long decodedPixels, Duration uptime, Duration averageLatency, Duration maxLatency)
+        {
+            _queueDepth = queueDepth;
+            _scaled = scaled;
+            _failed = failed;
+            _rejected = rejected;
+            _inFlightBytes = inFlightBytes;
+            _peakInFlightBytes = peakInFlightBytes;
+            _sourcePixels = sourcePixels;
+            _decodedPixels = decodedPixels;
+            _uptime = uptime;
+            _averageLatency = averageLatency;
+            _maxLatency = maxLatency;
+        }
+
+        /**
+         * Get the number of images waiting to be scaled
+         *
+         * @return the queue depth
+         */
+        public int getQueueDepth()
+        {
+            return _queueDepth;
+        }
+
+        /**
+         * Get the number of images scaled
+         *
+         * @return the scaled count
+         */
+        public long getScaled()
+        {
+            return _scaled;
+        }
+
+        /**
+         * Get the number of images that could not be scaled
+         *
+         * @return the failed count
+         */
+        public long getFailed()
+        {
+            return _failed;
+        }
+
+        /**
+         * Get the number of images rejected because too many were waiting to be scaled
+         *
+         * @return the rejected count
+         */
+        public long getRejected()
+        {
+            return _rejected;
+        }
+
+        /**
+         * Get the estimated size of the images being decoded
+         *
+         * @return the size in bytes
+         */
+        public long getInFlightBytes()
+        {
+            return _inFlightBytes;
+        }
+
+        /**
+         * Get the largest estimated size of the images being decoded at the same time
+         *
+         * @return the size in bytes
+         */
+        public long getPeakInFlightBytes()
+        {
+            return _peakInFlightBytes;
+        }
+
+        /**
+         * Get the number of pixels decoded as a fraction of the pixels in the source images.  Subsampling makes this
+         * less than 1.
+         *
+         * @return the decoded pixel ratio
+         */
+        public double getDecodedPixelRatio()
+        {
+            return _sourcePixels == 0L ? 1.0 : (double) _decodedPixels / _sourcePixels;
+        }
+
+        /**
+         * Get the time since the scaler was created
+         *
+         * @return the uptime
+         */
+        @Nonnull
+        public Duration getUptime()
+        {
+            return _uptime;
+        }
+
+        /**
+         * Get the average time from submission until an image was scaled or failed
+         *
+         * @return the average latency
+         */
+        @Nonnull
+        public Duration getAverageLatency()
+        {
+            return _averageLatency;
+        }
+
+        /**
+         * Get the longest time from submission until an image was scaled or failed
+         *
+         * @return the maximum latency
+         */
+        @Nonnull
+        public Duration getMaxLatency()
+        {
+            return _maxLatency;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Metrics{"
+                   + "queueDepth=" + _queueDepth
+                   + ", scaled=" + _scaled
+                   + ", failed=" + _failed
+                   + ", rejected=" + _rejected
+                   + ", inFlightBytes=" + _inFlightBytes
+                   + ", peakInFlightBytes=" + _peakInFlightBytes
+                   + ", decodedPixelRatio=" + String.format("%.3f", getDecodedPixelRatio())
+                   + ", averageLatency=" + _averageLatency.toMillis() + "ms"
+                   + ", maxLatency=" + _maxLatency.toMillis() + "ms"
+                   + '}';
+        }
+    }
+}
@@ -11,6 +11,7 @@
 
 package com.example.app.support.ui.vtcrop;
 
+import com.example.app.support.service.ImageScaler;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileItemFactory;
 import org.apache.logging.log4j.Level;
@@ -20,24 +21,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 
 import javax.annotation.Nullable;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.awt.Dimension;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import net.proteusframework.cms.support.ImageFileUtil;
-import net.proteusframework.core.StringFactory;
-import net.proteusframework.core.image.Thumbnailer;
 import net.proteusframework.core.locale.TextSource;
 import net.proteusframework.core.locale.annotation.I18N;
 import net.proteusframework.core.locale.annotation.I18NFile;
 import net.proteusframework.core.locale.annotation.L10N;
-import net.proteusframework.core.metric.Dimension;
 import net.proteusframework.core.notification.Notifiable;
 import net.proteusframework.internet.http.resource.FactoryResource;
 import net.proteusframework.internet.http.resource.html.NDE;
@@ -54,7 +51,9 @@ import net.proteusframework.ui.miwt.event.ActionListener;
 import net.proteusframework.ui.miwt.util.CommonActions;
 
 import static com.example.app.support.ui.vtcrop.VTCropPictureEditorLOK.BUTTON_TEXT_CROP_IMAGE;
+import static com.example.app.support.ui.vtcrop.VTCropPictureEditorLOK.ERROR_MESSAGE_IMAGE_NOT_SCALED;
 import static com.example.app.support.ui.vtcrop.VTCropPictureEditorLOK.LABEL_FILE_CHOOSER;
+import static net.proteusframework.core.notification.NotificationImpl.error;
 
 /**
  * UI for user to upload a picture.  The picture will be cropped according to the configuration determined by the
@@ -63,6 +62,10 @@ import static com.example.app.support.ui.vtcrop.VTCropPictureEditorLOK.LABEL_FIL
  * You can listen for ActionEvents on {@link  #ACTION_UI_VALUE_UPDATED}  action command to be notified when the user has
  * provided a new picture via this UI.
  * </p>
+ * <p>
+ * A new picture is scaled when the UI value is validated.  If it cannot be scaled in time, validation fails with an
+ * error for the user, rather than the picture being saved at full size.
+ * </p>
  *
  * @author Alan Holt (aholt@venturetech.net)
  */
@@ -71,7 +74,9 @@ import static com.example.app.support.ui.vtcrop.VTCropPictureEditorLOK.LABEL_FIL
     symbolPrefix = "com.example.app.support.ui.vtcrop.VTCropPictureEditor",
     i18n = {
         @I18N(symbol = "Button Text Crop Image", l10n = @L10N("Crop And Upload")),
-        @I18N(symbol = "Label File Chooser", l10n = @L10N("Change The Image"))
+        @I18N(symbol = "Label File Chooser", l10n = @L10N("Change The Image")),
+        @I18N(symbol = "Error Message Image Not Scaled",
+            l10n = @L10N("The image could not be processed right now.  Please try again."))
     }
 )
 @Configurable
@@ -104,6 +109,8 @@ public class VTCropPictureEditor extends Container implements ValueEditor<FileIt
     private FileItem _uiValue;
     /** Modified Flag. */
     private boolean _modified;
+    /** Scaled Flag.  True once the UI value and the additional UI values have been scaled. */
+    private boolean _scaled;
     /** Editable mode? */
     private boolean _editable = true;
 
@@ -117,6 +124,10 @@ public class VTCropPictureEditor extends Container implements ValueEditor<FileIt
     @Autowired
     private FileItemFactory _fileItemFactory;
 
+    /** image scaler */
+    @Autowired
+    private ImageScaler _imageScaler;
+
     /**
      * Create an instance.
      *
@@ -148,6 +159,7 @@ public class VTCropPictureEditor extends Container implements ValueEditor<FileIt
                 }
                 _picture.setImage(new Image(_uiValue));
                 _modified = true;
+                _scaled = false;
             }
             _fileField.resetFile();
         });
@@ -172,37 +184,56 @@ public class VTCropPictureEditor extends Container implements ValueEditor<FileIt
      */
     public HashMap<String, FileItem> getAdditionalUiValues()
     {
-        HashMap<String, FileItem> additionalUIValues = new HashMap<>();
-        _additionalUiValues.entrySet().forEach(entry -> additionalUIValues.put(entry.getKey(), _getUIValue(entry.getValue())));
-        return additionalUIValues;
+        _requireScaled();
+        return new HashMap<>(_additionalUiValues);
     }
 
-    @Nullable
-    private FileItem _getUIValue(@Nullable FileItem uiValue)
+    /**
+     * Scale the UI value and the additional UI values, replacing each one that was scaled.
+     *
+     * @return true if all of them were scaled.
+     */
+    private boolean _scaleUIValues()
     {
-        if (uiValue == null)
+        // Start scaling every file before waiting for any of them
+        final CompletableFuture<List<FileItem>> scaledUiValue = _uiValue != null ? _scale(_uiValue) : null;
+        final HashMap<String, CompletableFuture<List<FileItem>>> scaledAdditional = new HashMap<>();
+        _additionalUiValues.forEach((name, file) -> scaledAdditional.put(name, _scale(file)));
+        boolean scaled = true;
+        if (scaledUiValue != null)
         {
-            return null;
-        }
-
-        Dimension origDim, newDim;
-        try
-        {
-            origDim = ImageFileUtil.getDimension(uiValue);
+            final FileItem uiValue = _await(_uiValue, scaledUiValue);
+            if (uiValue != null)
+            {
+                _uiValue = uiValue;
+                _picture.setImage(new Image(_uiValue));
+            }
+            else
+            {
+                scaled = false;
+            }
         }
-        catch (IOException e)
+        for (Map.Entry<String, CompletableFuture<List<FileItem>>> entry : scaledAdditional.entrySet())
         {
-            _logger.error("Skipping scaling because an error occurred.", e);
-            return uiValue;
+            final FileItem file = _await(_additionalUiValues.get(entry.getKey()), entry.getValue());
+            if (file != null)
+                _additionalUiValues.put(entry.getKey(), file);
+            else
+                scaled = false;
         }
+        _scaled = scaled;
+        return scaled;
+    }
 
-        if (origDim == null)
-        {
-            _logger.warn("Skipping scaling because retrieved dimension for ui value was null.");
-            return uiValue;
-        }
+    private void _requireScaled()
+    {
+        if (_modified && !_scaled && !_scaleUIValues())
+            throw new IllegalStateException("Unable to scale the image.  Validate the UI value before using it.");
+    }
 
-        VTCropPictureEditorConfig.ImageScaleOption option = _config.getImageScaleOptionForName(_uiValue.getName());
+    private CompletableFuture<List<FileItem>> _scale(FileItem uiValue)
+    {
+        VTCropPictureEditorConfig.ImageScaleOption option = _config.getImageScaleOptionForName(uiValue.getName());
         int newDimWidth = option != null && option.scale != null
             ? Double.valueOf(_config.getCropWidth() * option.scale).intValue()
             : _config.getCropWidth();
@@ -210,33 +241,43 @@ public class VTCropPictureEditor extends Container implements ValueEditor<FileIt
             ? Double.valueOf(_config.getCropHeight() * option.scale).intValue()
             : _config.getCropHeight();
 
-        newDim =
-            ImageFileUtil.getScaledDimension(origDim, newDimWidth, newDimHeight);
+        return _imageScaler.scale(uiValue, Collections.singletonList(new Dimension(newDimWidth, newDimHeight)),
+            _fileItemFactory);
+    }
 
-        if (!Objects.equals(newDim, origDim))
+    @Nullable
+    private FileItem _await(FileItem uiValue, CompletableFuture<List<FileItem>> scaled)
+    {
+        try
         {
-            _logger.debug("Scale to " + newDim.getWidthMetric() + " x " + newDim.getHeightMetric());
-            FileItem scaledFileItem = _fileItemFactory.createItem(
-                uiValue.getFieldName(), uiValue.getContentType(),
-                uiValue.isFormField(), uiValue.getName());
-            try (InputStream is = uiValue.getInputStream();
-                 OutputStream os = scaledFileItem.getOutputStream())
+            FileItem scaledFileItem = scaled.get(_imageScaler.getTimeout().toMillis(), TimeUnit.MILLISECONDS).get(0);
+            if (scaledFileItem != uiValue)
             {
-                Thumbnailer tn = Thumbnailer.getInstance(is);
-                BufferedImage scaledImg =
-                    tn.getQualityThumbnail(newDim.getWidthMetric().intValue(), newDim.getHeightMetric().intValue());
-                String extension = StringFactory.getExtension(uiValue.getName());
-                ImageIO.write(scaledImg, extension, os);
+                _logger.debug("Scaled " + uiValue.getName());
                 uiValue.delete();
-                uiValue = scaledFileItem;
-            }
-            catch (Throwable e)
-            {
-                _logger.warn("Skipping scaling due to:", e);
             }
+            return scaledFileItem;
         }
-
-        return uiValue;
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            if (!scaled.cancel(false))
+                return _await(uiValue, scaled);
+            _logger.warn("Unable to scale " + uiValue.getName() + " because the request was interrupted.");
+        }
+        catch (TimeoutException e)
+        {
+            // Once cancelled, the scaler deletes the scaled image if it finishes anyway
+            if (!scaled.cancel(false))
+                return _await(uiValue, scaled);
+            _logger.warn("Unable to scale " + uiValue.getName() + ", it did not finish within "
+                         + _imageScaler.getTimeout() + '.');
+        }
+        catch (ExecutionException e)
+        {
+            _logger.warn("Unable to scale " + uiValue.getName() + " due to:", e.getCause());
+        }
+        return null;
     }
 
     /**
@@ -302,6 +343,7 @@ public class VTCropPictureEditor extends Container implements ValueEditor<FileIt
 
         }
         _modified = false;
+        _scaled = false;
         setBaseClass(null);
 
         if (isInited())
@@ -318,13 +360,19 @@ public class VTCropPictureEditor extends Container implements ValueEditor<FileIt
     @Override
     public FileItem getUIValue(Level logErrorLevel)
     {
-        return _getUIValue(_uiValue);
+        _requireScaled();
+        return _uiValue;
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public boolean validateUIValue(@SuppressWarnings("rawtypes") Notifiable notifiable)
     {
-        // Nothing to validate.
+        if (_modified && !_scaled && !_scaleUIValues())
+        {
+            notifiable.sendNotification(error(ERROR_MESSAGE_IMAGE_NOT_SCALED()));
+            return false;
+        }
         return true;
     }
 
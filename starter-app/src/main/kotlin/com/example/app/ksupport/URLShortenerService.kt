@@ -15,36 +15,132 @@ import arrow.core.Try
 import arrow.syntax.function.pipe
 import co.proteus.url_shortener.sdk.URLShortener
 import com.example.app.kotlin.lazyLogger
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
 import com.google.common.util.concurrent.RateLimiter
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Service
+import java.io.File
 import java.net.URL
+import java.util.Properties
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
 
 class URLShortenMaxTriesReachedError(val url: String) : Exception(
     "Failed to shorten url: $url.  Max tries reached."
 )
 
 /**
- * Wraps [URLShortener] in a rate limiter and a retry loop.
+ * Wraps [URLShortener] in a rate limiter, a retry loop and a cache.
+ *
+ * The rate limiter and the client are shared by every caller, so the limit applies to the application as a whole.
+ * Shortened URLs are cached, and concurrent requests to shorten the same URL wait for a single call to the shortener.
+ * If `url-shortener.cache.file` is set, the cache is loaded from that file on startup and saved to it on shutdown.
+ * The file keeps when each URL was shortened, so a restart does not extend how long a short URL is cached: entries
+ * older than `url-shortener.cache.ttl-hours` are skipped on load, and the rest expire when they would have.
  *
  * @author Alan Holt (aholt@proteus.co)
  * @since 1/24/2019
  */
 @Service
 class URLShortenerService(
-    @Value("\${proteus-url-shortener-key}") private val key: String
+    @Value("\${proteus-url-shortener-key}") private val key: String,
+    @Value("\${url-shortener.permits-per-second:0.75}") permitsPerSecond: Double,
+    @Value("\${url-shortener.cache.max-size:10000}") cacheMaxSize: Long,
+    @Value("\${url-shortener.cache.ttl-hours:168}") cacheTtlHours: Long,
+    @Value("\${url-shortener.cache.file:}") private val cacheFile: String
 ) {
     private val logger by lazyLogger()
 
-    private fun createShortener(): URLShortener = URLShortener(key)
+    @Suppress("UnstableApiUsage")
+    private val limiter: RateLimiter = RateLimiter.create(permitsPerSecond)
+    private val shortener: URLShortener by lazy { URLShortener(key) }
+    private val ttlMillis = TimeUnit.HOURS.toMillis(cacheTtlHours)
+    private val cache: Cache<String, ShortenedURL> = CacheBuilder.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfterWrite(cacheTtlHours, TimeUnit.HOURS)
+        .build()
+    private val inFlight = ConcurrentHashMap<String, CompletableFuture<String>>()
+
+    fun createShortenedURL(url: String): Try<String> = shorten(url)
+
+    /**
+     * Shorten a URL, returning the cached short URL if it has been shortened before.
+     */
+    fun shorten(url: String): Try<String> =
+        getCached(url)?.pipe(Try.Companion::just) ?: Try { shortenOnce(url) }
+
+    /**
+     * Shorten URLs.  Each distinct URL is shortened once.
+     *
+     * @return the result for each distinct URL, in the order given.
+     */
+    fun shorten(urls: Collection<String>): Map<String, Try<String>> = urls.distinct().associate { it to shorten(it) }
+
+    @PostConstruct
+    fun loadCache() {
+        val file = cacheFile.takeIf { it.isNotBlank() }?.let { File(it) }?.takeIf { it.isFile } ?: return
+        Try { Properties().apply { file.inputStream().use { load(it) } } }.fold(
+            { logger.warn("Unable to load shortened URLs from $file.", it) },
+            { properties ->
+                properties.stringPropertyNames().forEach { url ->
+                    ShortenedURL.parse(properties.getProperty(url))?.takeIf { it.isFresh() }?.let { cache.put(url, it) }
+                }
+            }
+        )
+    }
 
-    fun createShortenedURL(url: String): Try<String> = tryShorten(url)
+    @PreDestroy
+    fun saveCache() {
+        val file = cacheFile.takeIf { it.isNotBlank() }?.let { File(it) } ?: return
+        Try {
+            val properties = Properties().apply {
+                cache.asMap().filterValues { it.isFresh() }.forEach { (url, shortened) ->
+                    setProperty(url, shortened.format())
+                }
+            }
+            file.outputStream().use { properties.store(it, "Shortened URLs") }
+        }.fold({ logger.warn("Unable to save shortened URLs to $file.", it) }, {})
+    }
+
+    private fun shortenOnce(url: String): String {
+        val pending = CompletableFuture<String>()
+        val existing = inFlight.putIfAbsent(url, pending)
+        if (existing != null) {
+            return try {
+                existing.get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+        }
+        try {
+            val shortURL = getCached(url) ?: tryShorten(url).fold({ throw it }, { it })
+                .also { cache.put(url, ShortenedURL(it, System.currentTimeMillis())) }
+            pending.complete(shortURL)
+            return shortURL
+        } catch (e: Throwable) {
+            pending.completeExceptionally(e)
+            throw e
+        } finally {
+            inFlight.remove(url, pending)
+        }
+    }
+
+    /**
+     * Get a cached short URL.  The cache only expires an entry by when it was put, which for an entry loaded from the
+     * cache file is startup, so its age is checked against when it was shortened.
+     */
+    private fun getCached(url: String): String? = cache.getIfPresent(url)?.takeIf { it.isFresh() }?.shortURL
+
+    private fun ShortenedURL.isFresh() = System.currentTimeMillis() - shortenedAt < ttlMillis
 
     @Suppress("UnstableApiUsage")
     private tailrec fun tryShorten(
         toShorten: String,
-        limiter: RateLimiter = RateLimiter.create(0.75),
-        shortener: URLShortener = createShortener(),
         maxTries: Int = 5,
         currentTry: Int = 0,
         lastError: Throwable? = null
@@ -52,24 +148,39 @@ class URLShortenerService(
         if (currentTry >= maxTries) {
             return Try.raise(lastError ?: URLShortenMaxTriesReachedError(toShorten))
         } else {
+            limiter.acquire()
+
             val exceptionReceived: Exception = try {
                 return URL(toShorten).pipe(shortener::shorten).shortURL.pipe(Try.Companion::just)
             } catch (e: Exception) {
                 logger.error("Error occurred attempting to shorten URL: $toShorten.  Shortener will attempt " +
-                    "${maxTries - currentTry} more times to shorten before giving up.", e)
+                    "${maxTries - currentTry - 1} more times to shorten before giving up.", e)
                 e
             }
 
-            limiter.acquire()
-
             return tryShorten(
                 toShorten,
-                limiter,
-                shortener,
                 maxTries,
                 currentTry + 1,
                 exceptionReceived
             )
         }
     }
-}
\ No newline at end of file
+}
+
+/**
+ * A short URL and when it was shortened, in epoch milliseconds.
+ */
+private data class ShortenedURL(val shortURL: String, val shortenedAt: Long) {
+    /** Format as saved to the cache file. */
+    fun format() = "$shortenedAt $shortURL"
+
+    companion object {
+        /** Parse a [format]ted value, or return null if it is malformed. */
+        fun parse(value: String): ShortenedURL? {
+            val parts = value.split(' ', limit = 2)
+            val shortenedAt = parts.first().toLongOrNull()
+            return if (parts.size == 2 && shortenedAt != null) ShortenedURL(parts[1], shortenedAt) else null
+        }
+    }
+}
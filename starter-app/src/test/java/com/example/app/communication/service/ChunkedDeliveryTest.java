@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import com.example.app.profile.model.user.ContactMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+/**
+ * Tests for {@link ChunkedDelivery}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class ChunkedDeliveryTest
+{
+    @Test(groups = TestGroups.UNIT)
+    public void testOutcomesInRecipientOrder()
+    {
+        Iterator<DeliveryOutcome> outcomes = new ChunkedDelivery<>(IntStream.range(0, 25).boxed().iterator(), 10,
+            id -> () -> new DeliveryOutcome(id, ContactMethod.Email,
+                id % 3 == 0 ? DeliveryOutcome.Status.FAILED : DeliveryOutcome.Status.SENT, null));
+        for (int i = 0; i < 25; i++)
+        {
+            DeliveryOutcome outcome = outcomes.next();
+            assertEquals(outcome.getUserId(), Integer.valueOf(i));
+            assertEquals(outcome.getStatus(), i % 3 == 0 ? DeliveryOutcome.Status.FAILED : DeliveryOutcome.Status.SENT);
+        }
+        assertFalse(outcomes.hasNext());
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testRecipientsReadAChunkAtATime()
+    {
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger started = new AtomicInteger();
+        List<Integer> startedWhenAwaited = new ArrayList<>();
+        Iterator<Integer> recipients = IntStream.range(0, 1_000).boxed().peek(id -> read.incrementAndGet()).iterator();
+        Iterator<DeliveryOutcome> outcomes = new ChunkedDelivery<>(recipients, 100, id -> {
+            started.incrementAndGet();
+            return () -> {
+                startedWhenAwaited.add(started.get());
+                return new DeliveryOutcome(id, ContactMethod.PhoneSms, DeliveryOutcome.Status.SENT, null);
+            };
+        });
+
+        for (int i = 0; i < 150; i++)
+        {
+            outcomes.next();
+        }
+        assertEquals(started.get(), 200);
+        assertEquals(read.get(), 200);
+        // Every delivery in a chunk is started before the first is awaited
+        assertEquals(startedWhenAwaited.get(0), Integer.valueOf(100));
+        assertEquals(startedWhenAwaited.get(100), Integer.valueOf(200));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.i2rd.mail.model.TrackedEmail;
+import com.i2rd.unit.test.TestGroups;
+
+import static com.example.app.communication.service.LocalMailProvider.FAIL_SUBJECT;
+import static com.example.app.communication.service.LocalMailProvider.message;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Tests for {@link EmailDispatcher}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class EmailDispatcherTest
+{
+    @Test(groups = TestGroups.UNIT)
+    public void testMessagesSentInBatches() throws Exception
+    {
+        LocalMailProvider provider = new LocalMailProvider();
+        provider.hold();
+        List<CompletableFuture<TrackedEmail>> receipts = new ArrayList<>();
+        try (EmailDispatcher dispatcher = new EmailDispatcher(provider, 2, 1_000, 10, 1, TimeUnit.SECONDS))
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                receipts.add(dispatcher.submit(message("message " + i)));
+            }
+            provider.release();
+            CompletableFuture.allOf(receipts.toArray(new CompletableFuture[receipts.size()])).get(10, TimeUnit.SECONDS);
+
+            EmailDispatcher.Metrics metrics = dispatcher.getMetrics();
+            assertEquals(metrics.getSent(), 100L);
+            assertEquals(metrics.getFailed(), 0L);
+            assertEquals(metrics.getQueueDepth(), 0);
+            assertEquals(metrics.getBatches(), provider.getBatchSizes().size());
+            assertTrue(metrics.getThroughput() > 0.0);
+        }
+        assertEquals(provider.getReceived().size(), 100);
+        assertEquals(provider.getOpenConnections(), 0);
+        assertTrue(provider.getBatchSizes().stream().allMatch(size -> size <= 10), provider.getBatchSizes().toString());
+        assertTrue(provider.getBatchSizes().size() < 100, provider.getBatchSizes().toString());
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testFullQueueRejects() throws Exception
+    {
+        LocalMailProvider provider = new LocalMailProvider();
+        provider.hold();
+        try (EmailDispatcher dispatcher = new EmailDispatcher(provider, 1, 2, 1, 10, TimeUnit.MILLISECONDS))
+        {
+            List<CompletableFuture<TrackedEmail>> receipts = new ArrayList<>();
+            receipts.add(dispatcher.submit(message("first")));
+            provider.awaitSending();
+            receipts.add(dispatcher.submit(message("second")));
+            receipts.add(dispatcher.submit(message("third")));
+            assertEquals(dispatcher.getQueueDepth(), 2);
+            try
+            {
+                dispatcher.submit(message("fourth"));
+                fail("Expected the full queue to reject the message");
+            }
+            catch (RejectedExecutionException expected)
+            {
+                assertEquals(dispatcher.getMetrics().getRejected(), 1L);
+            }
+            provider.release();
+            for (CompletableFuture<TrackedEmail> receipt : receipts)
+            {
+                receipt.get(10, TimeUnit.SECONDS);
+            }
+        }
+        assertEquals(provider.getReceived().size(), 3);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testFailureCompletesReceiptExceptionally() throws Exception
+    {
+        LocalMailProvider provider = new LocalMailProvider();
+        provider.hold();
+        try (EmailDispatcher dispatcher = new EmailDispatcher(provider, 1, 10, 10, 1, TimeUnit.SECONDS))
+        {
+            CompletableFuture<TrackedEmail> before = dispatcher.submit(message("before"));
+            CompletableFuture<TrackedEmail> failed = dispatcher.submit(message(FAIL_SUBJECT));
+            CompletableFuture<TrackedEmail> after = dispatcher.submit(message("after"));
+            provider.release();
+            before.get(10, TimeUnit.SECONDS);
+            after.get(10, TimeUnit.SECONDS);
+            try
+            {
+                failed.get(10, TimeUnit.SECONDS);
+                fail("Expected the provider to reject the message");
+            }
+            catch (ExecutionException expected)
+            {
+                assertEquals(expected.getCause().getMessage(), "Rejected by provider");
+            }
+            assertEquals(dispatcher.getMetrics().getSent(), 2L);
+            assertEquals(dispatcher.getMetrics().getFailed(), 1L);
+        }
+        assertEquals(provider.getReceived().size(), 2);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testCloseSendsQueuedMessages() throws Exception
+    {
+        LocalMailProvider provider = new LocalMailProvider();
+        EmailDispatcher dispatcher = new EmailDispatcher(provider, 1, 100, 5, 1, TimeUnit.SECONDS);
+        List<CompletableFuture<TrackedEmail>> receipts = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            receipts.add(dispatcher.submit(message("message " + i)));
+        }
+        dispatcher.close();
+        assertTrue(receipts.stream().allMatch(receipt -> receipt.isDone() && !receipt.isCompletedExceptionally()));
+        assertEquals(provider.getReceived().size(), 20);
+        try
+        {
+            dispatcher.submit(message("late"));
+            fail("Expected the closed dispatcher to reject the message");
+        }
+        catch (RejectedExecutionException expected)
+        {
+            assertEquals(dispatcher.getMetrics().getRejected(), 1L);
+        }
+    }
+}
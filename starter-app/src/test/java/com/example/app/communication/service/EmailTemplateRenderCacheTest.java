@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import org.testng.annotations.Test;
+
+import javax.mail.BodyPart;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Session;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+import com.i2rd.unit.test.TestGroups;
+
+import net.proteusframework.email.EmailTemplate;
+import net.proteusframework.email.EmailTemplateContext;
+
+import static java.util.Collections.singletonMap;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link EmailTemplateRenderCache}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class EmailTemplateRenderCacheTest
+{
+    private static final Pattern TOKEN = Pattern.compile("tkn(\\d+)x(.*?)tkne");
+
+    private static String slot(int index)
+    {
+        return "tkn" + index + 'x' + EmailTemplateRenderCache.CompiledText.PROBE + "tkne";
+    }
+
+    private static String htmlSlot(int index)
+    {
+        return "tkn" + index + 'x' + escapeHtml(EmailTemplateRenderCache.CompiledText.PROBE) + "tkne";
+    }
+
+    private static String escapeHtml(String value)
+    {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+            .replace("\"", "&quot;").replace("'", "&#39;");
+    }
+
+    private static MimeMessage prototype(String subject, String text, String html) throws MessagingException
+    {
+        MimeMessage message = new MimeMessage((Session) null);
+        message.setSubject(subject, "UTF-8");
+        MimeBodyPart textPart = new MimeBodyPart();
+        textPart.setText(text, "UTF-8", "plain");
+        MimeBodyPart htmlPart = new MimeBodyPart();
+        htmlPart.setText(html, "UTF-8", "html");
+        message.setContent(new MimeMultipart("alternative", textPart, htmlPart));
+        message.saveChanges();
+        return message;
+    }
+
+    private static MimeMessage reparse(MimeMessage message) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        message.writeTo(bytes);
+        return new MimeMessage(null, new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testCompiledText()
+    {
+        BitSet found = new BitSet();
+        EmailTemplateRenderCache.CompiledText text =
+            EmailTemplateRenderCache.CompiledText.compile("Hi " + slot(0) + ", " + slot(1) + " and " + slot(0) + '.',
+                TOKEN, found);
+        assertNotNull(text);
+        assertTrue(text.hasSlots());
+        assertEquals(found.cardinality(), 2);
+        assertEquals(text.render(new String[]{"Ann", "Bob"}), "Hi Ann, Bob and Ann.");
+        assertEquals(text.render(new String[]{"", ""}), "Hi ,  and .");
+
+        EmailTemplateRenderCache.CompiledText literal =
+            EmailTemplateRenderCache.CompiledText.compile("No variables", TOKEN, found);
+        assertNotNull(literal);
+        assertFalse(literal.hasSlots());
+        assertEquals(literal.render(new String[0]), "No variables");
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testRenderFillsEveryPart() throws Exception
+    {
+        MimeMessage prototype = prototype("Welcome " + slot(0), "Dear " + slot(0) + ", your code is " + slot(1) + '.',
+            "<p>Dear <b>" + htmlSlot(0) + "</b>, your code is " + htmlSlot(1) + ".</p>");
+        EmailTemplateRenderCache.CompiledEmailTemplate compiled =
+            EmailTemplateRenderCache.CompiledEmailTemplate.compile(prototype, TOKEN, 2);
+        assertNotNull(compiled);
+
+        MimeMessage first = reparse(compiled.render(new String[]{"Zo\u00eb", "1234"}));
+        MimeMessage second = reparse(compiled.render(new String[]{"Bob", "5678"}));
+
+        assertEquals(first.getSubject(), "Welcome Zo\u00eb");
+        Multipart firstBody = (Multipart) first.getContent();
+        assertEquals(firstBody.getBodyPart(0).getContent(), "Dear Zo\u00eb, your code is 1234.");
+        BodyPart html = firstBody.getBodyPart(1);
+        assertTrue(html.isMimeType("text/html"));
+        assertEquals(html.getContent(), "<p>Dear <b>Zo\u00eb</b>, your code is 1234.</p>");
+
+        assertEquals(second.getSubject(), "Welcome Bob");
+        assertEquals(((Multipart) second.getContent()).getBodyPart(0).getContent(), "Dear Bob, your code is 5678.");
+        assertFalse(first.getMessageID().equals(second.getMessageID()));
+
+        // The prototype is not modified
+        assertEquals(prototype.getSubject(), "Welcome " + slot(0));
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testRenderEscapesLikeTheProcessor() throws Exception
+    {
+        MimeMessage prototype = prototype("Re: " + slot(0), "Hi " + slot(0), "<p title=\"" + htmlSlot(0) + "\">Hi "
+                                                                               + htmlSlot(0) + "</p>");
+        EmailTemplateRenderCache.CompiledEmailTemplate compiled =
+            EmailTemplateRenderCache.CompiledEmailTemplate.compile(prototype, TOKEN, 1);
+        assertNotNull(compiled);
+
+        MimeMessage message = reparse(compiled.render(new String[]{"A<B & \"C\""}));
+
+        assertEquals(message.getSubject(), "Re: A<B & \"C\"");
+        Multipart body = (Multipart) message.getContent();
+        assertEquals(body.getBodyPart(0).getContent(), "Hi A<B & \"C\"");
+        assertEquals(body.getBodyPart(1).getContent(),
+            "<p title=\"A&lt;B &amp; &quot;C&quot;\">Hi A&lt;B &amp; &quot;C&quot;</p>");
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testProbeNotInsertedAsAWholeIsNotCompiled() throws Exception
+    {
+        MimeMessage prototype = prototype("Welcome", "Dear tkn0x<&tkne", "<p>Dear " + htmlSlot(0) + "</p>");
+        assertNull(EmailTemplateRenderCache.CompiledEmailTemplate.compile(prototype, TOKEN, 1));
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testTemplateRenderedWithTwoContexts() throws Exception
+    {
+        EmailTemplate emailTemplate = new EmailTemplate();
+        emailTemplate.setSubject("Welcome");
+        emailTemplate.setPlainTextBody("Dear ${var_name}");
+        emailTemplate.setHtmlBody("<p>Dear ${var_name}</p>");
+        FakeProcessorCache cache = new FakeProcessorCache();
+        EmailTemplateContext english = new EmailTemplateContext(null, Locale.ENGLISH, TimeZone.getTimeZone("UTC"),
+            EmailTemplateContext.Mode.TESTING);
+        EmailTemplateContext french = new EmailTemplateContext(null, Locale.FRENCH, TimeZone.getTimeZone("UTC"),
+            EmailTemplateContext.Mode.TESTING);
+
+        MimeMessage first = reparse(cache.render(emailTemplate, english, singletonMap("var_name", "Ann & Bob")));
+        MimeMessage second = reparse(cache.render(emailTemplate, french, singletonMap("var_name", "Zo\u00eb")));
+        MimeMessage third = reparse(cache.render(emailTemplate, english, singletonMap("var_name", "<Cy>")));
+
+        assertEquals(((Multipart) first.getContent()).getBodyPart(1).getContent(), "<p>Dear Ann &amp; Bob</p> en");
+        assertEquals(((Multipart) second.getContent()).getBodyPart(1).getContent(), "<p>Dear Zo\u00eb</p> fr");
+        assertEquals(((Multipart) third.getContent()).getBodyPart(0).getContent(), "Dear <Cy> en");
+        assertEquals(((Multipart) third.getContent()).getBodyPart(1).getContent(), "<p>Dear &lt;Cy&gt;</p> en");
+        // One compile for each locale
+        assertEquals(cache.getProcessed(), 2);
+
+        // A context attribute may differ by recipient, so it is not shared with other messages.
+        EmailTemplateContext withAttribute = new EmailTemplateContext(null, Locale.ENGLISH,
+            TimeZone.getTimeZone("UTC"), EmailTemplateContext.Mode.TESTING);
+        withAttribute.getAttributes().put("recipient_name", "Dee");
+        MimeMessage fourth = reparse(cache.render(emailTemplate, withAttribute, singletonMap("var_name", "Dee")));
+        assertEquals(((Multipart) fourth.getContent()).getBodyPart(0).getContent(), "Dear Dee en Dee");
+        assertEquals(cache.getProcessed(), 3);
+        cache.render(emailTemplate, withAttribute, singletonMap("var_name", "Eve"));
+        assertEquals(cache.getProcessed(), 4);
+    }
+
+    /**
+     * Processes templates by replacing each variable, escaped in the HTML body, and appending the locale and the
+     * recipient_name attribute.
+     *
+     * @author Alan Holt (aholt@venturetech.net)
+     */
+    private static final class FakeProcessorCache extends EmailTemplateRenderCache
+    {
+        private int _processed;
+
+        @Override
+        MimeMessage process(EmailTemplateContext context, EmailTemplate emailTemplate) throws MessagingException
+        {
+            _processed++;
+            String text = emailTemplate.getPlainTextBody();
+            String html = emailTemplate.getHtmlBody();
+            for (String variable : EmailTemplateVariables.getEmailTemplateVariables(emailTemplate))
+            {
+                String value = String.valueOf(context.getAttributes().get(variable));
+                text = text.replace("${" + variable + '}', value);
+                html = html.replace("${" + variable + '}', escapeHtml(value));
+            }
+            String suffix = ' ' + context.getLocale().toString();
+            Object recipientName = context.getAttributes().get("recipient_name");
+            if (recipientName != null)
+                suffix += " " + recipientName;
+            return prototype(emailTemplate.getSubject(), text + suffix, html + suffix);
+        }
+
+        int getProcessed()
+        {
+            return _processed;
+        }
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testVariableMissingFromOutputIsNotCompiled() throws Exception
+    {
+        MimeMessage prototype = prototype("Welcome", "Dear " + slot(0), "<p>Dear " + htmlSlot(0) + "</p>");
+        assertNull(EmailTemplateRenderCache.CompiledEmailTemplate.compile(prototype, TOKEN, 2));
+        assertNotNull(EmailTemplateRenderCache.CompiledEmailTemplate.compile(prototype, TOKEN, 1));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.i2rd.mail.model.TrackedEmail;
+
+/**
+ * In memory stand-in for an SMTP provider.  Records the messages it receives and the connections opened, and
+ * rejects messages with the subject {@link #FAIL_SUBJECT}.  Connections can be held open with {@link #hold()} to
+ * simulate a slow provider.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+class LocalMailProvider implements Supplier<EmailTransport>
+{
+    /** Messages with this subject are rejected */
+    static final String FAIL_SUBJECT = "fail";
+
+    private final List<String> _received = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> _batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger _openConnections = new AtomicInteger();
+    private final CountDownLatch _sending = new CountDownLatch(1);
+    private volatile CountDownLatch _release = new CountDownLatch(0);
+
+    @Override
+    public EmailTransport get()
+    {
+        _openConnections.incrementAndGet();
+        final AtomicInteger batchSize = new AtomicInteger();
+        return new EmailTransport()
+        {
+            @Override
+            public TrackedEmail send(MimeMessage message) throws MessagingException
+            {
+                _sending.countDown();
+                try
+                {
+                    _release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new MessagingException("Interrupted", e);
+                }
+                if (FAIL_SUBJECT.equals(message.getSubject()))
+                    throw new MessagingException("Rejected by provider");
+                _received.add(message.getSubject());
+                batchSize.incrementAndGet();
+                return null;
+            }
+
+            @Override
+            public void close()
+            {
+                _batchSizes.add(batchSize.get());
+                _openConnections.decrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Block sending until {@link #release()} is called.
+     */
+    void hold()
+    {
+        _release = new CountDownLatch(1);
+    }
+
+    /**
+     * Allow sending.
+     */
+    void release()
+    {
+        _release.countDown();
+    }
+
+    /**
+     * Wait until the first message is being sent.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    void awaitSending() throws InterruptedException
+    {
+        _sending.await();
+    }
+
+    /**
+     * Get the subjects of the messages received.
+     *
+     * @return the subjects
+     */
+    List<String> getReceived()
+    {
+        return new ArrayList<>(_received);
+    }
+
+    /**
+     * Get the number of messages received over each connection.
+     *
+     * @return the batch sizes
+     */
+    List<Integer> getBatchSizes()
+    {
+        return new ArrayList<>(_batchSizes);
+    }
+
+    /**
+     * Get the number of connections that have not been closed.
+     *
+     * @return the open connections
+     */
+    int getOpenConnections()
+    {
+        return _openConnections.get();
+    }
+
+    /**
+     * Create a message.
+     *
+     * @param subject the subject
+     *
+     * @return the message
+     *
+     * @throws MessagingException on error
+     */
+    static MimeMessage message(String subject) throws MessagingException
+    {
+        final MimeMessage message = new MimeMessage((Session) null);
+        message.setSubject(subject);
+        message.setText("Body of " + subject);
+        return message;
+    }
+}
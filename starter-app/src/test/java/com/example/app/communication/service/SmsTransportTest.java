@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.communication.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.HttpResponseException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Tests for {@link SmsTransport} against a local HTTP server standing in for the SMS provider.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class SmsTransportTest
+{
+    private static final String OK_BODY = "{\"success\":true}";
+
+    private HttpServer _server;
+    private String _endpoint;
+    private final ConcurrentLinkedQueue<Integer> _statuses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _requests = new AtomicInteger();
+    private final Set<InetSocketAddress> _connections = ConcurrentHashMap.newKeySet();
+
+    @BeforeMethod(groups = TestGroups.UNIT)
+    public void startServer() throws IOException
+    {
+        _statuses.clear();
+        _requests.set(0);
+        _connections.clear();
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        _server.setExecutor(Executors.newCachedThreadPool());
+        _server.createContext("/sms", exchange -> {
+            _requests.incrementAndGet();
+            _connections.add(exchange.getRemoteAddress());
+            try (InputStream in = exchange.getRequestBody())
+            {
+                while (in.read() != -1)
+                {
+                    // Drain the request so the connection can be reused
+                }
+            }
+            Integer status = _statuses.poll();
+            byte[] body = (status == null ? OK_BODY : "{}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status == null ? 200 : status, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        _server.start();
+        _endpoint = "http://127.0.0.1:" + _server.getAddress().getPort() + "/sms";
+    }
+
+    @AfterMethod(groups = TestGroups.UNIT)
+    public void stopServer()
+    {
+        _server.stop(0);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testConnectionsArePooled() throws Exception
+    {
+        try (SmsTransport transport = new SmsTransport(_endpoint, new SmsTransport.Settings()
+            .withMaxConnections(2).withThreads(2).withPermitsPerSecond(1_000)))
+        {
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+            {
+                responses.add(transport.post("{}"));
+            }
+            for (Future<String> response : responses)
+            {
+                assertEquals(response.get(5, TimeUnit.SECONDS), OK_BODY);
+            }
+        }
+        assertEquals(_requests.get(), 20);
+        assertTrue(_connections.size() <= 2, "Opened " + _connections.size() + " connections");
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testUnavailableIsRetried() throws Exception
+    {
+        _statuses.add(503);
+        _statuses.add(429);
+        try (SmsTransport transport = new SmsTransport(_endpoint, new SmsTransport.Settings()
+            .withMaxAttempts(3).withInitialBackoff(Duration.ofMillis(10))))
+        {
+            assertEquals(transport.post("{}").get(5, TimeUnit.SECONDS), OK_BODY);
+            assertEquals(transport.getCircuitState(), SmsTransport.CircuitBreaker.State.CLOSED);
+        }
+        assertEquals(_requests.get(), 3);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testServerErrorsAreNotRetried() throws Exception
+    {
+        _statuses.add(500);
+        try (SmsTransport transport = new SmsTransport(_endpoint, new SmsTransport.Settings()
+            .withMaxAttempts(3).withInitialBackoff(Duration.ofMillis(10))))
+        {
+            transport.post("{}").get(5, TimeUnit.SECONDS);
+            fail("Expected the request to fail");
+        }
+        catch (ExecutionException e)
+        {
+            // The provider may have sent the message before failing
+            assertTrue(e.getCause() instanceof HttpResponseException);
+            assertEquals(((HttpResponseException) e.getCause()).getStatusCode(), 500);
+        }
+        assertEquals(_requests.get(), 1);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testConnectFailuresAreRetried() throws Exception
+    {
+        String endpoint = _endpoint;
+        _server.stop(0);
+        try (SmsTransport transport = new SmsTransport(endpoint, new SmsTransport.Settings()
+            .withMaxAttempts(2).withInitialBackoff(Duration.ofMillis(10))))
+        {
+            transport.post("{}").get(5, TimeUnit.SECONDS);
+            fail("Expected the request to fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof ConnectException, String.valueOf(e.getCause()));
+            assertTrue(SmsTransport.isRetryable(e.getCause()));
+        }
+        assertFalse(SmsTransport.isRetryable(new SocketTimeoutException("Read timed out")));
+        assertFalse(SmsTransport.isRetryable(new HttpResponseException(502, "Bad Gateway")));
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testClientErrorsAreNotRetried() throws Exception
+    {
+        _statuses.add(400);
+        try (SmsTransport transport = new SmsTransport(_endpoint, new SmsTransport.Settings()
+            .withMaxAttempts(3).withInitialBackoff(Duration.ofMillis(10))))
+        {
+            transport.post("{}").get(5, TimeUnit.SECONDS);
+            fail("Expected the request to fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof HttpResponseException);
+            assertEquals(((HttpResponseException) e.getCause()).getStatusCode(), 400);
+        }
+        assertEquals(_requests.get(), 1);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testCircuitOpensAfterConsecutiveFailures() throws Exception
+    {
+        for (int i = 0; i < 10; i++)
+        {
+            _statuses.add(500);
+        }
+        try (SmsTransport transport = new SmsTransport(_endpoint, new SmsTransport.Settings()
+            .withMaxAttempts(1).withFailureThreshold(2).withOpenDuration(Duration.ofMinutes(1))))
+        {
+            for (int i = 0; i < 4; i++)
+            {
+                try
+                {
+                    transport.post("{}").get(5, TimeUnit.SECONDS);
+                    fail("Expected the request to fail");
+                }
+                catch (ExecutionException e)
+                {
+                    assertTrue(i < 2 ? e.getCause() instanceof HttpResponseException
+                        : e.getCause() instanceof RejectedExecutionException, String.valueOf(e.getCause()));
+                }
+            }
+            assertEquals(transport.getCircuitState(), SmsTransport.CircuitBreaker.State.OPEN);
+        }
+        assertEquals(_requests.get(), 2);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testRequestsAreThrottled() throws Exception
+    {
+        try (SmsTransport transport = new SmsTransport(_endpoint, new SmsTransport.Settings()
+            .withThreads(4).withPermitsPerSecond(10)))
+        {
+            long start = System.nanoTime();
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 6; i++)
+            {
+                responses.add(transport.post("{}"));
+            }
+            for (Future<String> response : responses)
+            {
+                response.get(5, TimeUnit.SECONDS);
+            }
+            // The first permit is free, each of the remaining five waits 100ms
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 400L);
+        }
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testCircuitBreakerHalfOpenTrial()
+    {
+        AtomicLong now = new AtomicLong();
+        SmsTransport.CircuitBreaker breaker = new SmsTransport.CircuitBreaker(2, Duration.ofNanos(100), now::get);
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(breaker.getState(), SmsTransport.CircuitBreaker.State.OPEN);
+        assertFalse(breaker.allowRequest());
+
+        now.set(100);
+        assertTrue(breaker.allowRequest());
+        assertEquals(breaker.getState(), SmsTransport.CircuitBreaker.State.HALF_OPEN);
+        assertFalse(breaker.allowRequest(), "Only one trial request is allowed");
+        breaker.recordFailure();
+        assertEquals(breaker.getState(), SmsTransport.CircuitBreaker.State.OPEN);
+
+        now.set(200);
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals(breaker.getState(), SmsTransport.CircuitBreaker.State.CLOSED);
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testBackoffGrowsExponentially()
+    {
+        for (int attempt = 1; attempt <= 5; attempt++)
+        {
+            long delay = SmsTransport.getBackoffMillis(100L, attempt);
+            long max = 100L << (attempt - 1);
+            assertTrue(delay >= max / 2 && delay <= max, attempt + ": " + delay);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+
+package com.example.app.ksupport;
+
+import arrow.core.Try;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Unit test for {@link URLShortenerService}'s cache file.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class URLShortenerServiceTest
+{
+    private static final long TTL_HOURS = 168;
+    private static final String FRESH_URL = "https://example.com/fresh";
+    private static final String EXPIRED_URL = "https://example.com/expired";
+    private static final String MALFORMED_URL = "https://example.com/malformed";
+
+    private File _cacheFile;
+
+    @BeforeMethod
+    public void createCacheFile() throws IOException
+    {
+        _cacheFile = File.createTempFile("url-shortener", ".properties");
+    }
+
+    @AfterMethod
+    public void deleteCacheFile() throws IOException
+    {
+        Files.deleteIfExists(_cacheFile.toPath());
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testLoadKeepsWriteTime() throws IOException
+    {
+        final long now = System.currentTimeMillis();
+        final String fresh = (now - TimeUnit.HOURS.toMillis(1)) + " https://s.example/fresh";
+        final Properties properties = new Properties();
+        properties.setProperty(FRESH_URL, fresh);
+        final long expiredAt = now - TimeUnit.HOURS.toMillis(TTL_HOURS + 1);
+        properties.setProperty(EXPIRED_URL, expiredAt + " https://s.example/expired");
+        properties.setProperty(MALFORMED_URL, "https://s.example/malformed");
+        _store(properties);
+
+        final URLShortenerService service = _createService();
+        service.loadCache();
+        assertEquals(service.shorten(FRESH_URL), new Try.Success<>("https://s.example/fresh"));
+        service.saveCache();
+
+        final Properties saved = _load();
+        assertEquals(saved.getProperty(FRESH_URL), fresh);
+        assertNull(saved.getProperty(EXPIRED_URL));
+        assertNull(saved.getProperty(MALFORMED_URL));
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testRestartDoesNotExtendTtl() throws IOException
+    {
+        final String fresh = System.currentTimeMillis() + " https://s.example/fresh";
+        final Properties properties = new Properties();
+        properties.setProperty(FRESH_URL, fresh);
+        _store(properties);
+
+        for (int i = 0; i < 3; i++)
+        {
+            final URLShortenerService service = _createService();
+            service.loadCache();
+            service.saveCache();
+        }
+
+        assertEquals(_load().getProperty(FRESH_URL), fresh);
+    }
+
+    private URLShortenerService _createService()
+    {
+        return new URLShortenerService("key", 1000.0, 100L, TTL_HOURS, _cacheFile.getPath());
+    }
+
+    private void _store(Properties properties) throws IOException
+    {
+        try (OutputStream out = Files.newOutputStream(_cacheFile.toPath()))
+        {
+            properties.store(out, null);
+        }
+    }
+
+    private Properties _load() throws IOException
+    {
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(_cacheFile.toPath()))
+        {
+            properties.load(in);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.profile.model;
+
+import com.example.app.profile.model.location.Location;
+import com.example.app.profile.model.membership.MembershipOperation;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class ProfilePermissionMatrixTest
+{
+    private static Profile profile(int id)
+    {
+        return new Location()
+        {
+            @Override
+            public Integer getId()
+            {
+                return id;
+            }
+        };
+    }
+
+    private static MembershipOperation operation(int id)
+    {
+        MembershipOperation operation = new MembershipOperation();
+        operation.setId(id);
+        operation.setProgrammaticIdentifier("op" + id);
+        return operation;
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testGrants()
+    {
+        final MembershipOperation view = operation(1);
+        final MembershipOperation modify = operation(2);
+        final MembershipOperation delete = operation(3);
+        final Profile p1 = profile(10);
+        final Profile p2 = profile(20);
+        final Profile p3 = profile(30);
+        ProfilePermissionMatrix matrix = new ProfilePermissionMatrix.Builder(view, modify, delete)
+            .grant(10, 1, 2)
+            .grant(20, 1)
+            .grant(20, 3)
+            .grant(30, 99)
+            .build();
+        assertTrue(matrix.canOperate(p1, view));
+        assertTrue(matrix.canOperate(p1, view, modify));
+        assertFalse(matrix.canOperate(p1, delete));
+        assertTrue(matrix.canOperate(p2, view));
+        assertTrue(matrix.canOperate(p2, delete));
+        assertFalse(matrix.canOperate(p2, view, delete), "Operations are split across memberships.");
+        assertFalse(matrix.canOperate(p3, view));
+        assertFalse(matrix.canOperate((Profile) null, view));
+        assertTrue(matrix.canOperate(Arrays.asList(p3, p2), delete));
+        assertFalse(matrix.canOperate(Arrays.asList(p3, p2), modify));
+        assertEquals(matrix.getProfileIds().size(), 2);
+        assertFalse(matrix.isUnrestricted());
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testUnrestricted()
+    {
+        final MembershipOperation view = operation(1);
+        ProfilePermissionMatrix matrix = new ProfilePermissionMatrix.Builder(view).buildUnrestricted();
+        assertTrue(matrix.canOperate(profile(10), view));
+        assertTrue(matrix.canOperate(profile(10), operation(2)));
+        assertTrue(matrix.isUnrestricted());
+    }
+
+    @Test(groups = TestGroups.UNIT, expectedExceptions = IllegalArgumentException.class)
+    public void testUncheckedOperation()
+    {
+        new ProfilePermissionMatrix.Builder(operation(1)).build().canOperate(profile(10), operation(2));
+    }
+}
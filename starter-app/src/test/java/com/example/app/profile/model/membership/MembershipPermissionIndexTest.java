@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.profile.model.membership;
+
+import com.example.app.profile.model.membership.MembershipPermissionIndex.UserPermissions;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class MembershipPermissionIndexTest
+{
+    private static final int PROFILE_1 = 1;
+    private static final int PROFILE_2 = 2;
+    private static final int PROFILE_TYPE = 10;
+    private static final int OP_VIEW = 100;
+    private static final int OP_MODIFY = 101;
+    private static final int OP_DELETE = 102;
+
+    @Test(groups = TestGroups.UNIT)
+    public void testCanOperateRequiresAllOperationsOnOneMembership()
+    {
+        UserPermissions permissions = new UserPermissions(Arrays.asList(
+            new UserPermissions.Builder(PROFILE_1, PROFILE_TYPE, null, null)
+                .addOperation(OP_VIEW).addOperation(OP_MODIFY).build(),
+            new UserPermissions.Builder(PROFILE_2, PROFILE_TYPE, null, null)
+                .addOperation(OP_DELETE).build()));
+        final long now = System.currentTimeMillis();
+        assertTrue(permissions.canOperate(Collections.singletonList(PROFILE_1), now, OP_VIEW));
+        assertTrue(permissions.canOperate(Collections.singletonList(PROFILE_1), now, OP_MODIFY, OP_VIEW));
+        assertTrue(permissions.canOperate(Collections.singletonList(PROFILE_1), now, OP_VIEW, OP_VIEW));
+        assertFalse(permissions.canOperate(Collections.singletonList(PROFILE_1), now, OP_DELETE));
+        assertFalse(permissions.canOperate(Arrays.asList(PROFILE_1, PROFILE_2), now, OP_VIEW, OP_DELETE),
+            "Operations are split across memberships.");
+        assertTrue(permissions.canOperate(Arrays.asList(PROFILE_1, PROFILE_2), now, OP_DELETE));
+        assertTrue(permissions.canOperateOnProfileType(PROFILE_TYPE, now, OP_MODIFY));
+        assertFalse(permissions.canOperateOnProfileType(PROFILE_TYPE + 1, now, OP_MODIFY));
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testCanOperateHonorsMembershipDates()
+    {
+        final long now = System.currentTimeMillis();
+        UserPermissions permissions = new UserPermissions(Arrays.asList(
+            new UserPermissions.Builder(PROFILE_1, PROFILE_TYPE, new Date(now + 10_000L), null)
+                .addOperation(OP_VIEW).build(),
+            new UserPermissions.Builder(PROFILE_2, PROFILE_TYPE, null, new Date(now - 10_000L))
+                .addOperation(OP_VIEW).build()));
+        assertFalse(permissions.canOperate(Collections.singletonList(PROFILE_1), now, OP_VIEW), "Not started.");
+        assertTrue(permissions.canOperate(Collections.singletonList(PROFILE_1), now + 10_000L, OP_VIEW));
+        assertFalse(permissions.canOperate(Collections.singletonList(PROFILE_2), now, OP_VIEW), "Ended.");
+        assertTrue(permissions.canOperate(Collections.singletonList(PROFILE_2), now - 10_000L, OP_VIEW));
+        assertFalse(permissions.canOperateOnProfileType(PROFILE_TYPE, now, OP_VIEW));
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testEmpty()
+    {
+        assertFalse(UserPermissions.EMPTY.canOperate(Collections.singletonList(PROFILE_1), 0L, OP_VIEW));
+        assertFalse(UserPermissions.EMPTY.canOperateOnProfileType(PROFILE_TYPE, 0L, OP_VIEW));
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testSerializableForSharedRegion() throws IOException, ClassNotFoundException
+    {
+        final long now = System.currentTimeMillis();
+        UserPermissions permissions = new UserPermissions(Arrays.asList(
+            new UserPermissions.Builder(PROFILE_1, PROFILE_TYPE, null, new Date(now + 10_000L))
+                .addOperation(OP_VIEW).build(),
+            new UserPermissions.Builder(PROFILE_2, null, null, null)
+                .addOperation(OP_DELETE).build()));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(permissions);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            permissions = (UserPermissions) in.readObject();
+        }
+        assertEquals(permissions.size(), 2);
+        assertTrue(permissions.canOperate(Collections.singletonList(PROFILE_1), now, OP_VIEW));
+        assertFalse(permissions.canOperate(Collections.singletonList(PROFILE_1), now + 20_000L, OP_VIEW));
+        assertTrue(permissions.canOperate(Collections.singletonList(PROFILE_2), now, OP_DELETE));
+        assertFalse(permissions.canOperateOnProfileType(PROFILE_TYPE, now, OP_DELETE));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.profile.model.user;
+
+import com.example.app.profile.model.user.UserSearchIndex.Document;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class UserSearchIndexTest
+{
+    @Test(groups = TestGroups.UNIT)
+    public void testNormalizeStripsCaseAccentsAndWildcards()
+    {
+        assertEquals(Document.normalize("  José ÅNGSTRÖM "), "jose angstrom");
+        assertEquals(Document.normalize("50%_off\\"), "50 off");
+        assertEquals(Document.normalize("O'Brien-Smith"), "o brien-smith");
+        assertEquals(Document.normalize(null), "");
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testTermsAreDistinctAndLimited()
+    {
+        assertEquals(Document.getTerms(" Jose  JOSÉ smith "), Arrays.asList("jose", "smith"));
+        assertEquals(Document.getTerms(" %_ "), Collections.emptyList());
+        assertEquals(Document.getTerms(null), Collections.emptyList());
+        assertEquals(Document.getTerms("a b c d e f g h i j").size(), UserSearchIndex.MAX_TERMS);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testDocumentMatchesWordPrefixes()
+    {
+        Document document = new Document.Builder()
+            .addName("José", "Brien-Smith")
+            .addEmail("Jose.Brien@Example.com")
+            .addEmail("jose.brien@example.com")
+            .build();
+        assertEquals(document.getDocument(),
+            " jose brien-smith brien smith jose.brien@example.com example com ");
+        assertEquals(document.getSortName(), "brien-smith jose");
+        for (String term : Document.getTerms("smi jose.b exam"))
+            assertTrue(document.getDocument().contains(' ' + term), term);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testDocumentWithoutName()
+    {
+        Document document = new Document.Builder().addName(null, null).addEmail("admin@example.com").build();
+        assertEquals(document.getDocument(), " admin@example.com admin example com ");
+        assertEquals(document.getSortName(), "admin@example.com");
+        assertEquals(new Document.Builder().build().getDocument(), " ");
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testDocumentIsTruncatedOnTermBoundary()
+    {
+        Document.Builder builder = new Document.Builder();
+        for (int i = 0; i < 1000; i++)
+            builder.addEmail("user" + i);
+        String document = builder.build().getDocument();
+        assertTrue(document.length() <= Document.MAX_LENGTH);
+        assertTrue(document.endsWith(" user" + (document.split(" ").length - 2) + ' '));
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testNormalizeLogin()
+    {
+        assertEquals(UserSearchIndex.normalizeLogin("  Admin@Example.COM "), "admin@example.com");
+        assertEquals(UserSearchIndex.normalizeLogin(" "), "");
+        assertEquals(UserSearchIndex.normalizeLogin(null), "");
+    }
+}
@@ -21,6 +21,9 @@ import java.time.Month;
 import java.time.Period;
 import java.time.ZonedDateTime;
 import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import com.i2rd.unit.test.TestGroups;
@@ -28,6 +31,9 @@ import com.i2rd.unit.test.TestGroups;
 import static java.time.ZoneOffset.UTC;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 /**
  * Tests.
@@ -284,4 +290,112 @@ public class ICal4jScheduleTest
         assertEquals(instantList.get(4),
             LocalDateTime.of(1970, Month.FEBRUARY, 27, 12, 0).toInstant(UTC));
     }
+
+    /**
+     * Test that schedule times are shared between schedules with the same rule and window.
+     *
+     * @throws Exception the exception
+     */
+    @Test(groups = TestGroups.UNIT)
+    public void testScheduleMemoized() throws Exception
+    {
+        String rrule = "FREQ=WEEKLY;BYDAY=TU;BYHOUR=9";
+        ICal4jSchedule schedule = new ICal4jSchedule();
+        schedule.setRepeat(true);
+        schedule.setRecurrenceRule(rrule);
+        ICal4jSchedule other = (ICal4jSchedule) schedule.copy();
+        ScheduleContext scheduleContext = new ScheduleContext(Period.ofMonths(1), Instant.EPOCH);
+        final List<Instant> instantList = schedule.schedule(scheduleContext);
+        assertEquals(instantList.size(), 4);
+        assertSame(other.schedule(new ScheduleContext(Period.ofMonths(1), Instant.EPOCH.plus(Duration.ofHours(6)))),
+            instantList);
+
+        other.setRepeat(false);
+        final List<Instant> single = other.schedule(scheduleContext);
+        assertNotSame(single, instantList);
+        assertEquals(single.size(), 1);
+        assertEquals(single.get(0), instantList.get(0));
+    }
+
+    /**
+     * Test that a repeating schedule is bounded by the window rather than a count in the rule.
+     *
+     * @throws Exception the exception
+     */
+    @Test(groups = TestGroups.UNIT)
+    public void testScheduleRepeatIgnoresCount() throws Exception
+    {
+        ICal4jSchedule schedule = new ICal4jSchedule();
+        schedule.setRepeat(true);
+        schedule.setRecurrenceRule("FREQ=DAILY;COUNT=2;BYHOUR=12");
+        ScheduleContext scheduleContext = new ScheduleContext(Duration.ofDays(5), Instant.EPOCH);
+        final List<Instant> instantList = schedule.schedule(scheduleContext);
+        assertEquals(instantList.size(), 5);
+        assertEquals(instantList.get(4), LocalDateTime.of(1970, Month.JANUARY, 5, 12, 0).toInstant(UTC));
+    }
+
+    /**
+     * Test the lazy schedule iterator.
+     *
+     * @throws Exception the exception
+     */
+    @Test(groups = TestGroups.UNIT)
+    public void testScheduleIterator() throws Exception
+    {
+        ICal4jSchedule schedule = new ICal4jSchedule();
+        schedule.setRepeat(true);
+        schedule.setRecurrenceRule("FREQ=HOURLY;INTERVAL=5;BYMINUTE=10");
+        ScheduleContext scheduleContext = new ScheduleContext(Period.ofMonths(3), Instant.EPOCH);
+        final List<Instant> instantList = new ArrayList<>();
+        schedule.scheduleIterator(scheduleContext).forEachRemaining(instantList::add);
+        assertEquals(instantList.size(), 432);
+        assertEquals(instantList, schedule.schedule(scheduleContext));
+
+        // Later batches continue from an occurrence and must stay aligned with the rule.
+        for (String rrule : new String[]{"FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,WE;BYHOUR=9,17",
+            "FREQ=MONTHLY;BYDAY=MO,TU,WE,TH,FR;BYSETPOS=-1", "FREQ=DAILY;INTERVAL=3;BYHOUR=3;BYMINUTE=30"})
+        {
+            schedule.setRecurrenceRule(rrule);
+            scheduleContext = new ScheduleContext(Period.ofYears(10), Instant.EPOCH);
+            final List<Instant> iterated = new ArrayList<>();
+            schedule.scheduleIterator(scheduleContext).forEachRemaining(iterated::add);
+            assertEquals(iterated, schedule.schedule(scheduleContext), rrule);
+        }
+
+        // A century of minutes is never materialized.
+        schedule.setRecurrenceRule("FREQ=MINUTELY;INTERVAL=7");
+        scheduleContext = new ScheduleContext(Period.ofYears(100), Instant.EPOCH);
+        final Iterator<Instant> iterator = schedule.scheduleIterator(scheduleContext);
+        assertEquals(iterator.next(), Instant.EPOCH);
+        assertEquals(iterator.next(), Instant.EPOCH.plus(Duration.ofMinutes(7)));
+        assertTrue(iterator.hasNext());
+    }
+
+    /**
+     * Test the next schedule times after a time.
+     *
+     * @throws Exception the exception
+     */
+    @Test(groups = TestGroups.UNIT)
+    public void testScheduleNext() throws Exception
+    {
+        ICal4jSchedule schedule = new ICal4jSchedule();
+        schedule.setRepeat(true);
+        schedule.setRecurrenceRule("FREQ=MINUTELY;INTERVAL=7");
+        ScheduleContext scheduleContext = new ScheduleContext(Period.ofYears(100), Instant.EPOCH);
+        final Instant after = Instant.EPOCH.plus(Duration.ofMinutes(70));
+        assertEquals(schedule.scheduleNext(scheduleContext, after, 2), Arrays.asList(
+            Instant.EPOCH.plus(Duration.ofMinutes(77)), Instant.EPOCH.plus(Duration.ofMinutes(84))));
+
+        schedule.setRecurrenceRule("FREQ=MONTHLY;BYMONTHDAY=-1;BYHOUR=12");
+        schedule.setTemporalDirection(TemporalDirection.PAST);
+        scheduleContext = new ScheduleContext(Period.ofYears(1), Instant.EPOCH);
+        assertEquals(schedule.scheduleNext(scheduleContext, Instant.EPOCH.minus(Duration.ofDays(62)), 2),
+            Arrays.asList(LocalDateTime.of(1969, Month.OCTOBER, 31, 12, 0).toInstant(UTC),
+                LocalDateTime.of(1969, Month.NOVEMBER, 30, 12, 0).toInstant(UTC)));
+
+        schedule.setRepeat(false);
+        assertTrue(schedule.scheduleNext(scheduleContext, Instant.EPOCH, 1).isEmpty());
+        assertEquals(schedule.scheduleNext(scheduleContext, Instant.MIN, 1), schedule.schedule(scheduleContext));
+    }
 }
\ No newline at end of file
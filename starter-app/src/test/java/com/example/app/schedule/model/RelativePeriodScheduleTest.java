@@ -17,10 +17,15 @@ import java.sql.Time;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.Period;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import com.i2rd.unit.test.TestGroups;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 /**
@@ -146,4 +151,64 @@ public class RelativePeriodScheduleTest
         assertEquals(schedule.schedule(scheduleContext).get(14),
             Instant.EPOCH.plus(duration).plusSeconds(time.toLocalTime().toSecondOfDay()));
     }
+
+    /**
+     * Test the lazy schedule iterator.
+     *
+     * @throws Exception the exception
+     */
+    @Test(groups = TestGroups.UNIT)
+    public void testScheduleIterator() throws Exception
+    {
+        RelativePeriodSchedule schedule = new RelativePeriodSchedule();
+        schedule.setRepeat(true);
+        schedule.setTime(Time.valueOf("12:00:00"));
+        schedule.setPeriod(Period.ofDays(2));
+        ScheduleContext scheduleContext = new ScheduleContext(Duration.ofDays(30), Instant.EPOCH);
+        assertEquals(schedule.scheduleStream(scheduleContext).collect(Collectors.toList()),
+            schedule.schedule(scheduleContext));
+
+        schedule.setTemporalDirection(TemporalDirection.PAST);
+        assertEquals(schedule.scheduleStream(scheduleContext).collect(Collectors.toList()),
+            schedule.schedule(scheduleContext));
+
+        // A thousand years of days is never materialized.
+        schedule.setTemporalDirection(TemporalDirection.FUTURE);
+        schedule.setPeriod(Period.ofDays(1));
+        scheduleContext = new ScheduleContext(Period.ofYears(1_000), Instant.EPOCH);
+        final Iterator<Instant> iterator = schedule.scheduleIterator(scheduleContext);
+        assertEquals(iterator.next(), Instant.EPOCH.plus(Duration.ofHours(36)));
+        assertEquals(iterator.next(), Instant.EPOCH.plus(Duration.ofHours(60)));
+        assertTrue(iterator.hasNext());
+    }
+
+    /**
+     * Test the next schedule times after a time.
+     *
+     * @throws Exception the exception
+     */
+    @Test(groups = TestGroups.UNIT)
+    public void testScheduleNext() throws Exception
+    {
+        RelativePeriodSchedule schedule = new RelativePeriodSchedule();
+        schedule.setRepeat(true);
+        schedule.setPeriod(Period.ofDays(1));
+        ScheduleContext scheduleContext = new ScheduleContext(Period.ofYears(1_000), Instant.EPOCH);
+        final Instant after = Instant.EPOCH.plus(Duration.ofDays(10));
+        assertEquals(schedule.scheduleNext(scheduleContext, after, 2), Arrays.asList(
+            Instant.EPOCH.plus(Duration.ofDays(11)), Instant.EPOCH.plus(Duration.ofDays(12))));
+
+        schedule.setTemporalDirection(TemporalDirection.PAST);
+        scheduleContext = new ScheduleContext(Duration.ofDays(30), Instant.EPOCH);
+        final Instant pastAfter = Instant.EPOCH.minus(Duration.ofDays(10));
+        final List<Instant> next = schedule.scheduleNext(scheduleContext, pastAfter, 2);
+        assertEquals(next, Arrays.asList(
+            Instant.EPOCH.minus(Duration.ofDays(9)), Instant.EPOCH.minus(Duration.ofDays(8))));
+        assertEquals(next, schedule.schedule(scheduleContext).stream()
+            .filter(time -> time.isAfter(pastAfter))
+            .sorted()
+            .limit(2)
+            .collect(Collectors.toList()));
+        assertFalse(schedule.scheduleNext(scheduleContext, Instant.EPOCH, 2).iterator().hasNext());
+    }
 }
\ No newline at end of file
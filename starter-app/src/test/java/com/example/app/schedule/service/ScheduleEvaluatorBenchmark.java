@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.schedule.service;
+
+import com.example.app.schedule.model.Schedule;
+import com.example.app.schedule.model.ScheduleContext;
+import com.example.app.schedule.model.TemporalDirection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.testng.annotations.Test;
+
+import java.sql.Time;
+import java.time.Instant;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for {@link ScheduleEvaluator} over 10,000 mixed ICal4j and relative period schedules, compared to
+ * scheduling them one by one and sorting the result.  Every window starts on a different day, so the ICal4jSchedule
+ * expansion cache does not serve repeated invocations.
+ * <br><br>
+ * Part of the manual test group, run with {@code gradle test -PtestGroups=manual}.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScheduleEvaluatorBenchmark
+{
+    private static final int SCHEDULE_COUNT = 10_000;
+    private static final String[] DAYS = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+
+    @Param({"1", "4"})
+    private int _parallelism;
+
+    private List<Schedule> _schedules;
+    private ScheduleEvaluator _evaluator;
+    private int _window;
+
+    /**
+     * Build the schedules and the evaluator.
+     */
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        final Random random = new Random(20261018L);
+        _schedules = new ArrayList<>(SCHEDULE_COUNT);
+        for (int i = 0; i < SCHEDULE_COUNT; i++)
+        {
+            final TemporalDirection direction = random.nextInt(10) == 0 ? TemporalDirection.PAST
+                : TemporalDirection.FUTURE;
+            if (random.nextBoolean())
+            {
+                final String rule;
+                switch (random.nextInt(4))
+                {
+                    case 0:
+                        rule = "FREQ=DAILY;BYHOUR=" + random.nextInt(24);
+                        break;
+                    case 1:
+                        rule = "FREQ=WEEKLY;BYDAY=" + DAYS[random.nextInt(DAYS.length)] + ";BYHOUR=" + random.nextInt(24);
+                        break;
+                    case 2:
+                        rule = "FREQ=MONTHLY;BYMONTHDAY=" + (random.nextInt(28) + 1) + ";BYHOUR=12";
+                        break;
+                    default:
+                        rule = "FREQ=HOURLY;INTERVAL=" + (random.nextInt(12) + 1);
+                        break;
+                }
+                _schedules.add(ScheduleEvaluatorTest.ical4j(rule, direction));
+            }
+            else
+            {
+                _schedules.add(ScheduleEvaluatorTest.relative(Period.ofDays(random.nextInt(30) + 1),
+                    Time.valueOf(random.nextInt(24) + ":00:00"), direction));
+            }
+        }
+        _evaluator = new ScheduleEvaluator(_parallelism, ScheduleEvaluator.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Shutdown the evaluator.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        _evaluator.close();
+    }
+
+    /**
+     * Evaluate every schedule over the next month.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    public void evaluate(Blackhole blackhole)
+    {
+        _evaluator.evaluateIterator(_schedules, _nextContext()).forEachRemaining(blackhole::consume);
+    }
+
+    /**
+     * Schedule every schedule over the next month one by one, then sort the times.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    public void scheduleOneByOne(Blackhole blackhole)
+    {
+        final ScheduleContext scheduleContext = _nextContext();
+        final List<Instant> times = new ArrayList<>();
+        for (Schedule schedule : _schedules)
+        {
+            times.addAll(schedule.schedule(scheduleContext));
+        }
+        times.sort(null);
+        times.forEach(blackhole::consume);
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @throws RunnerException on error
+     */
+    @Test(groups = "manual")
+    public void runBenchmark() throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(ScheduleEvaluatorBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private ScheduleContext _nextContext()
+    {
+        return new ScheduleContext(Period.ofMonths(1), Instant.ofEpochSecond(86_400L * _window++));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.schedule.service;
+
+import com.example.app.schedule.model.ICal4jSchedule;
+import com.example.app.schedule.model.RelativePeriodSchedule;
+import com.example.app.schedule.model.Schedule;
+import com.example.app.schedule.model.ScheduleContext;
+import com.example.app.schedule.model.TemporalDirection;
+import org.testng.annotations.Test;
+
+import java.sql.Time;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Tests for {@link ScheduleEvaluator}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class ScheduleEvaluatorTest
+{
+    /**
+     * Create a repeating ICal4jSchedule.
+     *
+     * @param rule the recurrence rule
+     * @param direction the temporal direction
+     *
+     * @return the schedule
+     */
+    static ICal4jSchedule ical4j(String rule, TemporalDirection direction)
+    {
+        ICal4jSchedule schedule = new ICal4jSchedule();
+        schedule.setRepeat(true);
+        schedule.setRecurrenceRule(rule);
+        schedule.setTemporalDirection(direction);
+        return schedule;
+    }
+
+    /**
+     * Create a repeating RelativePeriodSchedule.
+     *
+     * @param period the period
+     * @param time the time of day, may be null
+     * @param direction the temporal direction
+     *
+     * @return the schedule
+     */
+    static RelativePeriodSchedule relative(Period period, Time time, TemporalDirection direction)
+    {
+        RelativePeriodSchedule schedule = new RelativePeriodSchedule();
+        schedule.setRepeat(true);
+        schedule.setPeriod(period);
+        schedule.setTime(time);
+        schedule.setTemporalDirection(direction);
+        return schedule;
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testOccurrencesMatchEachSchedule()
+    {
+        List<Schedule> schedules = new ArrayList<>();
+        schedules.add(ical4j("FREQ=DAILY;BYHOUR=9", TemporalDirection.FUTURE));
+        schedules.add(relative(Period.ofDays(3), Time.valueOf("09:00:00"), TemporalDirection.FUTURE));
+        schedules.add(ical4j("FREQ=WEEKLY;BYDAY=MO,TH;BYHOUR=9", TemporalDirection.FUTURE));
+        schedules.add(ical4j("FREQ=DAILY;BYHOUR=9", TemporalDirection.FUTURE));
+        schedules.add(relative(Period.ofDays(2), null, TemporalDirection.PAST));
+        schedules.add(ical4j("FREQ=HOURLY;INTERVAL=7", TemporalDirection.PAST));
+        schedules.add(relative(Period.ofDays(3), Time.valueOf("09:00:00"), TemporalDirection.FUTURE));
+        ScheduleContext scheduleContext = new ScheduleContext(Period.ofMonths(2), Instant.EPOCH);
+
+        Map<Object, Integer> ruleOrder = new LinkedHashMap<>();
+        schedules.forEach(schedule -> ruleOrder.putIfAbsent(schedule.getRuleKey(), ruleOrder.size()));
+        List<Object[]> expected = new ArrayList<>();
+        for (Schedule schedule : schedules)
+        {
+            schedule.schedule(scheduleContext).forEach(time -> expected.add(new Object[]{time, schedule}));
+        }
+        expected.sort(Comparator.<Object[], Instant>comparing(o -> (Instant) o[0])
+            .thenComparingInt(o -> ruleOrder.get(((Schedule) o[1]).getRuleKey())));
+
+        try (ScheduleEvaluator evaluator = new ScheduleEvaluator(2, 5))
+        {
+            List<ScheduleEvaluator.Occurrence> occurrences = evaluator.evaluate(schedules, scheduleContext)
+                .collect(Collectors.toList());
+            assertEquals(occurrences.size(), expected.size());
+            for (int i = 0; i < occurrences.size(); i++)
+            {
+                assertEquals(occurrences.get(i).getTime(), expected.get(i)[0]);
+                assertSame(occurrences.get(i).getSchedule(), expected.get(i)[1]);
+            }
+        }
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testIdenticalRulesEvaluatedOnce()
+    {
+        AtomicInteger evaluations = new AtomicInteger();
+        List<Schedule> schedules = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            schedules.add(new CountingSchedule(evaluations));
+        }
+        ScheduleContext scheduleContext = new ScheduleContext(Period.ofDays(10), Instant.EPOCH);
+
+        try (ScheduleEvaluator evaluator = new ScheduleEvaluator(2, ScheduleEvaluator.DEFAULT_CHUNK_SIZE))
+        {
+            assertEquals(evaluator.evaluate(schedules, scheduleContext).count(), 1_000L);
+            assertEquals(evaluations.get(), 1);
+        }
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testEarlyTermination()
+    {
+        List<Schedule> schedules = new ArrayList<>();
+        schedules.add(ical4j("FREQ=MINUTELY;INTERVAL=10", TemporalDirection.FUTURE));
+        schedules.add(relative(Period.ofDays(1), null, TemporalDirection.FUTURE));
+        ScheduleContext scheduleContext = new ScheduleContext(Period.ofYears(500), Instant.EPOCH);
+
+        try (ScheduleEvaluator evaluator = new ScheduleEvaluator(2, ScheduleEvaluator.DEFAULT_CHUNK_SIZE);
+             Stream<ScheduleEvaluator.Occurrence> occurrences = evaluator.evaluate(schedules, scheduleContext))
+        {
+            List<Instant> times = occurrences.limit(146)
+                .map(ScheduleEvaluator.Occurrence::getTime)
+                .collect(Collectors.toList());
+            assertEquals(times.get(0), Instant.EPOCH);
+            assertEquals(times.get(144), Instant.EPOCH.plus(Duration.ofDays(1)));
+            assertEquals(times.get(145), Instant.EPOCH.plus(Duration.ofDays(1)));
+        }
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testBadRuleIsSkipped()
+    {
+        List<Schedule> schedules = new ArrayList<>();
+        schedules.add(ical4j("garbage", TemporalDirection.FUTURE));
+        schedules.add(relative(Period.ofDays(1), null, TemporalDirection.FUTURE));
+        ScheduleContext scheduleContext = new ScheduleContext(Period.ofDays(3), Instant.EPOCH);
+
+        try (ScheduleEvaluator evaluator = new ScheduleEvaluator(1, ScheduleEvaluator.DEFAULT_CHUNK_SIZE))
+        {
+            Iterator<ScheduleEvaluator.Occurrence> occurrences = evaluator.evaluateIterator(schedules, scheduleContext);
+            for (int i = 1; i <= 3; i++)
+            {
+                ScheduleEvaluator.Occurrence occurrence = occurrences.next();
+                assertSame(occurrence.getSchedule(), schedules.get(1));
+                assertEquals(occurrence.getTime(), Instant.EPOCH.plus(Duration.ofDays(i)));
+            }
+            assertFalse(occurrences.hasNext());
+        }
+    }
+
+    /**
+     * Counts the evaluations of its rule.
+     */
+    private static class CountingSchedule extends RelativePeriodSchedule
+    {
+        private static final long serialVersionUID = 6395834578193401811L;
+        private final AtomicInteger _evaluations;
+
+        CountingSchedule(AtomicInteger evaluations)
+        {
+            _evaluations = evaluations;
+            setRepeat(true);
+            setPeriod(Period.ofDays(1));
+        }
+
+        @Override
+        public Iterator<Instant> scheduleChronologically(ScheduleContext scheduleContext)
+        {
+            _evaluations.incrementAndGet();
+            return super.scheduleChronologically(scheduleContext);
+        }
+    }
+}
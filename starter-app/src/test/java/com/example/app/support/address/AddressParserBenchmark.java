@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.address;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for {@link AddressParser#parseAddress(String)} over the addresses parsed by {@link AddressParserTest},
+ * loaded with {@link AddressParserTest#loadCorpus()}.
+ * <br><br>
+ * Part of the manual test group, run with {@code gradle test -PtestGroups=manual}.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressParserBenchmark
+{
+    private List<String> _corpus;
+
+    /**
+     * Load the corpus.
+     */
+    @Setup
+    public void setup()
+    {
+        _corpus = AddressParserTest.loadCorpus();
+    }
+
+    /**
+     * Parse every address in the corpus.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    public void parseAddress(Blackhole blackhole)
+    {
+        for (String address : _corpus)
+        {
+            blackhole.consume(AddressParser.parseAddress(address));
+        }
+    }
+
+    /**
+     * Parse and normalize every address in the corpus.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    public void parseAndNormalizeAddress(Blackhole blackhole)
+    {
+        for (String address : _corpus)
+        {
+            Map<AddressComponent, String> parsed = AddressParser.parseAddress(address);
+            blackhole.consume(AddressStandardizer.toSingleLine(AddressStandardizer.normalizeParsedAddress(parsed)));
+        }
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @throws RunnerException on error
+     */
+    @Test(groups = "manual")
+    public void runBenchmark() throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(AddressParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -13,10 +13,19 @@ package com.example.app.support.address;
 
 import org.testng.annotations.Test;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import com.i2rd.unit.test.TestGroups;
 
@@ -24,19 +33,61 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.AssertJUnit.assertTrue;
 
 
+/**
+ * Unit test for {@link AddressParser}.
+ * <br><br>
+ * Every address parsed here must be in {@value #CORPUS_RESOURCE}, which the address benchmarks load with
+ * {@link #loadCorpus()}, so the benchmarks measure the addresses this test covers.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
 public class AddressParserTest
 {
+    /** The resource, relative to this class, listing the addresses parsed by this test, one per line */
+    static final String CORPUS_RESOURCE = "address-corpus.txt";
+    private static final Set<String> CORPUS = new HashSet<>(loadCorpus());
+
+    /**
+     * Load the addresses parsed by this test.
+     *
+     * @return the addresses
+     */
+    static List<String> loadCorpus()
+    {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            AddressParserTest.class.getResourceAsStream(CORPUS_RESOURCE), StandardCharsets.UTF_8)))
+        {
+            return reader.lines().filter(line -> !line.isEmpty()).collect(Collectors.toList());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parse an address, checking that it is in the corpus.
+     *
+     * @param address the address
+     *
+     * @return the parsed address
+     */
+    private static Map<AddressComponent, String> _parse(String address)
+    {
+        assertTrue(address + " is missing from " + CORPUS_RESOURCE, CORPUS.contains(address));
+        return AddressParser.parseAddress(address);
+    }
 
     @Test(groups = TestGroups.UNIT)
     public void testParseAddress()
     {
         String addr1 = "123 Avenue of art, philadelphia pa 12345";
-        Map<AddressComponent, String> addressComponents = AddressParser.parseAddress(addr1);
+        Map<AddressComponent, String> addressComponents = _parse(addr1);
         assertEquals("12345", addressComponents.get(AddressComponent.ZIP));
         assertEquals("philadelphia", addressComponents.get(AddressComponent.CITY));
         assertEquals("pa", addressComponents.get(AddressComponent.STATE));
         assertEquals("123", addressComponents.get(AddressComponent.NUMBER));
-        addressComponents = AddressParser.parseAddress("123 FISH AND GAME rd philadelphia pa 12345");
+        addressComponents = _parse("123 FISH AND GAME rd philadelphia pa 12345");
         assertEquals("12345", addressComponents.get(AddressComponent.ZIP));
         assertEquals("philadelphia", addressComponents.get(AddressComponent.CITY));
         assertEquals("pa", addressComponents.get(AddressComponent.STATE));
@@ -49,7 +100,7 @@ public class AddressParserTest
     public void testParseAddress2()
     {
         String addr1 = " 14625 County Road 672, Wimauma, FL 33598";
-        Map<AddressComponent, String> addressComponents = AddressParser.parseAddress(addr1);
+        Map<AddressComponent, String> addressComponents = _parse(addr1);
         System.out.println("addressComponents: " + addressComponents);
         // {CITY=Wimauma, ZIP=33598, STREET=County, STATE=FL, LINE2=672, TYPE=Road, NUMBER=14625}
         assertEquals("14625", addressComponents.get(AddressComponent.NUMBER));
@@ -64,11 +115,11 @@ public class AddressParserTest
     public void testSaintNameExpansion()
     {
         String addr1 = "St. louis Missouri";
-        Map<AddressComponent, String> m = AddressStandardizer.normalizeParsedAddress(AddressParser.parseAddress(addr1));
+        Map<AddressComponent, String> m = AddressStandardizer.normalizeParsedAddress(_parse(addr1));
         assertEquals("SAINT LOUIS", m.get(AddressComponent.CITY));
         assertEquals("MO", m.get(AddressComponent.STATE));
         addr1 = "123 St peters ave, St. louis Missouri";
-        m = AddressStandardizer.normalizeParsedAddress(AddressParser.parseAddress(addr1));
+        m = AddressStandardizer.normalizeParsedAddress(_parse(addr1));
         assertEquals("SAINT LOUIS", m.get(AddressComponent.CITY));
         assertEquals("SAINT PETERS", m.get(AddressComponent.STREET));
         assertEquals("MO", m.get(AddressComponent.STATE));
@@ -78,7 +129,7 @@ public class AddressParserTest
     public void testOrdinalNormalization()
     {
         String addr1 = "Mozilla Corporation, 1981 second street building K Mountain View CA 94043-0801";
-        Map<AddressComponent, String> m = AddressStandardizer.normalizeParsedAddress(AddressParser.parseAddress(addr1));
+        Map<AddressComponent, String> m = AddressStandardizer.normalizeParsedAddress(_parse(addr1));
         System.out.println(m);
         assertEquals("MOUNTAIN VIEW", m.get(AddressComponent.CITY));
         assertEquals("CA", m.get(AddressComponent.STATE));
@@ -90,20 +141,20 @@ public class AddressParserTest
     public void testDesignatorConfusingCitiesParsing()
     {
         String addr1 = "123 main street St. louis Missouri";
-        Map<AddressComponent, String> m = AddressStandardizer.normalizeParsedAddress(AddressParser.parseAddress(addr1));
+        Map<AddressComponent, String> m = AddressStandardizer.normalizeParsedAddress(_parse(addr1));
         assertEquals("123", m.get(AddressComponent.NUMBER));
         assertEquals("MAIN", m.get(AddressComponent.STREET));
         assertEquals("ST", m.get(AddressComponent.TYPE));
         assertEquals("SAINT LOUIS", m.get(AddressComponent.CITY));
         assertEquals("MO", m.get(AddressComponent.STATE));
         addr1 = "123 south lake park  Fort Duchesne Utah";
-        m = AddressStandardizer.normalizeParsedAddress(AddressParser.parseAddress(addr1));
+        m = AddressStandardizer.normalizeParsedAddress(_parse(addr1));
         assertEquals("FORT DUCHESNE", m.get(AddressComponent.CITY));
         assertEquals("LAKE", m.get(AddressComponent.STREET));
         assertEquals("PARK", m.get(AddressComponent.TYPE));
         assertEquals("UT", m.get(AddressComponent.STATE));
         addr1 = "123 south lake park apt 200 Fort Duchesne Utah";
-        m = AddressStandardizer.normalizeParsedAddress(AddressParser.parseAddress(addr1));
+        m = AddressStandardizer.normalizeParsedAddress(_parse(addr1));
         assertEquals("FORT DUCHESNE", m.get(AddressComponent.CITY));
         assertEquals("LAKE", m.get(AddressComponent.STREET));
         assertEquals("PARK", m.get(AddressComponent.TYPE));
@@ -111,7 +162,7 @@ public class AddressParserTest
         assertEquals("APT 200", m.get(AddressComponent.LINE2));
 
         addr1 = "123 main st cape may court house nj";
-        m = AddressStandardizer.normalizeParsedAddress(AddressParser.parseAddress(addr1));
+        m = AddressStandardizer.normalizeParsedAddress(_parse(addr1));
         assertEquals("CAPE MAY COURT HOUSE", m.get(AddressComponent.CITY));
         assertEquals("NJ", m.get(AddressComponent.STATE));
 
@@ -1620,7 +1671,7 @@ public class AddressParserTest
     {
         String address = "123 Route 29 South, Trenton, new jersey, 12323";
 
-        Map<AddressComponent, String> results = AddressParser.parseAddress(address);
+        Map<AddressComponent, String> results = _parse(address);
 
         String name = results.get(AddressComponent.NAME);
         String streetNumber = results.get(AddressComponent.NUMBER);
@@ -1648,7 +1699,7 @@ public class AddressParserTest
     {
         String address = "123 Avenue of art, philadelphia pa 12345";
 
-        Map<AddressComponent, String> results = AddressParser.parseAddress(address);
+        Map<AddressComponent, String> results = _parse(address);
 
         String name = results.get(AddressComponent.NAME);
         String streetNumber = results.get(AddressComponent.NUMBER);
@@ -1725,7 +1776,7 @@ public class AddressParserTest
             address = address + ", " + state;
         }
 
-        Map<AddressComponent, String> results = AddressParser.parseAddress(address);
+        Map<AddressComponent, String> results = _parse(address);
 
         String splitStreetNumber = results.get(AddressComponent.NUMBER);
         String splitStreetDir = results.get(AddressComponent.PREDIR);
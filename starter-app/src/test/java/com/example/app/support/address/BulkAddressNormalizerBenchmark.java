@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.address;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for {@link BulkAddressNormalizer} throughput by thread count, over 10,000 addresses built from the
+ * {@link AddressParserTest} corpus.  The {@code parallelism} 1 result is the single-threaded baseline.
+ * <br><br>
+ * Part of the manual test group, run with {@code gradle test -PtestGroups=manual}.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkAddressNormalizerBenchmark
+{
+    private static final int ADDRESS_COUNT = 10_000;
+
+    @Param({"1", "2", "4", "8"})
+    private int _parallelism;
+
+    private List<String> _addresses;
+    private BulkAddressNormalizer _normalizer;
+
+    /**
+     * Build the addresses and the normalizer.
+     */
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        final List<String> corpus = AddressParserTest.loadCorpus();
+        _addresses = new ArrayList<>(ADDRESS_COUNT);
+        for (int i = 0; i < ADDRESS_COUNT; i++)
+        {
+            _addresses.add(corpus.get(i % corpus.size()));
+        }
+        _normalizer = new BulkAddressNormalizer(_parallelism, BulkAddressNormalizer.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Shutdown the normalizer.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        _normalizer.close();
+    }
+
+    /**
+     * Normalize all the addresses.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(ADDRESS_COUNT)
+    public void normalize(Blackhole blackhole)
+    {
+        _normalizer.normalize(_addresses.iterator()).forEachRemaining(blackhole::consume);
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @throws RunnerException on error
+     */
+    @Test(groups = "manual")
+    public void runBenchmark() throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(BulkAddressNormalizerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
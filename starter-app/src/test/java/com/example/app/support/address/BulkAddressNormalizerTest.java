@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.address;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link BulkAddressNormalizer}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class BulkAddressNormalizerTest
+{
+    @Test(groups = TestGroups.UNIT)
+    public void testResultsMatchSingleAddressNormalization()
+    {
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            addresses.addAll(AddressParserBenchmark.loadCorpus());
+        }
+        List<String> expected = addresses.stream()
+            .map(address -> AddressStandardizer.toSingleLine(
+                AddressStandardizer.normalizeParsedAddress(AddressParser.parseAddress(address))))
+            .collect(Collectors.toList());
+
+        try (BulkAddressNormalizer normalizer = new BulkAddressNormalizer(4, 16))
+        {
+            List<BulkAddressNormalizer.Result> results = normalizer.normalize(addresses.stream())
+                .collect(Collectors.toList());
+            assertEquals(results.size(), addresses.size());
+            for (int i = 0; i < results.size(); i++)
+            {
+                assertTrue(results.get(i).isSuccess());
+                assertEquals(results.get(i).getRawAddress(), addresses.get(i));
+                assertEquals(results.get(i).getSingleLine(), expected.get(i));
+            }
+        }
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testErrorIsCapturedPerAddress()
+    {
+        List<String> addresses = new ArrayList<>();
+        addresses.add("123 main st cape may court house nj");
+        addresses.add(null);
+        addresses.add("St. louis Missouri");
+
+        try (BulkAddressNormalizer normalizer = new BulkAddressNormalizer(2, 1))
+        {
+            List<BulkAddressNormalizer.Result> results = new ArrayList<>();
+            normalizer.normalize(addresses.iterator()).forEachRemaining(results::add);
+            assertEquals(results.size(), 3);
+            assertTrue(results.get(0).isSuccess());
+            assertFalse(results.get(1).isSuccess());
+            assertNotNull(results.get(1).getError());
+            assertNull(results.get(1).getSingleLine());
+            assertTrue(results.get(1).getAddress().isEmpty());
+            assertTrue(results.get(2).isSuccess());
+            assertEquals(results.get(2).getAddress().get(AddressComponent.CITY), "SAINT LOUIS");
+        }
+    }
+}
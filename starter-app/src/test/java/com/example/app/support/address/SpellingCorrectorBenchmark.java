@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.address;
+
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * JMH benchmark comparing {@link SpellingCorrector#correctStateSpelling(String)} to the brute force search it replaced,
+ * over the {@link AddressParserTest} corpus.
+ * <br><br>
+ * Part of the manual test group, run with {@code gradle test -PtestGroups=manual}.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpellingCorrectorBenchmark
+{
+    private static final Map<Integer, Set<String>> STATE_TOKENS = new HashMap<>();
+    private static final Pattern DIGIT = Pattern.compile("^\\d+$");
+
+    static
+    {
+        for (String s : Data.getSTATE_CODE_MAP().keySet())
+        {
+            int size = s.split("\\s+").length;
+            STATE_TOKENS.computeIfAbsent(size, key -> new HashSet<>()).add(s);
+        }
+    }
+
+    private List<String> _corpus;
+
+    /**
+     * The brute force search that {@link SpellingCorrector#correctStateSpelling(String)} used before it was indexed.
+     *
+     * @param rawAddress the raw address.
+     *
+     * @return rawAddress or spelling corrected address if a state mis-spelling is found
+     */
+    static String bruteForceCorrectStateSpelling(String rawAddress)
+    {
+        String[] originalTokens = rawAddress.split("\\s+");
+        String[] tokens = rawAddress.toUpperCase().split("\\s+");
+        int end = tokens.length - 1;
+        for (int i = end; i > 0; i--)
+        {
+            if (DIGIT.matcher(tokens[i]).matches())
+                end--;
+            else
+                break;
+        }
+        if (tokens[end].length() <= 2)
+            return rawAddress;
+        for (int i = 1; i <= 4; i++)
+        {
+            if (end >= i - 1)
+            {
+                for (String s : STATE_TOKENS.get(i))
+                {
+                    StringBuilder sb = new StringBuilder();
+                    int newEnd = end - i + 1;
+                    for (int j = 0; j < i; j++)
+                    {
+                        sb.append(tokens[newEnd + j]).append(' ');
+                    }
+                    String t = sb.toString().trim();
+                    float metrics = 1f - StringUtils.getLevenshteinDistance(s, t) / (float) Math.max(s.length(), t.length());
+                    if ((int) metrics == 1)
+                    {
+                        return rawAddress;
+                    }
+                    else if (metrics >= 0.75f)
+                    {
+                        for (int j = 0; j < i - 1; j++)
+                        {
+                            originalTokens[newEnd + j] = "";
+                        }
+                        originalTokens[end] = s;
+                        return StringUtils.join(originalTokens, " ");
+                    }
+                }
+            }
+        }
+        return rawAddress;
+    }
+
+    /**
+     * Load the corpus, cleaned up the same way the parser does before correcting the spelling.
+     */
+    @Setup
+    public void setup()
+    {
+        _corpus = AddressParserTest.loadCorpus().stream()
+            .map(address -> address.trim().replaceAll("\\s+", " "))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Correct every address in the corpus using the index.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    public void indexed(Blackhole blackhole)
+    {
+        for (String address : _corpus)
+        {
+            blackhole.consume(SpellingCorrector.correctStateSpelling(address));
+        }
+    }
+
+    /**
+     * Correct every address in the corpus using the brute force search.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    public void bruteForce(Blackhole blackhole)
+    {
+        for (String address : _corpus)
+        {
+            blackhole.consume(bruteForceCorrectStateSpelling(address));
+        }
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @throws RunnerException on error
+     */
+    @Test(groups = "manual")
+    public void runBenchmark() throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(SpellingCorrectorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.address;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link SpellingCorrector}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class SpellingCorrectorTest
+{
+    private static final String[] PREFIXES = {"", "123 main st springfield ", "po box 12 "};
+    private static final String[] SUFFIXES = {"", " 12345", " 12345 6789"};
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz ";
+
+    @Test(groups = TestGroups.UNIT)
+    public void testCorrection()
+    {
+        assertEquals(SpellingCorrector.correctStateSpelling("123 main st springfield Pensylvania 12345"),
+            "123 main st springfield PENNSYLVANIA 12345");
+        assertEquals(SpellingCorrector.correctStateSpelling("123 main st springfield Pennsylvania 12345"),
+            "123 main st springfield Pennsylvania 12345");
+        assertEquals(SpellingCorrector.correctStateSpelling("123 main st springfield pa 12345"),
+            "123 main st springfield pa 12345");
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testSameCorrectionsAsBruteForce()
+    {
+        List<String> inputs = new ArrayList<>(AddressParserBenchmark.loadCorpus());
+        for (String state : Data.getSTATE_CODE_MAP().keySet())
+        {
+            String name = state.toLowerCase();
+            inputs.add(name);
+            for (int i = 0; i < name.length(); i++)
+            {
+                char replacement = LETTERS.charAt((i * 7 + name.length()) % LETTERS.length());
+                inputs.add(name.substring(0, i) + name.substring(i + 1));
+                inputs.add(name.substring(0, i) + replacement + name.substring(i + 1));
+                inputs.add(name.substring(0, i) + replacement + name.substring(i));
+                if (i + 1 < name.length())
+                    inputs.add(name.substring(0, i) + name.charAt(i + 1) + name.charAt(i) + name.substring(i + 2));
+            }
+        }
+        for (String input : inputs)
+        {
+            for (String prefix : PREFIXES)
+            {
+                for (String suffix : SUFFIXES)
+                {
+                    String address = (prefix + input + suffix).trim().replaceAll("\\s+", " ");
+                    if (address.isEmpty()) continue;
+                    assertEquals(SpellingCorrector.correctStateSpelling(address),
+                        SpellingCorrectorBenchmark.bruteForceCorrectStateSpelling(address), address);
+                }
+            }
+        }
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testBoundedDistance()
+    {
+        assertEquals(SpellingCorrector.BKTree.getBoundedDistance("KANSAS", "ARKANSAS", 5), 2);
+        assertEquals(SpellingCorrector.BKTree.getBoundedDistance("KANSAS", "KANSAS", 0), 0);
+        assertEquals(SpellingCorrector.BKTree.getBoundedDistance("OHIO", "WYOMING", 1), 2);
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.service;
+
+import com.example.app.support.model.FileContent;
+import com.example.app.support.model.FileContentDAO;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.i2rd.unit.test.TestGroups;
+
+import net.proteusframework.data.filesystem.DirectoryEntity;
+import net.proteusframework.data.filesystem.FileEntity;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Tests for the reference counting of {@link FileSaver}, against an in-memory directory.
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class FileSaverTest
+{
+    private static final String FILE_NAME = "logo.png";
+    private static final String CONTENT_TYPE = "image/png";
+
+    private final DiskFileItemFactory _fileItemFactory = new DiskFileItemFactory();
+    private final DirectoryEntity _directory = new DirectoryEntity();
+    private FakeFileContentDAO _fileContentDAO;
+    private FakeImageRenditionService _imageRenditionService;
+    private FakeFileSaver _saver;
+
+    @BeforeMethod(groups = TestGroups.UNIT)
+    public void createSaver()
+    {
+        _fileContentDAO = new FakeFileContentDAO();
+        _imageRenditionService = new FakeImageRenditionService();
+        _saver = new FakeFileSaver(_fileContentDAO, _imageRenditionService);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testIdenticalContentIsShared() throws IOException
+    {
+        final Owner first = _saver.save(new Owner(), _item("logo"));
+        final Owner second = _saver.save(new Owner(), _item("logo"));
+        assertSame(second.file, first.file);
+        assertEquals(_fileContentDAO.getContent(first.file).getReferenceCount(), 2);
+        assertEquals(_saver.stored.size(), 1);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testUnchangedContentIsNotStored() throws IOException
+    {
+        final Owner owner = _saver.save(new Owner(), _item("logo"));
+        final FileEntity file = owner.file;
+        _saver.save(owner, _item("logo"));
+        assertSame(owner.file, file);
+        assertEquals(_fileContentDAO.getContent(file).getReferenceCount(), 1);
+        assertEquals(_saver.stored.size(), 1);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testExclusiveFileIsReplacedInPlace() throws IOException
+    {
+        final Owner owner = _saver.save(new Owner(), _item("logo"));
+        final FileEntity file = owner.file;
+        _saver.save(owner, _item("new logo"));
+        assertSame(owner.file, file);
+        assertEquals(_saver.read(file), "new logo");
+        final FileContent content = _fileContentDAO.getContent(file);
+        assertEquals(content.getReferenceCount(), 1);
+        assertEquals(content.getContentLength(), "new logo".length());
+        assertEquals(_imageRenditionService.invalidated, 2);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testSharedFileIsNotOverwritten() throws IOException
+    {
+        final Owner first = _saver.save(new Owner(), _item("logo"));
+        final Owner second = _saver.save(new Owner(), _item("logo"));
+        final FileEntity shared = first.file;
+        _saver.save(first, _item("new logo"));
+        assertNotSame(first.file, shared);
+        assertNotEquals(first.file.getName(), FILE_NAME, "The name is still used by the shared file.");
+        assertEquals(_saver.read(first.file), "new logo");
+        assertSame(second.file, shared);
+        assertEquals(_saver.read(shared), "logo");
+        assertEquals(_fileContentDAO.getContent(shared).getReferenceCount(), 1);
+        assertEquals(_fileContentDAO.getContent(first.file).getReferenceCount(), 1);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testSharedFileReplacedWithIdenticalContentIsShared() throws IOException
+    {
+        final Owner first = _saver.save(new Owner(), _item("logo"));
+        _saver.save(new Owner(), _item("logo"));
+        final Owner other = _saver.save(new Owner(), _item("other"));
+        _saver.save(new Owner(), _item("other"));
+        final FileEntity otherFile = other.file;
+        _saver.save(other, _item("logo"));
+        assertSame(other.file, first.file);
+        assertEquals(_fileContentDAO.getContent(first.file).getReferenceCount(), 3);
+        assertEquals(_fileContentDAO.getContent(otherFile).getReferenceCount(), 1);
+        assertEquals(_saver.read(otherFile), "other");
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testClearingRemovesReference() throws IOException
+    {
+        final Owner first = _saver.save(new Owner(), _item("logo"));
+        final Owner second = _saver.save(new Owner(), _item("logo"));
+        final FileEntity shared = first.file;
+        _saver.save(first, null);
+        assertNull(first.file);
+        assertEquals(_fileContentDAO.getContent(shared).getReferenceCount(), 1);
+        _saver.save(second, null);
+        assertEquals(_fileContentDAO.getContent(shared).getReferenceCount(), 0);
+        final Owner third = _saver.save(new Owner(), _item("logo"));
+        assertEquals(_fileContentDAO.getContent(third.file).getReferenceCount(), 1,
+            "A file without references is not shared.");
+    }
+
+    private FileItem _item(String content) throws IOException
+    {
+        final FileItem item = _fileItemFactory.createItem("file", CONTENT_TYPE, false, FILE_NAME);
+        try (OutputStream out = item.getOutputStream())
+        {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return item;
+    }
+
+    /**
+     * An entity with a file.
+     */
+    private static final class Owner
+    {
+        FileEntity file;
+    }
+
+    /**
+     * A FileSaver storing files in memory, overwriting a file of the same name as the file system does.
+     */
+    private final class FakeFileSaver extends FileSaver<Owner>
+    {
+        final Map<String, FileEntity> files = new LinkedHashMap<>();
+        final Map<FileEntity, String> stored = new IdentityHashMap<>();
+
+        FakeFileSaver(FileContentDAO fileContentDAO, ImageRenditionService imageRenditionService)
+        {
+            super((owner, file) -> {
+                owner.file = file;
+                return owner;
+            }, owner -> owner.file, (owner, item) -> _directory, (owner, item) -> FILE_NAME, owner -> owner,
+                fileContentDAO, imageRenditionService);
+        }
+
+        @Override
+        FileEntity storeFile(DirectoryEntity directory, FileEntity file, FileItem content)
+        {
+            final FileEntity existing = files.get(file.getName());
+            final FileEntity target = existing != null ? existing : file;
+            if (target != file)
+                target.setContentType(file.getContentType());
+            files.put(target.getName(), target);
+            stored.put(target, content.getString());
+            return target;
+        }
+
+        String read(FileEntity file)
+        {
+            return stored.get(file);
+        }
+    }
+
+    /**
+     * FileContentDAO holding content in memory.
+     */
+    private static final class FakeFileContentDAO extends FileContentDAO
+    {
+        private final List<FileContent> _contents = new ArrayList<>();
+
+        @Nullable
+        @Override
+        public FileContent getContent(@Nonnull FileEntity file)
+        {
+            return _contents.stream().filter(content -> content.getFile() == file).findFirst().orElse(null);
+        }
+
+        @Nullable
+        @Override
+        public FileContent lockContent(@Nonnull FileEntity file)
+        {
+            return getContent(file);
+        }
+
+        @Nullable
+        @Override
+        public FileContent lockContent(@Nonnull String hash, @Nonnull DirectoryEntity directory)
+        {
+            return _contents.stream()
+                .filter(content -> content.getDirectory() == directory && content.getHash().equals(hash)
+                                   && content.getReferenceCount() > 0)
+                .findFirst().orElse(null);
+        }
+
+        @Override
+        public boolean isReferenced(@Nonnull DirectoryEntity directory, @Nonnull String name,
+            @Nullable FileEntity exclude)
+        {
+            return _contents.stream().anyMatch(content -> content.getDirectory() == directory
+                                                          && content.getFile().getName().equals(name)
+                                                          && content.getReferenceCount() > 0
+                                                          && content.getFile() != exclude);
+        }
+
+        @Override
+        public <R> R doInContentTransaction(@Nonnull Supplier<R> work)
+        {
+            return work.get();
+        }
+
+        @Override
+        public void afterCommit(@Nonnull Runnable task)
+        {
+            task.run();
+        }
+
+        @Nonnull
+        @Override
+        public FileContent saveContent(@Nonnull FileEntity file, @Nonnull DirectoryEntity directory,
+            @Nonnull String hash, long contentLength)
+        {
+            FileContent content = getContent(file);
+            if (content == null)
+            {
+                content = new FileContent();
+                content.setFile(file);
+                _contents.add(content);
+            }
+            content.setDirectory(directory);
+            content.setHash(hash);
+            content.setContentLength(contentLength);
+            content.setReferenceCount(1);
+            return content;
+        }
+
+        @Override
+        public void addReference(@Nonnull FileContent content)
+        {
+            content.setReferenceCount(content.getReferenceCount() + 1);
+        }
+
+        @Override
+        public void removeReference(@Nonnull FileEntity file)
+        {
+            final FileContent content = getContent(file);
+            if (content != null && content.getReferenceCount() > 0)
+                content.setReferenceCount(content.getReferenceCount() - 1);
+        }
+    }
+
+    /**
+     * ImageRenditionService counting invalidations.
+     */
+    private static final class FakeImageRenditionService extends ImageRenditionService
+    {
+        int invalidated;
+
+        @Override
+        public void invalidate(@Nonnull FileEntity source)
+        {
+            invalidated++;
+        }
+
+        @Override
+        public void warmAfterCommit(@Nonnull FileEntity source)
+        {
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.service;
+
+import org.testng.annotations.Test;
+
+import java.awt.Dimension;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link ImageRenditionService}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class ImageRenditionServiceTest
+{
+    @Test(groups = TestGroups.UNIT)
+    public void testParseSizes()
+    {
+        assertEquals(ImageRenditionService.parseSizes(" 640x480, 0x120 ,x,10,640x480"),
+            new LinkedHashSet<>(Arrays.asList(new Dimension(640, 480), new Dimension(0, 120))));
+        assertTrue(ImageRenditionService.parseSizes("").isEmpty());
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testClampNeverScalesUp()
+    {
+        final List<Dimension> bounds = Arrays.asList(new Dimension(200, 100), new Dimension(800, 600),
+            new Dimension(0, 50), new Dimension(0, 0));
+        assertEquals(ImageRenditionService.clamp(bounds, new Dimension(400, 300)), Arrays.asList(
+            new Dimension(200, 100), new Dimension(400, 300), new Dimension(400, 50), new Dimension(400, 300)));
+        assertTrue(ImageRenditionService.clamp(Collections.emptyList(), new Dimension(1, 1)).isEmpty());
+    }
+}
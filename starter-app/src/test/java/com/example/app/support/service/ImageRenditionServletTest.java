@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.service;
+
+import org.testng.annotations.Test;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link ImageRenditionServlet}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class ImageRenditionServletTest
+{
+    private static final String ETAG = "\"abc\"";
+
+    @Test(groups = TestGroups.UNIT)
+    public void testIsNotModified()
+    {
+        assertTrue(ImageRenditionServlet.isNotModified(ETAG, ETAG));
+        assertTrue(ImageRenditionServlet.isNotModified("\"xyz\", W/\"abc\"", ETAG));
+        assertTrue(ImageRenditionServlet.isNotModified("*", ETAG));
+        assertFalse(ImageRenditionServlet.isNotModified(null, ETAG));
+        assertFalse(ImageRenditionServlet.isNotModified("\"abcd\", abc", ETAG));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+package com.example.app.support.service;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.disk.DiskFileItem;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.i2rd.unit.test.TestGroups;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Tests for {@link ImageScaler}
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+public class ImageScalerTest
+{
+    private final DiskFileItemFactory _fileItemFactory = new DiskFileItemFactory();
+    private ImageScaler _scaler;
+
+    @BeforeMethod(groups = TestGroups.UNIT)
+    public void createScaler()
+    {
+        _scaler = new ImageScaler(2, 10, 30);
+    }
+
+    @AfterMethod(groups = TestGroups.UNIT)
+    public void closeScaler()
+    {
+        _scaler.close();
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testReadDimensionFromHeader() throws IOException
+    {
+        FileItem image = _image("png", 400, 300);
+        try (InputStream in = image.getInputStream())
+        {
+            assertEquals(ImageScaler.readDimension(in), new Dimension(400, 300));
+        }
+        assertEquals(ImageScaler.readDimension(new ByteArrayInputStream(new byte[]{1, 2, 3})), null);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testScalesEveryBoundFromOneSubsampledDecode() throws Exception
+    {
+        FileItem image = _image("jpg", 1200, 800);
+        List<FileItem> scaled = _scaler.scale(image, Arrays.asList(new Dimension(300, 300), new Dimension(150, 150)),
+            _fileItemFactory).get(10, TimeUnit.SECONDS);
+
+        assertEquals(scaled.size(), 2);
+        assertEquals(_dimension(scaled.get(0)), new Dimension(300, 200));
+        assertEquals(_dimension(scaled.get(1)), new Dimension(150, 100));
+        assertEquals(scaled.get(0).getName(), image.getName());
+
+        ImageScaler.Metrics metrics = _scaler.getMetrics();
+        assertEquals(metrics.getScaled(), 1L);
+        // Decoded every second pixel in each direction
+        assertEquals(metrics.getDecodedPixelRatio(), 0.25, 0.001);
+        assertEquals(metrics.getPeakInFlightBytes(), 600L * 400L * ImageScaler.BYTES_PER_PIXEL);
+        assertEquals(metrics.getInFlightBytes(), 0L);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testImageThatFitsIsNotRewritten() throws Exception
+    {
+        FileItem image = _image("png", 200, 100);
+        List<FileItem> scaled = _scaler.scale(image, Arrays.asList(new Dimension(400, 100), new Dimension(100, 100)),
+            _fileItemFactory).get(10, TimeUnit.SECONDS);
+
+        assertSame(scaled.get(0), image);
+        assertNotSame(scaled.get(1), image);
+        assertEquals(_dimension(scaled.get(1)), new Dimension(100, 50));
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testUnsupportedImageFails() throws Exception
+    {
+        FileItem notAnImage = _fileItemFactory.createItem("file", "image/png", false, "broken.png");
+        try (OutputStream os = notAnImage.getOutputStream())
+        {
+            os.write(new byte[]{1, 2, 3});
+        }
+        try
+        {
+            _scaler.scale(notAnImage, Collections.singletonList(new Dimension(10, 10)), _fileItemFactory)
+                .get(10, TimeUnit.SECONDS);
+            fail("Expected scaling to fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IOException, String.valueOf(e.getCause()));
+        }
+        assertEquals(_scaler.getMetrics().getFailed(), 1L);
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testCancelledScalingIsDiscarded() throws Exception
+    {
+        ImageScaler scaler = new ImageScaler(1, 10, 30);
+        try
+        {
+            FileItem image = _image("png", 400, 200);
+            DiskFileItemFactory onDisk = new DiskFileItemFactory(0, null);
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            List<FileItem> created = new CopyOnWriteArrayList<>();
+            FileItemFactory blocking = (fieldName, contentType, isFormField, fileName) -> {
+                started.countDown();
+                Uninterruptibles.awaitUninterruptibly(release);
+                FileItem item = onDisk.createItem(fieldName, contentType, isFormField, fileName);
+                created.add(item);
+                return item;
+            };
+            List<Dimension> bounds = Collections.singletonList(new Dimension(100, 100));
+            CompletableFuture<List<FileItem>> running = scaler.scale(image, bounds, blocking);
+            CompletableFuture<List<FileItem>> queued = scaler.scale(image, bounds, blocking);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertTrue(running.cancel(false));
+            assertTrue(queued.cancel(false));
+            release.countDown();
+            // The scaler has one thread, so this runs after both
+            scaler.scale(image, bounds, _fileItemFactory).get(10, TimeUnit.SECONDS);
+
+            assertEquals(created.size(), 1, "The queued image should be skipped");
+            assertFalse(((DiskFileItem) created.get(0)).getStoreLocation().exists(),
+                "The image scaled after cancelling should be deleted");
+        }
+        finally
+        {
+            scaler.close();
+        }
+    }
+
+    @Test(groups = TestGroups.UNIT)
+    public void testSubsamplingKeepsTwiceTheTarget()
+    {
+        assertEquals(ImageScaler.getSubsampling(new Dimension(4000, 3000), new Dimension(500, 500)), 3);
+        assertEquals(ImageScaler.getSubsampling(new Dimension(800, 600), new Dimension(500, 500)), 1);
+        assertEquals(ImageScaler.getSubsampling(new Dimension(100, 100), new Dimension(500, 500)), 1);
+    }
+
+    private FileItem _image(String formatName, int width, int height) throws IOException
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.ORANGE);
+        graphics.fillRect(0, 0, width / 2, height);
+        graphics.dispose();
+        FileItem item = _fileItemFactory.createItem("file", "image/" + formatName, false, "upload." + formatName);
+        try (OutputStream os = item.getOutputStream())
+        {
+            ImageIO.write(image, formatName, os);
+        }
+        return item;
+    }
+
+    private static Dimension _dimension(FileItem item) throws IOException
+    {
+        try (InputStream in = item.getInputStream())
+        {
+            return ImageScaler.readDimension(in);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) Interactive Information R & D (I2RD) LLC.
+ * All Rights Reserved.
+ *
+ * This software is confidential and proprietary information of
+ * I2RD LLC ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in
+ * accordance with the terms of the license agreement you entered
+ * into with I2RD.
+ */
+
+/**
+ * Support Service Tests
+ *
+ * @author Alan Holt (aholt@venturetech.net)
+ */
+package com.example.app.support.service;
\ No newline at end of file